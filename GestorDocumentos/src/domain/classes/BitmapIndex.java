@@ -0,0 +1,22 @@
+package domain.classes;
+
+import domain.utils.RoaringBitmap;
+
+/**
+ * Inverted index of documents as compressed bitmaps, used to bound the documents that comply with a boolean
+ * expression with AND, OR and ANDNOT of bitmaps (see DocumentBounds).
+ */
+public interface BitmapIndex {
+
+    /**
+     * @return Documents with at least one sentence. An expression can only be TRUE for a sentence of one of them.
+     */
+    RoaringBitmap getLive();
+
+    /**
+     * @param terms: words normalized with Content.normalize, of a leaf of the expression.
+     * @return Documents that contain all the terms, or null if the index does not know (no term is indexed, like
+     * stop words), so that any of them may contain the terms.
+     */
+    RoaringBitmap getPossible(String[] terms);
+}
@@ -0,0 +1,369 @@
+package domain.classes;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Evaluates a boolean expression with a single pass over the sentence. The literals of all the leaves are the
+ * patterns of an Aho-Corasick automaton, so reading the sentence once gives the bitset of the leaves that match it,
+ * and the formula of the expression is then evaluated over the bitset. The cost per sentence is linear in its length
+ * (plus the matches found) whatever the number of leaves, while the tree scans the sentence once per leaf.
+ */
+public class BoolExprAutomaton implements SentencePredicate {
+
+    /**
+     * Transitions of the deterministic automaton. States are kept multiplied by nClasses, so the next state of state
+     * s with a character of class k is delta[s + k]. Class 0 is every character that is not in any literal.
+     */
+    private final int[] delta;
+    private final int nClasses;
+    /** Class of each ASCII character, upper and lower case share the class of the lowercase character. */
+    private final byte[] asciiClass;
+    /** Non-ASCII lowercase characters of the literals, sorted, with their classes in nonAsciiClass. */
+    private final char[] nonAscii;
+    private final int[] nonAsciiClass;
+
+    /** Leaves that end at each state (including the ones of its suffixes), at the same index as the
+     * transitions of the state, null if none. */
+    private final int[][] output;
+    private final int[] length;
+    private final boolean[] wholeWord;
+
+    private final Formula formula;
+    private final int nLeaves;
+
+    /**
+     * Builds the automaton of tree, or returns tree if it has no leaves or a literal that cannot be matched one
+     * character at a time (empty literals and characters that change with toLowerCase).
+     * @param tree: compiled expression.
+     * @return Predicate that gives the same result as tree for every sentence.
+     */
+    public static SentencePredicate build(BoolExprNode tree) {
+        HashMap<BoolExprNode.Literal, Integer> ids = new HashMap<>();
+        ArrayList<BoolExprNode.Literal> leaves = new ArrayList<>();
+        Formula formula = formula(tree, ids, leaves);
+        if (formula == null || leaves.isEmpty()) return tree;
+        return new BoolExprAutomaton(formula, leaves);
+    }
+
+    /**
+     * Translates node to a formula over the bits of its leaves, giving the same bit to equal literals.
+     * @return null if a leaf is not supported.
+     */
+    private static Formula formula(BoolExprNode node, HashMap<BoolExprNode.Literal, Integer> ids, ArrayList<BoolExprNode.Literal> leaves) {
+        if (node instanceof BoolExprNode.Shared) {
+            return formula(((BoolExprNode.Shared) node).operand, ids, leaves);
+        }
+        if (node instanceof BoolExprNode.Const) {
+            return new Const(((BoolExprNode.Const) node).value);
+        }
+        if (node instanceof BoolExprNode.Literal) {
+            BoolExprNode.Literal literal = (BoolExprNode.Literal) node;
+            if (literal.literal.isEmpty()) return null;
+            for (int i = 0; i < literal.literal.length(); ++i) {
+                char c = literal.literal.charAt(i);
+                if (Character.toLowerCase(c) != c) return null;
+            }
+            Integer id = ids.get(literal);
+            if (id == null) {
+                id = leaves.size();
+                ids.put(literal, id);
+                leaves.add(literal);
+            }
+            return new Leaf(id);
+        }
+        if (node instanceof BoolExprNode.Not) {
+            Formula operand = formula(((BoolExprNode.Not) node).operand, ids, leaves);
+            return operand == null ? null : new Not(operand);
+        }
+        BoolExprNode l, r;
+        if (node instanceof BoolExprNode.And) {
+            l = ((BoolExprNode.And) node).left;
+            r = ((BoolExprNode.And) node).right;
+        } else if (node instanceof BoolExprNode.Or) {
+            l = ((BoolExprNode.Or) node).left;
+            r = ((BoolExprNode.Or) node).right;
+        } else {
+            return null;
+        }
+        Formula left = formula(l, ids, leaves);
+        Formula right = left == null ? null : formula(r, ids, leaves);
+        if (right == null) return null;
+        return node instanceof BoolExprNode.And ? new And(left, right) : new Or(left, right);
+    }
+
+    private BoolExprAutomaton(Formula formula, ArrayList<BoolExprNode.Literal> leaves) {
+        this.formula = formula;
+        nLeaves = leaves.size();
+        length = new int[nLeaves];
+        wholeWord = new boolean[nLeaves];
+
+        // Character classes
+        asciiClass = new byte[128];
+        ArrayList<Character> others = new ArrayList<>();
+        int classes = 1;
+        for (BoolExprNode.Literal leaf : leaves) {
+            for (int i = 0; i < leaf.literal.length(); ++i) {
+                char c = leaf.literal.charAt(i);
+                if (c < 128) {
+                    if (asciiClass[c] == 0) {
+                        asciiClass[c] = (byte) classes;
+                        asciiClass[Character.toUpperCase(c)] = (byte) classes;
+                        ++classes;
+                    }
+                } else if (!others.contains(c)) {
+                    others.add(c);
+                }
+            }
+        }
+        nonAscii = new char[others.size()];
+        for (int i = 0; i < nonAscii.length; ++i) nonAscii[i] = others.get(i);
+        Arrays.sort(nonAscii);
+        nonAsciiClass = new int[nonAscii.length];
+        for (int i = 0; i < nonAscii.length; ++i) nonAsciiClass[i] = classes++;
+        nClasses = classes;
+
+        // Trie of the literals
+        int maxStates = 1;
+        for (BoolExprNode.Literal leaf : leaves) maxStates += leaf.literal.length();
+        int[] trie = new int[maxStates * nClasses];
+        Arrays.fill(trie, -1);
+        ArrayList<ArrayList<Integer>> ends = new ArrayList<>();
+        ends.add(null);
+        int states = 1;
+        for (int id = 0; id < nLeaves; ++id) {
+            BoolExprNode.Literal leaf = leaves.get(id);
+            length[id] = leaf.literal.length();
+            wholeWord[id] = leaf.wholeWord;
+            int s = 0;
+            for (int i = 0; i < leaf.literal.length(); ++i) {
+                int k = classOf(leaf.literal.charAt(i));
+                if (trie[s * nClasses + k] < 0) {
+                    trie[s * nClasses + k] = states++;
+                    ends.add(null);
+                }
+                s = trie[s * nClasses + k];
+            }
+            if (ends.get(s) == null) ends.set(s, new ArrayList<>());
+            ends.get(s).add(id);
+        }
+
+        // Failure links in breadth-first order, turning the trie into the complete transition table
+        delta = Arrays.copyOf(trie, states * nClasses);
+        int[][] outputs = new int[states][];
+        int[] fail = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int k = 0; k < nClasses; ++k) {
+            if (delta[k] < 0) {
+                delta[k] = 0;
+            } else {
+                queue.add(delta[k]);
+            }
+        }
+        outputs[0] = toArray(ends.get(0), null);
+        while (!queue.isEmpty()) {
+            int s = queue.poll();
+            outputs[s] = toArray(ends.get(s), outputs[fail[s]]);
+            for (int k = 0; k < nClasses; ++k) {
+                int next = delta[s * nClasses + k];
+                if (next < 0) {
+                    delta[s * nClasses + k] = delta[fail[s] * nClasses + k];
+                } else {
+                    fail[next] = delta[fail[s] * nClasses + k];
+                    queue.add(next);
+                }
+            }
+        }
+        for (int i = 0; i < delta.length; ++i) delta[i] *= nClasses;
+        output = new int[delta.length][];
+        for (int i = 0; i < states; ++i) output[i * nClasses] = outputs[i];
+    }
+
+    /**
+     * @return own followed by inherited, null if both are empty.
+     */
+    private static int[] toArray(ArrayList<Integer> own, int[] inherited) {
+        int n = (own == null ? 0 : own.size()) + (inherited == null ? 0 : inherited.length);
+        if (n == 0) return null;
+        int[] result = new int[n];
+        int i = 0;
+        if (own != null) for (int id : own) result[i++] = id;
+        if (inherited != null) System.arraycopy(inherited, 0, result, i, inherited.length);
+        return result;
+    }
+
+    /**
+     * @param c: lowercase character.
+     * @return Class of c, 0 if c is not in any literal.
+     */
+    private int classOf(char c) {
+        if (c < 128) return asciiClass[c];
+        int i = Arrays.binarySearch(nonAscii, c);
+        return i < 0 ? 0 : nonAsciiClass[i];
+    }
+
+    /**
+     * @return Number of different leaves of the expression, which are the bits of the bitset.
+     */
+    public int getLeaves() {
+        return nLeaves;
+    }
+
+    /**
+     * @return Number of states of the automaton.
+     */
+    public int getStates() {
+        return output.length / nClasses;
+    }
+
+    /**
+     * Runs the automaton over sentence.
+     * @param sentence: String we want to compare the leaves with.
+     * @param bits: bitset of (getLeaves() + 63) / 64 words, cleared by this method.
+     */
+    public void matchLeaves(String sentence, long[] bits) {
+        Arrays.fill(bits, 0, (nLeaves + 63) >>> 6, 0L);
+        int s = 0;
+        for (int i = 0; i < sentence.length(); ++i) {
+            char c = sentence.charAt(i);
+            int k = c < 128 ? asciiClass[c] : classOf(Character.toLowerCase(c));
+            s = delta[s + k];
+            int[] ends = output[s];
+            if (ends == null) continue;
+            for (int id : ends) {
+                if (wholeWord[id] && !(BoolExprNode.isBoundary(sentence, i + 1 - length[id]) && BoolExprNode.isBoundary(sentence, i + 1))) continue;
+                bits[id >>> 6] |= 1L << id;
+            }
+        }
+    }
+
+    /**
+     * Evaluates the expression on a sentence with a single pass of the automaton. Expressions of up to 64 leaves
+     * don't allocate.
+     */
+    @Override
+    public boolean eval(String sentence) {
+        if (nLeaves <= 64) {
+            long bits = 0;
+            int s = 0;
+            for (int i = 0; i < sentence.length(); ++i) {
+                char c = sentence.charAt(i);
+                int k = c < 128 ? asciiClass[c] : classOf(Character.toLowerCase(c));
+                s = delta[s + k];
+                int[] ends = output[s];
+                if (ends == null) continue;
+                for (int id : ends) {
+                    if (wholeWord[id] && !(BoolExprNode.isBoundary(sentence, i + 1 - length[id]) && BoolExprNode.isBoundary(sentence, i + 1))) continue;
+                    bits |= 1L << id;
+                }
+            }
+            return formula.eval(bits);
+        }
+        long[] bits = new long[(nLeaves + 63) >>> 6];
+        matchLeaves(sentence, bits);
+        return formula.eval(bits);
+    }
+
+    /**
+     * Boolean formula over the bitset of the leaves, with the same shape as the expression tree.
+     */
+    private abstract static class Formula {
+        abstract boolean eval(long bits);
+
+        abstract boolean eval(long[] bits);
+    }
+
+    private static final class Const extends Formula {
+        private final boolean value;
+
+        Const(boolean value) {
+            this.value = value;
+        }
+
+        @Override
+        boolean eval(long bits) {
+            return value;
+        }
+
+        @Override
+        boolean eval(long[] bits) {
+            return value;
+        }
+    }
+
+    private static final class Leaf extends Formula {
+        private final int id;
+
+        Leaf(int id) {
+            this.id = id;
+        }
+
+        @Override
+        boolean eval(long bits) {
+            return (bits & (1L << id)) != 0;
+        }
+
+        @Override
+        boolean eval(long[] bits) {
+            return (bits[id >>> 6] & (1L << id)) != 0;
+        }
+    }
+
+    private static final class Not extends Formula {
+        private final Formula operand;
+
+        Not(Formula operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        boolean eval(long bits) {
+            return !operand.eval(bits);
+        }
+
+        @Override
+        boolean eval(long[] bits) {
+            return !operand.eval(bits);
+        }
+    }
+
+    private static final class And extends Formula {
+        private final Formula left, right;
+
+        And(Formula left, Formula right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean eval(long bits) {
+            return left.eval(bits) && right.eval(bits);
+        }
+
+        @Override
+        boolean eval(long[] bits) {
+            return left.eval(bits) && right.eval(bits);
+        }
+    }
+
+    private static final class Or extends Formula {
+        private final Formula left, right;
+
+        Or(Formula left, Formula right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean eval(long bits) {
+            return left.eval(bits) || right.eval(bits);
+        }
+
+        @Override
+        boolean eval(long[] bits) {
+            return left.eval(bits) || right.eval(bits);
+        }
+    }
+}
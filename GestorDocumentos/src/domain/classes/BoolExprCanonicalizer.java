@@ -0,0 +1,217 @@
+package domain.classes;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.TreeMap;
+
+/**
+ * Normal form of boolean expression trees, so that equivalent ways of writing an expression give the same tree and
+ * the same key: "a & b", "b & a", "{a b}" and "(a & (b & a))" are all "(a & b)".
+ * <ul>
+ *     <li>Nested ANDs (and nested ORs) are flattened to a single chain.</li>
+ *     <li>The operands of a chain are sorted by their keys and repeated operands are removed.</li>
+ *     <li>Double negations are removed and constants are folded.</li>
+ *     <li>Equal subtrees are the same node (hash-consing).</li>
+ * </ul>
+ * The key of a tree is its canonical form written with the syntax of the expressions, so it can be parsed again, and it
+ * does not depend on the statistics of the corpus: it is a stable key for caches of results.
+ */
+public final class BoolExprCanonicalizer {
+
+    private BoolExprCanonicalizer() {
+    }
+
+    /**
+     * @param tree: compiled expression.
+     * @return Canonical tree equivalent to tree.
+     */
+    public static BoolExprNode canonicalize(BoolExprNode tree) {
+        return new Canonicalizer().canonical(tree).node;
+    }
+
+    /**
+     * @param tree: compiled expression.
+     * @return Key of the canonical form of tree, equal for all the trees with the same canonical form. Constants are
+     * TRUE and FALSE, which cannot be words of an expression because words are lowercase.
+     */
+    public static String key(BoolExprNode tree) {
+        return new Canonicalizer().canonical(tree).key;
+    }
+
+    /**
+     * Finds the subtrees of tree that appear more than once and makes them a single node that evaluates them once per
+     * sentence (BoolExprNode.shared). The order of the operands is kept, so it can be used after planning.
+     * @param tree: compiled expression.
+     * @return Tree equivalent to tree where the repeated subtrees (leaves included, constants excluded) are shared.
+     */
+    public static BoolExprNode share(BoolExprNode tree) {
+        //Equal subtrees become the same node, and the references to every node are counted
+        HashMap<String, BoolExprNode> interned = new HashMap<>();
+        IdentityHashMap<BoolExprNode, Integer> references = new IdentityHashMap<>();
+        BoolExprNode root = intern(tree, interned, new IdentityHashMap<>(), references);
+        references.merge(root, 1, Integer::sum);
+        if (references.values().stream().allMatch(r -> r < 2)) return tree;
+        return wrap(root, references, new IdentityHashMap<>(), new int[1]);
+    }
+
+    /**
+     * Canonical node and its key.
+     */
+    private static final class Canonical {
+        final BoolExprNode node;
+        final String key;
+
+        Canonical(BoolExprNode node, String key) {
+            this.node = node;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Canonical nodes of one tree by key, so that equal subtrees are the same node.
+     */
+    private static final class Canonicalizer {
+        private final HashMap<String, Canonical> nodes = new HashMap<>();
+
+        private Canonical intern(String key, BoolExprNode node) {
+            return nodes.computeIfAbsent(key, k -> new Canonical(node, k));
+        }
+
+        Canonical canonical(BoolExprNode node) {
+            if (node instanceof BoolExprNode.Shared) return canonical(((BoolExprNode.Shared) node).operand);
+            if (node instanceof BoolExprNode.Const) {
+                return intern(((BoolExprNode.Const) node).value ? "TRUE" : "FALSE", node);
+            }
+            if (node instanceof BoolExprNode.Literal) {
+                BoolExprNode.Literal literal = (BoolExprNode.Literal) node;
+                return intern(literal.wholeWord ? literal.literal : "\"" + literal.literal + "\"", node);
+            }
+            if (node instanceof BoolExprNode.Not) {
+                Canonical operand = canonical(((BoolExprNode.Not) node).operand);
+                return not(operand);
+            }
+
+            boolean and = node instanceof BoolExprNode.And;
+            ArrayList<BoolExprNode> written = new ArrayList<>();
+            operands(node, and, written);
+            //Sorted by key without repetitions
+            TreeMap<String, Canonical> operands = new TreeMap<>();
+            for (BoolExprNode operand : written) {
+                Canonical c = canonical(operand);
+                if (c.key.equals(and ? "TRUE" : "FALSE")) continue;
+                if (c.key.equals(and ? "FALSE" : "TRUE")) return c;
+                operands.put(c.key, c);
+            }
+            if (operands.isEmpty()) return intern(and ? "TRUE" : "FALSE", BoolExprNode.constant(and));
+
+            Canonical res = null;
+            StringBuilder key = new StringBuilder("(");
+            for (Canonical c : operands.values()) {
+                if (res != null) key.append(and ? " & " : " | ");
+                key.append(c.key);
+                res = res == null ? c : new Canonical(and ? BoolExprNode.and(res.node, c.node) : BoolExprNode.or(res.node, c.node), null);
+            }
+            if (operands.size() == 1) return res;
+            return intern(key.append(')').toString(), res.node);
+        }
+
+        private Canonical not(Canonical operand) {
+            if (operand.node instanceof BoolExprNode.Const) {
+                return intern(((BoolExprNode.Const) operand.node).value ? "FALSE" : "TRUE",
+                        BoolExprNode.constant(!((BoolExprNode.Const) operand.node).value));
+            }
+            if (operand.node instanceof BoolExprNode.Not) {
+                return canonical(((BoolExprNode.Not) operand.node).operand);
+            }
+            return intern("!" + operand.key, BoolExprNode.not(operand.node));
+        }
+    }
+
+    /**
+     * Adds to operands the operands of the chain of ANDs (or ORs if and is FALSE) of node, through shared nodes.
+     */
+    private static void operands(BoolExprNode node, boolean and, ArrayList<BoolExprNode> operands) {
+        if (node instanceof BoolExprNode.Shared) {
+            operands(((BoolExprNode.Shared) node).operand, and, operands);
+        } else if (and && node instanceof BoolExprNode.And) {
+            operands(((BoolExprNode.And) node).left, true, operands);
+            operands(((BoolExprNode.And) node).right, true, operands);
+        } else if (!and && node instanceof BoolExprNode.Or) {
+            operands(((BoolExprNode.Or) node).left, false, operands);
+            operands(((BoolExprNode.Or) node).right, false, operands);
+        } else {
+            operands.add(node);
+        }
+    }
+
+    /**
+     * @param interned: nodes by the structural key of their subtree, which keeps the order of the operands.
+     * @param keys: structural keys of the nodes already interned.
+     * @param references: number of parents of every interned node, counted once per different parent.
+     * @return The interned node equal to node.
+     */
+    private static BoolExprNode intern(BoolExprNode node, HashMap<String, BoolExprNode> interned,
+                                       IdentityHashMap<BoolExprNode, String> keys, IdentityHashMap<BoolExprNode, Integer> references) {
+        if (node instanceof BoolExprNode.Shared) node = ((BoolExprNode.Shared) node).operand;
+        String key;
+        BoolExprNode res;
+        BoolExprNode[] children;
+        if (node instanceof BoolExprNode.Const) {
+            key = ((BoolExprNode.Const) node).value ? "T" : "F";
+            res = node;
+            children = new BoolExprNode[0];
+        } else if (node instanceof BoolExprNode.Literal) {
+            //The length makes the key unambiguous, a sequence may have any character
+            BoolExprNode.Literal literal = (BoolExprNode.Literal) node;
+            key = (literal.wholeWord ? "w" : "s") + literal.literal.length() + ":" + literal.literal;
+            res = node;
+            children = new BoolExprNode[0];
+        } else if (node instanceof BoolExprNode.Not) {
+            BoolExprNode operand = intern(((BoolExprNode.Not) node).operand, interned, keys, references);
+            key = "!" + keys.get(operand);
+            res = BoolExprNode.not(operand);
+            children = new BoolExprNode[]{operand};
+        } else {
+            boolean and = node instanceof BoolExprNode.And;
+            BoolExprNode left = intern(and ? ((BoolExprNode.And) node).left : ((BoolExprNode.Or) node).left, interned, keys, references);
+            BoolExprNode right = intern(and ? ((BoolExprNode.And) node).right : ((BoolExprNode.Or) node).right, interned, keys, references);
+            key = (and ? "&(" : "|(") + keys.get(left) + "," + keys.get(right) + ")";
+            res = and ? BoolExprNode.and(left, right) : BoolExprNode.or(left, right);
+            children = new BoolExprNode[]{left, right};
+        }
+
+        BoolExprNode existing = interned.get(key);
+        if (existing != null) return existing;
+
+        interned.put(key, res);
+        keys.put(res, key);
+        for (BoolExprNode child : children) references.merge(child, 1, Integer::sum);
+        return res;
+    }
+
+    /**
+     * @param slots: number of shared nodes created, the slot of the next one.
+     * @return node with the interned nodes with more than one reference wrapped in a shared node.
+     */
+    private static BoolExprNode wrap(BoolExprNode node, IdentityHashMap<BoolExprNode, Integer> references,
+                                     IdentityHashMap<BoolExprNode, BoolExprNode> wrapped, int[] slots) {
+        BoolExprNode res = wrapped.get(node);
+        if (res != null) return res;
+
+        if (node instanceof BoolExprNode.Not) {
+            res = BoolExprNode.not(wrap(((BoolExprNode.Not) node).operand, references, wrapped, slots));
+        } else if (node instanceof BoolExprNode.And) {
+            res = BoolExprNode.and(wrap(((BoolExprNode.And) node).left, references, wrapped, slots),
+                    wrap(((BoolExprNode.And) node).right, references, wrapped, slots));
+        } else if (node instanceof BoolExprNode.Or) {
+            res = BoolExprNode.or(wrap(((BoolExprNode.Or) node).left, references, wrapped, slots),
+                    wrap(((BoolExprNode.Or) node).right, references, wrapped, slots));
+        } else {
+            res = node;
+        }
+        if (!(node instanceof BoolExprNode.Const) && references.getOrDefault(node, 0) > 1) res = BoolExprNode.shared(res, slots[0]++);
+        wrapped.put(node, res);
+        return res;
+    }
+}
@@ -0,0 +1,335 @@
+package domain.classes;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Compiles boolean expression trees to JVM bytecode. Each expression becomes a hidden class that implements
+ * SentencePredicate, where AND, OR and NOT are conditional jumps (short-circuit) and every leaf is a call to the
+ * eval of its Literal, kept in a final field. Shared subexpressions are called the same way with the memo of the
+ * evaluation, so that they keep evaluating their operand once per sentence. The JIT then sees straight-line code instead of a recursive evaluation
+ * of the tree. Hidden classes are not referenced by their class loader, so they are unloaded with the predicate.
+ */
+public class BoolExprCompiler {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final String NAME = "domain/classes/CompiledBoolExpr";
+    private static final String LEAF = "domain/classes/BoolExprNode";
+    private static final String LEAF_DESC = "L" + LEAF + ";";
+    private static final String EVAL_DESC = "(Ljava/lang/String;)Z";
+    private static final String EVAL_MEMO_DESC = "(Ljava/lang/String;[B)Z";
+
+    // Opcodes used by the generated code
+    private static final int ACONST_NULL = 0x01, ICONST_0 = 0x03, ICONST_1 = 0x04, BIPUSH = 0x10, SIPUSH = 0x11,
+            ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, ALOAD_2 = 0x2c, AALOAD = 0x32, IFEQ = 0x99, IFNE = 0x9a, IRETURN = 0xac,
+            RETURN = 0xb1, GETFIELD = 0xb4, PUTFIELD = 0xb5, INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7, NEWARRAY = 0xbc,
+            T_BYTE = 8;
+
+    /**
+     * Compiles tree to a hidden class.
+     * @param tree: expression without constant nodes.
+     * @return Predicate that gives the same result as tree for every sentence.
+     * @throws IllegalArgumentException if tree has constant nodes or is too big for a method.
+     */
+    public static SentencePredicate compile(BoolExprNode tree) {
+        ArrayList<BoolExprNode> leaves = new ArrayList<>();
+        collectLeaves(tree, leaves);
+        byte[] bytes = new ClassWriter(tree, leaves).toByteArray();
+
+        try {
+            Class<?> c = LOOKUP.defineHiddenClass(bytes, true).lookupClass();
+            Object[] args = {leaves.toArray(new BoolExprNode[0])};
+            return (SentencePredicate) c.getDeclaredConstructor(BoolExprNode[].class).newInstance(args);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return The compiled tree, or tree itself if it cannot be compiled.
+     */
+    public static SentencePredicate compileOrInterpret(BoolExprNode tree) {
+        try {
+            return compile(tree);
+        } catch (RuntimeException | LinkageError e) {
+            return tree;
+        }
+    }
+
+    /**
+     * Adds the leaves of node to leaves, from left to right. Shared subexpressions are leaves too.
+     */
+    private static void collectLeaves(BoolExprNode node, ArrayList<BoolExprNode> leaves) {
+        if (node instanceof BoolExprNode.Literal || node instanceof BoolExprNode.Shared) {
+            leaves.add(node);
+        } else if (node instanceof BoolExprNode.Not) {
+            collectLeaves(((BoolExprNode.Not) node).operand, leaves);
+        } else if (node instanceof BoolExprNode.And) {
+            collectLeaves(((BoolExprNode.And) node).left, leaves);
+            collectLeaves(((BoolExprNode.And) node).right, leaves);
+        } else if (node instanceof BoolExprNode.Or) {
+            collectLeaves(((BoolExprNode.Or) node).left, leaves);
+            collectLeaves(((BoolExprNode.Or) node).right, leaves);
+        } else {
+            throw new IllegalArgumentException("cannot compile " + node.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Growable array of bytes in the big-endian order of class files.
+     */
+    private static class ByteVector {
+        byte[] data = new byte[256];
+        int length = 0;
+
+        ByteVector putByte(int b) {
+            if (length == data.length) data = Arrays.copyOf(data, 2 * length);
+            data[length++] = (byte) b;
+            return this;
+        }
+
+        ByteVector putShort(int s) {
+            return putByte(s >>> 8).putByte(s);
+        }
+
+        ByteVector putInt(int i) {
+            return putShort(i >>> 16).putShort(i);
+        }
+
+        ByteVector putBytes(ByteVector v) {
+            for (int i = 0; i < v.length; ++i) putByte(v.data[i]);
+            return this;
+        }
+
+        void setShort(int pos, int s) {
+            data[pos] = (byte) (s >>> 8);
+            data[pos + 1] = (byte) s;
+        }
+    }
+
+    /**
+     * Position in the code, and the jumps to it that have to be patched when it is known. All the jumps of the
+     * generated code go forward.
+     */
+    private static class Label {
+        int position = -1;
+        ArrayList<int[]> jumps = new ArrayList<>();
+    }
+
+    /**
+     * Writes the class file of one expression:
+     * final class CompiledBoolExpr implements SentencePredicate {
+     *     private final BoolExprNode l0, l1, ...;
+     *     CompiledBoolExpr(BoolExprNode[] leaves) { l0 = leaves[0]; ... }
+     *     public boolean eval(String sentence) { return eval(sentence, new byte[memoSize]); }
+     *     public boolean eval(String sentence, byte[] memo) { jumps over l0.eval(sentence, memo), ... }
+     * }
+     * The memo is null when the tree has no shared subexpressions.
+     */
+    private static class ClassWriter {
+        private final ByteVector pool = new ByteVector();
+        private final HashMap<String, Integer> constants = new HashMap<>();
+        private int nConstants = 1;
+
+        private final int nLeaves;
+        private final HashMap<BoolExprNode, Integer> leafIndex = new HashMap<>();
+        private final ByteVector code = new ByteVector();
+        // Positions of the code that are jump targets, they need a frame in the StackMapTable
+        private final ArrayList<Integer> targets = new ArrayList<>();
+
+        private final ByteVector constructor;
+        private final ByteVector constructorFrames;
+        private final ByteVector eval;
+        private final ByteVector evalMemo;
+        private final ByteVector evalMemoFrames;
+
+        ClassWriter(BoolExprNode tree, ArrayList<BoolExprNode> leaves) {
+            nLeaves = leaves.size();
+            for (int i = 0; i < nLeaves; ++i) leafIndex.put(leaves.get(i), i);
+
+            // Constructor: super(); this.li = leaves[i] for every leaf
+            code.putByte(ALOAD_0).putByte(INVOKESPECIAL).putShort(methodRef("java/lang/Object", "<init>", "()V"));
+            for (int i = 0; i < nLeaves; ++i) {
+                code.putByte(ALOAD_0).putByte(ALOAD_1);
+                if (i <= 5) code.putByte(ICONST_0 + i);
+                else if (i < 128) code.putByte(BIPUSH).putByte(i);
+                else code.putByte(SIPUSH).putShort(i);
+                code.putByte(AALOAD).putByte(PUTFIELD).putShort(fieldRef(i));
+            }
+            code.putByte(RETURN);
+            constructor = copy(code);
+            constructorFrames = frames();
+
+            // eval(sentence): eval(sentence, memo) with a new memo
+            code.length = 0;
+            code.putByte(ALOAD_0).putByte(ALOAD_1);
+            int memoSize = tree.memoSize;
+            if (memoSize == 0) code.putByte(ACONST_NULL);
+            else if (memoSize < 128) code.putByte(BIPUSH).putByte(memoSize).putByte(NEWARRAY).putByte(T_BYTE);
+            else code.putByte(SIPUSH).putShort(memoSize).putByte(NEWARRAY).putByte(T_BYTE);
+            code.putByte(INVOKEVIRTUAL).putShort(methodRef(NAME, "eval", EVAL_MEMO_DESC)).putByte(IRETURN);
+            eval = copy(code);
+
+            // eval(sentence, memo): jump to isFalse if the expression is false, return true otherwise
+            code.length = 0;
+            targets.clear();
+            Label isFalse = new Label();
+            jumpIf(tree, false, isFalse);
+            code.putByte(ICONST_1).putByte(IRETURN);
+            place(isFalse);
+            code.putByte(ICONST_0).putByte(IRETURN);
+            if (code.length > Short.MAX_VALUE) throw new IllegalArgumentException("expression too big to compile");
+            evalMemo = copy(code);
+            evalMemoFrames = frames();
+        }
+
+        /**
+         * Emits code that jumps to target if node evaluates to value, and continues with the next instruction otherwise.
+         */
+        private void jumpIf(BoolExprNode node, boolean value, Label target) {
+            if (node instanceof BoolExprNode.Not) {
+                jumpIf(((BoolExprNode.Not) node).operand, !value, target);
+            } else if (node instanceof BoolExprNode.And || node instanceof BoolExprNode.Or) {
+                boolean isAnd = node instanceof BoolExprNode.And;
+                BoolExprNode left = isAnd ? ((BoolExprNode.And) node).left : ((BoolExprNode.Or) node).left;
+                BoolExprNode right = isAnd ? ((BoolExprNode.And) node).right : ((BoolExprNode.Or) node).right;
+                // An AND is false as soon as an operand is false, an OR is true as soon as an operand is true
+                if (value != isAnd) {
+                    jumpIf(left, value, target);
+                    jumpIf(right, value, target);
+                } else {
+                    Label next = new Label();
+                    jumpIf(left, !value, next);
+                    jumpIf(right, value, target);
+                    place(next);
+                }
+            } else {
+                int i = leafIndex.get(node);
+                code.putByte(ALOAD_0).putByte(GETFIELD).putShort(fieldRef(i)).putByte(ALOAD_1).putByte(ALOAD_2)
+                        .putByte(INVOKEVIRTUAL).putShort(methodRef(LEAF, "eval", EVAL_MEMO_DESC));
+                jump(value ? IFNE : IFEQ, target);
+            }
+        }
+
+        private void jump(int opcode, Label target) {
+            target.jumps.add(new int[]{code.length, code.length + 1});
+            code.putByte(opcode).putShort(0);
+        }
+
+        private void place(Label label) {
+            label.position = code.length;
+            for (int[] jump : label.jumps) {
+                int offset = label.position - jump[0];
+                if (offset > Short.MAX_VALUE) throw new IllegalArgumentException("expression too big to compile");
+                code.setShort(jump[1], offset);
+            }
+            if (!label.jumps.isEmpty() && (targets.isEmpty() || targets.get(targets.size() - 1) != label.position))
+                targets.add(label.position);
+        }
+
+        /**
+         * @return Entries of the StackMapTable of the current code. The locals are always the arguments and the stack
+         * is empty at every target, so all the frames are the same as the initial one.
+         */
+        private ByteVector frames() {
+            ByteVector frames = new ByteVector();
+            int previous = -1;
+            for (int target : targets) {
+                int delta = target - previous - 1;
+                if (delta < 64) frames.putByte(delta);
+                else frames.putByte(251).putShort(delta);
+                previous = target;
+            }
+            return frames;
+        }
+
+        private static ByteVector copy(ByteVector v) {
+            return new ByteVector().putBytes(v);
+        }
+
+        private int constant(String key, ByteVector entry) {
+            Integer index = constants.get(key);
+            if (index == null) {
+                index = nConstants++;
+                constants.put(key, index);
+                pool.putBytes(entry);
+            }
+            return index;
+        }
+
+        private int utf8(String s) {
+            ByteVector entry = new ByteVector().putByte(1).putShort(s.length());
+            for (int i = 0; i < s.length(); ++i) entry.putByte(s.charAt(i));
+            return constant("U" + s, entry);
+        }
+
+        private int classRef(String name) {
+            int n = utf8(name);
+            return constant("C" + name, new ByteVector().putByte(7).putShort(n));
+        }
+
+        private int nameAndType(String name, String desc) {
+            int n = utf8(name), d = utf8(desc);
+            return constant("T" + name + " " + desc, new ByteVector().putByte(12).putShort(n).putShort(d));
+        }
+
+        private int fieldRef(int leaf) {
+            int c = classRef(NAME), t = nameAndType("l" + leaf, LEAF_DESC);
+            return constant("F" + leaf, new ByteVector().putByte(9).putShort(c).putShort(t));
+        }
+
+        private int methodRef(String owner, String name, String desc) {
+            int c = classRef(owner), t = nameAndType(name, desc);
+            return constant("M" + owner + "." + name + desc, new ByteVector().putByte(10).putShort(c).putShort(t));
+        }
+
+        private void putMethod(ByteVector out, int access, String name, String desc, int maxStack, int maxLocals, ByteVector body, ByteVector frames) {
+            out.putShort(access).putShort(utf8(name)).putShort(utf8(desc)).putShort(1);
+
+            ByteVector attributes = new ByteVector();
+            if (frames.length > 0) {
+                attributes.putShort(utf8("StackMapTable")).putInt(2 + frames.length).putShort(countFrames(frames)).putBytes(frames);
+            }
+            out.putShort(utf8("Code")).putInt(12 + body.length + attributes.length)
+                    .putShort(maxStack).putShort(maxLocals).putInt(body.length).putBytes(body)
+                    .putShort(0).putShort(frames.length > 0 ? 1 : 0).putBytes(attributes);
+        }
+
+        private static int countFrames(ByteVector frames) {
+            int n = 0;
+            for (int i = 0; i < frames.length; ++i, ++n) {
+                if ((frames.data[i] & 0xff) == 251) i += 2;
+            }
+            return n;
+        }
+
+        byte[] toByteArray() {
+            ByteVector methods = new ByteVector();
+            putMethod(methods, 0x0001, "<init>", "([" + LEAF_DESC + ")V", 3, 2, constructor, constructorFrames);
+            putMethod(methods, 0x0001, "eval", EVAL_DESC, 3, 2, eval, new ByteVector());
+            putMethod(methods, 0x0001, "eval", EVAL_MEMO_DESC, 3, 3, evalMemo, evalMemoFrames);
+
+            ByteVector fields = new ByteVector();
+            for (int i = 0; i < nLeaves; ++i) {
+                fields.putShort(0x0012).putShort(utf8("l" + i)).putShort(utf8(LEAF_DESC)).putShort(0);
+            }
+
+            int thisClass = classRef(NAME);
+            int superClass = classRef("java/lang/Object");
+            int predicate = classRef("domain/classes/SentencePredicate");
+
+            ByteVector out = new ByteVector();
+            out.putInt(0xCAFEBABE).putShort(0).putShort(61);
+            out.putShort(nConstants).putBytes(pool);
+            out.putShort(0x0030).putShort(thisClass).putShort(superClass);
+            out.putShort(1).putShort(predicate);
+            out.putShort(nLeaves).putBytes(fields);
+            out.putShort(3).putBytes(methods);
+            out.putShort(0);
+            return Arrays.copyOf(out.data, out.length);
+        }
+    }
+}
@@ -0,0 +1,416 @@
+package domain.classes;
+
+import domain.utils.SortedIntSets;
+
+import java.util.ArrayList;
+
+/**
+ * Node of a compiled boolean expression. The tree is immutable and the state of an evaluation is kept in a memo that
+ * belongs to that evaluation, so the same tree can be evaluated on every sentence and by several threads at the same
+ * time. Evaluating a tree only allocates the memo, when it has shared subexpressions.
+ */
+public abstract class BoolExprNode implements SentencePredicate {
+
+    /**
+     * Results of the shared subexpressions in an evaluation, by slot.
+     */
+    static final byte UNKNOWN = 0, IS_FALSE = 1, IS_TRUE = 2;
+
+    /**
+     * Size of the memo of an evaluation of the node: the greatest slot of its shared subexpressions plus one.
+     */
+    final int memoSize;
+
+    BoolExprNode(int memoSize) {
+        this.memoSize = memoSize;
+    }
+
+    /**
+     * Evaluates the expression on a sentence.
+     * @param sentence: String we want to compare the expression with.
+     * @return TRUE if it complies, FALSE otherwise.
+     */
+    @Override
+    public boolean eval(String sentence) {
+        return eval(sentence, memoSize == 0 ? null : new byte[memoSize]);
+    }
+
+    /**
+     * Evaluates the expression on a sentence, as part of the evaluation of a tree.
+     * @param memo: results of the shared subexpressions already evaluated on sentence, null to evaluate all of them.
+     */
+    abstract boolean eval(String sentence, byte[] memo);
+
+    /**
+     * Documents (or sentences) that may have a sentence that complies with the expression, found with the postings of
+     * the words of the leaves: AND intersects, OR joins, and NOT is not restricted. Every document with a sentence
+     * that complies is in the result, but not every document in the result complies.
+     * @param index: postings of the documents or the sentences.
+     * @return Sorted ids of the candidates, null if every document is a candidate.
+     */
+    public abstract int[] candidates(CandidateIndex index);
+
+    /**
+     * @return Node that is TRUE for every sentence if value is TRUE, and FALSE for every sentence otherwise.
+     */
+    public static BoolExprNode constant(boolean value) {
+        return value ? Const.TRUE : Const.FALSE;
+    }
+
+    /**
+     * @param word: lowercase word.
+     * @return Node that is TRUE if word is in the sentence as a whole word, ignoring case. It is the same as
+     * matching the regular expression .*?\bword\b.*? on the lowercase sentence, but word is taken literally.
+     */
+    public static BoolExprNode word(String word) {
+        return new Literal(word, true);
+    }
+
+    /**
+     * @param sequence: lowercase sequence of characters.
+     * @return Node that is TRUE if the sentence contains sequence, ignoring case.
+     */
+    public static BoolExprNode sequence(String sequence) {
+        return new Literal(sequence, false);
+    }
+
+    public static BoolExprNode not(BoolExprNode operand) {
+        return new Not(operand);
+    }
+
+    public static BoolExprNode and(BoolExprNode left, BoolExprNode right) {
+        return new And(left, right);
+    }
+
+    public static BoolExprNode or(BoolExprNode left, BoolExprNode right) {
+        return new Or(left, right);
+    }
+
+    /**
+     * @param slot: position of the result of operand in the memo of an evaluation, the same for all the shared nodes of
+     * a tree with the same operand and different for the others.
+     * @return Node with the same result as operand that evaluates it once per sentence, for an operand referenced from
+     * several places of a tree.
+     */
+    public static BoolExprNode shared(BoolExprNode operand, int slot) {
+        return new Shared(operand, slot);
+    }
+
+    /**
+     * Word characters of a single code point: letters, digits and '_'. They split the words of the literals and of
+     * the boolean searches of the sentences (see Content.splitWords) the same way.
+     */
+    static boolean isWordChar(int c) {
+        return c == '_' || Character.isLetterOrDigit(c);
+    }
+
+    /**
+     * Same rule as \b in java.util.regex (Pattern.Bound): the code points before and after pos are compared, and a
+     * non-spacing mark is a word character when it follows a letter or a digit, maybe through other marks, like the
+     * accent of "cafe\u0301". Positions outside the sentence are not word characters.
+     * @return TRUE if there is a word boundary before position pos of sentence.
+     */
+    static boolean isBoundary(String sentence, int pos) {
+        boolean prevIsWord = pos > 0 && isWordAt(sentence, Character.codePointBefore(sentence, pos), pos - 1);
+        boolean nextIsWord = pos < sentence.length() && isWordAt(sentence, Character.codePointAt(sentence, pos), pos);
+        return prevIsWord != nextIsWord;
+    }
+
+    /**
+     * @param c: code point of sentence at position i.
+     * @return TRUE if c is a word character for \b.
+     */
+    private static boolean isWordAt(String sentence, int c, int i) {
+        if (c == '_' || Character.isLetterOrDigit(c)) return true;
+        if (Character.getType(c) != Character.NON_SPACING_MARK) return false;
+        for (int j = i; j >= 0; --j) {
+            int base = Character.codePointAt(sentence, j);
+            if (Character.isLetterOrDigit(base)) return true;
+            if (Character.getType(base) != Character.NON_SPACING_MARK) return false;
+        }
+        return false;
+    }
+
+    static final class Const extends BoolExprNode {
+        static final Const TRUE = new Const(true);
+        static final Const FALSE = new Const(false);
+
+        final boolean value;
+
+        private Const(boolean value) {
+            super(0);
+            this.value = value;
+        }
+
+        @Override
+        public boolean eval(String sentence) {
+            return value;
+        }
+
+        @Override
+        boolean eval(String sentence, byte[] memo) {
+            return value;
+        }
+
+        @Override
+        public int[] candidates(CandidateIndex index) {
+            return value ? null : new int[0];
+        }
+    }
+
+    /**
+     * Literal search of a word or sequence ignoring case: every character of the sentence is lowercased and compared
+     * with the lowercase literal, as the regular expressions on the lowercase sentence did. The first character is
+     * compared with both of its cases before the rest, so most positions are discarded with a single comparison.
+     */
+    static final class Literal extends BoolExprNode {
+        final String literal;
+        final boolean wholeWord;
+        private final char firstLower, firstUpper;
+
+        Literal(String literal, boolean wholeWord) {
+            super(0);
+            this.literal = literal;
+            this.wholeWord = wholeWord;
+            firstLower = literal.isEmpty() ? 0 : Character.toLowerCase(literal.charAt(0));
+            firstUpper = literal.isEmpty() ? 0 : Character.toUpperCase(literal.charAt(0));
+        }
+
+        @Override
+        public boolean eval(String sentence) {
+            int len = literal.length();
+            int last = sentence.length() - len;
+            for (int i = 0; i <= last; ++i) {
+                if (len > 0) {
+                    char c = sentence.charAt(i);
+                    // ASCII characters only have the two cases
+                    if (c != firstLower && c != firstUpper && (c < 128 || Character.toLowerCase(c) != firstLower)) continue;
+                }
+                if (!matchesAt(sentence, i)) continue;
+                if (!wholeWord || (isBoundary(sentence, i) && isBoundary(sentence, i + len))) return true;
+            }
+            return false;
+        }
+
+        @Override
+        boolean eval(String sentence, byte[] memo) {
+            return eval(sentence);
+        }
+
+        /**
+         * Two leaves are equal if they match the same sentences, so that they can share their result.
+         */
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Literal)) return false;
+            Literal other = (Literal) o;
+            return wholeWord == other.wholeWord && literal.equals(other.literal);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * literal.hashCode() + (wholeWord ? 1 : 0);
+        }
+
+        /**
+         * @return TRUE if the characters of sentence from position i, in lowercase, are the literal.
+         */
+        private boolean matchesAt(String sentence, int i) {
+            for (int j = 0; j < literal.length(); ++j) {
+                char c = sentence.charAt(i + j);
+                char l = literal.charAt(j);
+                if (c != l && Character.toLowerCase(c) != l) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Candidates that have the words of the literal at their relative positions.
+         */
+        @Override
+        public int[] candidates(CandidateIndex index) {
+            ArrayList<String> terms = new ArrayList<>();
+            ArrayList<Integer> offsets = new ArrayList<>();
+            terms(terms, offsets);
+            if (terms.isEmpty()) return null;
+
+            int[] offs = new int[offsets.size()];
+            for (int i = 0; i < offs.length; ++i) offs[i] = offsets.get(i);
+            return index.getCandidates(terms.toArray(new String[0]), offs);
+        }
+
+        /**
+         * Adds to terms the normalized words that every sentence where the literal is found has, and to offsets
+         * their positions among the words of the literal. The words (runs of word characters) of a whole word
+         * literal are whole words of the sentence too, because of the boundaries around it. The first and last words
+         * of a sequence may be part of longer words of the sentence, so only the words of a sequence between other
+         * characters are added.
+         */
+        void terms(ArrayList<String> terms, ArrayList<Integer> offsets) {
+            int n = literal.length();
+            int start = -1;
+            int word = 0;
+            for (int i = 0; i <= n; i += i < n ? Character.charCount(literal.codePointAt(i)) : 1) {
+                boolean isWord = i < n && isWordChar(literal.codePointAt(i));
+                if (isWord && start < 0) {
+                    start = i;
+                } else if (!isWord && start >= 0) {
+                    if (wholeWord || (start > 0 && i < n)) {
+                        String term = Content.normalize(literal.substring(start, i));
+                        if (!term.isEmpty()) {
+                            terms.add(term);
+                            offsets.add(word);
+                        }
+                    }
+                    start = -1;
+                    ++word;
+                }
+            }
+        }
+    }
+
+    static final class Not extends BoolExprNode {
+        final BoolExprNode operand;
+
+        Not(BoolExprNode operand) {
+            super(operand.memoSize);
+            this.operand = operand;
+        }
+
+        @Override
+        boolean eval(String sentence, byte[] memo) {
+            return !operand.eval(sentence, memo);
+        }
+
+        /**
+         * The documents without the words of operand may still have a sentence where operand is false, and so may
+         * the ones with them, so any document is a candidate.
+         */
+        @Override
+        public int[] candidates(CandidateIndex index) {
+            return null;
+        }
+    }
+
+    static final class And extends BoolExprNode {
+        final BoolExprNode left, right;
+
+        And(BoolExprNode left, BoolExprNode right) {
+            super(Math.max(left.memoSize, right.memoSize));
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean eval(String sentence, byte[] memo) {
+            return left.eval(sentence, memo) && right.eval(sentence, memo);
+        }
+
+        /**
+         * The leaves of this AND and of the ANDs below it are asked to the index at once, so that it can intersect
+         * all their postings starting by the rarest one. The other operands are intersected with the result.
+         */
+        @Override
+        public int[] candidates(CandidateIndex index) {
+            ArrayList<Literal> leaves = new ArrayList<>();
+            ArrayList<BoolExprNode> others = new ArrayList<>();
+            conjuncts(this, leaves, others);
+
+            int[] res = null;
+            if (!leaves.isEmpty()) {
+                String[][] terms = new String[leaves.size()][];
+                int[][] offsets = new int[leaves.size()][];
+                ArrayList<String> t = new ArrayList<>();
+                ArrayList<Integer> o = new ArrayList<>();
+                for (int i = 0; i < terms.length; ++i) {
+                    t.clear();
+                    o.clear();
+                    leaves.get(i).terms(t, o);
+                    terms[i] = t.toArray(new String[0]);
+                    offsets[i] = new int[o.size()];
+                    for (int j = 0; j < offsets[i].length; ++j) offsets[i][j] = o.get(j);
+                }
+                res = index.getCandidates(terms, offsets);
+                if (res != null && res.length == 0) return res;
+            }
+            for (BoolExprNode other : others) {
+                int[] c = other.candidates(index);
+                if (c == null) continue;
+                res = res == null ? c : SortedIntSets.intersect(res, c);
+                if (res.length == 0) return res;
+            }
+            return res;
+        }
+
+        /**
+         * Adds the operands of the ANDs of node to leaves if they are literals, and to others otherwise.
+         */
+        private static void conjuncts(BoolExprNode node, ArrayList<Literal> leaves, ArrayList<BoolExprNode> others) {
+            if (node instanceof Shared) {
+                conjuncts(((Shared) node).operand, leaves, others);
+            } else if (node instanceof And) {
+                conjuncts(((And) node).left, leaves, others);
+                conjuncts(((And) node).right, leaves, others);
+            } else if (node instanceof Literal) {
+                leaves.add((Literal) node);
+            } else {
+                others.add(node);
+            }
+        }
+    }
+
+    static final class Or extends BoolExprNode {
+        final BoolExprNode left, right;
+
+        Or(BoolExprNode left, BoolExprNode right) {
+            super(Math.max(left.memoSize, right.memoSize));
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean eval(String sentence, byte[] memo) {
+            return left.eval(sentence, memo) || right.eval(sentence, memo);
+        }
+
+        @Override
+        public int[] candidates(CandidateIndex index) {
+            int[] l = left.candidates(index);
+            if (l == null) return null;
+            int[] r = right.candidates(index);
+            if (r == null) return null;
+            return SortedIntSets.union(l, r);
+        }
+    }
+
+    /**
+     * Subexpression referenced from several places of a tree (see BoolExprCanonicalizer.share). Its result is kept in
+     * its slot of the memo of the evaluation, so the operand is evaluated once per sentence.
+     */
+    static final class Shared extends BoolExprNode {
+        final BoolExprNode operand;
+        final int slot;
+
+        Shared(BoolExprNode operand, int slot) {
+            super(Math.max(operand.memoSize, slot + 1));
+            this.operand = operand;
+            this.slot = slot;
+        }
+
+        @Override
+        boolean eval(String sentence, byte[] memo) {
+            if (memo == null) return operand.eval(sentence, null);
+            byte res = memo[slot];
+            if (res == UNKNOWN) {
+                res = operand.eval(sentence, memo) ? IS_TRUE : IS_FALSE;
+                memo[slot] = res;
+            }
+            return res == IS_TRUE;
+        }
+
+        @Override
+        public int[] candidates(CandidateIndex index) {
+            return operand.candidates(index);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package domain.classes;
 import domain.exceptions.*;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Stack;
 
@@ -11,6 +12,34 @@ public class BoolExprParser {
     protected LinkedList<BoolExprTokenizer.Token> outputQueue;
     protected LinkedList<String> outputQueueWords;
     protected Stack<BoolExprTokenizer.Token> opStack;
+    protected BoolExprNode root;
+
+    /**
+     * Predicate used by eval: root until the expression has been evaluated compileThreshold times, and then root
+     * compiled to bytecode. The evaluations are counted by canonical key and not by parser (see CompiledExpressions),
+     * so an expression that is searched many times with a new parser each time is compiled once, and its class is
+     * reused by every later parser of an equivalent expression. Expressions with automatonLeaves leaves or more are
+     * evaluated with an Aho-Corasick automaton instead, that reads the sentence once for all the leaves.
+     */
+    private volatile SentencePredicate predicate;
+    /**
+     * Shared count and compiled predicate of the expression, null if it is not evaluated with root.
+     */
+    private CompiledExpressions.Stats stats;
+    private static volatile int compileThreshold = 1 << 16;
+    private static volatile int automatonLeaves = 4;
+    /**
+     * Statistics used to reorder the operands of the ANDs and ORs of the tree before evaluating it (see
+     * BoolExprPlanner), so that rare or cheap operands written last are evaluated first.
+     */
+    private static volatile SelectivitySource selectivitySource = null;
+    private static volatile boolean planning = true;
+    /**
+     * Whether the tree is put in canonical form before planning it and its repeated subtrees are shared after (see
+     * BoolExprCanonicalizer), so that they are evaluated once per sentence.
+     */
+    private static volatile boolean canonicalization = true;
+    private String canonicalKey;
 
     /**
      * Compares a and b.
@@ -34,11 +63,17 @@ public class BoolExprParser {
 
     /**
      * Converts the token list from infix notation (WRD AND WRD) to postfix notation (WRD WRD AND) taking
-     * operator precedence into account to make the order of the operations correct.
+     * operator precedence into account to make the order of the operations correct, and compiles it.
      *
      *
      */
     protected void parseInfixToPostfix() throws InvalidExpression {
+        outputQueue.clear();
+        outputQueueWords.clear();
+        opStack.clear();
+        root = null;
+        predicate = null;
+
         for (int i = 0; i < tokenizer.getTokensSize(); ++i) {
             currentToken = tokenizer.getToken(i);
 
@@ -83,6 +118,71 @@ public class BoolExprParser {
             outputQueue.add(opStack.pop());
         }
 
+        compile();
+    }
+
+    /**
+     * Compiles the postfix queue into an expression tree, so that it is only interpreted once and not once per sentence.
+     * An empty expression is TRUE for every sentence.
+     */
+    protected void compile() throws InvalidExpression {
+        canonicalKey = null;
+        stats = null;
+        if (expression != null && expression.equals("")) {
+            root = BoolExprNode.constant(true);
+            predicate = root;
+            return;
+        }
+
+        Stack<BoolExprNode> stack = new Stack<>();
+        Iterator<String> words = outputQueueWords.iterator();
+        int leaves = 0;
+        for (BoolExprTokenizer.Token token : outputQueue) {
+            switch (token) {
+                case WRD:
+                    stack.push(BoolExprNode.word(words.next()));
+                    ++leaves;
+                    break;
+                case STR:
+                    stack.push(BoolExprNode.sequence(words.next()));
+                    ++leaves;
+                    break;
+                case TRUE:
+                case FALSE:
+                    stack.push(BoolExprNode.constant(token == BoolExprTokenizer.Token.TRUE));
+                    break;
+                case NOT:
+                    if (stack.isEmpty()) throw new InvalidExpression();
+                    stack.push(BoolExprNode.not(stack.pop()));
+                    break;
+                case AND:
+                case OR:
+                    if (stack.size() < 2) throw new InvalidExpression();
+                    BoolExprNode right = stack.pop();
+                    BoolExprNode left = stack.pop();
+                    stack.push(token == BoolExprTokenizer.Token.AND ? BoolExprNode.and(left, right) : BoolExprNode.or(left, right));
+                    break;
+                default:
+                    throw new InvalidExpression();
+            }
+        }
+
+        if (stack.size() != 1) {
+            throw new InvalidExpression("cannot be evaluated");
+        }
+        root = stack.pop();
+        boolean canonical = canonicalization;
+        if (canonical) root = BoolExprCanonicalizer.canonicalize(root);
+        SelectivitySource source = selectivitySource;
+        if (planning && source != null) root = BoolExprPlanner.plan(root, source);
+        if (canonical) root = BoolExprCanonicalizer.share(root);
+        int threshold = automatonLeaves;
+        predicate = threshold > 0 && leaves >= threshold ? BoolExprAutomaton.build(root) : root;
+        if (predicate == root) {
+            stats = CompiledExpressions.get(getCanonicalKey());
+            SentencePredicate compiled = stats.compiled;
+            if (compiled != null) predicate = compiled;
+        }
     }
 
     /**
@@ -91,144 +191,113 @@ public class BoolExprParser {
      * @return TRUE if it complies, FALSE otherwise.
      */
     protected boolean postEvaluator(String sentence) throws InvalidExpression {
-        if (expression.equals("")) return true;
-
-        String sent = sentence.toLowerCase();
-
-        LinkedList<BoolExprTokenizer.Token> outCopy = new LinkedList<>(outputQueue);
-        LinkedList<String> outWordsCopy = new LinkedList<>(outputQueueWords);
-
-        Stack<BoolExprTokenizer.Token> stack = new Stack<>();
-        Stack<String> stack_words = new Stack<>();
-
-        while (!outCopy.isEmpty()) {
-            BoolExprTokenizer.Token token = outCopy.getFirst();
-            if (!BoolExprTokenizer.isOperator(token)) {
-                stack.push(token);
-                outCopy.removeFirst();
-                if (tokenEquals(token, BoolExprTokenizer.Token.WRD) || tokenEquals(token, BoolExprTokenizer.Token.STR)) {
-                    stack_words.push(outWordsCopy.getFirst());
-                    outWordsCopy.removeFirst();
-                }
-                continue;
+        SentencePredicate p = predicate;
+        if (p == null) throw new InvalidExpression("cannot be evaluated");
+        CompiledExpressions.Stats s = stats;
+        int threshold = compileThreshold;
+        if (p == root && s != null && threshold > 0 && ++s.evaluations >= threshold) {
+            SentencePredicate compiled = s.compiled;
+            if (compiled == null) {
+                compiled = BoolExprCompiler.compileOrInterpret(root);
+                // Only classes are shared, the trees of an expression that could not be compiled are not
+                if (compiled instanceof BoolExprNode) stats = null;
+                else s.compiled = compiled;
             }
+            p = compiled;
+            predicate = p;
+        }
+        return p.eval(sentence);
+    }
 
-            if (stack.isEmpty()) {
-                throw new InvalidExpression();
-            }
+    /**
+     * @return The compiled expression tree, null if the expression has not been parsed.
+     */
+    public BoolExprNode getTree() {
+        return root;
+    }
 
-            /**
-             * Regular expression used here is .*?\bWRD\b.*?  It checks for a specific word inside a string.
-             *      . matches any character
-             *          *? is for zero or more times
-             *      \b is for word boundary.
-             * It is only used when evaluating individual words.
-             * Regex not used when the STR is received, String's contains() is used instead. That's because we
-             * want to check if the value of STR is inside the sentence in a literal form.
-             */
-            switch (token) {
-                case NOT:
-                    BoolExprTokenizer.Token t = stack.pop();
-                    boolean resNot = false;
-                    if (tokenEquals(t, BoolExprTokenizer.Token.WRD)) {
-                        resNot = !sent.matches(".*?\\b" + stack_words.pop() + "\\b.*?");
-                    } else if (tokenEquals(t, BoolExprTokenizer.Token.STR)) {
-                        resNot = !sent.contains(stack_words.pop());
-                    } else if (tokenEquals(t, BoolExprTokenizer.Token.TRUE)) {
-                        resNot = false;
-                    } else if (tokenEquals(t, BoolExprTokenizer.Token.FALSE)) {
-                        resNot = true;
-                    } else {
-                        throw new InvalidExpression();
-                    }
+    /**
+     * @return TRUE if the expression is evaluated with a class compiled to bytecode, FALSE otherwise.
+     */
+    public boolean isCompiled() {
+        SentencePredicate p = predicate;
+        return p != null && p != root && !(p instanceof BoolExprAutomaton);
+    }
 
-                    if (resNot) stack.push(BoolExprTokenizer.Token.TRUE);
-                    else stack.push(BoolExprTokenizer.Token.FALSE);
+    /**
+     * @return Key of the canonical form of the expression, the same for all the expressions that only differ in the
+     * order, grouping or repetition of their operands (see BoolExprCanonicalizer.key), null if the expression has not
+     * been parsed.
+     */
+    public String getCanonicalKey() {
+        if (canonicalKey == null && root != null) canonicalKey = BoolExprCanonicalizer.key(root);
+        return canonicalKey;
+    }
 
-                    outCopy.removeFirst();
-                    break;
-                default:
-                    boolean op1 = false;
-                    boolean op2 = false;
-
-                    BoolExprTokenizer.Token token1 = stack.pop();
-                    BoolExprTokenizer.Token token2 = stack.pop();
-
-                    switch (token1) {
-                        case WRD:
-                            op1 = sent.matches(".*?\\b" + stack_words.pop() + "\\b.*?");
-                            break;
-                        case STR:
-                            op1 = sent.contains(stack_words.pop());
-                            break;
-                        case TRUE:
-                            op1 = true;
-                            break;
-                        case FALSE:
-                            op1 = false;
-                            break;
-                    }
+    /**
+     * Sets the number of evaluations after which an expression is compiled to bytecode.
+     * @param threshold: 1 compiles every expression on its first evaluation, 0 or less never compiles.
+     */
+    public static void setCompileThreshold(int threshold) {
+        compileThreshold = threshold;
+    }
 
-                    boolean op2isWord = tokenEquals(token2, BoolExprTokenizer.Token.WRD)
-                            || tokenEquals(token2, BoolExprTokenizer.Token.STR);
+    public static int getCompileThreshold() {
+        return compileThreshold;
+    }
 
-                    if (tokenEquals(token, BoolExprTokenizer.Token.AND) && !op1) {
-                        if (op2isWord) stack_words.pop();
-                        stack.push(BoolExprTokenizer.Token.FALSE);
-                        outCopy.removeFirst();
-                        break;
-                    }
+    /**
+     * Sets the number of leaves from which expressions are evaluated with an Aho-Corasick automaton.
+     * @param leaves: 1 uses the automaton for every expression, 0 or less never uses it.
+     */
+    public static void setAutomatonLeaves(int leaves) {
+        automatonLeaves = leaves;
+    }
 
-                    if (tokenEquals(token, BoolExprTokenizer.Token.OR) && op1) {
-                        if (op2isWord) stack_words.pop();
-                        stack.push(BoolExprTokenizer.Token.TRUE);
-                        outCopy.removeFirst();
-                        break;
-                    }
+    public static int getAutomatonLeaves() {
+        return automatonLeaves;
+    }
 
-                    switch (token2) {
-                        case WRD:
-                            op2 = sent.matches(".*?\\b" + stack_words.pop() + "\\b.*?");
-                            break;
-                        case STR:
-                            op2 = sent.contains(stack_words.pop());
-                            break;
-                        case TRUE:
-                            op2 = true;
-                            break;
-                        case FALSE:
-                            op2 = false;
-                            break;
-                    }
+    /**
+     * Sets the statistics used to plan the expressions parsed from now on.
+     * @param source: statistics of the corpus, null to evaluate the operands in the order they are written.
+     */
+    public static void setSelectivitySource(SelectivitySource source) {
+        selectivitySource = source;
+    }
 
-                    boolean res = false;
-                    if (tokenEquals(token, BoolExprTokenizer.Token.AND)) {
-                        res = op1 && op2;
-                    } else if (tokenEquals(token, BoolExprTokenizer.Token.OR)) {
-                        res = op1 || op2;
-                    }
+    public static SelectivitySource getSelectivitySource() {
+        return selectivitySource;
+    }
 
-                    if (res) stack.push(BoolExprTokenizer.Token.TRUE);
-                    else stack.push(BoolExprTokenizer.Token.FALSE);
+    /**
+     * Enables or disables the planning of the expressions parsed from now on.
+     */
+    public static void setPlanning(boolean enabled) {
+        planning = enabled;
+    }
 
-                    outCopy.removeFirst();
-                    break;
-            }
-        }
-        if (stack.isEmpty()) {
-            throw new InvalidExpression("cannot be evaluated");
-        }
+    public static boolean isPlanning() {
+        return planning;
+    }
 
-        BoolExprTokenizer.Token token = stack.pop();
-        if (tokenEquals(token, BoolExprTokenizer.Token.TRUE)) return true;
-        if (tokenEquals(token, BoolExprTokenizer.Token.FALSE)) return false;
-        if (tokenEquals(token, BoolExprTokenizer.Token.WRD)) return sent.matches(".*?\\b" + stack_words.pop() + "\\b.*?");
-        if (tokenEquals(token, BoolExprTokenizer.Token.STR)) return sent.contains(stack_words.pop());
-        else {
-            throw new InvalidExpression();
-        }
+    /**
+     * Enables or disables the canonicalization and the sharing of repeated subtrees of the expressions parsed from now on.
+     */
+    public static void setCanonicalization(boolean enabled) {
+        canonicalization = enabled;
+    }
 
-        //error
+    public static boolean isCanonicalization() {
+        return canonicalization;
+    }
+
+    /**
+     * @return The tree in the order it is evaluated, one line per node with its estimated probability of being TRUE
+     * for a sentence and its estimated cost, null if the expression has not been parsed.
+     */
+    public String explain() {
+        return root == null ? null : BoolExprPlanner.explain(root, selectivitySource);
     }
 //-----------------------------------------------------------------------------------
 
@@ -260,6 +329,7 @@ public class BoolExprParser {
     public void setExpression(String expr) throws InvalidExpression {
         expression = expr;
         tokenizer.setExpression(expr);
+        tokenizer.tokenize();
         parseInfixToPostfix();
     }
 
@@ -0,0 +1,206 @@
+package domain.classes;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Reorders the operands of the ANDs and ORs of an expression tree so that the short-circuit of the evaluation skips as
+ * much work as possible. Every node gets an estimate of the probability p that it is TRUE for a sentence (from the
+ * fraction of the documents with its words) and of the cost of evaluating it. The operands of a chain of ANDs are
+ * evaluated by increasing cost / (1 - p), the cheapest and most selective first, and the operands of a chain of ORs
+ * by increasing cost / p, the cheapest and most likely first. Both orders minimize the expected cost of the chain
+ * when the operands are independent. The planned tree is equivalent to the original one. Operands with the same
+ * estimate keep the order they have in the tree, which for a parsed expression is the canonical order of
+ * BoolExprCanonicalizer (sorted by key) and not the order in which they were written.
+ */
+public final class BoolExprPlanner {
+
+    /**
+     * Cost of a whole word leaf, the sentence is scanned comparing its first character.
+     */
+    static final double WORD_COST = 1;
+    /**
+     * Cost of a sequence leaf: it is scanned the same way, but phrases are longer and compared further wherever
+     * their first character is found.
+     */
+    static final double SEQUENCE_COST = 1.5;
+    /**
+     * Probability of a leaf without known words, like a part of a word or a stop word.
+     */
+    static final double UNKNOWN_SELECTIVITY = 0.5;
+
+    private BoolExprPlanner() {
+    }
+
+    /**
+     * @param tree: compiled expression.
+     * @param source: statistics of the corpus, null if there are none.
+     * @return Tree equivalent to tree with the operands of its ANDs and ORs sorted by their estimates. Operands with
+     * the same estimate keep their order in tree.
+     */
+    public static BoolExprNode plan(BoolExprNode tree, SelectivitySource source) {
+        return plan(tree, source, true).node;
+    }
+
+    /**
+     * @param tree: compiled expression, evaluated in the order of its operands.
+     * @param source: statistics of the corpus, null if there are none.
+     * @return One line per node with its estimates, the operands of a chain of ANDs or ORs indented below it in the
+     * order they are evaluated.
+     */
+    public static String explain(BoolExprNode tree, SelectivitySource source) {
+        StringBuilder sb = new StringBuilder();
+        explain(tree, source, 0, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Estimates of a planned node.
+     */
+    private static final class Plan {
+        final BoolExprNode node;
+        final double p, cost;
+
+        Plan(BoolExprNode node, double p, double cost) {
+            this.node = node;
+            this.p = p;
+            this.cost = cost;
+        }
+    }
+
+    /**
+     * @param reorder: FALSE to only estimate node, keeping the order of its operands.
+     */
+    private static Plan plan(BoolExprNode node, SelectivitySource source, boolean reorder) {
+        if (node instanceof BoolExprNode.Shared) {
+            BoolExprNode.Shared shared = (BoolExprNode.Shared) node;
+            Plan operand = plan(shared.operand, source, reorder);
+            BoolExprNode planned = operand.node == shared.operand ? node : BoolExprNode.shared(operand.node, shared.slot);
+            return new Plan(planned, operand.p, operand.cost);
+        }
+        if (node instanceof BoolExprNode.Not) {
+            Plan operand = plan(((BoolExprNode.Not) node).operand, source, reorder);
+            BoolExprNode planned = operand.node == ((BoolExprNode.Not) node).operand ? node : BoolExprNode.not(operand.node);
+            return new Plan(planned, 1 - operand.p, operand.cost);
+        }
+        if (!(node instanceof BoolExprNode.And) && !(node instanceof BoolExprNode.Or)) {
+            return new Plan(node, probability(node, source), cost(node));
+        }
+
+        boolean and = node instanceof BoolExprNode.And;
+        ArrayList<BoolExprNode> written = new ArrayList<>();
+        operands(node, and, written);
+        Plan[] operands = new Plan[written.size()];
+        for (int i = 0; i < operands.length; ++i) operands[i] = plan(written.get(i), source, reorder);
+
+        //Insertion sort, stable and the chains are short
+        for (int i = 1; reorder && i < operands.length; ++i) {
+            Plan x = operands[i];
+            int j = i;
+            while (j > 0 && rank(operands[j - 1], and) > rank(x, and)) {
+                operands[j] = operands[j - 1];
+                --j;
+            }
+            operands[j] = x;
+        }
+
+        //The chain is built again to the left, so that its operands are evaluated in the sorted order
+        boolean changed = false;
+        for (int i = 0; i < operands.length; ++i) changed |= operands[i].node != written.get(i);
+        BoolExprNode res = operands[0].node;
+        double p = operands[0].p, cost = operands[0].cost;
+        //Probability that the evaluation goes on after the operands evaluated so far
+        double reached = and ? operands[0].p : 1 - operands[0].p;
+        for (int i = 1; i < operands.length; ++i) {
+            Plan o = operands[i];
+            if (changed) res = and ? BoolExprNode.and(res, o.node) : BoolExprNode.or(res, o.node);
+            cost += reached * o.cost;
+            p = and ? p * o.p : 1 - (1 - p) * (1 - o.p);
+            reached *= and ? o.p : 1 - o.p;
+        }
+        return new Plan(changed ? res : node, p, cost);
+    }
+
+    /**
+     * @return Expected cost of the operand per unit of probability of stopping the chain: the probability of being
+     * FALSE in an AND, of being TRUE in an OR. Operands that never stop it go last.
+     */
+    private static double rank(Plan plan, boolean and) {
+        double stop = and ? 1 - plan.p : plan.p;
+        return stop <= 0 ? Double.POSITIVE_INFINITY : plan.cost / stop;
+    }
+
+    /**
+     * Adds to operands the operands of the chain of ANDs (or ORs if and is FALSE) of node, in the order they are
+     * evaluated.
+     */
+    private static void operands(BoolExprNode node, boolean and, ArrayList<BoolExprNode> operands) {
+        if (and && node instanceof BoolExprNode.And) {
+            operands(((BoolExprNode.And) node).left, true, operands);
+            operands(((BoolExprNode.And) node).right, true, operands);
+        } else if (!and && node instanceof BoolExprNode.Or) {
+            operands(((BoolExprNode.Or) node).left, false, operands);
+            operands(((BoolExprNode.Or) node).right, false, operands);
+        } else {
+            operands.add(node);
+        }
+    }
+
+    /**
+     * @param node: constant or leaf.
+     * @return Estimated probability that node is TRUE. The words of a leaf are taken as independent.
+     */
+    private static double probability(BoolExprNode node, SelectivitySource source) {
+        if (node instanceof BoolExprNode.Const) return ((BoolExprNode.Const) node).value ? 1 : 0;
+        if (!(node instanceof BoolExprNode.Literal) || source == null) return UNKNOWN_SELECTIVITY;
+
+        ArrayList<String> terms = new ArrayList<>();
+        ((BoolExprNode.Literal) node).terms(terms, new ArrayList<>());
+        double p = 1;
+        boolean known = false;
+        for (String term : terms) {
+            double s = source.getSelectivity(term);
+            if (s < 0) continue;
+            p *= Math.min(s, 1);
+            known = true;
+        }
+        return known ? p : UNKNOWN_SELECTIVITY;
+    }
+
+    /**
+     * @param node: constant or leaf.
+     */
+    private static double cost(BoolExprNode node) {
+        if (node instanceof BoolExprNode.Literal) return ((BoolExprNode.Literal) node).wholeWord ? WORD_COST : SEQUENCE_COST;
+        return 0;
+    }
+
+    /**
+     * Shared subexpressions are shown as their operand, marked as shared.
+     */
+    private static void explain(BoolExprNode node, SelectivitySource source, int depth, StringBuilder sb) {
+        boolean shared = node instanceof BoolExprNode.Shared;
+        if (shared) node = ((BoolExprNode.Shared) node).operand;
+        Plan plan = plan(node, source, false);
+        for (int i = 0; i < depth; ++i) sb.append("  ");
+        if (node instanceof BoolExprNode.Literal) {
+            BoolExprNode.Literal literal = (BoolExprNode.Literal) node;
+            sb.append(literal.wholeWord ? "WRD " + literal.literal : "STR \"" + literal.literal + "\"");
+        } else if (node instanceof BoolExprNode.Const) {
+            sb.append(((BoolExprNode.Const) node).value ? "TRUE" : "FALSE");
+        } else if (node instanceof BoolExprNode.Not) {
+            sb.append("NOT");
+        } else {
+            sb.append(node instanceof BoolExprNode.And ? "AND" : "OR");
+        }
+        sb.append(String.format(Locale.ROOT, "  p=%.4g cost=%.3g%s%n", plan.p, plan.cost, shared ? " shared" : ""));
+
+        if (node instanceof BoolExprNode.Not) {
+            explain(((BoolExprNode.Not) node).operand, source, depth + 1, sb);
+        } else if (node instanceof BoolExprNode.And || node instanceof BoolExprNode.Or) {
+            ArrayList<BoolExprNode> operands = new ArrayList<>();
+            operands(node, node instanceof BoolExprNode.And, operands);
+            for (BoolExprNode operand : operands) explain(operand, source, depth + 1, sb);
+        }
+    }
+}
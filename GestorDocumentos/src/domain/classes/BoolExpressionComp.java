@@ -2,10 +2,18 @@ package domain.classes;
 
 import domain.exceptions.InvalidExpression;
 
-public class BoolExpressionComp extends Comparator<Document> {
+import java.util.LinkedList;
+
+public class BoolExpressionComp extends Comparator<Document> implements MergeableComparator<Document, LinkedList<Document>> {
 
     private String expression;
     private BoolExprParser parser;
+    /**
+     * Words that the sentences need to comply with the expression, checked on their signatures. null if any
+     * sentence may comply.
+     */
+    private SentenceSignature.Filter filter;
+    private static volatile boolean useSignatures = true;
 
 //--------------------------------------------------------
 
@@ -16,6 +24,7 @@ public class BoolExpressionComp extends Comparator<Document> {
     public BoolExpressionComp(String expr) throws InvalidExpression {
         expression = expr;
         parser = new BoolExprParser(expression);
+        filter = SentenceSignature.filter(parser.getTree());
     }
 
     /**
@@ -33,24 +42,144 @@ public class BoolExpressionComp extends Comparator<Document> {
     public void setExpression(String expr) throws InvalidExpression {
         expression = expr;
         parser = new BoolExprParser(expression);
+        filter = SentenceSignature.filter(parser.getTree());
     }
 
 
     /**
-     * Checks if one of the sentences of document complies with the boolean expression.
+     * @return Compiled tree of the boolean expression.
+     */
+    public BoolExprNode getTree() {
+        return parser.getTree();
+    }
+
+    /**
+     * @return Key of the canonical form of the expression, see BoolExprParser.getCanonicalKey.
+     */
+    public String getCanonicalKey() {
+        return parser.getCanonicalKey();
+    }
+
+    /**
+     * @return The plan of the expression, see BoolExprParser.explain.
+     */
+    public String explain() {
+        return parser.explain();
+    }
+
+    /**
+     * Enables or disables rejecting sentences with their signatures before evaluating the expression.
+     */
+    public static void setUseSignatures(boolean use) {
+        useSignatures = use;
+    }
+
+    public static boolean isUseSignatures() {
+        return useSignatures;
+    }
+
+    /**
+     * @return Signatures of the sentences of document if they can reject sentences, null otherwise.
+     */
+    private long[] signatures(Document document) {
+        return filter != null && useSignatures ? document.getSignatures() : null;
+    }
+
+    /**
+     * Checks if one of the sentences of document complies with the boolean expression. The sentences whose
+     * signature lacks a word that the expression requires are not read.
+     * @param document:
+     * @return TRUE if at least one sentence complies with the expression. FALSE otherwise.
+     */
+    public boolean matches(Document document) throws InvalidExpression {
+        long[] signatures = signatures(document);
+        int words = signatures == null ? 0 : document.getSignatureWords();
+        int from = 0;
+        for (String sentence : document.getSentences()) {
+            if ((signatures == null || filter.mayMatch(signatures, from, words)) && parser.eval(sentence)) return true;
+            from += words;
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks if one of some sentences of document complies with the boolean expression.
+     * @param document:
+     * @param positions: sorted positions of the sentences to check in the document.
+     * @return TRUE if at least one of the sentences complies with the expression. FALSE otherwise.
+     */
+    public boolean matches(Document document, int[] positions) throws InvalidExpression {
+        return matches(document, positions, positions.length);
+    }
+
+    /**
+     * Checks if one of some sentences of document complies with the boolean expression.
+     * @param document:
+     * @param positions: buffer whose first n positions are the sorted positions of the sentences to check in the document.
+     * @param n: number of positions of the buffer to check.
+     * @return TRUE if at least one of the sentences complies with the expression. FALSE otherwise.
+     */
+    public boolean matches(Document document, int[] positions, int n) throws InvalidExpression {
+        long[] signatures = signatures(document);
+        int words = signatures == null ? 0 : document.getSignatureWords();
+        int i = 0;
+        int position = 0;
+        for (String sentence : document.getSentences()) {
+            if (i == n) break;
+            if (positions[i] == position++) {
+                ++i;
+                if ((signatures == null || filter.mayMatch(signatures, (position - 1) * words, words)) && parser.eval(sentence)) return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks if one of the sentences of document complies with the boolean expression and adds it to the list if it does.
      * @param document:
      * @return TRUE if at least one sentence complies with the expression. FALSE otherwise.
      */
     @Override
     public boolean compare(Document document) throws InvalidExpression {
-            for (String sentence : document.getSentences()) {
-                if (parser.eval(sentence)) {
-                    addToList(document);
-                    return true;
-                }
-            }
+        if (matches(document)) {
+            addToList(document);
+            return true;
+        }
 
         return false;
     }
 
+    /**
+     * @return Empty list of documents that comply with the expression.
+     */
+    @Override
+    public LinkedList<Document> supplier() {
+        return new LinkedList<>();
+    }
+
+    /**
+     * Adds document to partial if one of its sentences complies with the expression.
+     * The parser is not modified when evaluating, so several threads can accumulate at the same time.
+     */
+    @Override
+    public void accumulate(LinkedList<Document> partial, int id, Document document) throws InvalidExpression {
+        if (matches(document)) partial.add(document);
+    }
+
+    /**
+     * @return left followed by right, the documents keep the order of the input.
+     */
+    @Override
+    public LinkedList<Document> combine(LinkedList<Document> left, LinkedList<Document> right) {
+        left.addAll(right);
+        return left;
+    }
+
+    @Override
+    public LinkedList<Document> finish(LinkedList<Document> partial) {
+        return partial;
+    }
+
 }
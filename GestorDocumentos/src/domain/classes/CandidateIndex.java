@@ -0,0 +1,36 @@
+package domain.classes;
+
+import domain.utils.SortedIntSets;
+
+/**
+ * Inverted index used to find the documents or sentences that may comply with a boolean expression without
+ * evaluating it on every sentence.
+ */
+public interface CandidateIndex {
+
+    /**
+     * @param terms: words normalized with Content.normalize, in the order they appear in a leaf of the expression.
+     * @param offsets: position of each word among the words of the leaf. An index with positions only returns the
+     *               sentences where the words are at the same distances, an index of documents may ignore them.
+     * @return Sorted ids of the documents or sentences that contain all the terms, or null if the index does not know
+     * (no term is indexed, like stop words), so that any of them may contain the terms.
+     */
+    int[] getCandidates(String[] terms, int[] offsets);
+
+    /**
+     * Candidates of a conjunction of leaves, the ids that are candidates of every leaf. An index may intersect the
+     * postings of all the leaves at once instead of one leaf at a time.
+     * @param terms: terms of each leaf.
+     * @param offsets: offsets of the terms of each leaf.
+     * @return Sorted ids of the candidates, or null if no term of any leaf is indexed.
+     */
+    default int[] getCandidates(String[][] terms, int[][] offsets) {
+        int[] res = null;
+        for (int i = 0; i < terms.length; ++i) {
+            if (terms[i].length == 0) continue;
+            int[] c = getCandidates(terms[i], offsets[i]);
+            if (c != null) res = res == null ? c : SortedIntSets.intersect(res, c);
+        }
+        return res;
+    }
+}
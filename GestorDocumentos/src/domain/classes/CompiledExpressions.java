@@ -0,0 +1,61 @@
+package domain.classes;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Evaluation counts and compiled predicates of the boolean expressions, shared by all the parsers of the same
+ * expression. A search builds a new parser every time, so a count per parser would never reach the compile threshold
+ * for an expression that is searched again and again, and every large search would compile its own class. Here the
+ * count is kept by canonical key (see BoolExprCanonicalizer.key): an expression is compiled once, when all its parsers
+ * together have evaluated it enough times, and every later parser of an equivalent expression reuses the class.
+ * Only the MAX_EXPRESSIONS most recently parsed expressions are kept, an evicted class is unloaded when the parsers that
+ * use it are gone.
+ */
+final class CompiledExpressions {
+
+    /**
+     * Maximum number of expressions whose counts and compiled predicates are kept.
+     */
+    static final int MAX_EXPRESSIONS = 1024;
+
+    /**
+     * Count and compiled predicate of an expression.
+     */
+    static final class Stats {
+        /**
+         * Number of evaluations of the expression by all its parsers. It is not synchronized, with several threads
+         * the expression may be compiled a bit later.
+         */
+        int evaluations;
+        /**
+         * Compiled predicate of the expression, null if it has not been compiled yet.
+         */
+        volatile SentencePredicate compiled;
+    }
+
+    private static final LinkedHashMap<String, Stats> expressions = new LinkedHashMap<String, Stats>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Stats> eldest) {
+            return size() > MAX_EXPRESSIONS;
+        }
+    };
+
+    private CompiledExpressions() {
+    }
+
+    /**
+     * @param key: canonical key of an expression.
+     * @return Count and compiled predicate of the expressions with canonical key key.
+     */
+    static synchronized Stats get(String key) {
+        return expressions.computeIfAbsent(key, k -> new Stats());
+    }
+
+    /**
+     * Forgets all the counts and compiled predicates.
+     */
+    static synchronized void clear() {
+        expressions.clear();
+    }
+}
@@ -1,6 +1,6 @@
 package domain.classes;
 import domain.exceptions.InvalidWordFormat;
-import domain.utils.Pair;
+import domain.utils.SparseVector;
 
 import java.text.Normalizer;
 import java.util.*;
@@ -8,16 +8,97 @@ public class Content
 {
     private LinkedList<String> sentences;
     private int nWords;
-    private HashMap<String, Pair<Float, Float>> weights1; //Pair<weight, tf>: tf = #appearances/nWords
-    private HashMap<String, Pair<Float, Float>> weights2; //Pair<weight, tf>: tf = 1 + log10(#appearances)
+    //Words of the content: the ones of termIds first, in the same order, and then the ones that are not in the
+    //TermDictionary. Once interned, they are the instances of the TermDictionary
+    private String[] terms;
+    private int[] termIds; //ids (TermDictionary) of the words of the content that are in it, sorted
+    private int[] counts; //counts[i] = #appearances of the word terms[i]
+    //Words of the boolean searches (see splitWords) that are not in terms: the parts of terms like 'hola-mundo' or
+    //'perro!'. Empty for a query. subtermIds are the ids of the ones in the TermDictionary, sorted
+    private String[] subterms;
+    private int[] subtermIds;
+    //Generation of the TermDictionary (see TermDictionary.getGeneration) of the ids. Until the content is indexed (see
+    //intern) they are the ids that the words had when it was created
+    private int dictionaryGeneration;
+    private float[] idfs; //idf set explicitly with updateWeight (only used by queries), null otherwise. NaN if not set
+    //Bloom filter (SentenceSignature) of the words of each sentence, signatureWords longs per sentence. null if they were
+    //disabled when the content was created
+    private long[] signatures;
+    private int signatureWords;
+    //First word of a query content that is not valid (only a-z), null if there is none or it is not a query
+    private String invalidWord;
 
+    //Bits of the signature of each sentence of the contents created from now on, a power of two. 0 disables them
+    private static volatile int signatureBits = 64;
 
+    //Norms and unit vectors of the weights computed for the current generation of the idfs, null if not computed
+    private volatile WeightsCache cache;
+
+    //Global corpus statistics used to compute the idf of the words not in idfs
+    private static IdfSource idfSource;
+
+
+    //Euclidean norms and unit vectors of weights of each weight type for a generation of the idfs. Searches may run on
+    //several threads, so a new cache is built instead of updating the old one: every thread sees a complete cache
+    private static class WeightsCache
+    {
+        final int generation;
+        final float norm1, norm2;
+        //Built on demand. SparseVector is immutable, so a vector built by another thread is always complete
+        SparseVector vector1, vector2;
+
+        WeightsCache(int generation, float norm1, float norm2)
+        {
+            this.generation = generation;
+            this.norm1 = norm1;
+            this.norm2 = norm2;
+        }
+    }
+
+    //Post: content of a document. Its words are not added to the TermDictionary until it is indexed (see intern)
     public Content (LinkedList<String> sentences)
     {
         this.sentences = sentences;
-        weights1 = new HashMap<>();
-        weights2 = new HashMap<>();
-        calculateTermFrequency();
+        calculateTermFrequency(true);
+    }
+
+    //Pre: sentences cannot be null
+    //Post: content of a query. Its words are never added to the TermDictionary, so the words that no document has ever
+    //had are not in termIds (their weight would be 0 anyway), but they are counted in nWords. It has no signatures.
+    //Throws InvalidWordFormat if any word that is not a stop word has characters other than a-z
+    public static Content forQuery(LinkedList<String> sentences) throws InvalidWordFormat
+    {
+        Content c = new Content();
+        c.sentences = sentences;
+        c.calculateTermFrequency(false);
+        if(c.invalidWord != null)
+            throw new InvalidWordFormat(c.invalidWord);
+
+        return c;
+    }
+
+    private Content()
+    {
+    }
+
+    public static void setIdfSource(IdfSource source)
+    {
+        idfSource = source;
+    }
+
+    //Post: the sentences of the contents created from now on have a signature of bits bits, rounded up to a power of two
+    //of at least 64. If bits <= 0 they have no signature
+    public static void setSignatureBits(int bits)
+    {
+        if(bits <= 0)
+            signatureBits = 0;
+        else
+            signatureBits = Math.max(64, Integer.highestOneBit(bits - 1) << 1);
+    }
+
+    public static int getSignatureBits()
+    {
+        return signatureBits;
     }
 
     private boolean isWordValid(String word)
@@ -27,10 +108,126 @@ public class Content
         return false;
     }
 
+    //Post: position of word in termIds, -1 if word is not in the content
+    private int find(String word)
+    {
+        int id = TermDictionary.lookup(word);
+        if(id < 0)
+            return -1;
+
+        int pos = Arrays.binarySearch(termIds, id);
+        if(pos < 0)
+            return -1;
+        return pos;
+    }
+
     //Post: returns TRUE if word is in the content, FALSE if not
     public boolean isWord(String word)
     {
-        return weights1.containsKey(word);
+        return find(word) >= 0;
+    }
+
+    //Post: idf of the word at position pos, the one set with updateWeight if any, the one of the corpus otherwise
+    private float getIdf(int pos)
+    {
+        if(idfs != null && !Float.isNaN(idfs[pos]))
+            return idfs[pos];
+
+        if(idfSource == null)
+            return 0;
+
+        return idfSource.getIdf(termIds[pos]);
+    }
+
+    //Post: tf = #appearances/nWords
+    private float tf1(int pos)
+    {
+        return (float)counts[pos]/nWords;
+    }
+
+    //Post: tf = 1 + log10(#appearances)
+    private float tf2(int pos)
+    {
+        return 1f + (float)Math.log10(counts[pos]);
+    }
+
+    //Pre: weightType is 1 or 2
+    //Post: tf of the word with id termId, 0 if it is not in the content
+    public float getTf(int termId, int weightType)
+    {
+        int pos = Arrays.binarySearch(termIds, termId);
+        if(pos < 0)
+            return 0;
+
+        if(weightType == 1)
+            return tf1(pos);
+        return tf2(pos);
+    }
+
+    private int getGeneration()
+    {
+        if(idfSource == null)
+            return 0;
+        return idfSource.getGeneration();
+    }
+
+    //Post: the cache of the current generation of the idfs, it is only recomputed when the idfs change
+    private WeightsCache getCache()
+    {
+        int generation = getGeneration();
+        WeightsCache c = cache;
+        if(c == null || c.generation != generation)
+        {
+            float n1 = 0, n2 = 0;
+            for(int i = 0; i < termIds.length; i++)
+            {
+                float idf = getIdf(i);
+                float w1 = tf1(i) * idf;
+                float w2 = tf2(i) * idf;
+                n1 += w1 * w1;
+                n2 += w2 * w2;
+            }
+            c = new WeightsCache(generation, (float)Math.sqrt(n1), (float)Math.sqrt(n2));
+            cache = c;
+        }
+
+        return c;
+    }
+
+    //Pre: weightType is 1 or 2
+    //Post: euclidean norm of the vector of weights of the content. It is only recomputed when the idfs change
+    public float getNorm(int weightType)
+    {
+        if(weightType == 1)
+            return getCache().norm1;
+        return getCache().norm2;
+    }
+
+    //Pre: weightType is 1 or 2
+    //Post: the weights of the content divided by its norm, sorted by term id (the ids are termIds). It is only recomputed
+    //when the idfs change. It must not be modified
+    public SparseVector getVector(int weightType)
+    {
+        WeightsCache c = getCache();
+        SparseVector vector = weightType == 1 ? c.vector1 : c.vector2;
+        if(vector == null)
+        {
+            float norm = weightType == 1 ? c.norm1 : c.norm2;
+            float[] weights = new float[termIds.length];
+            if(norm > 0)
+            {
+                for(int i = 0; i < termIds.length; i++)
+                    weights[i] = (weightType == 1 ? tf1(i) : tf2(i)) * getIdf(i) / norm;
+            }
+            vector = new SparseVector(termIds, weights);
+
+            if(weightType == 1)
+                c.vector1 = vector;
+            else
+                c.vector2 = vector;
+        }
+
+        return vector;
     }
 
     //Pre: only a-z characters allowed in word, InvalidWordFormat otherwise
@@ -40,10 +237,11 @@ public class Content
         if(!isWordValid(word))
             throw new InvalidWordFormat(word);
 
-        if(weights1.get(word) == null)
+        int pos = find(word);
+        if(pos < 0)
             return 0;
 
-        return weights1.get(word).getFirst();
+        return tf1(pos) * getIdf(pos);
     }
 
     //Pre: only a-z characters allowed in word, InvalidWordFormat otherwise
@@ -53,10 +251,11 @@ public class Content
         if(!isWordValid(word))
             throw new InvalidWordFormat(word);
 
-        if(weights2.get(word) == null)
+        int pos = find(word);
+        if(pos < 0)
             return 0;
 
-        return weights2.get(word).getFirst();
+        return tf2(pos) * getIdf(pos);
     }
 
     //Pre: only a-z characters allowed in word, InvalidWordFormat otherwise
@@ -65,94 +264,251 @@ public class Content
         if(!isWordValid(word))
             throw new InvalidWordFormat(word);
 
-        if(weights1.get(word) == null)
+        int pos = find(word);
+        if(pos < 0)
             return 0;
 
-        return weights1.get(word).getSecond();
+        return tf1(pos);
+    }
+
+    //Post: w in lowercase and without accents, the form in which words are stored
+    public static String normalize(String w)
+    {
+        w = w.toLowerCase();
+        w = Normalizer.normalize(w, Normalizer.Form.NFD);
+        return w.replaceAll("[^\\p{ASCII}]", "");
     }
 
+    //Post: the words of sentence for the boolean searches, not normalized: its runs of letters, digits and '_', the word
+    //characters of \b. A word found between word boundaries in a sentence is always one of them, so their postings
+    //can filter the boolean searches. The terms of the similarity are split by spaces and punctuation instead, and may
+    //have several of these words ('hola-mundo') or other characters ('perro!')
+    public static ArrayList<String> splitWords(String sentence)
+    {
+        ArrayList<String> res = new ArrayList<>();
+        int start = -1;
+        int i = 0;
+        while(i <= sentence.length())
+        {
+            int c = i < sentence.length() ? sentence.codePointAt(i) : ' ';
+            boolean isWord = BoolExprNode.isWordChar(c);
+            if(isWord && start < 0)
+                start = i;
+            else if(!isWord && start >= 0)
+            {
+                res.add(sentence.substring(start, i));
+                start = -1;
+            }
+            i += i < sentence.length() ? Character.charCount(c) : 1;
+        }
+        return res;
+    }
 
-    //Pre: sentences cannot be null, nWords is not 0, weights is initialized
-    //Post:
-    private void calculateTermFrequency()
+    //Pre: sentences cannot be null
+    //Post: terms and counts contain the words of the sentences that are not stop words, and subterms the other words of
+    //the boolean searches, with the ids that are already in the TermDictionary. If document is FALSE (a query), the words
+    //are validated, and the content has no signatures nor subterms
+    private void calculateTermFrequency(boolean document)
     {
+        //<word, #appearances>
+        HashMap<String, Integer> frequencies = new HashMap<>();
+        HashSet<String> words = new HashSet<>();
         ListIterator<String> it = sentences.listIterator(0);
 
+        signatureWords = document ? signatureBits >>> 6 : 0;
+        signatures = signatureWords == 0 ? null : new long[sentences.size() * signatureWords];
+        int from = 0;
+
         while(it.hasNext())
         {
             String s = it.next();
-            String [] words = s.split("[\\s.?¿:;,\"\']");
+            String [] split = s.split("[\\s.?¿:;,\"\']");
 
-            //F
-            for(int i = 0; i < words.length; i++)
+            for(int i = 0; i < split.length; i++)
             {
-                String w = words[i];
-
                 //We convert the word w, to a lowercase word with no accents
-                w = w.toLowerCase();
-                w = Normalizer.normalize(w, Normalizer.Form.NFD);
-                w = w.replaceAll("[^\\p{ASCII}]", "");
+                String w = normalize(split[i]);
 
                 if(!w.equals("") && !StopWordsReader.contains(w))
                 {
                     nWords++;
 
-                    //Increment weights1.value.second by 1
-                    if (weights1.containsKey(w)) {
-                        //Increment by 1 the word frequency
-                        weights1.get(w).setSecond(weights1.get(w).getSecond() + 1f);
-                    } else {
-                        weights1.put(w, new Pair<Float, Float>(-1f, 1f));
-                    }
-
-                    //Increment weights2.value.second by 1
-                    if(weights2.containsKey(w))
-                        weights2.get(w).setSecond(weights2.get(w).getSecond() + 1f);
-                    else
-                        weights2.put(w, new Pair<Float, Float>(-1f, 1f));
+                    if(!document && invalidWord == null && !isWordValid(w))
+                        invalidWord = w;
+
+                    //Increment by 1 the word frequency
+                    frequencies.merge(w, 1, Integer::sum);
+                }
+            }
+
+            if(document)
+            {
+                for(String word : splitWords(s))
+                {
+                    String w = normalize(word);
+                    //Stop words are in the signature too, the leaves of boolean expressions can be stop words
+                    if(signatures != null && !w.equals(""))
+                        SentenceSignature.add(signatures, from, signatureWords, w);
+                    if(!w.equals("") && !StopWordsReader.contains(w))
+                        words.add(w);
                 }
             }
+            from += signatureWords;
+        }
+        words.removeAll(frequencies.keySet());
+
+        terms = new String[frequencies.size()];
+        counts = new int[frequencies.size()];
+        int i = 0;
+        for(Map.Entry<String, Integer> e : frequencies.entrySet())
+        {
+            terms[i] = e.getKey();
+            counts[i] = e.getValue();
+            i++;
+        }
+        subterms = words.toArray(new String[0]);
+        resolve(false);
+    }
+
+    //Post: termIds has the ids of the words of terms that are in the TermDictionary, all of them if intern is TRUE (the
+    //new ones are added), and terms, counts and idfs are sorted in the same order. The same for subterms and subtermIds
+    private void resolve(boolean intern)
+    {
+        dictionaryGeneration = TermDictionary.getGeneration();
+        long[] order = new long[terms.length];
+        int known = sortByIds(terms, intern, order);
+        termIds = new int[known];
+        String[] sortedTerms = new String[terms.length];
+        int[] sortedCounts = new int[terms.length];
+        float[] sortedIdfs = idfs == null ? null : new float[terms.length];
+        for(int i = 0; i < terms.length; i++)
+        {
+            int pos = (int) order[i];
+            sortedTerms[i] = terms[pos];
+            sortedCounts[i] = counts[pos];
+            if(sortedIdfs != null)
+                sortedIdfs[i] = idfs[pos];
+            if(i < known)
+                termIds[i] = (int) (order[i] >>> 32);
         }
-        //We divide every weight1.value.second by the total number of words
-        for(Pair<Float, Float> p : this.weights1.values())
+        terms = sortedTerms;
+        counts = sortedCounts;
+        idfs = sortedIdfs;
+
+        order = new long[subterms.length];
+        known = sortByIds(subterms, intern, order);
+        subtermIds = new int[known];
+        String[] sortedSubterms = new String[subterms.length];
+        for(int i = 0; i < subterms.length; i++)
         {
-            p.setSecond(p.getSecond()/nWords);
+            sortedSubterms[i] = subterms[(int) order[i]];
+            if(i < known)
+                subtermIds[i] = (int) (order[i] >>> 32);
         }
+        subterms = sortedSubterms;
+        cache = null;
+    }
 
-        //We transform every weight2.value.second to 1 + log10(x)
-        for(Pair<Float, Float> p : this.weights2.values())
+    //Post: order has, sorted, (id << 32 | position) of every word of words, with Integer.MAX_VALUE as the id of the ones
+    //that are not in the TermDictionary. If intern is TRUE they are added to it. The words with an id are the instances
+    //of the TermDictionary instead of their own copies. Returns the number of words with an id
+    private static int sortByIds(String[] words, boolean intern, long[] order)
+    {
+        int[] ids = new int[words.length];
+        TermDictionary.getIds(words, ids, intern);
+        int known = 0;
+        for(int i = 0; i < words.length; i++)
         {
-            p.setSecond(1f + (float)Math.log10(p.getSecond()));
+            if(ids[i] >= 0)
+                known++;
+            order[i] = (long) (ids[i] < 0 ? Integer.MAX_VALUE : ids[i]) << 32 | i;
         }
+        Arrays.sort(order);
+        return known;
+    }
+
+    //Post: the words of the content have an id in the current TermDictionary. A document is interned when it is
+    //indexed, and again if it is indexed after the TermDictionary has been cleared
+    public void intern()
+    {
+        //Usually every word of a document is already in the TermDictionary when it is created
+        if(dictionaryGeneration == TermDictionary.getGeneration() && termIds.length == terms.length && subtermIds.length == subterms.length)
+            return;
+
+        resolve(true);
     }
 
+    //Post: the words of the content, the ones of getTermIds first in the same order
     public String[] getWords()
     {
-        String[] res = new String[weights1.size()];
+        return terms.clone();
+    }
 
-        int i = 0;
-        for(String w: weights1.keySet())
+    //Post: for every sentence, the id of each of its words in order, -1 for the words that are not indexed (stop words,
+    //words that are empty when normalized and words not in the TermDictionary). It is computed again on every call
+    public int[][] getSentenceTerms()
+    {
+        int[][] res = new int[sentences.size()][];
+        int s = 0;
+        for(String sentence : sentences)
         {
-            res[i] = w;
-            i++;
+            ArrayList<String> words = splitWords(sentence);
+            int[] ids = new int[words.size()];
+            int n = 0;
+            for(String word : words)
+            {
+                String w = normalize(word);
+                ids[n++] = w.isEmpty() || StopWordsReader.contains(w) ? -1 : TermDictionary.lookup(w);
+            }
+            res[s++] = Arrays.copyOf(ids, n);
         }
-
         return res;
     }
 
+    //Post: the signatures of the sentences (see SentenceSignature), getSignatureWords() longs per sentence in the order of
+    //getSentences(). null if the content has no signatures. They must not be modified
+    public long[] getSignatures()
+    {
+        return signatures;
+    }
+
+    public int getSignatureWords()
+    {
+        return signatureWords;
+    }
+
+    //Post: the ids of the words of the boolean searches that are not words of the content (see splitWords), sorted. The
+    //documents that contain a word are the ones with it in getTermIds or in getSubtermIds. They must not be modified
+    public int[] getSubtermIds()
+    {
+        return subtermIds;
+    }
+
+    //Post: the ids of the words of the content, sorted. They must not be modified
+    public int[] getTermIds()
+    {
+        return termIds;
+    }
+
+    //Post: the weights of word are computed with idf instead of the idf of the corpus
     public void updateWeight(String word, float idf)
     {
-        //We update weights1
-        if(weights1.containsKey(word))
-            weights1.get(word).setFirst(weights1.get(word).getSecond() * idf);
+        int pos = find(word);
+        if(pos < 0)
+            return;
+
+        if(idfs == null)
+        {
+            idfs = new float[terms.length];
+            Arrays.fill(idfs, Float.NaN);
+        }
 
-        //We update weights2
-        if(weights2.containsKey(word))
-            weights2.get(word).setFirst(weights2.get(word).getSecond() * idf);
+        idfs[pos] = idf;
+        cache = null;
     }
 
     public LinkedList<String> getSentences()
     {
         return this.sentences;
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,7 @@
 package domain.classes;
 import domain.exceptions.InvalidDocumentFormat;
 import domain.exceptions.InvalidWordFormat;
+import domain.utils.SparseVector;
 
 import java.util.*;
 
@@ -68,6 +69,59 @@ public class Document
         return content.getWords();
     }
 
+    //Post: the words of the document have an id in the TermDictionary. Only the index adds words to it
+    public void intern()
+    {
+        content.intern();
+    }
+
+    public int[] getTermIds()
+    {
+        return content.getTermIds();
+    }
+
+    //Post: the ids of the words of the boolean searches that are not in getTermIds, like 'hola' of 'hola-mundo'
+    public int[] getSubtermIds()
+    {
+        return content.getSubtermIds();
+    }
+
+    //Post: for every sentence, the id of each of its words in order, -1 for the words that are not indexed
+    public int[][] getSentenceTerms()
+    {
+        return content.getSentenceTerms();
+    }
+
+    //Post: Bloom filters of the words of the sentences, getSignatureWords() longs per sentence. null if there are none
+    public long[] getSignatures()
+    {
+        return content.getSignatures();
+    }
+
+    public int getSignatureWords()
+    {
+        return content.getSignatureWords();
+    }
+
+    //Pre: weightType is 1 or 2
+    public float getTf(int termId, int weightType)
+    {
+        return content.getTf(termId, weightType);
+    }
+
+    //Pre: weightType is 1 or 2
+    public float getNorm(int weightType)
+    {
+        return content.getNorm(weightType);
+    }
+
+    //Pre: weightType is 1 or 2
+    //Post: the weights of the document divided by its norm. It must not be modified
+    public SparseVector getVector(int weightType)
+    {
+        return content.getVector(weightType);
+    }
+
     public void updateWeight(String word, float idf)
     {
         content.updateWeight(word, idf);
@@ -104,6 +158,12 @@ public class Document
         return this.author.equals(doc.author) && this.title.equals(doc.title);
     }
 
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(author, title);
+    }
+
     public LinkedList<String> getSentences()
     {
         return content.getSentences();
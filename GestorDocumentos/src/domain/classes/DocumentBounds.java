@@ -0,0 +1,99 @@
+package domain.classes;
+
+import domain.utils.RoaringBitmap;
+
+import java.util.ArrayList;
+
+/**
+ * Bounds of the documents that comply with a boolean expression, computed with bitmaps of the postings. A document
+ * complies if one of its sentences does, so the complement of a set of documents is not the set of the complement:
+ * a document with the word x may have another sentence without it, and comply with !x. Each node keeps two sets:
+ * possible, the documents where some sentence may comply (a superset), and certain, the documents where every
+ * sentence complies for sure (a subset). For a NOT they swap roles against the live documents: no sentence complies
+ * with x in the documents that are not possible for x, so every sentence complies with !x, and the documents where
+ * every sentence complies with x are the only ones with no sentence that complies with !x.
+ * The documents in certain have some sentence, so they comply without evaluating the expression, and only the
+ * ones in possible but not in certain need to be evaluated.
+ */
+public final class DocumentBounds {
+
+    /**
+     * Documents where some sentence may comply, null if every live document may.
+     */
+    private final RoaringBitmap possible;
+    /**
+     * Documents where every sentence complies, null if none is known.
+     */
+    private final RoaringBitmap certain;
+
+    private DocumentBounds(RoaringBitmap possible, RoaringBitmap certain) {
+        this.possible = possible;
+        this.certain = certain != null && certain.isEmpty() ? null : certain;
+    }
+
+    /**
+     * @return Bounds of the documents that comply with tree.
+     */
+    public static DocumentBounds of(BoolExprNode tree, BitmapIndex index) {
+        if (tree instanceof BoolExprNode.Shared) {
+            return of(((BoolExprNode.Shared) tree).operand, index);
+        }
+        if (tree instanceof BoolExprNode.Const) {
+            return ((BoolExprNode.Const) tree).value
+                    ? new DocumentBounds(null, index.getLive())
+                    : new DocumentBounds(RoaringBitmap.EMPTY, null);
+        }
+        if (tree instanceof BoolExprNode.Literal) {
+            ArrayList<String> terms = new ArrayList<>();
+            ((BoolExprNode.Literal) tree).terms(terms, new ArrayList<>());
+            RoaringBitmap possible = terms.isEmpty() ? null : index.getPossible(terms.toArray(new String[0]));
+            return new DocumentBounds(possible, null);
+        }
+        if (tree instanceof BoolExprNode.Not) {
+            DocumentBounds operand = of(((BoolExprNode.Not) tree).operand, index);
+            RoaringBitmap live = index.getLive();
+            return new DocumentBounds(operand.certain == null ? null : live.andNot(operand.certain),
+                    operand.possible == null ? null : live.andNot(operand.possible));
+        }
+        if (tree instanceof BoolExprNode.And) {
+            DocumentBounds left = of(((BoolExprNode.And) tree).left, index);
+            if (left.possible != null && left.possible.isEmpty()) return left;
+            DocumentBounds right = of(((BoolExprNode.And) tree).right, index);
+            RoaringBitmap possible = left.possible == null ? right.possible
+                    : right.possible == null ? left.possible : left.possible.and(right.possible);
+            RoaringBitmap certain = left.certain == null || right.certain == null ? null : left.certain.and(right.certain);
+            return new DocumentBounds(possible, certain);
+        }
+        BoolExprNode.Or or = (BoolExprNode.Or) tree;
+        DocumentBounds left = of(or.left, index);
+        DocumentBounds right = of(or.right, index);
+        RoaringBitmap possible = left.possible == null || right.possible == null ? null : left.possible.or(right.possible);
+        RoaringBitmap certain = left.certain == null ? right.certain
+                : right.certain == null ? left.certain : left.certain.or(right.certain);
+        return new DocumentBounds(possible, certain);
+    }
+
+    /**
+     * @return Documents where some sentence may comply, null if every live document may.
+     */
+    public RoaringBitmap getPossible() {
+        return possible;
+    }
+
+    /**
+     * @return Documents where every sentence complies, which comply without evaluating the expression. null if none
+     * is known.
+     */
+    public RoaringBitmap getCertain() {
+        return certain;
+    }
+
+    /**
+     * @param live: documents with at least one sentence.
+     * @return Documents that may comply but not for sure, the only ones whose sentences need to be evaluated.
+     */
+    public RoaringBitmap getUncertain(RoaringBitmap live) {
+        RoaringBitmap p = possible == null ? live : possible;
+        return certain == null ? p : p.andNot(certain);
+    }
+}
@@ -0,0 +1,12 @@
+package domain.classes;
+
+//Provides the idf of a word according to the statistics of the whole corpus.
+//Content asks it lazily every time a weight is read, so the idf never has to be stored in the documents.
+public interface IdfSource
+{
+    //Post: idf of the word with id termId (TermDictionary)
+    float getIdf(int termId);
+
+    //Post: a number that changes every time the idfs change, values computed with an older generation are stale
+    int getGeneration();
+}
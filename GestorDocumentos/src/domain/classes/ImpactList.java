@@ -0,0 +1,40 @@
+package domain.classes;
+
+//The documents of a posting list sorted by decreasing impact (tf/norm of the word in the document), the smallest id first
+//if the impacts are equal. Norms depend on the idfs, so the list is only valid for the generation it was built for.
+public class ImpactList
+{
+    private final int[] ids;
+    private final float[] impacts;
+    private final int generation;
+
+    //Pre: impacts are sorted in decreasing order
+    public ImpactList(int[] ids, float[] impacts, int generation)
+    {
+        this.ids = ids;
+        this.impacts = impacts;
+        this.generation = generation;
+    }
+
+    public int size()
+    {
+        return ids.length;
+    }
+
+    //Pre: 0 <= i < size()
+    public int getId(int i)
+    {
+        return ids[i];
+    }
+
+    //Pre: 0 <= i < size()
+    public float getImpact(int i)
+    {
+        return impacts[i];
+    }
+
+    public int getGeneration()
+    {
+        return generation;
+    }
+}
@@ -0,0 +1,42 @@
+package domain.classes;
+
+import domain.exceptions.InvalidExpression;
+import domain.exceptions.InvalidWordFormat;
+
+import java.util.LinkedList;
+
+/**
+ * Comparador que es pot executar en paral·lel, a l'estil de java.util.stream.Collector.
+ * Cada fil acumula els elements d'un tros de l'entrada en un resultat parcial propi, i els resultats parcials es
+ * combinen en l'ordre de l'entrada. El comparador en si no es modifica, així que el poden fer servir diversos fils a la vegada.
+ * @param <T> Tipus dels elements comparats.
+ * @param <A> Tipus del resultat parcial.
+ */
+public interface MergeableComparator<T, A> {
+
+    /**
+     * @return Un resultat parcial buit.
+     */
+    A supplier();
+
+    /**
+     * Compara un element i, si escau, l'afegeix al resultat parcial.
+     * @param partial Resultat parcial del tros on és l'element.
+     * @param id Posició de l'element a l'entrada, desempata els elements equivalents.
+     * @param t Element a comparar.
+     */
+    void accumulate(A partial, int id, T t) throws InvalidWordFormat, InvalidExpression;
+
+    /**
+     * Combina dos resultats parcials.
+     * @param left Resultat parcial d'un tros de l'entrada.
+     * @param right Resultat parcial del tros que va just després de left.
+     * @return El resultat parcial dels dos trossos. Pot ser left o right modificats.
+     */
+    A combine(A left, A right);
+
+    /**
+     * @return La llista d'elements del resultat parcial de tota l'entrada.
+     */
+    LinkedList<T> finish(A partial);
+}
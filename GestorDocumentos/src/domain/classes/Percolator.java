@@ -0,0 +1,350 @@
+package domain.classes;
+
+import domain.exceptions.InvalidExpression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Reverse search: boolean expressions are registered once and every new document is checked against them, instead of
+ * searching the corpus with every expression. Registered expressions are indexed by their leaf terms: each expression
+ * gets a set of terms such that every document with a sentence that complies with the expression has at least one of
+ * them (for example, the rarest word of "{a b} & !c"). A document is only checked against the expressions indexed by one
+ * of its words, and against the few whose terms cannot be known, like "!c".
+ * Expressions with the same canonical key (see BoolExprCanonicalizer) are evaluated once per document.
+ */
+public class Percolator {
+
+    /**
+     * Selectivity of a term that the statistics of the corpus do not know.
+     */
+    static final double UNKNOWN_SELECTIVITY = 0.5;
+
+    /**
+     * Registered expressions with the same canonical key.
+     */
+    private static final class Entry {
+        final BoolExpressionComp comp;
+        final String key;
+        /**
+         * Terms the expression is indexed by, distinct, null if it is checked against every document.
+         */
+        final String[] terms;
+        final ArrayList<Integer> ids = new ArrayList<>();
+        /**
+         * Last percolation in which the entry has been a candidate.
+         */
+        int stamp;
+
+        Entry(BoolExpressionComp comp, String key, String[] terms) {
+            this.comp = comp;
+            this.key = key;
+            this.terms = terms;
+        }
+    }
+
+    /**
+     * Terms that a document needs to comply with an expression, one of them at least, and the estimated probability
+     * that a document has one of them.
+     */
+    private static final class Selection {
+        final String[] terms;
+        final double p;
+
+        Selection(String[] terms, double p) {
+            this.terms = terms;
+            this.p = p;
+        }
+    }
+
+    private final SelectivitySource source;
+    /**
+     * Entries by the id of the registered expressions. Ids are dense and never reused, the position of an
+     * unregistered expression is null.
+     */
+    private final ArrayList<Entry> byId = new ArrayList<>();
+    private final ArrayList<String> statements = new ArrayList<>();
+    private final HashMap<String, Entry> byKey = new HashMap<>();
+    /**
+     * Entries indexed by each term, by the id of the term (TermDictionary). null if no entry has the term.
+     */
+    private final ArrayList<ArrayList<Entry>> byTerm = new ArrayList<>();
+    /**
+     * Entries indexed by each term that is not in the TermDictionary yet (no document has had it). The terms are moved
+     * to byTerm when they get an id, the expressions never add words to the TermDictionary.
+     */
+    private final HashMap<String, ArrayList<Entry>> pending = new HashMap<>();
+    /**
+     * Generation and size of the TermDictionary when the pending terms were looked up for the last time.
+     */
+    private int dictionaryGeneration = TermDictionary.getGeneration();
+    private int dictionarySize = 0;
+    /**
+     * Entries checked against every document.
+     */
+    private final ArrayList<Entry> always = new ArrayList<>();
+    private int registered = 0;
+    private int stamp = 0;
+    private long evaluated = 0;
+
+    /**
+     * @param source: statistics of the corpus used to index every expression by its rarest terms, null to index them
+     *              by their longest terms.
+     */
+    public Percolator(SelectivitySource source) {
+        this.source = source;
+    }
+
+    /**
+     * Registers a boolean expression.
+     * @param statement: boolean expression.
+     * @return Id of the registered expression.
+     * @throws InvalidExpression if statement is not a valid expression.
+     */
+    public int register(String statement) throws InvalidExpression {
+        BoolExpressionComp comp = new BoolExpressionComp(statement);
+        String key = comp.getCanonicalKey();
+        Entry entry = byKey.get(key);
+        if (entry == null) {
+            Selection selection = select(comp.getTree());
+            String[] terms = selection == null ? null : Arrays.stream(selection.terms).distinct().toArray(String[]::new);
+            entry = new Entry(comp, key, terms);
+            byKey.put(key, entry);
+            if (terms == null) {
+                always.add(entry);
+            } else {
+                resolve();
+                for (String term : terms) add(term, entry);
+            }
+        }
+
+        int id = byId.size();
+        byId.add(entry);
+        statements.add(statement);
+        entry.ids.add(id);
+        ++registered;
+        return id;
+    }
+
+    /**
+     * Unregisters an expression.
+     * @param id: id of the expression.
+     * @return TRUE if the expression was registered, FALSE otherwise.
+     */
+    public boolean unregister(int id) {
+        if (id < 0 || id >= byId.size() || byId.get(id) == null) return false;
+        Entry entry = byId.get(id);
+        entry.ids.remove(Integer.valueOf(id));
+        byId.set(id, null);
+        statements.set(id, null);
+        --registered;
+        if (!entry.ids.isEmpty()) return true;
+
+        byKey.remove(entry.key);
+        if (entry.terms == null) {
+            always.remove(entry);
+        } else {
+            resolve();
+            for (String term : entry.terms) {
+                int t = TermDictionary.lookup(term);
+                if (t < 0) {
+                    ArrayList<Entry> entries = pending.get(term);
+                    entries.remove(entry);
+                    if (entries.isEmpty()) pending.remove(term);
+                } else {
+                    ArrayList<Entry> entries = byTerm.get(t);
+                    entries.remove(entry);
+                    if (entries.isEmpty()) byTerm.set(t, null);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Indexes entry by term, by its id if it is in the TermDictionary and as pending otherwise.
+     */
+    private void add(String term, Entry entry) {
+        int t = TermDictionary.lookup(term);
+        if (t < 0) {
+            pending.computeIfAbsent(term, k -> new ArrayList<>()).add(entry);
+            return;
+        }
+        while (byTerm.size() <= t) byTerm.add(null);
+        if (byTerm.get(t) == null) byTerm.set(t, new ArrayList<>());
+        byTerm.get(t).add(entry);
+    }
+
+    /**
+     * Moves the pending terms that have got an id since the last call to byTerm, looking up only the words added to
+     * the TermDictionary since then. If it has been cleared, every entry is indexed again with the new ids.
+     */
+    private void resolve() {
+        if (dictionaryGeneration != TermDictionary.getGeneration()) {
+            dictionaryGeneration = TermDictionary.getGeneration();
+            dictionarySize = TermDictionary.size();
+            byTerm.clear();
+            pending.clear();
+            for (Entry entry : byKey.values()) {
+                if (entry.terms == null) continue;
+                for (String term : entry.terms) add(term, entry);
+            }
+            return;
+        }
+
+        int size = TermDictionary.size();
+        if (pending.isEmpty()) {
+            dictionarySize = size;
+            return;
+        }
+        for (int t = dictionarySize; t < size && !pending.isEmpty(); ++t) {
+            ArrayList<Entry> entries = pending.remove(TermDictionary.getTerm(t));
+            if (entries == null) continue;
+            while (byTerm.size() <= t) byTerm.add(null);
+            byTerm.set(t, entries);
+        }
+        dictionarySize = size;
+    }
+
+    /**
+     * @return Statement of the registered expression with id id, null if it is not registered.
+     */
+    public String getStatement(int id) {
+        return id < 0 || id >= statements.size() ? null : statements.get(id);
+    }
+
+    /**
+     * @return Number of registered expressions.
+     */
+    public int size() {
+        return registered;
+    }
+
+    /**
+     * @return Number of distinct expressions (by canonical key) that have been evaluated on a document so far.
+     */
+    public long getEvaluated() {
+        return evaluated;
+    }
+
+    /**
+     * Unregisters all the expressions. Ids are not reused.
+     */
+    public void clear() {
+        for (int i = 0; i < byId.size(); ++i) {
+            byId.set(i, null);
+            statements.set(i, null);
+        }
+        byKey.clear();
+        byTerm.clear();
+        pending.clear();
+        always.clear();
+        registered = 0;
+    }
+
+    /**
+     * @param document: document to check, interned (see Document.intern).
+     * @return Sorted ids of the registered expressions that a sentence of document complies with.
+     */
+    public int[] percolate(Document document) {
+        if (registered == 0) return new int[0];
+        resolve();
+
+        //The entries of the words of the document, once each. A term of an expression may be only a part of the words
+        //of the document, like 'hola' of 'hola-mundo'
+        int s = ++stamp;
+        ArrayList<Entry> candidates = new ArrayList<>(always);
+        for (int[] termIds : new int[][]{document.getTermIds(), document.getSubtermIds()}) {
+            for (int t : termIds) {
+                ArrayList<Entry> entries = t < byTerm.size() ? byTerm.get(t) : null;
+                if (entries == null) continue;
+                for (Entry entry : entries) {
+                    if (entry.stamp == s) continue;
+                    entry.stamp = s;
+                    candidates.add(entry);
+                }
+            }
+        }
+
+        int[] res = new int[8];
+        int n = 0;
+        for (Entry entry : candidates) {
+            ++evaluated;
+            if (!matches(entry.comp, document)) continue;
+            for (int id : entry.ids) {
+                if (n == res.length) res = Arrays.copyOf(res, 2 * n);
+                res[n++] = id;
+            }
+        }
+        res = Arrays.copyOf(res, n);
+        Arrays.sort(res);
+        return res;
+    }
+
+    /**
+     * The expressions have been parsed when they were registered, so evaluating them cannot fail.
+     */
+    private static boolean matches(BoolExpressionComp comp, Document document) {
+        try {
+            return comp.matches(document);
+        } catch (InvalidExpression e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param node: compiled expression.
+     * @return Terms such that a sentence that complies with node has one of them, with the fewest documents that
+     * have them, or null if there are no such terms (any sentence may comply).
+     */
+    private Selection select(BoolExprNode node) {
+        if (node instanceof BoolExprNode.Shared) return select(((BoolExprNode.Shared) node).operand);
+        if (node instanceof BoolExprNode.Const) {
+            return ((BoolExprNode.Const) node).value ? null : new Selection(new String[0], 0);
+        }
+        if (node instanceof BoolExprNode.Literal) {
+            //One term of the literal is enough, the rarest one
+            ArrayList<String> terms = new ArrayList<>();
+            ((BoolExprNode.Literal) node).terms(terms, new ArrayList<>());
+            String best = null;
+            double bestP = 0;
+            for (String term : terms) {
+                if (StopWordsReader.contains(term)) continue;
+                double p = selectivity(term);
+                if (best == null || p < bestP || (p == bestP && term.length() > best.length())) {
+                    best = term;
+                    bestP = p;
+                }
+            }
+            return best == null ? null : new Selection(new String[]{best}, bestP);
+        }
+        if (node instanceof BoolExprNode.And) {
+            //The operand with the rarest terms
+            Selection left = select(((BoolExprNode.And) node).left);
+            Selection right = select(((BoolExprNode.And) node).right);
+            if (left == null) return right;
+            if (right == null) return left;
+            return right.p < left.p || (right.p == left.p && right.terms.length < left.terms.length) ? right : left;
+        }
+        if (node instanceof BoolExprNode.Or) {
+            //The terms of both operands
+            Selection left = select(((BoolExprNode.Or) node).left);
+            Selection right = select(((BoolExprNode.Or) node).right);
+            if (left == null || right == null) return null;
+            String[] terms = Arrays.copyOf(left.terms, left.terms.length + right.terms.length);
+            System.arraycopy(right.terms, 0, terms, left.terms.length, right.terms.length);
+            return new Selection(terms, Math.min(1, left.p + right.p));
+        }
+        //A NOT complies with the sentences without its terms
+        return null;
+    }
+
+    /**
+     * @return Fraction of the documents of the corpus with term, UNKNOWN_SELECTIVITY if it is not known.
+     */
+    private double selectivity(String term) {
+        double p = source == null ? -1 : source.getSelectivity(term);
+        return p < 0 ? UNKNOWN_SELECTIVITY : p;
+    }
+}
@@ -0,0 +1,390 @@
+package domain.classes;
+
+import domain.utils.RoaringBitmap;
+
+import java.util.Arrays;
+
+//Sorted list of the ids of the documents that contain a word, with the tf of the word in every document.
+//Removed ids are only marked (tombstones) and the array is compacted when half of it is dead.
+//Lists with BITMAP_CACHE_MIN ids or more also keep their ids as a bitmap once a boolean search has used it, on top of
+//the arrays, which are still needed for the scores. A container of the bitmap takes at most 2 bytes per id (an array of
+//the 16 low bits, or 8 KB for more than 4096 ids of the same block of 65536), so the cached bitmap adds at most about
+//2 bytes per id to the 12 bytes per id of the arrays: up to 1/6 more memory for the dense lists.
+public class PostingList
+{
+    private int[] ids;
+    private float[] tfs1; //tf of the word in document ids[i] with weight type 1
+    private float[] tfs2; //tf of the word in document ids[i] with weight type 2
+    private int size; //#ids in the array, including the removed ones
+    private int removed; //#ids marked as removed
+    private long[] tombstones; //bit i is set if ids[i] has been removed, null if there are no removed ids
+
+    //The ids as a compressed bitmap for the boolean searches, only kept for dense lists (see toBitmap). null if it has not
+    //been built or the list has changed since then. RoaringBitmap is immutable, so a bitmap built by another thread is
+    //always complete
+    private volatile RoaringBitmap bitmap;
+    //Lists with fewer ids are converted to a bitmap on every boolean search instead of keeping it, so that the extra
+    //memory of the bitmaps is only spent on the lists where converting them costs the most
+    private static final int BITMAP_CACHE_MIN = 4096;
+
+    //Upper bound of tf/norm of the documents of the list for each weight type, null if it has not been computed
+    private volatile MaxImpacts maxImpacts;
+    //The list sorted by impact for each weight type, only built for approximate queries. null if it has not been built.
+    //ImpactList is immutable, so a list built by another thread is always complete
+    private volatile ImpactList impactList1, impactList2;
+
+    //Upper bounds computed for a generation of the idfs. They are replaced at once, so that searches running on several
+    //threads always see the bounds together with their generation
+    private static class MaxImpacts
+    {
+        final int generation;
+        final float maxImpact1, maxImpact2;
+
+        MaxImpacts(int generation, float maxImpact1, float maxImpact2)
+        {
+            this.generation = generation;
+            this.maxImpact1 = maxImpact1;
+            this.maxImpact2 = maxImpact2;
+        }
+    }
+
+    public PostingList()
+    {
+        ids = new int[2];
+        tfs1 = new float[2];
+        tfs2 = new float[2];
+    }
+
+    //Post: position of id in the array, (-(insertion point) - 1) if it is not in the array
+    private int find(int id)
+    {
+        return Arrays.binarySearch(ids, 0, size, id);
+    }
+
+    private boolean isRemovedAt(int i)
+    {
+        return tombstones != null && (tombstones[i >> 6] & (1L << i)) != 0;
+    }
+
+    //Post: the removed ids are not in the array anymore
+    private void compact()
+    {
+        int n = 0;
+        for(int i = 0; i < size; i++)
+        {
+            if(!isRemovedAt(i))
+            {
+                ids[n] = ids[i];
+                tfs1[n] = tfs1[i];
+                tfs2[n] = tfs2[i];
+                n++;
+            }
+        }
+        size = n;
+        removed = 0;
+        tombstones = null;
+    }
+
+    //Pre: id is not in the list
+    //Post: id is in the list with tf 0
+    public void add(int id)
+    {
+        add(id, 0, 0);
+    }
+
+    //Pre: id is not in the list
+    //Post: id is in the list with tfs tf1 and tf2. It is appended at the end if it is greater than all the others (the usual case)
+    public void add(int id, float tf1, float tf2)
+    {
+        bitmap = null;
+        int pos = size;
+        if(size > 0 && ids[size - 1] >= id)
+        {
+            pos = find(id);
+            if(pos >= 0)
+            {
+                //It was a removed id, we just bring it back
+                tombstones[pos >> 6] &= ~(1L << pos);
+                removed--;
+                tfs1[pos] = tf1;
+                tfs2[pos] = tf2;
+                return;
+            }
+            pos = -pos - 1;
+        }
+
+        if(size == ids.length)
+        {
+            ids = Arrays.copyOf(ids, size * 2);
+            tfs1 = Arrays.copyOf(tfs1, size * 2);
+            tfs2 = Arrays.copyOf(tfs2, size * 2);
+            if(tombstones != null)
+                tombstones = Arrays.copyOf(tombstones, (ids.length + 63) >> 6);
+        }
+
+        if(pos < size)
+        {
+            //Inserting in the middle moves the tombstones too, so we get rid of them first
+            if(removed > 0)
+            {
+                compact();
+                pos = -find(id) - 1;
+            }
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            System.arraycopy(tfs1, pos, tfs1, pos + 1, size - pos);
+            System.arraycopy(tfs2, pos, tfs2, pos + 1, size - pos);
+        }
+        ids[pos] = id;
+        tfs1[pos] = tf1;
+        tfs2[pos] = tf2;
+        size++;
+    }
+
+    //Post: TRUE if id was in the list and it has been removed, FALSE otherwise
+    public boolean remove(int id)
+    {
+        int pos = find(id);
+        if(pos < 0 || isRemovedAt(pos))
+            return false;
+
+        bitmap = null;
+        if(tombstones == null)
+            tombstones = new long[(ids.length + 63) >> 6];
+        tombstones[pos >> 6] |= 1L << pos;
+        removed++;
+
+        if(removed * 2 > size)
+            compact();
+
+        return true;
+    }
+
+    public boolean contains(int id)
+    {
+        int pos = find(id);
+        return pos >= 0 && !isRemovedAt(pos);
+    }
+
+    //Post: #documents in the list (df of the word)
+    public int size()
+    {
+        return size - removed;
+    }
+
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    //Post: #positions of the array, including the removed ones. Positions are traversed with getId/isRemoved/getTf
+    public int rawSize()
+    {
+        return size;
+    }
+
+    //Pre: 0 <= i < rawSize()
+    public int getId(int i)
+    {
+        return ids[i];
+    }
+
+    //Pre: 0 <= i < rawSize()
+    public boolean isRemoved(int i)
+    {
+        return isRemovedAt(i);
+    }
+
+    //Pre: 0 <= i < rawSize(), weightType is 1 or 2
+    //Post: tf of the word in the document at position i
+    public float getTf(int i, int weightType)
+    {
+        if(weightType == 1)
+            return tfs1[i];
+        return tfs2[i];
+    }
+
+    //Pre: 0 <= from <= rawSize()
+    //Post: first position >= from that is not removed and whose id is >= id, rawSize() if there is none
+    public int advance(int from, int id)
+    {
+        int pos = from;
+        if(pos < size && ids[pos] < id)
+        {
+            //Galloping: the id is usually close to from, so we look for it in ranges of growing size
+            int step = 1;
+            int hi = from + 1;
+            while(hi < size && ids[hi] < id)
+            {
+                pos = hi;
+                step <<= 1;
+                hi = from + step;
+            }
+            pos = Arrays.binarySearch(ids, pos + 1, Math.min(hi + 1, size), id);
+            if(pos < 0)
+                pos = -pos - 1;
+        }
+
+        while(pos < size && isRemovedAt(pos))
+            pos++;
+
+        return pos;
+    }
+
+    //Pre: weightType is 1 or 2
+    //Post: the upper bound of tf/norm of the documents of the list set for generation, NaN if it has not been set
+    public float getMaxImpact(int weightType, int generation)
+    {
+        MaxImpacts m = maxImpacts;
+        if(m == null || m.generation != generation)
+            return Float.NaN;
+
+        if(weightType == 1)
+            return m.maxImpact1;
+        return m.maxImpact2;
+    }
+
+    public void setMaxImpacts(float maxImpact1, float maxImpact2, int generation)
+    {
+        maxImpacts = new MaxImpacts(generation, maxImpact1, maxImpact2);
+    }
+
+    //Pre: weightType is 1 or 2
+    //Post: the list sorted by impact built for generation, null if it has not been built
+    public ImpactList getImpactList(int weightType, int generation)
+    {
+        ImpactList l = weightType == 1 ? impactList1 : impactList2;
+        if(l == null || l.getGeneration() != generation)
+            return null;
+
+        return l;
+    }
+
+    //Pre: weightType is 1 or 2
+    public void setImpactList(int weightType, ImpactList impactList)
+    {
+        if(weightType == 1)
+            impactList1 = impactList;
+        else
+            impactList2 = impactList;
+    }
+
+    //If a list is more than GALLOP_RATIO times longer than the ids intersected so far, these are searched in the list with
+    //advance instead of merging both
+    private static final int GALLOP_RATIO = 16;
+
+    //Post: the ids that are in all the lists, in increasing order. The lists are not modified
+    //The lists are intersected from the rarest (smallest df) to the most common one. The ids that are left are searched in
+    //a much longer list with advance, which gallops from the position of the previous search: the cost is about the number
+    //of ids times the log of the gaps, instead of the size of the list. Lists of similar size are merged without branches
+    //on the comparison of the ids, which are unpredictable
+    public static int[] intersect(PostingList[] lists)
+    {
+        if(lists.length == 0)
+            return new int[0];
+
+        PostingList[] sorted = lists.clone();
+        Arrays.sort(sorted, (a, b) -> Integer.compare(a.size(), b.size()));
+        int[] res = sorted[0].liveIds();
+        int n = res.length;
+        for(int k = 1; k < sorted.length && n > 0; k++)
+        {
+            PostingList list = sorted[k];
+            if((long)n * GALLOP_RATIO < list.size())
+                n = list.gallopIntersect(res, n);
+            else
+                n = list.mergeIntersect(res, n);
+        }
+
+        return n == res.length ? res : Arrays.copyOf(res, n);
+    }
+
+    //Post: the ids of the list that are not removed, without compacting it
+    private int[] liveIds()
+    {
+        if(removed == 0)
+            return Arrays.copyOf(ids, size);
+
+        int[] res = new int[size - removed];
+        int n = 0;
+        for(int i = 0; i < size; i++)
+        {
+            if(!isRemovedAt(i))
+                res[n++] = ids[i];
+        }
+        return res;
+    }
+
+    //Pre: the first n ids of a are sorted
+    //Post: the first ids of a are the ones of the first n that are in the list, returns how many
+    private int gallopIntersect(int[] a, int n)
+    {
+        int m = 0;
+        int pos = 0;
+        for(int i = 0; i < n && pos < size; i++)
+        {
+            pos = advance(pos, a[i]);
+            if(pos < size && ids[pos] == a[i])
+                a[m++] = a[i];
+        }
+        return m;
+    }
+
+    //Pre: the first n ids of a are sorted
+    //Post: the first ids of a are the ones of the first n that are in the list, returns how many
+    private int mergeIntersect(int[] a, int n)
+    {
+        int m = 0;
+        int i = 0, j = 0;
+        if(removed == 0)
+        {
+            //The result is written on every step and kept only if the ids are equal, and the positions advance by
+            //the result of the comparisons, so the JIT can use conditional moves instead of jumps
+            while(i < n && j < size)
+            {
+                int x = a[i];
+                int y = ids[j];
+                a[m] = x;
+                m += x == y ? 1 : 0;
+                i += x <= y ? 1 : 0;
+                j += y <= x ? 1 : 0;
+            }
+            return m;
+        }
+
+        while(i < n && j < size)
+        {
+            int x = a[i];
+            int y = ids[j];
+            if(x == y && !isRemovedAt(j))
+                a[m++] = x;
+            if(x <= y)
+                i++;
+            if(y <= x)
+                j++;
+        }
+        return m;
+    }
+
+    //Post: the ids of the list as a bitmap. Dense lists (most of the boolean searches that use them) keep it until the list
+    //changes, sparse lists are just converted to array containers. The list is not modified
+    public RoaringBitmap toBitmap()
+    {
+        RoaringBitmap b = bitmap;
+        if(b != null)
+            return b;
+
+        b = RoaringBitmap.of(liveIds()).runOptimize();
+        if(size() >= BITMAP_CACHE_MIN)
+            bitmap = b;
+        return b;
+    }
+
+    //Post: the ids of the list in increasing order
+    public int[] toArray()
+    {
+        if(removed > 0)
+            compact();
+
+        return Arrays.copyOf(ids, size);
+    }
+}
@@ -1,11 +1,13 @@
 package domain.classes;
 
+import java.util.LinkedList;
+
 /**
  * Clase que extiende de Comparator<T> y se encarga de comparar un prefijo dado con el String de autor.
  * @author Alejandro
  *
  */
-public class PrefixComparator extends Comparator<String> {
+public class PrefixComparator extends Comparator<String> implements MergeableComparator<String, LinkedList<String>> {
 
 
     private String reference;
@@ -31,14 +33,50 @@ public class PrefixComparator extends Comparator<String> {
      public boolean compare(String author) {
 
         if(this.reference.length()==0) return true;
-        if(author.length()<this.reference.length()) return false;
-        String author_prefix = author.substring(0,this.reference.length());
-        if(author_prefix.equalsIgnoreCase(this.reference)) {
-        this.addToList(author);
-        return true;
-    }
+        if(matches(author)) {
+            this.addToList(author);
+            return true;
+        }
         return false;
-}
+    }
+
+    /**
+     * @param author - Nombre del autor
+     * @return boolean. Si el nombre del autor empieza por el prefijo, sin distinguir mayúsculas y minúsculas.
+     */
+    private boolean matches(String author) {
+        return author.regionMatches(true, 0, this.reference, 0, this.reference.length());
+    }
+
+    /**
+     * @return Lista vacía de autores con el prefijo.
+     */
+    @Override
+    public LinkedList<String> supplier() {
+        return new LinkedList<>();
+    }
+
+    /**
+     * Añade el autor a la lista parcial si empieza por el prefijo. Si el prefijo está vacío se añaden todos.
+     */
+    @Override
+    public void accumulate(LinkedList<String> partial, int id, String author) {
+        if (matches(author)) partial.add(author);
+    }
+
+    /**
+     * @return left seguida de right, los autores mantienen el orden de la entrada.
+     */
+    @Override
+    public LinkedList<String> combine(LinkedList<String> left, LinkedList<String> right) {
+        left.addAll(right);
+        return left;
+    }
+
+    @Override
+    public LinkedList<String> finish(LinkedList<String> partial) {
+        return partial;
+    }
 
 
 }
\ No newline at end of file
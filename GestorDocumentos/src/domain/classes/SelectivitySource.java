@@ -0,0 +1,14 @@
+package domain.classes;
+
+/**
+ * Statistics of the corpus used to plan the evaluation of boolean expressions (see BoolExprPlanner).
+ */
+public interface SelectivitySource {
+
+    /**
+     * @param term: word normalized with Content.normalize.
+     * @return Fraction of the documents that contain term, from 0 to 1, or a negative number if the source does not
+     * know (the term is not indexed, like stop words).
+     */
+    double getSelectivity(String term);
+}
@@ -0,0 +1,214 @@
+package domain.classes;
+
+import java.util.Arrays;
+
+//Positional index of the sentences of the corpus. Every sentence gets a global id, consecutive for the sentences of a
+//document, and the list of every word has an entry (sentence << 32 | position of the word in the sentence) for each
+//time the word appears, sorted. Positions count every word of the sentence, also the ones that are not indexed, so
+//the positions of the words of a sequence are consecutive.
+public class SentenceIndex implements CandidateIndex
+{
+    //Entries of each word, indexed by the id of the word (TermDictionary)
+    private long[][] postings = new long[16][];
+    private int[] sizes = new int[16];
+    //Document of every sentence
+    private int[] sentenceDoc = new int[16];
+    private int nSentences = 0;
+    //#sentences of the documents that have been removed, whose ids are not reused
+    private int removedSentences = 0;
+    //First sentence of every document, indexed by the id of the document. -1 if the document is not indexed
+    private int[] firstSentence = new int[16];
+
+    public SentenceIndex()
+    {
+        Arrays.fill(firstSentence, -1);
+    }
+
+    //Pre: docId is not indexed, sentenceTerms as Document.getSentenceTerms()
+    //Post: the sentences of the document have been indexed, after the sentences of all the other documents
+    public void add(int docId, int[][] sentenceTerms)
+    {
+        while(firstSentence.length <= docId)
+        {
+            int n = firstSentence.length;
+            firstSentence = Arrays.copyOf(firstSentence, 2 * n);
+            Arrays.fill(firstSentence, n, firstSentence.length, -1);
+        }
+        firstSentence[docId] = nSentences;
+
+        for(int[] terms : sentenceTerms)
+        {
+            if(nSentences == sentenceDoc.length)
+                sentenceDoc = Arrays.copyOf(sentenceDoc, 2 * nSentences);
+            sentenceDoc[nSentences] = docId;
+
+            for(int pos = 0; pos < terms.length; pos++)
+            {
+                if(terms[pos] >= 0)
+                    append(terms[pos], (long) nSentences << 32 | pos);
+            }
+            nSentences++;
+        }
+    }
+
+    private void append(int termId, long entry)
+    {
+        if(termId >= postings.length)
+        {
+            int capacity = Math.max(termId + 1, 2 * postings.length);
+            postings = Arrays.copyOf(postings, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+        }
+        if(postings[termId] == null)
+            postings[termId] = new long[2];
+        else if(sizes[termId] == postings[termId].length)
+            postings[termId] = Arrays.copyOf(postings[termId], 2 * sizes[termId]);
+
+        postings[termId][sizes[termId]++] = entry;
+    }
+
+    //Pre: the document has been indexed with the same sentenceTerms
+    //Post: the entries of the sentences of the document have been removed. Their ids are not reused
+    public void remove(int docId, int[][] sentenceTerms)
+    {
+        int first = firstSentence[docId];
+        if(first < 0)
+            return;
+
+        long from = (long) first << 32;
+        long to = (long) (first + sentenceTerms.length) << 32;
+        for(int[] terms : sentenceTerms)
+        {
+            for(int termId : terms)
+            {
+                if(termId < 0 || termId >= postings.length || postings[termId] == null)
+                    continue;
+
+                //The entries of the document are consecutive in the list. Once removed the next words find nothing
+                long[] list = postings[termId];
+                int lo = lowerBound(list, sizes[termId], from);
+                int hi = lowerBound(list, sizes[termId], to);
+                if(lo == hi)
+                    continue;
+                System.arraycopy(list, hi, list, lo, sizes[termId] - hi);
+                sizes[termId] -= hi - lo;
+                if(sizes[termId] == 0)
+                    postings[termId] = null;
+            }
+        }
+        firstSentence[docId] = -1;
+        removedSentences += sentenceTerms.length;
+    }
+
+    //Post: #sentences of the index whose document has been removed
+    public int getRemovedSentences()
+    {
+        return removedSentences;
+    }
+
+    //Post: #sentences of the index whose document has not been removed
+    public int getSentences()
+    {
+        return nSentences - removedSentences;
+    }
+
+    //Post: first position of list[0..size) whose entry is >= value, size if there is none
+    private static int lowerBound(long[] list, int size, long value)
+    {
+        int lo = 0, hi = size;
+        while(lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if(list[mid] < value)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    //Post: TRUE if the entry is in the list of termId
+    private boolean contains(int termId, long entry)
+    {
+        int pos = lowerBound(postings[termId], sizes[termId], entry);
+        return pos < sizes[termId] && postings[termId][pos] == entry;
+    }
+
+    //Post: sorted ids of the sentences where the indexed terms appear at the same distances as their offsets. The
+    //rarest word is traversed and the others are looked up at their positions. null if no term is indexed
+    @Override
+    public int[] getCandidates(String[] terms, int[] offsets)
+    {
+        int[] ids = new int[terms.length];
+        int[] offs = new int[terms.length];
+        int n = 0;
+        for(int i = 0; i < terms.length; i++)
+        {
+            if(StopWordsReader.contains(terms[i]))
+                continue;
+
+            int id = TermDictionary.lookup(terms[i]);
+            if(id < 0 || id >= postings.length || postings[id] == null)
+                return new int[0];
+            ids[n] = id;
+            offs[n++] = offsets[i];
+        }
+        if(n == 0)
+            return null;
+
+        int rarest = 0;
+        for(int i = 1; i < n; i++)
+        {
+            if(sizes[ids[i]] < sizes[ids[rarest]])
+                rarest = i;
+        }
+
+        long[] list = postings[ids[rarest]];
+        int[] res = new int[sizes[ids[rarest]]];
+        int found = 0;
+        for(int e = 0; e < sizes[ids[rarest]]; e++)
+        {
+            int sentence = (int) (list[e] >>> 32);
+            //Position of the word with offset 0
+            int start = (int) list[e] - offs[rarest];
+            if(start < 0 || (found > 0 && res[found - 1] == sentence))
+                continue;
+
+            boolean all = true;
+            for(int i = 0; i < n && all; i++)
+            {
+                if(i != rarest)
+                    all = contains(ids[i], (long) sentence << 32 | (start + offs[i]));
+            }
+            if(all)
+                res[found++] = sentence;
+        }
+        return Arrays.copyOf(res, found);
+    }
+
+    //Pre: 0 <= sentence < #sentences
+    //Post: id of the document of the sentence
+    public int getDoc(int sentence)
+    {
+        return sentenceDoc[sentence];
+    }
+
+    //Pre: the document of the sentence is indexed
+    //Post: position of the sentence in its document
+    public int getPosition(int sentence)
+    {
+        return sentence - firstSentence[sentenceDoc[sentence]];
+    }
+
+    //Post: approximate #bytes of the arrays of the index
+    public long getBytes()
+    {
+        long bytes = 8L * postings.length + 4L * sizes.length + 4L * sentenceDoc.length + 4L * firstSentence.length;
+        for(long[] list : postings)
+        {
+            if(list != null)
+                bytes += 16 + 8L * list.length;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,13 @@
+package domain.classes;
+
+/**
+ * Condition that a sentence may comply with, such as a compiled boolean expression.
+ */
+public interface SentencePredicate {
+
+    /**
+     * @param sentence: String we want to check.
+     * @return TRUE if sentence complies with the condition, FALSE otherwise.
+     */
+    boolean eval(String sentence);
+}
@@ -0,0 +1,192 @@
+package domain.classes;
+
+import java.util.ArrayList;
+
+/**
+ * Bloom filters of the normalized words of the sentences, computed by Content at ingest. A sentence is a block of
+ * signature words (a power of two of 64 bit words) of the array of its content, and every word of the sentence sets
+ * HASHES bits of its block. A boolean expression is translated to a Filter over the blocks that rejects, without
+ * reading the text, the sentences that lack a word that the expression requires.
+ */
+public final class SentenceSignature {
+
+    /**
+     * Bits set per word. 3 is close to the best number for 64 bits and the ~15 words of a sentence.
+     */
+    public static final int HASHES = 3;
+
+    private SentenceSignature() {
+    }
+
+    /**
+     * @param term: normalized word.
+     * @return 64 bit hash of term, its two halves give the positions of its bits.
+     */
+    static long hash(String term) {
+        long h = term.hashCode() * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        h *= 0xC2B2AE3D27D4EB4FL;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * Sets the bits of term in the block of a sentence.
+     * @param signatures: blocks of the sentences.
+     * @param from: first word of the block.
+     * @param words: words of the block, a power of two.
+     */
+    public static void add(long[] signatures, int from, int words, String term) {
+        long h = hash(term);
+        int mask = (words << 6) - 1;
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < HASHES; ++i) {
+            int bit = (h1 + i * h2) & mask;
+            signatures[from + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @param hash: hash of a term.
+     * @return FALSE if the term is not in the sentence of the block, TRUE if it may be.
+     */
+    static boolean mayContain(long[] signatures, int from, int words, long hash) {
+        int mask = (words << 6) - 1;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < HASHES; ++i) {
+            int bit = (h1 + i * h2) & mask;
+            if ((signatures[from + (bit >>> 6)] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param term: normalized word.
+     * @return FALSE if term is not in the sentence of the block, TRUE if it may be.
+     */
+    public static boolean mayContain(long[] signatures, int from, int words, String term) {
+        return mayContain(signatures, from, words, hash(term));
+    }
+
+    /**
+     * @param bits: bits of a block.
+     * @param terms: different words of the sentence.
+     * @return Expected probability that a word that is not in the sentence passes the filter, (1 - e^(-k*n/m))^k.
+     */
+    public static double falsePositiveRate(int bits, int terms) {
+        return Math.pow(1 - Math.exp(-(double) HASHES * terms / bits), HASHES);
+    }
+
+    /**
+     * Translates tree to a filter of sentences: leaves require their words, AND requires both operands, OR either
+     * one, and NOT doesn't require anything.
+     * @return Filter that rejects some of the sentences where tree is FALSE and no sentence where it is TRUE, null
+     * if it would not reject any sentence.
+     */
+    public static Filter filter(BoolExprNode tree) {
+        Filter filter = translate(tree);
+        return filter == Filter.ANY ? null : filter;
+    }
+
+    private static Filter translate(BoolExprNode node) {
+        if (node instanceof BoolExprNode.Shared) {
+            return translate(((BoolExprNode.Shared) node).operand);
+        }
+        if (node instanceof BoolExprNode.Const) {
+            return ((BoolExprNode.Const) node).value ? Filter.ANY : Filter.NONE;
+        }
+        if (node instanceof BoolExprNode.Literal) {
+            ArrayList<String> terms = new ArrayList<>();
+            ((BoolExprNode.Literal) node).terms(terms, new ArrayList<>());
+            if (terms.isEmpty()) return Filter.ANY;
+            long[] hashes = new long[terms.size()];
+            for (int i = 0; i < hashes.length; ++i) hashes[i] = hash(terms.get(i));
+            return new Terms(hashes);
+        }
+        if (node instanceof BoolExprNode.And) {
+            Filter left = translate(((BoolExprNode.And) node).left);
+            Filter right = translate(((BoolExprNode.And) node).right);
+            if (left == Filter.NONE || right == Filter.NONE) return Filter.NONE;
+            if (left == Filter.ANY) return right;
+            if (right == Filter.ANY) return left;
+            return new And(left, right);
+        }
+        if (node instanceof BoolExprNode.Or) {
+            Filter left = translate(((BoolExprNode.Or) node).left);
+            Filter right = translate(((BoolExprNode.Or) node).right);
+            if (left == Filter.ANY || right == Filter.ANY) return Filter.ANY;
+            if (left == Filter.NONE) return right;
+            if (right == Filter.NONE) return left;
+            return new Or(left, right);
+        }
+        return Filter.ANY;
+    }
+
+    /**
+     * Necessary condition of an expression over the block of a sentence. Filters are immutable.
+     */
+    public abstract static class Filter {
+        static final Filter ANY = new Filter() {
+            @Override
+            public boolean mayMatch(long[] signatures, int from, int words) {
+                return true;
+            }
+        };
+        static final Filter NONE = new Filter() {
+            @Override
+            public boolean mayMatch(long[] signatures, int from, int words) {
+                return false;
+            }
+        };
+
+        /**
+         * @return FALSE if the expression is FALSE for the sentence of the block, TRUE if it may be TRUE.
+         */
+        public abstract boolean mayMatch(long[] signatures, int from, int words);
+    }
+
+    private static final class Terms extends Filter {
+        private final long[] hashes;
+
+        Terms(long[] hashes) {
+            this.hashes = hashes;
+        }
+
+        @Override
+        public boolean mayMatch(long[] signatures, int from, int words) {
+            for (long h : hashes) {
+                if (!mayContain(signatures, from, words, h)) return false;
+            }
+            return true;
+        }
+    }
+
+    private static final class And extends Filter {
+        private final Filter left, right;
+
+        And(Filter left, Filter right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean mayMatch(long[] signatures, int from, int words) {
+            return left.mayMatch(signatures, from, words) && right.mayMatch(signatures, from, words);
+        }
+    }
+
+    private static final class Or extends Filter {
+        private final Filter left, right;
+
+        Or(Filter left, Filter right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean mayMatch(long[] signatures, int from, int words) {
+            return left.mayMatch(signatures, from, words) || right.mayMatch(signatures, from, words);
+        }
+    }
+}
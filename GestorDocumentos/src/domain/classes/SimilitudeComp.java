@@ -1,32 +1,32 @@
 package domain.classes;
 import domain.exceptions.InvalidWordFormat;
-import domain.utils.Pair;
+import domain.utils.SparseVector;
+import domain.utils.TopKHeap;
 
 import java.util.*;
 
-public class SimilitudeComp extends Comparator<Document> {
+public class SimilitudeComp extends Comparator<Document> implements MergeableComparator<Document, TopKHeap<Document>> {
     /**
      * Nombre màxim de documents a retornar per getList().
      */
     private int k;
 
     /**
-     * Vector de referència per a les comparacions.
-     * Ens la proporcionen a la constructora, o bé el construïm a partir d'un document.
+     * Vector de referència per a les comparacions, dividit per la seva norma.
+     * Ens el proporcionen a la constructora, o bé és el vector del document de referència.
      */
-    private HashMap<String, Float> referenceVec; // Vector used as a reference (all the cosine similarities are computed with respect to this vector) it's <String word, int weight>
+    private SparseVector reference;
 
     /**
-     * Distància euclediana del vector de referència.
-     * Precalculada a la constructora per a estalviar càlculs durant les comparacions.
+     * Els k documents més similars comparats fins ara, amb les seves similituds.
+     * L'id de cada document és l'ordre en què s'ha comparat, de manera que els empats afavoreixen el primer comparat.
      */
-    private Float referenceVecEucledianNorm;
+    private TopKHeap<Document> heap;
 
     /**
-     * Llista de documents i les seves similituds respecte al vector referència.
-     * No necessàriament ordenada.
+     * Nombre de documents comparats.
      */
-    private LinkedList<Pair<Document, Float>> list; // {Document, CosineSimilarity}
+    private int compared;
 
     /**
      * Estratègia de càlcul de pesos.
@@ -36,54 +36,6 @@ public class SimilitudeComp extends Comparator<Document> {
 
 //--------------------------------------------------------
 
-    /**
-     * Funció necesaria pel mergeSortList().
-     * @param l Índex del document de l'esquerra.
-     * @param m Índex del document del centre.
-     * @param r Índex del document de la detra.
-     */
-    void merge(int l, int m, int r) {
-        int i,j,x;
-        LinkedList<Pair<Document,Float>> B = new LinkedList<>(list);
-        i = l; j = m+1; x = l;
-
-        while (i <= m && j <= r)
-            if (B.get(i).getSecond() > B.get(j).getSecond())
-                list.set(x++, B.get(i++));
-            else
-                list.set(x++, B.get(j++));
-
-        while (i <= m)
-            list.set(x++, B.get(i++));
-    }
-
-    /**
-     * Ordena els documents de la list de més similar a menys similar
-     * @param l Índex de l'element més de l'esquerra a ordenar.
-     * @param r Índex de l'element més de la dreata a ordenar.
-     */
-    private void mergeSortList(int l, int r) { //ordenar los elementos de la lista dependiendo de
-        if (l < r) {
-            int m = (l+r)/2;
-            mergeSortList(l,m);
-            mergeSortList(m+1, r);
-            merge(l,m,r);
-        }
-    }
-
-    /**
-     * Mana a ordenar els documents de la llista i en retorna min(k, list.size()) Documents més similars
-     * @return Aquesta funció retorna el llistat de documents ja ordenats.
-     */
-    private LinkedList<Document> getSortedList() {
-        mergeSortList(0,list.size()-1);
-        LinkedList<Document> tmp = new LinkedList<>();
-        int NRetDocs = Math.min(list.size(), k);
-        for (int i = 0; i < NRetDocs; ++i)
-            tmp.add(list.get(i).getFirst());
-        return tmp;
-    }
-
     /**
      * Constructora amb Document com a referència.
      * @param doc Document a usar com a referència. Totes les similituds són calculades tenint en compte el contingut d'aquest document.
@@ -93,19 +45,9 @@ public class SimilitudeComp extends Comparator<Document> {
      */
     public SimilitudeComp(Document doc, int k , int weightType) throws InvalidWordFormat {
         this.k = k;
-        this.referenceVec = new HashMap<>();
-        this.list = new LinkedList<>();
+        this.heap = new TopKHeap<>(k);
         this.weightType = weightType;
-        String[] words = doc.getWords(); //We are assured no repeated words are going to appear
-        Float tf;
-        referenceVecEucledianNorm = 0F;
-        for (String s : words) {
-            if (weightType == 1) tf = doc.getWeight1(s);
-            else tf = doc.getWeight2(s);
-            referenceVec.put(s, tf);
-            referenceVecEucledianNorm += tf*tf;
-        }
-        referenceVecEucledianNorm = (float)Math.sqrt(referenceVecEucledianNorm);
+        this.reference = doc.getVector(weightType); //Cached by the document, already divided by its norm
     }
 
     /**
@@ -118,49 +60,79 @@ public class SimilitudeComp extends Comparator<Document> {
      */
     public SimilitudeComp(HashMap<String, Float> ref, int k, int weightType) {
         this.k = k;
-        this.referenceVec = ref;
-        this.list = new LinkedList<>();
+        this.heap = new TopKHeap<>(k);
         this.weightType = weightType;
-        //this.comparedDocs = new LinkedList<>();
-        referenceVecEucledianNorm = 0F;
+
+        float norm = 0;
+        for (Float w : ref.values()) norm += w*w;
+        norm = (float)Math.sqrt(norm);
+
+        //The words that no document contains do not have an id, they only count for the norm
+        TreeMap<Integer, Float> weights = new TreeMap<>();
         for (Map.Entry<String, Float> set : ref.entrySet()) {
-            Float tf = set.getValue();
-            referenceVecEucledianNorm += tf*tf;
+            int id = TermDictionary.lookup(set.getKey());
+            if (id >= 0 && norm > 0) weights.put(id, set.getValue() / norm);
         }
-        referenceVecEucledianNorm = (float)Math.sqrt(referenceVecEucledianNorm);
+        int[] ids = new int[weights.size()];
+        float[] values = new float[weights.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Float> set : weights.entrySet()) {
+            ids[i] = set.getKey();
+            values[i++] = set.getValue();
+        }
+        this.reference = new SparseVector(ids, values);
     }
 
     /**
      * Compara el document amb la referència i el guarda per quan es demani la llista de similituds.
+     * La similitud del cosinus és el producte escalar dels dos vectors normalitzats, que el document té precalculats.
      * @param document Document a comparar amb la referència.
+     * Només es conserven els k documents més similars, la memòria usada és O(k).
      * @return Si s'han comparat menys de k documents, la funció retorna true. En cas que ja haguem comparat k documents o més, la funció retorna false.
      * @throws InvalidWordFormat quan alguna de les paraules del document a comparar no és UTF-8
      */
     @Override
     public boolean compare(Document document) throws InvalidWordFormat {
-        //retrieval of tfs and computation of cosinus Similarity
-        HashMap<String, Float> incomingVec = new HashMap<>();
-        Float dotProd = 0F, docEucledianNorm = 0F;
-        String w;
-        Float weight;
-        for (Map.Entry<String, Float> set : referenceVec.entrySet()) {
-            w = set.getKey();          //word
-            if (weightType == 1) weight = document.getWeight1(w);
-            else weight = document.getWeight2(w);
-            dotProd += set.getValue()*weight;   //dot product of the two vectors
-            docEucledianNorm += weight*weight;  //eucledian norm of the incoming document
-        }
+        // only the k most similar documents are kept
+        accumulate(heap, compared++, document);
+        // return status of the comparison list. Returns true as long as less than k documents have been compared
+        return compared < k;
+    }
+
+    /**
+     * @return Heap buit on es guarden els k documents més similars d'un tros de l'entrada.
+     */
+    @Override
+    public TopKHeap<Document> supplier() {
+        return new TopKHeap<>(k);
+    }
+
+    /**
+     * Calcula la similitud del document amb la referència i l'ofereix al heap.
+     * @param id Identificador del document, amb la mateixa similitud va primer el d'id més petit.
+     */
+    @Override
+    public void accumulate(TopKHeap<Document> partial, int id, Document document) {
+        SparseVector vector = document.getVector(weightType);
+        float cosSim = vector == null ? 0 : reference.dot(vector);
+        partial.offer(id, cosSim, document);
+    }
 
-        docEucledianNorm = (float)Math.sqrt(docEucledianNorm);
-        // determine the cosine similarity of the incoming document with respect to the current
-        float cosSim;
-        if (docEucledianNorm.equals(0F)) cosSim = 0F;
-        else cosSim = dotProd / (referenceVecEucledianNorm * docEucledianNorm);
+    /**
+     * @return Heap amb els k documents més similars dels dos heaps.
+     */
+    @Override
+    public TopKHeap<Document> combine(TopKHeap<Document> left, TopKHeap<Document> right) {
+        left.addAll(right);
+        return left;
+    }
 
-        Pair<Document, Float> newListEntry = new Pair<>(document, cosSim);
-        list.add(newListEntry);
-        // return status of the comparison list. Returns true as long as the list's capacity is below k
-        return list.size() < k;
+    /**
+     * @return Els documents del heap ordenats per similitud.
+     */
+    @Override
+    public LinkedList<Document> finish(TopKHeap<Document> partial) {
+        return partial.getSortedItems();
     }
 
     /**
@@ -168,6 +140,6 @@ public class SimilitudeComp extends Comparator<Document> {
      */
     @Override
     public LinkedList<Document> getList() {
-        return getSortedList();
+        return heap.getSortedItems();
     }
 }
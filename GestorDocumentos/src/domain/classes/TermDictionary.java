@@ -0,0 +1,82 @@
+package domain.classes;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+//Global dictionary of the normalized words of the corpus. Every word gets a dense int id the first time a document
+//with it is indexed, so the contents and the index store ids instead of their own copy of the word. The rest only
+//look words up, so the dictionary only grows with the indexed words, and it is cleared with the corpus.
+public class TermDictionary
+{
+    private static HashMap<String, Integer> ids = new HashMap<>();
+    private static ArrayList<String> terms = new ArrayList<>();
+    //It changes every time the dictionary is cleared, so the ids of older generations are not valid anymore
+    private static int generation = 0;
+
+    //Post: id of term, a new id is assigned if term was not in the dictionary
+    public static synchronized int getId(String term)
+    {
+        Integer id = ids.get(term);
+        if(id != null)
+            return id;
+
+        id = terms.size();
+        terms.add(term);
+        ids.put(term, id);
+        return id;
+    }
+
+    //Post: id of term, -1 if term is not in the dictionary
+    public static synchronized int lookup(String term)
+    {
+        Integer id = ids.get(term);
+        if(id == null)
+            return -1;
+        return id;
+    }
+
+    //Post: res[i] is the id of words[i], -1 if it is not in the dictionary. If intern is TRUE, new ids are assigned to
+    //the words that were not in it. The words with an id are replaced by the instance of the dictionary. The dictionary
+    //is locked once for all the words
+    public static synchronized void getIds(String[] words, int[] res, boolean intern)
+    {
+        for(int i = 0; i < words.length; i++)
+        {
+            Integer id = ids.get(words[i]);
+            if(id == null && intern)
+            {
+                id = terms.size();
+                terms.add(words[i]);
+                ids.put(words[i], id);
+            }
+            if(id != null)
+                words[i] = terms.get(id);
+            res[i] = id == null ? -1 : id;
+        }
+    }
+
+    //Pre: id has been assigned
+    public static synchronized String getTerm(int id)
+    {
+        return terms.get(id);
+    }
+
+    //Post: #words in the dictionary
+    public static synchronized int size()
+    {
+        return terms.size();
+    }
+
+    //Post: the dictionary is empty and the ids start from 0 again, in a new generation
+    public static synchronized void clear()
+    {
+        ids = new HashMap<>();
+        terms = new ArrayList<>();
+        generation++;
+    }
+
+    public static synchronized int getGeneration()
+    {
+        return generation;
+    }
+}
@@ -2,15 +2,215 @@ package domain.controllers;
 import domain.classes.*;
 import domain.classes.Comparator;
 import domain.exceptions.*;
+import domain.utils.Pair;
+import domain.utils.ResultCache;
+import domain.utils.RoaringBitmap;
+import domain.utils.ScoreAccumulator;
+import domain.utils.SortedIntSets;
+import domain.utils.SparseVector;
+import domain.utils.TopKHeap;
 
 import java.util.*;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
 
 public class DocumentCtrl
 {
-    //map<author, map<title, Doc> >
-    protected static HashMap<String, HashMap<String, Document> > documents = new HashMap<String, HashMap<String, Document> >();
-    protected static HashMap<String, LinkedList<Document>> words = new HashMap<>();
+    //map<author, map<title, id> >
+    protected static HashMap<String, HashMap<String, Integer> > documents = new HashMap<String, HashMap<String, Integer> >();
+    //Documents indexed by their id, in the order they were added. The position of a removed document is null until
+    //there are more removed positions than documents (see compact), a document whose content changes keeps its id
+    protected static ArrayList<Document> docsById = new ArrayList<>();
+    //The ids are renumbered once there are more than COMPACT_MIN_REMOVED removed positions, and more than documents
+    private static final int COMPACT_MIN_REMOVED = 1024;
+    //Sorted ids of the documents that contain every word, indexed by the id of the word (TermDictionary).
+    //null if no document contains the word
+    protected static ArrayList<PostingList> words = new ArrayList<>();
+    //Sorted ids of the documents that contain every word of the boolean searches that is not one of their words, like
+    //'hola' of 'hola-mundo' (see Content.getSubtermIds). Only for the candidates: tf is 0 and they are not in the df
+    protected static ArrayList<PostingList> subwords = new ArrayList<>();
     protected static int nDocs = 0;
+    //It changes every time nDocs changes, so every idf may have changed
+    private static int statsGeneration = 0;
+    //It changes every time a document is added, removed or changed, so the result of any search may have changed
+    private static long indexGeneration = 0;
+    //Results of the searches by their normalized request, valid while indexGeneration does not change. Its capacity
+    //is the total #documents of the cached results
+    public static final long DEFAULT_RESULT_CACHE_SIZE = 1 << 16;
+    private static final ResultCache<Document[]> resultCache = new ResultCache<>(DEFAULT_RESULT_CACHE_SIZE);
+
+    //If TRUE, the top-k searches skip the documents that cannot enter the result (MaxScore). Otherwise every document
+    //in the lists of the words is scored
+    private static boolean pruning = true;
+    //#documents whose similarity has been computed by the top-k searches
+    private static final AtomicLong scoredDocuments = new AtomicLong();
+    //#postings of an impact ordered list processed at once by the approximate queries
+    private static final int IMPACT_SEGMENT = 64;
+    //Pool where the top-k searches score shards of documents in parallel, null to search in the calling thread
+    private static ForkJoinPool pool = null;
+    //Minimum #ids of a shard, smaller shards cost more to schedule than to score
+    protected static int minShardSize = 4096;
+    //Upper bounds are multiplied by it so that rounding errors never prune a document that could enter the result
+    private static final float BOUND_SLACK = 1.0001f;
+
+    //If TRUE, the boolean searches only evaluate the documents that have the words of the expression (candidates).
+    //Otherwise every document is evaluated
+    private static boolean prefilter = true;
+    //If TRUE, the candidates of the boolean searches are bounded with bitmaps of the postings (DocumentBounds), which also
+    //bound the documents of a NOT and accept some documents without evaluating them. Otherwise they are the
+    //intersections and unions of the sorted ids of the postings, and a NOT does not restrict them
+    private static boolean bitmapCandidates = true;
+    //Documents with at least one sentence, the only ones where a boolean expression can comply. null if it has to be
+    //built again because documents have been added or removed
+    private static RoaringBitmap liveDocs = null;
+    //#documents evaluated by the boolean searches
+    private static final AtomicLong verifiedDocuments = new AtomicLong();
+    //#documents accepted by the boolean searches without evaluating them
+    private static final AtomicLong acceptedDocuments = new AtomicLong();
+    //Positional index of the sentences. If it is not null, the boolean searches only evaluate the candidate sentences
+    //of the documents instead of all their sentences
+    private static SentenceIndex sentenceIndex = null;
+
+    //Accumulators for the term at a time evaluation of the queries, one per thread
+    private static final ThreadLocal<ScoreAccumulator> accumulators = ThreadLocal.withInitial(ScoreAccumulator::new);
+
+    //The weights of the documents are computed lazily (tf * idf) with the df of 'words'
+    private static class CorpusIdf implements IdfSource
+    {
+        @Override
+        public float getIdf(int termId)
+        {
+            return DocumentCtrl.getIdf(termId);
+        }
+
+        @Override
+        public int getGeneration()
+        {
+            return statsGeneration;
+        }
+    }
+
+    //The boolean searches find their candidates with the postings of 'words' and 'subwords', the documents with all the
+    //terms, and plan their evaluation with their df. Stop words are not in them, so any document may contain them
+    private static class CorpusPostings implements CandidateIndex, BitmapIndex, SelectivitySource
+    {
+        //Post: df / #documents of term, -1 if it is a stop word or there are no documents
+        @Override
+        public double getSelectivity(String term)
+        {
+            if(nDocs == 0 || StopWordsReader.contains(term))
+                return -1;
+
+            return (double) getDf(term) / nDocs;
+        }
+
+        @Override
+        public RoaringBitmap getLive()
+        {
+            return getLiveDocs();
+        }
+
+        //Post: the AND of the bitmaps of the documents with each term, from the rarest to the most common one
+        @Override
+        public RoaringBitmap getPossible(String[] terms)
+        {
+            ArrayList<RoaringBitmap> bitmaps = new ArrayList<>();
+            for(String term : terms)
+            {
+                if(StopWordsReader.contains(term))
+                    continue;
+
+                int termId = TermDictionary.lookup(term);
+                PostingList list = getPostings(termId);
+                PostingList sub = getSubPostings(termId);
+                if(list == null && sub == null)
+                    return RoaringBitmap.EMPTY;
+                if(sub == null)
+                    bitmaps.add(list.toBitmap());
+                else if(list == null)
+                    bitmaps.add(sub.toBitmap());
+                else
+                    bitmaps.add(list.toBitmap().or(sub.toBitmap()));
+            }
+            if(bitmaps.isEmpty())
+                return null;
+
+            bitmaps.sort((a, b) -> Integer.compare(a.cardinality(), b.cardinality()));
+            RoaringBitmap res = bitmaps.get(0);
+            for(int i = 1; i < bitmaps.size() && !res.isEmpty(); i++)
+                res = res.and(bitmaps.get(i));
+            return res;
+        }
+
+        @Override
+        public int[] getCandidates(String[] terms, int[] offsets)
+        {
+            return getCandidates(new String[][]{terms}, null);
+        }
+
+        //Post: the documents with all the terms of all the leaves (offsets are ignored), intersecting the posting lists at
+        //once starting by the rarest one. The terms that are also part of other words are the union of both lists, and
+        //they are intersected afterwards. null if all the terms are stop words
+        @Override
+        public int[] getCandidates(String[][] terms, int[][] offsets)
+        {
+            ArrayList<PostingList> lists = new ArrayList<>();
+            ArrayList<int[]> unions = new ArrayList<>();
+            for(String[] leaf : terms)
+            {
+                for(String term : leaf)
+                {
+                    if(StopWordsReader.contains(term))
+                        continue;
+
+                    int termId = TermDictionary.lookup(term);
+                    PostingList list = getPostings(termId);
+                    PostingList sub = getSubPostings(termId);
+                    if(list == null && sub == null)
+                        return new int[0];
+                    if(sub == null)
+                        lists.add(list);
+                    else if(list == null)
+                        lists.add(sub);
+                    else
+                        unions.add(SortedIntSets.union(list.toArray(), sub.toArray()));
+                }
+            }
+            if(lists.isEmpty() && unions.isEmpty())
+                return null;
+
+            int[] res = lists.isEmpty() ? unions.remove(0) : PostingList.intersect(lists.toArray(new PostingList[0]));
+            for(int[] union : unions)
+                res = SortedIntSets.intersect(res, union);
+            return res;
+        }
+    }
+
+    private static final CorpusPostings corpusPostings = new CorpusPostings();
+
+    //Registered alerts (boolean statements) checked against every document that is added or whose content changes,
+    //indexed by the rarest words of the corpus they need
+    private static final Percolator alerts = new Percolator(corpusPostings);
+    //(id of the alert, document) for every document that has complied with an alert since the last pollAlerts, in
+    //the order they have been added. When there are MAX_PENDING_ALERTS the oldest ones are dropped, so that the queue
+    //does not grow while nobody polls it
+    private static LinkedList<Pair<Integer, Document>> pendingAlerts = new LinkedList<>();
+    private static final int MAX_PENDING_ALERTS = 1 << 16;
+    private static long droppedAlerts = 0;
+    //The pending alerts are numbered in the order they are added, firstAlert is the number of the first one
+    private static long firstAlert = 0;
+    //Documents removed (or whose content has changed) while there were pending alerts, with the number of the next
+    //alert at that moment. Their alerts before it are dropped lazily, instead of searching the queue on every removal
+    private static IdentityHashMap<Document, Long> removedAlerts = new IdentityHashMap<>();
+
+    static
+    {
+        Content.setIdfSource(new CorpusIdf());
+        BoolExprParser.setSelectivitySource(corpusPostings);
+    }
 
     private static boolean existsDocument(String author, String title)
     {
@@ -26,38 +226,165 @@ public class DocumentCtrl
     }
 
     //Pre: the document does not exist in the hashmap
-    private static void addDocumentToHashMap(Document doc)
+    private static void addDocumentToHashMap(String author, String title, int id)
     {
-        if(documents.get(doc.getAuthor()) != null)
-            documents.get(doc.getAuthor()).put(doc.getTitle(), doc);
+        if(documents.get(author) != null)
+            documents.get(author).put(title, id);
         else
         {
-            HashMap<String, Document> m = new HashMap<String, Document>();
-            m.put(doc.getTitle(), doc);
-            documents.put(doc.getAuthor(), m);
+            HashMap<String, Integer> m = new HashMap<String, Integer>();
+            m.put(title, id);
+            documents.put(author, m);
         }
     }
+
+    //Pre: the document {author, title} exists
+    //Post: the id of the document {author, title}
+    protected static int getId(String author, String title)
+    {
+        return documents.get(author).get(title);
+    }
     protected static float calculateIdf(int df)
     {
+        if(df == 0)
+            return 0;
+
         return (float)Math.log10((float)nDocs/df);
     }
 
-    //It updates all the weights of all documents
-    private static void updateWeights()
+    //Post: the list of documents that contain the word with id termId, null if there is none
+    private static PostingList getPostings(int termId)
+    {
+        if(termId < 0 || termId >= words.size())
+            return null;
+
+        return words.get(termId);
+    }
+
+    //Post: the list of documents that contain the word with id termId only as a part of other words, null if there is none
+    private static PostingList getSubPostings(int termId)
+    {
+        if(termId < 0 || termId >= subwords.size())
+            return null;
+
+        return subwords.get(termId);
+    }
+
+    //Post: the list of documents that contain word, null if there is none
+    protected static PostingList getPostings(String word)
     {
-        for(Map.Entry<String, LinkedList<Document>> entry : words.entrySet())
+        return getPostings(TermDictionary.lookup(word));
+    }
+
+    //Post: #documents that contain word
+    protected static int getDf(String word)
+    {
+        PostingList list = getPostings(word);
+        if(list == null)
+            return 0;
+
+        return list.size();
+    }
+
+    //Post: idf of the word with id termId in the current corpus, 0 if no document contains it
+    private static float getIdf(int termId)
+    {
+        PostingList list = getPostings(termId);
+        if(list == null)
+            return 0;
+
+        return calculateIdf(list.size());
+    }
+
+    //Pre: the document does not exist
+    //Post: the document has a new id, it is in 'documents' and in the list of every word it contains, and the alerts it
+    //complies with are pending. nDocs is not updated
+    private static void index(Document doc)
+    {
+        int id = docsById.size();
+        docsById.add(doc);
+        index(doc, id);
+        percolate(doc);
+    }
+
+    //Pre: docsById.get(id) is doc, which is not in the lists of the words
+    //Post: doc is in 'documents' and in the list of every word it contains with id id. Its words are added to the
+    //TermDictionary, which only grows with the words of the indexed documents
+    private static void index(Document doc, int id)
+    {
+        doc.intern();
+        liveDocs = null;
+        indexGeneration++;
+        if(sentenceIndex != null)
+            sentenceIndex.add(id, doc.getSentenceTerms());
+
+        //For each word of the document, we add or update the list of docs where it appears
+        for(int w : doc.getTermIds())
         {
-            String word = entry.getKey();
-            LinkedList<Document> list = entry.getValue();
-            int df = list.size();
+            while(words.size() <= w)
+                words.add(null);
 
-            ListIterator<Document> it = list.listIterator(0);
-            while(it.hasNext())
+            PostingList l = words.get(w);
+            if(l == null)
             {
-                Document doc = it.next();
-                doc.updateWeight(word, calculateIdf(df));
+                //The word w does not exist in any other document
+                l = new PostingList();
+                words.set(w, l);
+            }
+            //Ids are assigned in increasing order, so the id is usually appended at the end of the list
+            l.add(id, doc.getTf(w, 1), doc.getTf(w, 2));
+        }
+        for(int w : doc.getSubtermIds())
+        {
+            while(subwords.size() <= w)
+                subwords.add(null);
+
+            if(subwords.get(w) == null)
+                subwords.set(w, new PostingList());
+            subwords.get(w).add(id);
+        }
+
+        //We add the document in documents
+        addDocumentToHashMap(doc.getAuthor(), doc.getTitle(), id);
+    }
+
+    //Post: the alerts that doc complies with are pending
+    private static void percolate(Document doc)
+    {
+        for(int alert : alerts.percolate(doc))
+        {
+            if(pendingAlerts.size() == MAX_PENDING_ALERTS)
+            {
+                if(!isRemovedAlert(pendingAlerts.removeFirst(), firstAlert++))
+                    droppedAlerts++;
             }
+            pendingAlerts.add(new Pair<>(alert, doc));
+        }
+    }
+
+    //Post: TRUE if the pending alert with number n belongs to a document removed after it
+    private static boolean isRemovedAlert(Pair<Integer, Document> alert, long n)
+    {
+        Long removed = removedAlerts.get(alert.getSecond());
+        return removed != null && n < removed;
+    }
+
+    //Post: the pending alerts of the removed documents are not in the queue
+    private static void dropRemovedAlerts()
+    {
+        if(removedAlerts.isEmpty())
+            return;
+
+        LinkedList<Pair<Integer, Document>> alive = new LinkedList<>();
+        long n = firstAlert;
+        for(Pair<Integer, Document> alert : pendingAlerts)
+        {
+            if(!isRemovedAlert(alert, n++))
+                alive.add(alert);
         }
+        firstAlert = n - alive.size();
+        pendingAlerts = alive;
+        removedAlerts = new IdentityHashMap<>();
     }
 
     protected static boolean add(Document doc)
@@ -65,36 +392,39 @@ public class DocumentCtrl
         if(existsDocument(doc.getAuthor(), doc.getTitle()))
             return false;
 
+        index(doc);
         nDocs++;
-        //For each word of the document, we add or update the list of docs where it appears
-        String[] docWords = doc.getWords();
-        for(int i = 0; i < docWords.length; i++)
+        statsGeneration++;
+
+        return true;
+    }
+
+    //Post: every document of docs that did not exist (neither in the corpus nor earlier in docs) has been added.
+    //The result has, in the same order as docs, TRUE if the document has been added and FALSE otherwise
+    public static LinkedList<Boolean> addAll(Collection<Document> docs)
+    {
+        LinkedList<Boolean> added = new LinkedList<>();
+        int n = 0;
+
+        for(Document doc : docs)
         {
-            String w = docWords[i];
-            if(words.containsKey(w))
+            if(existsDocument(doc.getAuthor(), doc.getTitle()))
             {
-                //The word w already exists in other documents
-                //we add the doc to the list of documents that contain w
-                words.get(w).add(doc);
-
+                added.add(false);
             }
             else
             {
-                //The word w does not exist in any other document
-
-                LinkedList<Document> l = new LinkedList<>();
-                l.add(doc);
-                words.put(w, l);
-
+                index(doc);
+                n++;
+                added.add(true);
             }
         }
 
-        //We add the document in documents
-        addDocumentToHashMap(doc);
-
-        updateWeights();
+        //The statistics of the corpus are updated once for the whole batch
+        nDocs += n;
+        statsGeneration++;
 
-        return true;
+        return added;
     }
 
     //Pre: format is valid
@@ -106,33 +436,78 @@ public class DocumentCtrl
         return add(doc);
     }
 
+    //Post: there are no documents, and the TermDictionary is empty
+    public static void clear()
+    {
+        TermDictionary.clear();
+        documents = new HashMap<>();
+        docsById = new ArrayList<>();
+        words = new ArrayList<>();
+        subwords = new ArrayList<>();
+        if(sentenceIndex != null)
+            sentenceIndex = new SentenceIndex();
+        liveDocs = null;
+        pendingAlerts = new LinkedList<>();
+        removedAlerts = new IdentityHashMap<>();
+        nDocs = 0;
+        statsGeneration++;
+        indexGeneration++;
+    }
+
     //The document {author, title} must exist
-    //Post: the document {author, title} has been removed
+    //Post: the document {author, title} has been removed, and its pending alerts too
     public static void remove(String author, String title) throws DocumentNotFound
     {
         if(!existsDocument(author, title))
             throw new DocumentNotFound(author, title);
         nDocs--;
+        statsGeneration++;
 
-        //For each word of the document, we remove from the hashmap 'words' the document where it appears
-        Document doc = documents.get(author).get(title);
-        String[] docWords = doc.getWords();
-        for(int i = 0; i < docWords.length; i++)
-        {
-            words.get(docWords[i]).remove(doc);
-
-            //If it was the only document containing docWord[i], then we remove the word from 'words'
-            if(words.get(docWords[i]).size() == 0)
-                words.remove(docWords[i]);
-        }
+        int id = getId(author, title);
+        unindex(id);
 
         //We remove the document from documents
         documents.get(author).remove(title);
         if(documents.get(author).isEmpty())
             documents.remove(author);
+        docsById.set(id, null);
+        if(docsById.size() - nDocs > Math.max(nDocs, COMPACT_MIN_REMOVED))
+            compact();
+        else
+            compactSentenceIndex();
+    }
+
+    //Post: the document with id id is not in the lists of the words, and its alerts are not pending
+    private static void unindex(int id)
+    {
+        //For each word of the document, we remove from the hashmap 'words' the document where it appears
+        Document doc = docsById.get(id);
+        for(int w : doc.getTermIds())
+        {
+            words.get(w).remove(id);
 
-        updateWeights();
+            //If it was the only document containing the word w, then we remove the word from 'words'
+            if(words.get(w).isEmpty())
+                words.set(w, null);
+        }
+        for(int w : doc.getSubtermIds())
+        {
+            subwords.get(w).remove(id);
+            if(subwords.get(w).isEmpty())
+                subwords.set(w, null);
+        }
 
+        if(sentenceIndex != null)
+            sentenceIndex.remove(id, doc.getSentenceTerms());
+        liveDocs = null;
+        indexGeneration++;
+        if(!pendingAlerts.isEmpty())
+        {
+            removedAlerts.put(doc, firstAlert + pendingAlerts.size());
+            //The queue is only filtered after as many removals as pending alerts
+            if(removedAlerts.size() > pendingAlerts.size())
+                dropRemovedAlerts();
+        }
     }
 
     //Pre: The document must exist, author != newAuthor
@@ -146,13 +521,15 @@ public class DocumentCtrl
             return false;
 
         //We pick up the document in doc, then we remove it from the documents of 'author'
-        Document doc = documents.get(author).get(title);
+        int id = getId(author, title);
+        Document doc = docsById.get(id);
         documents.get(author).remove(title);
 
         doc.setAuthor(newAuthor);
+        indexGeneration++;
 
         //We add the document once again with the new author
-        addDocumentToHashMap(doc);
+        addDocumentToHashMap(newAuthor, title, id);
 
         if(documents.get(author).isEmpty())
             documents.remove(author);
@@ -169,11 +546,13 @@ public class DocumentCtrl
         if(existsDocument(author, newTitle))
             return false;
 
-        Document doc = documents.get(author).get(title);
+        int id = getId(author, title);
+        Document doc = docsById.get(id);
         documents.get(author).remove(title);
 
         doc.setTitle(newTitle);
-        addDocumentToHashMap(doc);
+        indexGeneration++;
+        addDocumentToHashMap(author, newTitle, id);
 
         return true;
     }
@@ -185,11 +564,45 @@ public class DocumentCtrl
         if(!existsDocument(author, title))
             throw new DocumentNotFound(author, title);
 
-        String format = documents.get(author).get(title).getFormat();
+        //The document is indexed again with the same id, so editing a document does not leave removed positions
+        int id = getId(author, title);
+        Document doc = new Document(author, title, sentences, docsById.get(id).getFormat());
+        unindex(id);
+        docsById.set(id, doc);
+        index(doc, id);
+        percolate(doc);
+        statsGeneration++;
+        compactSentenceIndex();
+    }
+
+    //Post: the documents have consecutive ids from 0 in the same order, so the removed positions do not make the
+    //searches slower. Everything indexed by id is built again
+    private static void compact()
+    {
+        ArrayList<Document> live = new ArrayList<>(nDocs);
+        for(Document doc : docsById)
+        {
+            if(doc != null)
+                live.add(doc);
+        }
 
-        remove(author, title);
-        add(author, title, sentences, format);
+        documents = new HashMap<>();
+        docsById = new ArrayList<>(live);
+        words = new ArrayList<>();
+        subwords = new ArrayList<>();
+        boolean positional = sentenceIndex != null;
+        sentenceIndex = null;
+        for(int id = 0; id < docsById.size(); id++)
+            index(docsById.get(id), id);
+        if(positional)
+            sentenceIndex = buildSentenceIndex();
+    }
 
+    //Post: the positional index is built again if most of its sentences belong to removed documents or old contents
+    private static void compactSentenceIndex()
+    {
+        if(sentenceIndex != null && sentenceIndex.getRemovedSentences() > Math.max(sentenceIndex.getSentences(), COMPACT_MIN_REMOVED))
+            sentenceIndex = buildSentenceIndex();
     }
 
     //Pre: format must be valid, and document {author, title} must exist
@@ -204,33 +617,44 @@ public class DocumentCtrl
         if(!existsDocument(author, title))
             throw new DocumentNotFound(author, title);
 
-        documents.get(author).get(title).setFormat(format);
+        getDocument(author, title).setFormat(format);
+        indexGeneration++;
     }
 
     //Pre: Document {author, title} must exist, weightType is 1 or 2
+    //Post: the k documents most similar to {author, title}, the most similar first. If fewer than k documents have any word
+    //in common with it, the list is completed with the other documents (similarity 0) in the order they were added
     public static LinkedList<Document> searchBySimilarity(String author, String title, int k, int weightType) throws InvalidWordFormat, InvalidWeightType, DocumentNotFound, InvalidExpression {
+        return searchBySimilarity(author, title, k, weightType, pool);
+    }
+
+    //Pre: Document {author, title} must exist, weightType is 1 or 2
+    //Post: like searchBySimilarity(author, title, k, weightType), scoring the shards in pool instead of the global pool (sequentially if it is null)
+    public static LinkedList<Document> searchBySimilarity(String author, String title, int k, int weightType, ForkJoinPool pool) throws InvalidWeightType, DocumentNotFound {
         if(!isWeightValid(weightType))
             throw new InvalidWeightType(weightType);
 
         if(!existsDocument(author, title))
             throw new DocumentNotFound(author, title);
 
-        Document docReference = documents.get(author).get(title);
-        Comparator<Document> comp = new SimilitudeComp(docReference, k, weightType);
+        int id = getId(author, title);
+        String key = "S" + weightType + " " + k + " " + id;
+        long generation = indexGeneration;
+        LinkedList<Document> res = getCached(key, generation);
+        if(res != null)
+            return res;
 
-        return searchBySimilarity(comp, docReference);
+        LinkedList<Document> similar = searchTopK(getDocument(author, title).getVector(weightType), k, weightType, id, pool);
+        return putCached(key, generation, fillTopK(similar, k, id));
     }
 
     protected static LinkedList<Document> searchBySimilarity(Comparator<Document> comp, Document docReference) throws InvalidWordFormat, InvalidExpression {
         //iterate and compare through all documents, except the reference document
-        for(HashMap<String, Document> h : documents.values())
+        for(Document doc : docsById)
         {
-            for(Document doc : h.values())
+            if(doc != null && !docReference.equals(doc))
             {
-                if(!docReference.equals(doc))
-                {
-                    comp.compare(doc);
-                }
+                comp.compare(doc);
             }
         }
 
@@ -240,100 +664,1223 @@ public class DocumentCtrl
     //Pre: query only contains words (in lowercase) without any punctuation mark. ex: hola que tal, weightType is 1 or 2
     //Post: throws exception if any of the words has any character other than a-z
     public static LinkedList<Document> searchByQuery(String query, int k, int weightType) throws InvalidWeightType, InvalidWordFormat, InvalidExpression {
+        return searchByQuery(query, k, weightType, pool);
+    }
+
+    //Pre: query only contains words (in lowercase) without any punctuation mark. ex: hola que tal, weightType is 1 or 2
+    //Post: like searchByQuery(query, k, weightType), scoring the shards in pool instead of the global pool (sequentially if it is null)
+    public static LinkedList<Document> searchByQuery(String query, int k, int weightType, ForkJoinPool pool) throws InvalidWeightType, InvalidWordFormat, InvalidExpression {
         if(!isWeightValid(weightType))
             throw new InvalidWeightType(weightType);
 
-        //We calculate the weight of every word in query
-        LinkedList<String> l = new LinkedList<>();
-        l.add(query);
-        Content queryContent = new Content(l);
+        //The query is normalized as its vector: the same words in any order and with any spacing are the same request
+        SparseVector vector = getQueryVector(query, weightType);
+        StringBuilder key = new StringBuilder("Q").append(weightType).append(' ').append(k);
+        for(int i = 0; i < vector.size(); i++)
+            key.append(' ').append(vector.getId(i)).append(':').append(Float.floatToIntBits(vector.getWeight(i)));
+        long generation = indexGeneration;
+        LinkedList<Document> res = getCached(key.toString(), generation);
+        if(res != null)
+            return res;
+
+        return putCached(key.toString(), generation, searchTopK(vector, k, weightType, -1, pool));
+    }
 
-        HashMap<String, Float> queryVector = new HashMap<>();
-        String[] queryWords = queryContent.getWords();
-        for(String w : queryWords)
+    //Pre: query only contains words (in lowercase) without any punctuation mark, weightType is 1 or 2
+    //Post: approximation of searchByQuery(query, k, weightType). The lists of the words are traversed in decreasing order
+    //of impact, segment by segment (the segment with the greatest contribution first), until postingsBudget postings have
+    //been processed or timeBudget nanoseconds have passed. A budget <= 0 means no limit, with no limit the result is the same
+    //as searchByQuery except for rounding
+    public static LinkedList<Document> searchByQuery(String query, int k, int weightType, int postingsBudget, long timeBudget) throws InvalidWeightType, InvalidWordFormat, InvalidExpression {
+        long start = System.nanoTime();
+        if(!isWeightValid(weightType))
+            throw new InvalidWeightType(weightType);
+
+        SparseVector vector = getQueryVector(query, weightType);
+        int n = vector.size();
+        ImpactList[] lists = new ImpactList[n];
+        float[] weights = new float[n];
+        int[] positions = new int[n];
+        for(int i = 0; i < n; i++)
         {
-            //Idf of the word
-            int df = 0;
-            if(words.containsKey(w))
-                df = words.get(w).size();
+            PostingList list = getPostings(vector.getId(i));
+            weights[i] = vector.getWeight(i) * getIdf(vector.getId(i));
+            if(list != null && weights[i] != 0)
+                lists[i] = getImpactList(list, weightType);
+        }
 
-            float idf = calculateIdf(df);
+        ScoreAccumulator acc = accumulators.get();
+        acc.reset(docsById.size());
+        long processed = 0;
+        while(postingsBudget <= 0 || processed < postingsBudget)
+        {
+            if(timeBudget > 0 && System.nanoTime() - start >= timeBudget)
+                break;
 
-            queryContent.updateWeight(w, idf);
+            //The segment whose first (greatest) contribution is the greatest
+            int best = -1;
+            float bestContribution = 0;
+            for(int i = 0; i < n; i++)
+            {
+                if(lists[i] != null && positions[i] < lists[i].size())
+                {
+                    float contribution = weights[i] * lists[i].getImpact(positions[i]);
+                    if(contribution > bestContribution)
+                    {
+                        best = i;
+                        bestContribution = contribution;
+                    }
+                }
+            }
+            if(best < 0)
+                break;
+
+            int end = Math.min(positions[best] + IMPACT_SEGMENT, lists[best].size());
+            if(postingsBudget > 0)
+                end = (int)Math.min(end, positions[best] + postingsBudget - processed);
+            for(int j = positions[best]; j < end; j++)
+                acc.add(lists[best].getId(j), weights[best] * lists[best].getImpact(j));
+            processed += end - positions[best];
+            positions[best] = end;
+        }
 
-            if(weightType == 1)
-                queryVector.put(w, queryContent.getWeight1(w));
-            else
-                queryVector.put(w, queryContent.getWeight2(w));
+        //Impacts are already divided by the norms of the documents
+        TopKHeap<Document> heap = new TopKHeap<>(k);
+        for(int i = 0; i < acc.size(); i++)
+        {
+            int id = acc.getId(i);
+            float score = vector.getNorm() == 0 ? 0 : acc.getScore(id) / vector.getNorm();
+            if(score > 0)
+                heap.offer(id, score, docsById.get(id));
+        }
+        scoredDocuments.addAndGet(acc.size());
+
+        return heap.getSortedItems();
+    }
+
+    //Pre: query only contains words (in lowercase) without any punctuation mark, weightType is 1 or 2
+    //Post: #documents with a positive cosine similarity with query of at least threshold, the ones that
+    //searchByQuery(query, k, weightType) returns with that similarity for a large enough k. The words are sorted by
+    //upper bound and the ones whose bounds together cannot reach threshold are non-essential (if pruning is enabled):
+    //only the documents in the lists of the essential words are accumulated (term at a time), and the lists of the
+    //non-essential ones are only looked up, in id order, for the documents that can still reach threshold
+    public static int countByQuery(String query, float threshold, int weightType) throws InvalidWeightType, InvalidWordFormat
+    {
+        if(!isWeightValid(weightType))
+            throw new InvalidWeightType(weightType);
+
+        SparseVector vector = getQueryVector(query, weightType);
+        int n = vector.size();
+        PostingList[] lists = new PostingList[n];
+        float[] weights = new float[n];
+        float[] bounds = new float[n];
+        for(int i = 0; i < n; i++)
+        {
+            lists[i] = getPostings(vector.getId(i));
+            weights[i] = vector.getWeight(i) * getIdf(vector.getId(i));
+            if(lists[i] != null && weights[i] != 0)
+                bounds[i] = weights[i] * getMaxImpact(lists[i], weightType) / vector.getNorm() * BOUND_SLACK;
+        }
+
+        //The words with the smallest bounds are non-essential while the sum of their bounds is lower than threshold
+        float[] sorted = bounds.clone();
+        Arrays.sort(sorted);
+        float nonEssentialBound = 0;
+        int nonEssential = 0;
+        while(pruning && nonEssential < n && nonEssentialBound + sorted[nonEssential] < threshold)
+            nonEssentialBound += sorted[nonEssential++];
+        //Words with the same bound as the greatest non-essential one may be essential or not, only the bound decides
+        float maxNonEssential = nonEssential == 0 ? -1 : sorted[nonEssential - 1];
+        int tied = 0;
+        for(int j = 0; j < nonEssential; j++)
+        {
+            if(sorted[j] == maxNonEssential)
+                tied++;
         }
 
-        Comparator<Document> comp = new SimilitudeComp(queryVector, k, weightType);
+        boolean[] essential = new boolean[n];
+        for(int i = 0; i < n; i++)
+        {
+            if(bounds[i] > maxNonEssential)
+                essential[i] = true;
+            else if(bounds[i] == maxNonEssential && tied-- <= 0)
+                essential[i] = true;
+        }
 
-        //iterate and compare through all documents
-        for(HashMap<String, Document> h : documents.values())
+        ScoreAccumulator acc = accumulators.get();
+        acc.reset(docsById.size());
+        for(int i = 0; i < n; i++)
         {
-            for(Document doc : h.values())
+            if(!essential[i] || lists[i] == null || weights[i] == 0)
+                continue;
+
+            for(int j = 0; j < lists[i].rawSize(); j++)
             {
-                comp.compare(doc);
+                if(!lists[i].isRemoved(j))
+                    acc.add(lists[i].getId(j), weights[i] * lists[i].getTf(j, weightType));
             }
         }
 
-        return comp.getList();
-    }
+        int count = 0;
+        long scored = 0;
+        //Documents that can still reach threshold, whose non-essential lists are looked up in id order
+        int[] candidates = new int[nonEssential > 0 ? acc.size() : 0];
+        int nCandidates = 0;
+        for(int c = 0; c < acc.size(); c++)
+        {
+            int id = acc.getId(c);
+            float norm = vector.getNorm() * docsById.get(id).getNorm(weightType);
+            if(norm == 0)
+                continue;
 
-    //Pre: Statement is valid
+            if(nonEssential > 0)
+            {
+                if(acc.getScore(id) / norm * BOUND_SLACK + nonEssentialBound >= threshold)
+                    candidates[nCandidates++] = id;
+                continue;
+            }
 
-    public static LinkedList<Document> searchByBooleanStatement(String statement) throws InvalidWordFormat, InvalidExpression {
-        Comparator<Document> comp = new BoolExpressionComp(statement);
+            float score = cosine(acc.getScore(id), vector.getNorm(), docsById.get(id).getNorm(weightType));
+            if(score > 0 && score >= threshold)
+                count++;
+            scored++;
+        }
 
-        for(HashMap<String, Document> h : documents.values())
+        Arrays.sort(candidates, 0, nCandidates);
+        int[] positions = new int[n];
+        for(int c = 0; c < nCandidates; c++)
         {
-            for(Document doc : h.values())
+            int id = candidates[c];
+            //The dot product is added again in the same order as in scoreAll, so the similarity is exactly the same
+            float dotProd = 0;
+            for(int i = 0; i < n; i++)
             {
-                comp.compare(doc);
+                if(lists[i] == null || weights[i] == 0)
+                    continue;
+
+                positions[i] = lists[i].advance(positions[i], id);
+                if(positions[i] < lists[i].rawSize() && lists[i].getId(positions[i]) == id)
+                    dotProd += weights[i] * lists[i].getTf(positions[i], weightType);
             }
+
+            float score = cosine(dotProd, vector.getNorm(), docsById.get(id).getNorm(weightType));
+            if(score > 0 && score >= threshold)
+                count++;
+            scored++;
         }
+        scoredDocuments.addAndGet(scored);
 
-        return comp.getList();
+        return count;
     }
 
-    //Post: exception if the author does not exist, otherwise the result is a list of the titles
-    public static LinkedList<String> getTitlesByAuthor(String author) throws AuthorNotFound
+    //Pre: weightType is 1 or 2
+    //Post: the documents of list sorted by decreasing tf/norm. It is only built again when the idfs change
+    private static ImpactList getImpactList(PostingList list, int weightType)
     {
-        if(!documents.containsKey(author))
-            throw new AuthorNotFound(author);
+        ImpactList impactList = list.getImpactList(weightType, statsGeneration);
+        if(impactList == null)
+        {
+            //Impacts are positive, so the order of their bits is the order of the floats. The lower half of every key
+            //makes the smallest id go first among equal impacts when the keys are traversed backwards
+            long[] keys = new long[list.size()];
+            int n = 0;
+            for(int j = 0; j < list.rawSize(); j++)
+            {
+                if(list.isRemoved(j))
+                    continue;
 
-        Set<String> set = documents.get(author).keySet();
+                float norm = docsById.get(list.getId(j)).getNorm(weightType);
+                float impact = norm == 0 ? 0 : list.getTf(j, weightType) / norm;
+                keys[n++] = ((long)Float.floatToIntBits(impact) << 32) | (Integer.MAX_VALUE - list.getId(j));
+            }
+            Arrays.sort(keys, 0, n);
 
-        return new LinkedList<>(set);
+            int[] ids = new int[n];
+            float[] impacts = new float[n];
+            for(int j = 0; j < n; j++)
+            {
+                long key = keys[n - 1 - j];
+                ids[j] = Integer.MAX_VALUE - (int)(key & 0xffffffffL);
+                impacts[j] = Float.intBitsToFloat((int)(key >>> 32));
+            }
+
+            impactList = new ImpactList(ids, impacts, statsGeneration);
+            list.setImpactList(weightType, impactList);
+        }
+
+        return impactList;
     }
 
-    //Post: if the document does not exist exception thrown, the document is returned otherwise
-    public static Document getDocument(String author, String title) throws DocumentNotFound
+    public static void setPruning(boolean enabled)
     {
-        if(!existsDocument(author, title))
-            throw new DocumentNotFound(author, title);
+        pruning = enabled;
+    }
 
-        return documents.get(author).get(title);
+    public static boolean isPruning()
+    {
+        return pruning;
     }
 
+    public static void setPrefilter(boolean enabled)
+    {
+        prefilter = enabled;
+    }
 
-    //Post: prefix "" returns all the authors
-    public static LinkedList<String> searchByAuthorPrefix(String prefix) throws InvalidWordFormat, InvalidExpression {
+    public static boolean isPrefilter()
+    {
+        return prefilter;
+    }
 
-        if(prefix.equals(""))
-            return new LinkedList<String>(documents.keySet());
+    public static void setBitmapCandidates(boolean enabled)
+    {
+        bitmapCandidates = enabled;
+    }
 
-        Comparator<String> comp = new PrefixComparator(prefix);
+    public static boolean isBitmapCandidates()
+    {
+        return bitmapCandidates;
+    }
 
-        Set<String> authors = documents.keySet();
+    //Post: the documents with at least one sentence, built again only after documents have been added or removed
+    private static RoaringBitmap getLiveDocs()
+    {
+        RoaringBitmap live = liveDocs;
+        if(live == null)
+        {
+            int[] ids = new int[docsById.size()];
+            int n = 0;
+            for(int id = 0; id < docsById.size(); id++)
+            {
+                Document doc = docsById.get(id);
+                if(doc != null && !doc.getSentences().isEmpty())
+                    ids[n++] = id;
+            }
+            live = RoaringBitmap.of(ids, n).runOptimize();
+            liveDocs = live;
+        }
+        return live;
+    }
 
-        for(String author : authors)
+    //Post: if enabled, the sentences of the corpus are indexed with the positions of their words, and kept indexed when
+    //documents are added or removed. Otherwise the index is dropped
+    public static void setPositionalIndex(boolean enabled)
+    {
+        if(!enabled)
         {
-            comp.compare(author);
+            sentenceIndex = null;
+            return;
         }
+        if(sentenceIndex != null)
+            return;
 
-        return comp.getList();
+        sentenceIndex = buildSentenceIndex();
+    }
+
+    //Post: a positional index of the sentences of the corpus
+    private static SentenceIndex buildSentenceIndex()
+    {
+        SentenceIndex index = new SentenceIndex();
+        for(int id = 0; id < docsById.size(); id++)
+        {
+            if(docsById.get(id) != null)
+                index.add(id, docsById.get(id).getSentenceTerms());
+        }
+        return index;
+    }
+
+    public static boolean isPositionalIndex()
+    {
+        return sentenceIndex != null;
+    }
+
+    //Post: approximate #bytes of the positional index, 0 if it is disabled
+    public static long getPositionalIndexBytes()
+    {
+        return sentenceIndex == null ? 0 : sentenceIndex.getBytes();
+    }
+
+    //Post: #documents evaluated by the boolean searches so far
+    public static long getVerifiedDocuments()
+    {
+        return verifiedDocuments.get();
+    }
+
+    //Post: #bytes of the ids of the posting lists with at least minDf documents, as sorted arrays ([0]) and as the bitmaps
+    //of the boolean searches ([1])
+    public static long[] getPostingsBytes(int minDf)
+    {
+        long[] res = new long[2];
+        for(PostingList list : words)
+        {
+            if(list != null && list.size() >= minDf)
+            {
+                res[0] += 4L * list.size();
+                res[1] += list.toBitmap().getSizeInBytes();
+            }
+        }
+        return res;
+    }
+
+    //Post: #documents accepted by the boolean searches without evaluating them so far
+    public static long getAcceptedDocuments()
+    {
+        return acceptedDocuments.get();
+    }
+
+    //Post: #documents whose similarity has been computed by the top-k searches so far
+    public static long getScoredDocuments()
+    {
+        return scoredDocuments.get();
+    }
+
+    //Post: the searches cache up to capacity documents of results (0 disables the cache and empties it)
+    public static void setResultCacheSize(long capacity)
+    {
+        resultCache.setCapacity(capacity);
+    }
+
+    public static long getResultCacheSize()
+    {
+        return resultCache.getCapacity();
+    }
+
+    //Post: generation of the index, it changes every time a document is added, removed or changed
+    public static long getIndexGeneration()
+    {
+        return indexGeneration;
+    }
+
+    //Post: #searches whose result was in the cache
+    public static long getCacheHits()
+    {
+        return resultCache.getHits();
+    }
+
+    //Post: #searches whose result was not in the cache, or was computed before the last change of the index
+    public static long getCacheMisses()
+    {
+        return resultCache.getMisses();
+    }
+
+    //Post: #results removed from the cache to make room for other ones
+    public static long getCacheEvictions()
+    {
+        return resultCache.getEvictions();
+    }
+
+    //Post: the searches use pool to score shards of documents in parallel, or the calling thread if pool is null
+    public static void setPool(ForkJoinPool pool)
+    {
+        DocumentCtrl.pool = pool;
+    }
+
+    public static ForkJoinPool getPool()
+    {
+        return pool;
+    }
+
+    //Pre: weightType is 1 or 2
+    //Post: the k documents, except the one with id excludedId, with the greatest positive cosine similarity with vector, the most similar first.
+    //If pool is not null, the ids are split in shards that are scored in parallel in pool, each one with its own heap
+    private static LinkedList<Document> searchTopK(SparseVector vector, int k, int weightType, int excludedId, ForkJoinPool pool)
+    {
+        TopKHeap<Document> heap;
+        if(pool == null || pool.getParallelism() <= 1)
+            heap = scoreShard(vector, k, weightType, excludedId, 0, docsById.size());
+        else
+        {
+            //A few shards per thread, so that threads that finish early can steal work
+            int shardSize = Math.max(minShardSize, docsById.size() / (4 * pool.getParallelism()) + 1);
+            heap = pool.invoke(new ShardSearch(vector, k, weightType, excludedId, 0, docsById.size(), shardSize));
+        }
+
+        return heap.getSortedItems();
+    }
+
+    //Pre: res has the documents with a positive similarity, at most k, and the document with id excludedId exists
+    //Post: res, completed up to k documents with the ones with similarity 0 (not in res), except the one with id excludedId,
+    //in id order. The heaps only keep positive scores, so that the documents without any word of the vector are not scored.
+    //Only the searches by similarity are completed, the searches by query return the documents with some word of the query
+    private static LinkedList<Document> fillTopK(LinkedList<Document> res, int k, int excludedId)
+    {
+        if(res.size() >= k || res.size() >= nDocs - 1)
+            return res;
+
+        Set<Document> found = Collections.newSetFromMap(new IdentityHashMap<>());
+        found.addAll(res);
+        for(int id = 0; id < docsById.size() && res.size() < k; id++)
+        {
+            Document doc = docsById.get(id);
+            if(doc != null && id != excludedId && !found.contains(doc))
+                res.add(doc);
+        }
+        return res;
+    }
+
+    //Post: heap with the k documents with id in [lo, hi), except excludedId, with the greatest positive cosine similarity with vector
+    private static TopKHeap<Document> scoreShard(SparseVector vector, int k, int weightType, int excludedId, int lo, int hi)
+    {
+        TopKHeap<Document> heap = new TopKHeap<>(k);
+        if(pruning)
+            scoreMaxScore(vector, weightType, excludedId, lo, hi, heap);
+        else
+            scoreAll(vector, weightType, excludedId, lo, hi, heap);
+
+        return heap;
+    }
+
+    //Scores the ids in [lo, hi) splitting them in halves until they are at most shardSize. The heaps of the halves are
+    //merged, ties are broken by id, so the result does not depend on the shards
+    private static class ShardSearch extends RecursiveTask<TopKHeap<Document>>
+    {
+        private static final long serialVersionUID = 1L;
+        private final SparseVector vector;
+        private final int k, weightType, excludedId, lo, hi, shardSize;
+
+        ShardSearch(SparseVector vector, int k, int weightType, int excludedId, int lo, int hi, int shardSize)
+        {
+            this.vector = vector;
+            this.k = k;
+            this.weightType = weightType;
+            this.excludedId = excludedId;
+            this.lo = lo;
+            this.hi = hi;
+            this.shardSize = shardSize;
+        }
+
+        @Override
+        protected TopKHeap<Document> compute()
+        {
+            if(hi - lo <= shardSize)
+                return scoreShard(vector, k, weightType, excludedId, lo, hi);
+
+            int mid = (lo + hi) >>> 1;
+            ShardSearch left = new ShardSearch(vector, k, weightType, excludedId, lo, mid, shardSize);
+            left.fork();
+            TopKHeap<Document> right = new ShardSearch(vector, k, weightType, excludedId, mid, hi, shardSize).compute();
+            TopKHeap<Document> heap = left.join();
+            heap.addAll(right);
+            return heap;
+        }
+    }
+
+    //Post: comp applied to the not null items, in order, with its position in items as id. If pool is not null, the
+    //positions are split with a Spliterator in parts that are accumulated in parallel in pool and combined in order,
+    //so the result is the same as the sequential one
+    protected static <T, A> LinkedList<T> collect(MergeableComparator<T, A> comp, List<T> items, ForkJoinPool pool) throws InvalidWordFormat, InvalidExpression
+    {
+        Spliterator.OfInt ids = IntStream.range(0, items.size()).spliterator();
+        if(pool == null || pool.getParallelism() <= 1)
+            return comp.finish(accumulate(comp, items, ids));
+
+        try
+        {
+            long shardSize = Math.max(minShardSize, items.size() / (4 * pool.getParallelism()) + 1);
+            return comp.finish(pool.invoke(new CollectTask<>(comp, items, ids, shardSize)));
+        }
+        catch(CompletionException e)
+        {
+            //The task wraps the exceptions of comp, and the pool may wrap them again when rethrowing them
+            Throwable cause = e;
+            while(cause instanceof CompletionException && cause.getCause() != null)
+                cause = cause.getCause();
+            if(cause instanceof InvalidExpression)
+                throw (InvalidExpression) cause;
+            if(cause instanceof InvalidWordFormat)
+                throw (InvalidWordFormat) cause;
+            throw e;
+        }
+    }
+
+    //Post: partial result of comp with the not null items in the positions of ids
+    private static <T, A> A accumulate(MergeableComparator<T, A> comp, List<T> items, Spliterator.OfInt ids) throws InvalidWordFormat, InvalidExpression
+    {
+        A partial = comp.supplier();
+        PrimitiveIterator.OfInt it = Spliterators.iterator(ids);
+        while(it.hasNext())
+        {
+            int id = it.nextInt();
+            T item = items.get(id);
+            if(item != null)
+                comp.accumulate(partial, id, item);
+        }
+
+        return partial;
+    }
+
+    //Accumulates the positions of a Spliterator splitting it until its parts are at most shardSize. trySplit returns
+    //the prefix, so the left part is always combined before the right one
+    private static class CollectTask<T, A> extends RecursiveTask<A>
+    {
+        private static final long serialVersionUID = 1L;
+        private final MergeableComparator<T, A> comp;
+        private final List<T> items;
+        private final Spliterator.OfInt ids;
+        private final long shardSize;
+
+        CollectTask(MergeableComparator<T, A> comp, List<T> items, Spliterator.OfInt ids, long shardSize)
+        {
+            this.comp = comp;
+            this.items = items;
+            this.ids = ids;
+            this.shardSize = shardSize;
+        }
+
+        @Override
+        protected A compute()
+        {
+            Spliterator.OfInt prefix = ids.estimateSize() > shardSize ? ids.trySplit() : null;
+            if(prefix == null)
+            {
+                try
+                {
+                    return accumulate(comp, items, ids);
+                }
+                catch(InvalidWordFormat | InvalidExpression e)
+                {
+                    throw new CompletionException(e);
+                }
+            }
+
+            CollectTask<T, A> left = new CollectTask<>(comp, items, prefix, shardSize);
+            left.fork();
+            A right = compute();
+            return comp.combine(left.join(), right);
+        }
+    }
+
+    //Post: every document with id in [lo, hi) in the lists of the words of vector has been offered to heap (term at a time)
+    private static void scoreAll(SparseVector vector, int weightType, int excludedId, int lo, int hi, TopKHeap<Document> heap)
+    {
+        ScoreAccumulator acc = accumulators.get();
+        acc.reset(docsById.size());
+        for(int i = 0; i < vector.size(); i++)
+        {
+            PostingList list = getPostings(vector.getId(i));
+            float w = vector.getWeight(i) * getIdf(vector.getId(i));
+            if(list == null || w == 0)
+                continue;
+
+            for(int j = list.advance(0, lo); j < list.rawSize() && list.getId(j) < hi; j++)
+            {
+                if(!list.isRemoved(j))
+                    acc.add(list.getId(j), w * list.getTf(j, weightType));
+            }
+        }
+
+        //The partial dot products are normalized with the norms of the documents
+        for(int i = 0; i < acc.size(); i++)
+        {
+            int id = acc.getId(i);
+            float score = cosine(acc.getScore(id), vector.getNorm(), docsById.get(id).getNorm(weightType));
+            if(score > 0 && id != excludedId)
+                heap.offer(id, score, docsById.get(id));
+        }
+        scoredDocuments.addAndGet(acc.size());
+    }
+
+    //Post: the documents with id in [lo, hi) in the lists of the words of vector that can enter heap have been offered to it.
+    //The words are sorted by upper bound and the ones whose bounds together cannot reach the worst score in heap are
+    //non-essential: only the documents in the lists of the essential words are candidates, and the lists of the
+    //non-essential ones are only looked up while the candidate can still enter heap (MaxScore)
+    private static void scoreMaxScore(SparseVector vector, int weightType, int excludedId, int lo, int hi, TopKHeap<Document> heap)
+    {
+        int n = vector.size();
+        PostingList[] lists = new PostingList[n];
+        float[] weights = new float[n];
+        float[] bounds = new float[n];
+        int[] positions = new int[n];
+        //Id of the current document of every list, Integer.MAX_VALUE once the list is exhausted
+        int[] current = new int[n];
+        float[] contributions = new float[n];
+        //Indexes of the words with some document, sorted by upper bound
+        Integer[] order = new Integer[n];
+        int m = 0;
+
+        for(int i = 0; i < n; i++)
+        {
+            lists[i] = getPostings(vector.getId(i));
+            weights[i] = vector.getWeight(i) * getIdf(vector.getId(i));
+            if(lists[i] == null || weights[i] == 0)
+                continue;
+
+            positions[i] = lists[i].advance(0, lo);
+            current[i] = currentId(lists[i], positions[i], hi);
+            if(current[i] == Integer.MAX_VALUE)
+                continue;
+
+            //The contribution of the word to the similarity of any document is at most weight * max(tf/norm) / |vector|
+            bounds[i] = weights[i] * getMaxImpact(lists[i], weightType) / vector.getNorm() * BOUND_SLACK;
+            order[m++] = i;
+        }
+        Arrays.sort(order, 0, m, (a, b) -> Float.compare(bounds[a], bounds[b]));
+        int[] sorted = new int[m];
+        //prefix[j] = sum of the j smallest upper bounds
+        float[] prefix = new float[m + 1];
+        for(int j = 0; j < m; j++)
+        {
+            sorted[j] = order[j];
+            prefix[j + 1] = prefix[j] + bounds[sorted[j]];
+        }
+
+        //Min-heap of the essential words by the id of their current document
+        int[] essential = new int[m];
+        int nEssential = 0;
+        int firstEssential = -1;
+        //Words whose contribution has been set for the current candidate
+        int[] touched = new int[m];
+        long scored = 0;
+        while(true)
+        {
+            //Documents are visited in increasing id order, so a document with the same score as the worst one in the heap
+            //does not enter it. Only positive similarities are returned
+            float threshold = heap.isFull() ? heap.threshold() : 0;
+            int newFirstEssential = Math.max(firstEssential, 0);
+            while(newFirstEssential < m && prefix[newFirstEssential + 1] <= threshold)
+                newFirstEssential++;
+            if(newFirstEssential != firstEssential)
+            {
+                //Some words are not essential anymore, the heap is built again (at most once per word)
+                firstEssential = newFirstEssential;
+                nEssential = 0;
+                for(int j = firstEssential; j < m; j++)
+                {
+                    if(current[sorted[j]] != Integer.MAX_VALUE)
+                        essential[nEssential++] = sorted[j];
+                }
+                for(int j = nEssential / 2 - 1; j >= 0; j--)
+                    siftDown(essential, nEssential, j, current);
+            }
+            if(nEssential == 0)
+                break;
+
+            int candidate = current[essential[0]];
+            int nTouched = 0;
+            float dotProd = 0;
+            while(nEssential > 0 && current[essential[0]] == candidate)
+            {
+                int c = essential[0];
+                contributions[c] = weights[c] * lists[c].getTf(positions[c], weightType);
+                touched[nTouched++] = c;
+                dotProd += contributions[c];
+                positions[c] = lists[c].advance(positions[c] + 1, candidate + 1);
+                current[c] = currentId(lists[c], positions[c], hi);
+                if(current[c] == Integer.MAX_VALUE)
+                    essential[0] = essential[--nEssential];
+                siftDown(essential, nEssential, 0, current);
+            }
+
+            Document doc = docsById.get(candidate);
+            float norm = vector.getNorm() * doc.getNorm(weightType);
+            boolean canEnter = candidate != excludedId && norm > 0;
+
+            //The non-essential lists are looked up from the greatest bound while the document can still enter the heap
+            for(int j = firstEssential - 1; j >= 0 && canEnter; j--)
+            {
+                canEnter = dotProd / norm * BOUND_SLACK + prefix[j + 1] > threshold;
+                int c = sorted[j];
+                if(canEnter && current[c] < candidate)
+                {
+                    positions[c] = lists[c].advance(positions[c], candidate);
+                    current[c] = currentId(lists[c], positions[c], hi);
+                }
+                if(canEnter && current[c] == candidate)
+                {
+                    contributions[c] = weights[c] * lists[c].getTf(positions[c], weightType);
+                    touched[nTouched++] = c;
+                    dotProd += contributions[c];
+                }
+            }
+            if(canEnter)
+                canEnter = dotProd / norm * BOUND_SLACK > threshold;
+
+            if(canEnter)
+            {
+                //The dot product is added in the same order as in scoreAll, so the similarities are exactly the same
+                dotProd = 0;
+                for(int i = 0; i < n; i++)
+                    dotProd += contributions[i];
+
+                float score = cosine(dotProd, vector.getNorm(), doc.getNorm(weightType));
+                if(score > 0)
+                    heap.offer(candidate, score, doc);
+                scored++;
+            }
+
+            for(int j = 0; j < nTouched; j++)
+                contributions[touched[j]] = 0;
+        }
+        scoredDocuments.addAndGet(scored);
+    }
+
+    //Post: id of the document at position pos of list, Integer.MAX_VALUE if pos is the end of the list or the id is not lower than hi
+    private static int currentId(PostingList list, int pos, int hi)
+    {
+        if(pos == list.rawSize() || list.getId(pos) >= hi)
+            return Integer.MAX_VALUE;
+
+        return list.getId(pos);
+    }
+
+    //Post: the subtree of position i of the min-heap of indexes 'heap' (of size 'size') is sorted by keys
+    private static void siftDown(int[] heap, int size, int i, int[] keys)
+    {
+        while(true)
+        {
+            int min = i;
+            int l = 2 * i + 1, r = l + 1;
+            if(l < size && keys[heap[l]] < keys[heap[min]])
+                min = l;
+            if(r < size && keys[heap[r]] < keys[heap[min]])
+                min = r;
+            if(min == i)
+                return;
+
+            int aux = heap[i];
+            heap[i] = heap[min];
+            heap[min] = aux;
+            i = min;
+        }
+    }
+
+    //Pre: weightType is 1 or 2
+    //Post: upper bound of tf/norm of the documents of list. It is only computed again when the idfs change
+    private static float getMaxImpact(PostingList list, int weightType)
+    {
+        float max = list.getMaxImpact(weightType, statsGeneration);
+        if(Float.isNaN(max))
+        {
+            float max1 = 0, max2 = 0;
+            for(int j = 0; j < list.rawSize(); j++)
+            {
+                if(list.isRemoved(j))
+                    continue;
+
+                Document doc = docsById.get(list.getId(j));
+                float norm1 = doc.getNorm(1), norm2 = doc.getNorm(2);
+                if(norm1 > 0)
+                    max1 = Math.max(max1, list.getTf(j, 1) / norm1);
+                if(norm2 > 0)
+                    max2 = Math.max(max2, list.getTf(j, 2) / norm2);
+            }
+            list.setMaxImpacts(max1, max2, statsGeneration);
+            max = weightType == 1 ? max1 : max2;
+        }
+
+        return max;
+    }
+
+    //Post: cosine similarity given the dot product and the norms of two vectors, 0 if any of them is 0
+    private static float cosine(float dotProd, float norm1, float norm2)
+    {
+        if(norm1 == 0 || norm2 == 0)
+            return 0;
+
+        return dotProd / (norm1 * norm2);
+    }
+
+    //Pre: query only contains words (in lowercase) without any punctuation mark, weightType is 1 or 2
+    //Post: vector of weights of the words of the query, computed with the idfs of the corpus. The words that are not in
+    //the TermDictionary have no document (idf 0), so they are left out and are not added to it
+    protected static SparseVector getQueryVector(String query, int weightType) throws InvalidWordFormat
+    {
+        //We calculate the weight of every word in query
+        LinkedList<String> l = new LinkedList<>();
+        l.add(query);
+        Content queryContent = Content.forQuery(l);
+
+        int[] ids = queryContent.getTermIds();
+        String[] queryWords = queryContent.getWords();
+        float[] weights = new float[ids.length];
+        for(int i = 0; i < ids.length; i++)
+        {
+            String w = queryWords[i];
+
+            //Idf of the word
+            float idf = calculateIdf(getDf(w));
+
+            queryContent.updateWeight(w, idf);
+
+            if(weightType == 1)
+                weights[i] = queryContent.getWeight1(w);
+            else
+                weights[i] = queryContent.getWeight2(w);
+        }
+
+        return new SparseVector(ids, weights);
+    }
+
+    //Pre: Statement is valid
+
+    public static LinkedList<Document> searchByBooleanStatement(String statement) throws InvalidWordFormat, InvalidExpression {
+        return searchByBooleanStatement(statement, pool);
+    }
+
+    //Pre: Statement is valid
+    //Post: the documents with a sentence that complies with statement, in id order. If pool is not null the documents
+    //are evaluated in parallel in pool
+    public static LinkedList<Document> searchByBooleanStatement(String statement, ForkJoinPool pool) throws InvalidWordFormat, InvalidExpression {
+        BoolExpressionComp comp = new BoolExpressionComp(statement);
+        //Equivalent statements have the same canonical key
+        String key = "B" + comp.getCanonicalKey();
+        long generation = indexGeneration;
+        LinkedList<Document> res = getCached(key, generation);
+        if(res != null)
+            return res;
+
+        return putCached(key, generation, searchByBooleanStatement(comp, pool));
+    }
+
+    //Post: the documents with a sentence that complies with comp, in id order, evaluated in pool if it is not null
+    private static LinkedList<Document> searchByBooleanStatement(BoolExpressionComp comp, ForkJoinPool pool) throws InvalidWordFormat, InvalidExpression {
+        if(prefilter && sentenceIndex != null)
+        {
+            int[] sentences = comp.getTree().candidates(sentenceIndex);
+            if(sentences != null)
+                return verifySentences(comp, sentences);
+        }
+
+        if(prefilter && bitmapCandidates)
+        {
+            DocumentBounds bounds = DocumentBounds.of(comp.getTree(), corpusPostings);
+            if(bounds.getPossible() != null || bounds.getCertain() != null)
+                return searchBounded(comp, bounds, pool);
+        }
+
+        int[] candidates = prefilter && !bitmapCandidates ? comp.getTree().candidates(corpusPostings) : null;
+        if(candidates == null)
+        {
+            verifiedDocuments.addAndGet(nDocs);
+            return collect(comp, docsById, pool);
+        }
+
+        //Only the candidates are evaluated, in id order
+        ArrayList<Document> docs = new ArrayList<>(candidates.length);
+        for(int id : candidates)
+            docs.add(docsById.get(id));
+        verifiedDocuments.addAndGet(candidates.length);
+
+        return collect(comp, docs, pool);
+    }
+
+    //Post: the documents that comply with comp, in id order: the certain documents of bounds without evaluating them, and
+    //the uncertain ones that comply, evaluated in pool
+    private static LinkedList<Document> searchBounded(BoolExpressionComp comp, DocumentBounds bounds, ForkJoinPool pool) throws InvalidExpression, InvalidWordFormat
+    {
+        int[] uncertain = bounds.getUncertain(getLiveDocs()).toArray();
+        int[] certain = bounds.getCertain() == null ? new int[0] : bounds.getCertain().toArray();
+
+        ArrayList<Document> docs = new ArrayList<>(uncertain.length);
+        for(int id : uncertain)
+            docs.add(docsById.get(id));
+        verifiedDocuments.addAndGet(uncertain.length);
+        acceptedDocuments.addAndGet(certain.length);
+        LinkedList<Document> matched = collect(comp, docs, pool);
+        if(certain.length == 0)
+            return matched;
+
+        //matched keeps the order of uncertain, so the id of each document is found walking both at once
+        LinkedList<Document> res = new LinkedList<>();
+        int u = 0, c = 0;
+        for(Document doc : matched)
+        {
+            while(docsById.get(uncertain[u]) != doc)
+                u++;
+            while(c < certain.length && certain[c] < uncertain[u])
+                res.add(docsById.get(certain[c++]));
+            res.add(doc);
+        }
+        while(c < certain.length)
+            res.add(docsById.get(certain[c++]));
+
+        return res;
+    }
+
+    //Pre: sentences are candidate sentences of sentenceIndex, sorted
+    //Post: the documents with a candidate sentence that complies with comp, in id order. The ids of the sentences of a
+    //document are consecutive, and grow with the id of the document except for the documents whose content has changed.
+    //The candidates are few, so they are verified in the calling thread
+    private static LinkedList<Document> verifySentences(BoolExpressionComp comp, int[] sentences) throws InvalidExpression
+    {
+        LinkedList<Document> res = new LinkedList<>();
+        verifySentences(comp, sentences, res);
+        return res;
+    }
+
+    //Pre: sentences are candidate sentences of sentenceIndex, sorted
+    //Post: #documents with a candidate sentence that complies with comp, which are added to res in id order if it is not
+    //null. The positions of the sentences of every document are written in the same buffer
+    private static int verifySentences(BoolExpressionComp comp, int[] sentences, LinkedList<Document> res) throws InvalidExpression
+    {
+        int[] positions = new int[16];
+        int[] matched = new int[16];
+        boolean sorted = true;
+        int count = 0;
+        int i = 0;
+        while(i < sentences.length)
+        {
+            int id = sentenceIndex.getDoc(sentences[i]);
+            int j = i;
+            while(j < sentences.length && sentenceIndex.getDoc(sentences[j]) == id)
+                j++;
+
+            if(positions.length < j - i)
+                positions = new int[Math.max(j - i, 2 * positions.length)];
+            for(int k = 0; k < j - i; k++)
+                positions[k] = sentenceIndex.getPosition(sentences[i + k]);
+
+            if(comp.matches(docsById.get(id), positions, j - i))
+            {
+                if(count == matched.length)
+                    matched = Arrays.copyOf(matched, 2 * count);
+                sorted &= count == 0 || matched[count - 1] < id;
+                matched[count++] = id;
+            }
+            verifiedDocuments.incrementAndGet();
+            i = j;
+        }
+
+        if(res != null)
+        {
+            if(!sorted)
+                Arrays.sort(matched, 0, count);
+            for(int k = 0; k < count; k++)
+                res.add(docsById.get(matched[k]));
+        }
+        return count;
+    }
+
+    //Post: a copy of the result of key computed in generation, null if it is not cached
+    private static LinkedList<Document> getCached(String key, long generation)
+    {
+        Document[] docs = resultCache.get(key, generation);
+        return docs == null ? null : new LinkedList<>(Arrays.asList(docs));
+    }
+
+    //Post: res has been cached as the result of key computed in generation, and it is returned
+    private static LinkedList<Document> putCached(String key, long generation, LinkedList<Document> res)
+    {
+        if(resultCache.getCapacity() > 0)
+            resultCache.put(key, generation, res.toArray(new Document[0]), res.size() + 1);
+        return res;
+    }
+
+    //Post: statement is registered as an alert and its id is returned. The documents added from now on, or whose
+    //content is changed, that comply with it are pending alerts
+    public static int registerAlert(String statement) throws InvalidExpression {
+        return alerts.register(statement);
+    }
+
+    //Post: TRUE if the alert id was registered, and it is not anymore. Its pending alerts are kept
+    public static boolean unregisterAlert(int id)
+    {
+        return alerts.unregister(id);
+    }
+
+    //Post: the statement of the alert id, null if it is not registered
+    public static String getAlert(int id)
+    {
+        return alerts.getStatement(id);
+    }
+
+    //Post: there are no registered alerts nor pending alerts
+    public static void clearAlerts()
+    {
+        alerts.clear();
+        pendingAlerts = new LinkedList<>();
+        removedAlerts = new IdentityHashMap<>();
+    }
+
+    //Post: the pending alerts, (id of the alert, document) in the order the documents have been added. There are no
+    //pending alerts anymore
+    public static LinkedList<Pair<Integer, Document>> pollAlerts()
+    {
+        dropRemovedAlerts();
+        LinkedList<Pair<Integer, Document>> res = pendingAlerts;
+        firstAlert += res.size();
+        pendingAlerts = new LinkedList<>();
+        return res;
+    }
+
+    //Post: #pending alerts dropped because the queue was full
+    public static long getDroppedAlerts()
+    {
+        return droppedAlerts;
+    }
+
+    //Pre: Document {author, title} must exist
+    //Post: the sorted ids of the registered alerts that the document complies with
+    public static int[] getMatchingAlerts(String author, String title) throws DocumentNotFound
+    {
+        return alerts.percolate(getDocument(author, title));
+    }
+
+    //Post: #registered alerts evaluated on the added documents so far (alerts with the same canonical form count once)
+    public static long getEvaluatedAlerts()
+    {
+        return alerts.getEvaluated();
+    }
+
+    //Pre: Statement is valid
+    //Post: the plan of statement with the statistics of the current corpus: the order in which its operands are
+    //evaluated, with the estimated probability and cost of every node
+    public static String explainBooleanStatement(String statement) throws InvalidExpression {
+        return new BoolExpressionComp(statement).explain();
+    }
+
+    //Pre: Statement is valid
+    //Post: #documents that searchByBooleanStatement(statement) would return
+    public static int countByBooleanStatement(String statement) throws InvalidExpression {
+        return countByBooleanStatement(statement, pool);
+    }
+
+    //Pre: Statement is valid
+    //Post: #documents that searchByBooleanStatement(statement) would return, without building the list. The certain
+    //documents of the bounds of the postings are counted with the cardinality of their bitmap, and only the uncertain
+    //ones are evaluated (in parallel in pool if it is not null)
+    public static int countByBooleanStatement(String statement, ForkJoinPool pool) throws InvalidExpression {
+        BoolExpressionComp comp = new BoolExpressionComp(statement);
+        if(prefilter && sentenceIndex != null)
+        {
+            int[] sentences = comp.getTree().candidates(sentenceIndex);
+            if(sentences != null)
+                return verifySentences(comp, sentences, null);
+        }
+
+        if(prefilter && bitmapCandidates)
+        {
+            DocumentBounds bounds = DocumentBounds.of(comp.getTree(), corpusPostings);
+            if(bounds.getPossible() != null || bounds.getCertain() != null)
+            {
+                int certain = bounds.getCertain() == null ? 0 : bounds.getCertain().cardinality();
+                acceptedDocuments.addAndGet(certain);
+                RoaringBitmap uncertain = bounds.getUncertain(getLiveDocs());
+                if(uncertain.isEmpty())
+                    return certain;
+
+                int[] ids = uncertain.toArray();
+                verifiedDocuments.addAndGet(ids.length);
+                return certain + countMatches(comp, ids, ids.length, pool);
+            }
+        }
+
+        int[] candidates = prefilter && !bitmapCandidates ? comp.getTree().candidates(corpusPostings) : null;
+        if(candidates == null)
+        {
+            verifiedDocuments.addAndGet(nDocs);
+            return countMatches(comp, null, docsById.size(), pool);
+        }
+
+        verifiedDocuments.addAndGet(candidates.length);
+        return countMatches(comp, candidates, candidates.length, pool);
+    }
+
+    //Pre: ids is null or has at least n ids
+    //Post: #not null documents that comply with comp among the ids of the first n positions of ids (of [0, n) if ids is
+    //null). If pool is not null, the positions are split in shards that are counted in parallel in pool
+    private static int countMatches(BoolExpressionComp comp, int[] ids, int n, ForkJoinPool pool) throws InvalidExpression
+    {
+        if(pool == null || pool.getParallelism() <= 1)
+            return countMatches(comp, ids, 0, n);
+
+        try
+        {
+            int shardSize = Math.max(minShardSize, n / (4 * pool.getParallelism()) + 1);
+            return pool.invoke(new CountTask(comp, ids, 0, n, shardSize));
+        }
+        catch(CompletionException e)
+        {
+            Throwable cause = e;
+            while(cause instanceof CompletionException && cause.getCause() != null)
+                cause = cause.getCause();
+            if(cause instanceof InvalidExpression)
+                throw (InvalidExpression) cause;
+            throw e;
+        }
+    }
+
+    //Post: #not null documents that comply with comp among the ids of the positions [lo, hi) of ids (of [lo, hi) if ids is null)
+    private static int countMatches(BoolExpressionComp comp, int[] ids, int lo, int hi) throws InvalidExpression
+    {
+        int count = 0;
+        for(int i = lo; i < hi; i++)
+        {
+            Document doc = docsById.get(ids == null ? i : ids[i]);
+            if(doc != null && comp.matches(doc))
+                count++;
+        }
+
+        return count;
+    }
+
+    //Counts the positions [lo, hi) splitting them in halves until they are at most shardSize
+    private static class CountTask extends RecursiveTask<Integer>
+    {
+        private static final long serialVersionUID = 1L;
+        private final BoolExpressionComp comp;
+        private final int[] ids;
+        private final int lo, hi, shardSize;
+
+        CountTask(BoolExpressionComp comp, int[] ids, int lo, int hi, int shardSize)
+        {
+            this.comp = comp;
+            this.ids = ids;
+            this.lo = lo;
+            this.hi = hi;
+            this.shardSize = shardSize;
+        }
+
+        @Override
+        protected Integer compute()
+        {
+            if(hi - lo <= shardSize)
+            {
+                try
+                {
+                    return countMatches(comp, ids, lo, hi);
+                }
+                catch(InvalidExpression e)
+                {
+                    throw new CompletionException(e);
+                }
+            }
+
+            int mid = (lo + hi) >>> 1;
+            CountTask left = new CountTask(comp, ids, lo, mid, shardSize);
+            left.fork();
+            int right = new CountTask(comp, ids, mid, hi, shardSize).compute();
+            return left.join() + right;
+        }
+    }
+
+    //Post: exception if the author does not exist, otherwise the result is a list of the titles
+    public static LinkedList<String> getTitlesByAuthor(String author) throws AuthorNotFound
+    {
+        if(!documents.containsKey(author))
+            throw new AuthorNotFound(author);
+
+        Set<String> set = documents.get(author).keySet();
+
+        return new LinkedList<>(set);
+    }
+
+    //Post: if the document does not exist exception thrown, the document is returned otherwise
+    public static Document getDocument(String author, String title) throws DocumentNotFound
+    {
+        if(!existsDocument(author, title))
+            throw new DocumentNotFound(author, title);
+
+        return docsById.get(getId(author, title));
+    }
+
+
+    //Post: prefix "" returns all the authors
+    public static LinkedList<String> searchByAuthorPrefix(String prefix) throws InvalidWordFormat, InvalidExpression {
+
+        if(prefix.equals(""))
+            return new LinkedList<String>(documents.keySet());
+
+        return collect(new PrefixComparator(prefix), new ArrayList<>(documents.keySet()), pool);
     }
 
 }
\ No newline at end of file
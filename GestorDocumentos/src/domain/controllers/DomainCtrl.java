@@ -5,6 +5,8 @@ import domain.exceptions.InvalidExpression;
 import domain.exceptions.*;
 import domain.utils.Pair;
 
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.LinkedList;
 
 import static domain.utils.Phraser.getPhrases;
@@ -103,6 +105,35 @@ public class DomainCtrl {
         return DocumentCtrl.add(author, title, getPhrases(content), format);
     }
 
+    /**
+     * Afegim un lot de documents al sistema. Les estadístiques del corpus s'actualitzen un sol cop per tot el lot.
+     * @param docs Documents a afegir. Cada document és un array {autor, títol, contingut, format}.
+     * @return Per cada document, en el mateix ordre que docs, true si s'ha afegit i false si ja existia o el format no és vàlid.
+     * @throws UserNotLogged
+     */
+    public LinkedList<Boolean> addDocuments (Collection<String[]> docs) throws UserNotLogged {
+        if (UserCtrl.getActual_user() == null)
+            throw new UserNotLogged();
+
+        LinkedList<Document> valid = new LinkedList<>();
+        LinkedList<Boolean> isValid = new LinkedList<>();
+        for (String[] d : docs) {
+            try {
+                valid.add(new Document(d[0], d[1], getPhrases(d[2]), d[3]));
+                isValid.add(true);
+            } catch (InvalidDocumentFormat e) {
+                isValid.add(false);
+            }
+        }
+
+        Iterator<Boolean> added = DocumentCtrl.addAll(valid).iterator();
+        LinkedList<Boolean> result = new LinkedList<>();
+        for (Boolean v : isValid) {
+            result.add(v && added.next());
+        }
+        return result;
+    }
+
     /**
      * Esborra el document especificat del sistema.
      * @param author Autor del document a esborrar.
@@ -212,7 +243,9 @@ public class DomainCtrl {
      * @param author Autor del document de referència.
      * @param k Nombre de documents més similars a trobar.
      * @param type Tipus d'estratègia de cerca. Pot prendre valors 1 o 2.
-     * @return Llistat de Pairs de {Autor, Títol} dels documents ordenats de més similar a menys similar.
+     * @return Llistat de Pairs de {Autor, Títol} dels documents ordenats de més similar a menys similar. Té min(k, N-1)
+     * documents: si menys de k comparteixen alguna paraula amb el de referència, es completa amb la resta (similitud 0)
+     * en l'ordre en què es van afegir.
      * @throws InvalidWordFormat, DocumentNotFound, InvalidExpression, UserNotLogged, InvalidWeightType
      */
     public LinkedList<Pair<String,String>> searchDocumentsBySimilarity (String title, String author, int k, int type) throws InvalidWordFormat, DocumentNotFound, InvalidExpression, UserNotLogged, InvalidWeightType {
@@ -263,6 +296,108 @@ public class DomainCtrl {
         return result;
     }
 
+    /**
+     * Buscar de manera aproximada els documents més semblants a una query, per exemple mentre s'escriu.
+     * @param query Expressió a evaluar.
+     * @param k Nombre de documents més similars a retornar.
+     * @param type Tipus d'estratègia de cerca. Pot prendre valors 1 o 2.
+     * @param postingsBudget Nombre màxim d'aparicions de paraules a processar, sense límit si és <= 0.
+     * @param timeBudget Temps màxim de la cerca en nanosegons, sense límit si és <= 0.
+     * @return Llistat de Pairs de {Autor, Títol} dels documents ordenats de més similar a menys similar.
+     * @throws InvalidWordFormat, InvalidExpression, UserNotLogged, InvalidWeightType
+     */
+    public LinkedList<Pair<String, String>> searchDocumentsByQuery (String query, int k, int type, int postingsBudget, long timeBudget) throws InvalidWordFormat, InvalidExpression, UserNotLogged, InvalidWeightType {
+        if (UserCtrl.getActual_user() == null)
+            throw new UserNotLogged();
+        LinkedList<Document> search = DocumentCtrl.searchByQuery(query, k, type, postingsBudget, timeBudget);
+        LinkedList<Pair<String, String>> result = new LinkedList<>();
+        for (Document a : search) {
+            result.add(new Pair<>(a.getAuthor(), a.getTitle()));
+        }
+        return result;
+    }
+
+    /**
+     * Mostrar el pla d'una expressió booleana: l'ordre en què s'avaluen els operands segons les estadístiques dels
+     * documents actuals.
+     * @param statement Expressió a evaluar.
+     * @return Una línia per node amb la probabilitat estimada de ser cert en una frase i el cost estimat.
+     * @throws InvalidExpression, UserNotLogged
+     */
+    public String explainBooleanStatement (String statement) throws InvalidExpression, UserNotLogged {
+        if (UserCtrl.getActual_user() == null)
+            throw new UserNotLogged();
+        return DocumentCtrl.explainBooleanStatement(statement);
+    }
+
+    /**
+     * Comptar els documents que compleixen una expressió booleana sense construir-ne la llista, per exemple per a
+     * mostrar el nombre de resultats. No s'afegeix a l'historial.
+     * @param statement Expressió a evaluar.
+     * @return Nombre de documents que retornaria searchDocumentsByBooleanStatement(statement).
+     * @throws InvalidExpression, UserNotLogged
+     */
+    public int countDocumentsByBooleanStatement (String statement) throws InvalidExpression, UserNotLogged {
+        if (UserCtrl.getActual_user() == null)
+            throw new UserNotLogged();
+        return DocumentCtrl.countByBooleanStatement(statement);
+    }
+
+    /**
+     * Comptar els documents prou semblants a una query sense construir-ne la llista.
+     * @param query Expressió a evaluar.
+     * @param threshold Semblança mínima dels documents comptats.
+     * @param type Tipus d'estratègia de cerca. Pot prendre valors 1 o 2.
+     * @return Nombre de documents amb semblança positiva i com a mínim threshold amb query.
+     * @throws InvalidWordFormat, UserNotLogged, InvalidWeightType
+     */
+    public int countDocumentsByQuery (String query, float threshold, int type) throws InvalidWordFormat, UserNotLogged, InvalidWeightType {
+        if (UserCtrl.getActual_user() == null)
+            throw new UserNotLogged();
+        return DocumentCtrl.countByQuery(query, threshold, type);
+    }
+
+    // ----------ALERTS----------
+    /**
+     * Registrar una alerta: una expressió booleana que es comprova amb cada document que s'afegeix o del qual es canvia
+     * el contingut, en comptes de tornar a fer la cerca cada cop.
+     * @param statement Expressió de l'alerta.
+     * @return Identificador de l'alerta.
+     * @throws InvalidExpression, UserNotLogged
+     */
+    public int registerAlert (String statement) throws InvalidExpression, UserNotLogged {
+        if (UserCtrl.getActual_user() == null)
+            throw new UserNotLogged();
+        return DocumentCtrl.registerAlert(statement);
+    }
+
+    /**
+     * Esborrar una alerta.
+     * @param id Identificador de l'alerta.
+     * @return True si l'alerta existia, false si no.
+     * @throws UserNotLogged
+     */
+    public boolean unregisterAlert (int id) throws UserNotLogged {
+        if (UserCtrl.getActual_user() == null)
+            throw new UserNotLogged();
+        return DocumentCtrl.unregisterAlert(id);
+    }
+
+    /**
+     * Consultar els documents que han complert alguna alerta des de l'última consulta.
+     * @return Llistat de Pairs de {identificador de l'alerta, {Autor, Títol}} en l'ordre en què s'han afegit els documents.
+     * @throws UserNotLogged
+     */
+    public LinkedList<Pair<Integer, Pair<String, String>>> pollAlerts () throws UserNotLogged {
+        if (UserCtrl.getActual_user() == null)
+            throw new UserNotLogged();
+        LinkedList<Pair<Integer, Pair<String, String>>> result = new LinkedList<>();
+        for (Pair<Integer, Document> a : DocumentCtrl.pollAlerts()) {
+            result.add(new Pair<>(a.getFirst(), new Pair<>(a.getSecond().getAuthor(), a.getSecond().getTitle())));
+        }
+        return result;
+    }
+
     // ----------HISTORY----------
     /**
      * Consultar l'historial de cerques booleanes.
@@ -0,0 +1,1319 @@
+package domain.drivers;
+
+import domain.classes.BoolExprAutomaton;
+import domain.classes.BoolExprCompiler;
+import domain.classes.BoolExprNode;
+import domain.classes.BoolExprParser;
+import domain.classes.BoolExpressionComp;
+import domain.classes.Content;
+import domain.classes.Document;
+import domain.classes.PostingList;
+import domain.classes.SentencePredicate;
+import domain.classes.SentenceSignature;
+import domain.classes.SimilitudeComp;
+import domain.controllers.DocumentCtrl;
+import domain.exceptions.*;
+import domain.utils.Pair;
+import domain.utils.TopKHeap;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Clase Driver para medir el rendimiento del controlador de Documento sobre un corpus sintético. Cada opción del menú
+ * ejecuta una prueba y muestra los resultados por pantalla. También se puede indicar la prueba como argumento del programa.
+ * Se ejecuta desde el directorio GestorDocumentos para que se encuentren los ficheros de stop words.
+ */
+public class BenchmarkDriver {
+
+    /**
+     * Número de palabras distintas del vocabulario sintético.
+     */
+    static final int VOCABULARY = 20000;
+
+    /**
+     * Frases por documento y palabras por frase de los documentos sintéticos.
+     */
+    static final int SENTENCES = 5;
+    static final int WORDS_PER_SENTENCE = 12;
+
+    private static String[] vocabulary;
+
+    /**
+     * Genera el vocabulario sintético. Las palabras solo tienen caracteres a-z para que sean válidas.
+     */
+    private static String[] getVocabulary() {
+        if (vocabulary == null) {
+            Random random = new Random(7);
+            vocabulary = new String[VOCABULARY];
+            for (int i = 0; i < VOCABULARY; ++i) {
+                StringBuilder word = new StringBuilder();
+                int length = 4 + random.nextInt(6);
+                for (int j = 0; j < length; ++j) word.append((char) ('a' + random.nextInt(26)));
+                vocabulary[i] = word.toString();
+            }
+        }
+        return vocabulary;
+    }
+
+    /**
+     * Escoge una palabra del vocabulario siguiendo aproximadamente una distribución de Zipf.
+     */
+    static String randomWord(Random random) {
+        String[] v = getVocabulary();
+        int i = (int) Math.floor(Math.pow(v.length, random.nextDouble())) - 1;
+        return v[i];
+    }
+
+    /**
+     * Genera el contenido de un documento sintético.
+     */
+    static LinkedList<String> randomSentences(Random random) {
+        LinkedList<String> sentences = new LinkedList<>();
+        for (int s = 0; s < SENTENCES; ++s) {
+            StringBuilder sentence = new StringBuilder();
+            for (int w = 0; w < WORDS_PER_SENTENCE; ++w) {
+                if (w > 0) sentence.append(' ');
+                sentence.append(randomWord(random));
+            }
+            sentence.append(". ");
+            sentences.add(sentence.toString());
+        }
+        return sentences;
+    }
+
+    /**
+     * Genera n documentos sintéticos con autores y títulos distintos.
+     */
+    static LinkedList<Document> generateDocuments(int n, long seed) throws InvalidDocumentFormat {
+        Random random = new Random(seed);
+        LinkedList<Document> docs = new LinkedList<>();
+        for (int i = 0; i < n; ++i) {
+            docs.add(new Document("author" + (i % 1000), "title" + i, randomSentences(random), "txt"));
+        }
+        return docs;
+    }
+
+    /**
+     * Añade al controlador n documentos sintéticos en un solo lote.
+     */
+    static void loadCorpus(int n) throws InvalidDocumentFormat {
+        DocumentCtrl.clear();
+        DocumentCtrl.addAll(generateDocuments(n, n));
+    }
+
+    /**
+     * Mide los documentos por segundo que se ingieren con DocumentCtrl.addAll() en lotes de 1k, 10k y 100k documentos.
+     */
+    public static void ingest() throws InvalidDocumentFormat {
+        System.out.println("\n Ingesta en lote \n -----------------");
+        int[] sizes = {1000, 10000, 100000};
+        for (int n : sizes) {
+            DocumentCtrl.clear();
+            long t0 = System.nanoTime();
+            LinkedList<Document> docs = generateDocuments(n, n);
+            long t1 = System.nanoTime();
+            DocumentCtrl.addAll(docs);
+            long t2 = System.nanoTime();
+
+            System.out.printf(" %7d docs: construcción %10.0f docs/s, addAll %10.0f docs/s, total %10.0f docs/s%n",
+                    n, n / ((t1 - t0) / 1e9), n / ((t2 - t1) / 1e9), n / ((t2 - t0) / 1e9));
+        }
+        DocumentCtrl.clear();
+    }
+
+    /**
+     * Memoria ocupada del heap después de forzar el garbage collector.
+     */
+    static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; ++i) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    /**
+     * Mide los bytes de heap por documento de un corpus de 10k y 100k documentos (contenido e índice incluidos).
+     */
+    public static void memory() throws InvalidDocumentFormat {
+        System.out.println("\n Memoria por documento \n -----------------");
+        int[] sizes = {10000, 100000};
+        for (int n : sizes) {
+            DocumentCtrl.clear();
+            long before = usedMemory();
+            loadCorpus(n);
+            long after = usedMemory();
+            System.out.printf(" %7d docs: %8.0f bytes/doc%n", n, (double) (after - before) / n);
+        }
+        DocumentCtrl.clear();
+    }
+
+    /**
+     * Ordenación que hacía SimilitudeComp antes de usar un heap: merge sort sobre una LinkedList copiando la lista
+     * en cada merge y accediendo por índice. Se conserva aquí solo para comparar.
+     */
+    private static void legacyMerge(LinkedList<Pair<Integer, Float>> list, int l, int m, int r) {
+        int i, j, x;
+        LinkedList<Pair<Integer, Float>> B = new LinkedList<>(list);
+        i = l; j = m + 1; x = l;
+        while (i <= m && j <= r)
+            if (B.get(i).getSecond() > B.get(j).getSecond()) list.set(x++, B.get(i++));
+            else list.set(x++, B.get(j++));
+        while (i <= m) list.set(x++, B.get(i++));
+    }
+
+    private static void legacyMergeSort(LinkedList<Pair<Integer, Float>> list, int l, int r) {
+        if (l < r) {
+            int m = (l + r) / 2;
+            legacyMergeSort(list, l, m);
+            legacyMergeSort(list, m + 1, r);
+            legacyMerge(list, l, m, r);
+        }
+    }
+
+    /**
+     * Compara la selección de los k=10 más similares entre la ordenación antigua de SimilitudeComp y el TopKHeap actual.
+     */
+    public static void topK() {
+        System.out.println("\n Selección top-k (k = 10) \n -----------------");
+        int k = 10;
+        int[] sizes = {500, 1000, 2000, 100000, 1000000};
+        for (int n : sizes) {
+            Random random = new Random(n);
+            float[] scores = new float[n];
+            for (int i = 0; i < n; ++i) scores[i] = random.nextFloat();
+
+            String legacy = "        -";
+            if (n <= 2000) {
+                long t0 = System.nanoTime();
+                LinkedList<Pair<Integer, Float>> list = new LinkedList<>();
+                for (int i = 0; i < n; ++i) list.add(new Pair<>(i, scores[i]));
+                legacyMergeSort(list, 0, list.size() - 1);
+                legacy = String.format("%9.2f", (System.nanoTime() - t0) / 1e6);
+            }
+
+            long t0 = System.nanoTime();
+            TopKHeap<Integer> heap = new TopKHeap<>(k);
+            for (int i = 0; i < n; ++i) heap.offer(i, scores[i], null);
+            heap.getSortedIds();
+            double current = (System.nanoTime() - t0) / 1e6;
+
+            System.out.printf(" %8d docs: antigua %s ms, heap %9.2f ms%n", n, legacy, current);
+        }
+    }
+
+    /**
+     * Genera n consultas de entre 2 y 4 palabras del vocabulario sintético.
+     */
+    static String[] randomQueries(int n, long seed) {
+        Random random = new Random(seed);
+        String[] queries = new String[n];
+        for (int i = 0; i < n; ++i) {
+            StringBuilder query = new StringBuilder();
+            int length = 2 + random.nextInt(3);
+            for (int j = 0; j < length; ++j) {
+                if (j > 0) query.append(' ');
+                query.append(randomWord(random));
+            }
+            queries[i] = query.toString();
+        }
+        return queries;
+    }
+
+    /**
+     * Consulta como se hacía antes: se calcula la similitud del coseno de la consulta con todos los documentos del corpus.
+     * Se conserva aquí solo para comparar.
+     */
+    static LinkedList<Document> exhaustiveQuery(LinkedList<Document> docs, String query, int k, int weightType) throws Exception {
+        LinkedList<String> sentences = new LinkedList<>();
+        sentences.add(query);
+        Document q = new Document("", "", sentences, "txt");
+        String[] queryWords = q.getWords();
+        float qNorm = q.getNorm(weightType);
+
+        TopKHeap<Document> heap = new TopKHeap<>(k);
+        int id = 0;
+        for (Document d : docs) {
+            float dotProd = 0;
+            for (String w : queryWords) {
+                if (weightType == 1) dotProd += q.getWeight1(w) * d.getWeight1(w);
+                else dotProd += q.getWeight2(w) * d.getWeight2(w);
+            }
+            float norm = d.getNorm(weightType);
+            if (dotProd > 0 && qNorm > 0 && norm > 0) heap.offer(id, dotProd / (qNorm * norm), d);
+            id++;
+        }
+        return heap.getSortedItems();
+    }
+
+    /**
+     * Compara la latencia media de searchByQuery evaluando término a término con la evaluación exhaustiva sobre todo
+     * el corpus, con corpus de 10k y 100k documentos. Comprueba también que ambas devuelven los mismos documentos.
+     */
+    public static void query() throws Exception {
+        System.out.println("\n Consulta por similitud (k = 10) \n -----------------");
+        int k = 10;
+        int[] sizes = {10000, 100000};
+        String[] queries = randomQueries(200, 11);
+        for (int n : sizes) {
+            LinkedList<Document> docs = generateDocuments(n, n);
+            DocumentCtrl.clear();
+            DocumentCtrl.addAll(docs);
+
+            int different = 0;
+            long exhaustive = 0, taat = 0;
+            for (String query : queries) {
+                long t0 = System.nanoTime();
+                LinkedList<Document> expected = exhaustiveQuery(docs, query, k, 2);
+                long t1 = System.nanoTime();
+                LinkedList<Document> result = DocumentCtrl.searchByQuery(query, k, 2);
+                long t2 = System.nanoTime();
+                exhaustive += t1 - t0;
+                taat += t2 - t1;
+                if (!expected.equals(result)) different++;
+            }
+
+            System.out.printf(" %7d docs: exhaustiva %8.3f ms/consulta, término a término %8.3f ms/consulta, %d resultados distintos%n",
+                    n, exhaustive / 1e6 / queries.length, taat / 1e6 / queries.length, different);
+        }
+        DocumentCtrl.clear();
+    }
+
+    /**
+     * Ejecuta las consultas (o las búsquedas por similitud si queries es null) con la poda activada o no.
+     * @return Los resultados de cada consulta, y en times[0] el tiempo total y en times[1] los documentos puntuados.
+     */
+    private static LinkedList<LinkedList<Document>> runTopK(String[] queries, int nReferences, int k, boolean pruning, long[] times) throws Exception {
+        DocumentCtrl.setPruning(pruning);
+        LinkedList<LinkedList<Document>> results = new LinkedList<>();
+        long scored = DocumentCtrl.getScoredDocuments();
+        long t0 = System.nanoTime();
+        if (queries != null) {
+            for (String query : queries) results.add(DocumentCtrl.searchByQuery(query, k, 2));
+        } else {
+            for (int i = 0; i < nReferences; ++i) {
+                results.add(DocumentCtrl.searchBySimilarity("author" + (i % 1000), "title" + i, k, 2));
+            }
+        }
+        times[0] = System.nanoTime() - t0;
+        times[1] = DocumentCtrl.getScoredDocuments() - scored;
+        DocumentCtrl.setPruning(true);
+        return results;
+    }
+
+    /**
+     * Compara la búsqueda top-k con poda (MaxScore) con la evaluación exhaustiva de las listas de las palabras, en documentos
+     * puntuados y latencia, para k = 10 y k = 100 sobre un corpus de 100k documentos. Comprueba que los resultados son
+     * idénticos.
+     */
+    public static void pruning() throws Exception {
+        System.out.println("\n Poda top-k (MaxScore) \n -----------------");
+        int n = 100000;
+        int nReferences = 200;
+        loadCorpus(n);
+        String[] queries = randomQueries(200, 11);
+
+        for (String type : new String[]{"consulta", "similitud"}) {
+            String[] q = type.equals("consulta") ? queries : null;
+            int count = q != null ? q.length : nReferences;
+            for (int k : new int[]{10, 100}) {
+                long[] exhaustive = new long[2], pruned = new long[2];
+                //La primera pasada calcula las normas y las cotas de las palabras
+                runTopK(q, nReferences, k, true, pruned);
+                LinkedList<LinkedList<Document>> expected = runTopK(q, nReferences, k, false, exhaustive);
+                LinkedList<LinkedList<Document>> result = runTopK(q, nReferences, k, true, pruned);
+
+                System.out.printf(" %-9s k = %3d: exhaustiva %8.3f ms %9.0f docs puntuados, MaxScore %8.3f ms %9.0f docs puntuados, %s%n",
+                        type, k, exhaustive[0] / 1e6 / count, (double) exhaustive[1] / count,
+                        pruned[0] / 1e6 / count, (double) pruned[1] / count,
+                        expected.equals(result) ? "mismos resultados" : "RESULTADOS DISTINTOS");
+            }
+        }
+        DocumentCtrl.clear();
+    }
+
+    /**
+     * Mide el recall@k (k = 10) y la latencia de las consultas aproximadas sobre las listas ordenadas por impacto con
+     * distintos presupuestos de apariciones procesadas, respecto a los resultados exactos, sobre 100k documentos.
+     */
+    public static void recall() throws Exception {
+        System.out.println("\n Consulta aproximada por impacto (k = 10) \n -----------------");
+        int k = 10;
+        loadCorpus(100000);
+        String[] queries = randomQueries(200, 11);
+
+        //Primera pasada para calcular las normas y las cotas de las palabras
+        LinkedList<LinkedList<Document>> exact = new LinkedList<>();
+        for (String query : queries) exact.add(DocumentCtrl.searchByQuery(query, k, 2));
+        long t0 = System.nanoTime();
+        for (String query : queries) DocumentCtrl.searchByQuery(query, k, 2);
+        System.out.printf(" exacta:              %8.3f ms/consulta%n", (System.nanoTime() - t0) / 1e6 / queries.length);
+
+        //Primera pasada para construir las listas ordenadas por impacto
+        for (String query : queries) DocumentCtrl.searchByQuery(query, k, 2, 0, 0);
+
+        int[] budgets = {256, 1024, 4096, 16384, 65536, 0};
+        for (int budget : budgets) {
+            double recall = 0;
+            t0 = System.nanoTime();
+            int i = 0;
+            for (LinkedList<Document> expected : exact) {
+                LinkedList<Document> result = DocumentCtrl.searchByQuery(queries[i++], k, 2, budget, 0);
+                int found = 0;
+                for (Document d : result) if (expected.contains(d)) found++;
+                recall += expected.isEmpty() ? 1 : (double) found / expected.size();
+            }
+            System.out.printf(" presupuesto %7s: %8.3f ms/consulta, recall@%d %.3f%n", budget > 0 ? String.valueOf(budget) : "-",
+                    (System.nanoTime() - t0) / 1e6 / queries.length, k, recall / queries.length);
+        }
+        DocumentCtrl.clear();
+    }
+
+    /**
+     * Mide el tiempo por documento de comparar con SimilitudeComp todos los documentos de un corpus de 100k documentos
+     * con 20 documentos de referencia.
+     */
+    public static void similitude() throws Exception {
+        System.out.println("\n Comparación con SimilitudeComp \n -----------------");
+        LinkedList<Document> docs = generateDocuments(100000, 100000);
+        DocumentCtrl.clear();
+        DocumentCtrl.addAll(docs);
+
+        for (int pass = 0; pass < 3; ++pass) {
+            long t0 = System.nanoTime();
+            int references = 20;
+            for (Document reference : docs.subList(0, references)) {
+                SimilitudeComp comp = new SimilitudeComp(reference, 10, 2);
+                for (Document d : docs) comp.compare(d);
+                comp.getList();
+            }
+            System.out.printf(" pasada %d: %8.1f ns/documento%n", pass, (System.nanoTime() - t0) / (double) references / docs.size());
+        }
+        DocumentCtrl.clear();
+    }
+
+    /**
+     * @return Bytes reservados hasta ahora por el hilo actual, -1 si la JVM no permite medirlo.
+     */
+    static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+        return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Mide los bytes reservados por documento puntuado al comparar con SimilitudeComp y al consultar con searchByQuery
+     * (exhaustiva y con poda) sobre un corpus de 100k documentos, después de una pasada de calentamiento.
+     */
+    public static void allocation() throws Exception {
+        System.out.println("\n Memoria reservada por documento puntuado \n -----------------");
+        if (allocatedBytes() < 0) {
+            System.out.println(" La JVM no permite medir la memoria reservada por hilo");
+            return;
+        }
+        LinkedList<Document> docs = generateDocuments(100000, 100000);
+        DocumentCtrl.clear();
+        DocumentCtrl.addAll(docs);
+        Document[] references = docs.subList(0, 20).toArray(new Document[0]);
+        String[] queries = randomQueries(200, 11);
+
+        for (int pass = 0; pass < 2; ++pass) {
+            long b0 = allocatedBytes();
+            long compared = 0;
+            for (Document reference : references) {
+                SimilitudeComp comp = new SimilitudeComp(reference, 10, 2);
+                for (Document d : docs) comp.compare(d);
+                comp.getList();
+                compared += docs.size();
+            }
+            long b1 = allocatedBytes();
+
+            long[] scored = new long[2];
+            long[] bytes = new long[2];
+            for (int p = 0; p < 2; ++p) {
+                DocumentCtrl.setPruning(p == 1);
+                long s0 = DocumentCtrl.getScoredDocuments();
+                long q0 = allocatedBytes();
+                for (String query : queries) DocumentCtrl.searchByQuery(query, 10, 2);
+                bytes[p] = allocatedBytes() - q0;
+                scored[p] = DocumentCtrl.getScoredDocuments() - s0;
+            }
+            DocumentCtrl.setPruning(true);
+
+            if (pass > 0) {
+                System.out.printf(" SimilitudeComp.compare: %8.3f bytes/documento%n", (double) (b1 - b0) / compared);
+                System.out.printf(" searchByQuery exhaustiva: %8.3f bytes/documento puntuado (%.0f bytes/consulta)%n",
+                        (double) bytes[0] / scored[0], (double) bytes[0] / queries.length);
+                System.out.printf(" searchByQuery con poda: %8.3f bytes/documento puntuado (%.0f bytes/consulta)%n",
+                        (double) bytes[1] / scored[1], (double) bytes[1] / queries.length);
+            }
+        }
+        DocumentCtrl.clear();
+    }
+
+    /**
+     * Curva de escalado de searchByQuery y searchBySimilarity repartiendo el corpus de 100k documentos en trozos que
+     * se puntúan en paralelo en un ForkJoinPool de 1 a 32 hilos, con y sin poda.
+     */
+    public static void parallel() throws Exception {
+        System.out.println("\n Búsqueda en paralelo (k = 10), " + Runtime.getRuntime().availableProcessors() + " procesadores \n -----------------");
+        int k = 10;
+        int nReferences = 50;
+        loadCorpus(100000);
+        String[] queries = randomQueries(200, 11);
+        //Primera pasada para calcular las normas y las cotas de las palabras
+        for (String query : queries) DocumentCtrl.searchByQuery(query, k, 2, (ForkJoinPool) null);
+        for (int i = 0; i < nReferences; ++i) DocumentCtrl.searchBySimilarity("author" + (i % 1000), "title" + i, k, 2, null);
+
+        for (boolean pruning : new boolean[]{false, true}) {
+            DocumentCtrl.setPruning(pruning);
+            double base = 0;
+            for (int threads : new int[]{1, 2, 4, 8, 16, 32}) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                long t0 = System.nanoTime();
+                for (String query : queries) DocumentCtrl.searchByQuery(query, k, 2, pool);
+                double query = (System.nanoTime() - t0) / 1e6 / queries.length;
+                t0 = System.nanoTime();
+                for (int i = 0; i < nReferences; ++i) {
+                    DocumentCtrl.searchBySimilarity("author" + (i % 1000), "title" + i, k, 2, pool);
+                }
+                double similarity = (System.nanoTime() - t0) / 1e6 / nReferences;
+                pool.shutdown();
+
+                if (threads == 1) base = query + similarity;
+                System.out.printf(" %-10s %2d hilos: consulta %8.3f ms, similitud %8.3f ms, aceleración %5.2f%n",
+                        pruning ? "poda" : "exhaustiva", threads, query, similarity, base / (query + similarity));
+            }
+        }
+        DocumentCtrl.setPruning(true);
+        DocumentCtrl.clear();
+    }
+
+    /**
+     * Genera una expresión booleana aleatoria con el número de hojas indicado. Las hojas son palabras, a veces negadas
+     * o entre comillas, unidas con '&' y '|' y agrupadas con paréntesis.
+     */
+    static String randomBooleanExpression(Random random, int leaves) {
+        if (leaves == 1) {
+            String word = randomWord(random);
+            int kind = random.nextInt(8);
+            if (kind == 0) return "!" + word;
+            if (kind == 1) return "\"" + word + "\"";
+            return word;
+        }
+        int left = 1 + random.nextInt(leaves - 1);
+        return "(" + randomBooleanExpression(random, left) + (random.nextBoolean() ? " & " : " | ")
+                + randomBooleanExpression(random, leaves - left) + ")";
+    }
+
+    /**
+     * @return n expresiones booleanas aleatorias con el número de hojas indicado.
+     */
+    static String[] randomBooleanExpressions(int n, int leaves, long seed) {
+        Random random = new Random(seed);
+        String[] expressions = new String[n];
+        for (int i = 0; i < n; ++i) expressions[i] = randomBooleanExpression(random, leaves);
+        return expressions;
+    }
+
+    /**
+     * Mide el tiempo por búsqueda de searchByBooleanStatement sobre un corpus de 100k documentos con expresiones de 2,
+     * 8 y 32 hojas, evaluando todos los documentos y solo los candidatos de los índices invertidos, y los bytes
+     * reservados por frase del corpus.
+     */
+    public static void booleanSearch() throws Exception {
+        System.out.println("\n Búsqueda por expresión booleana \n -----------------");
+        loadCorpus(100000);
+        long sentences = 100000L * SENTENCES;
+        for (int leaves : new int[]{2, 8, 32}) {
+            String[] expressions = randomBooleanExpressions(20, leaves, leaves);
+            for (boolean prefilter : new boolean[]{false, true}) {
+                DocumentCtrl.setPrefilter(prefilter);
+                for (String e : expressions) DocumentCtrl.searchByBooleanStatement(e, null);
+
+                long found = 0;
+                long v0 = DocumentCtrl.getVerifiedDocuments();
+                long b0 = allocatedBytes();
+                long t0 = System.nanoTime();
+                for (String e : expressions) found += DocumentCtrl.searchByBooleanStatement(e, null).size();
+                long t1 = System.nanoTime();
+                long b1 = allocatedBytes();
+                System.out.printf(" %2d hojas, %-10s: %8.2f ms/búsqueda, %8.3f bytes/frase, %7.0f evaluados/búsqueda, %7.0f documentos/búsqueda%n",
+                        leaves, prefilter ? "candidatos" : "todos", (t1 - t0) / 1e6 / expressions.length,
+                        (double) (b1 - b0) / expressions.length / sentences,
+                        (double) (DocumentCtrl.getVerifiedDocuments() - v0) / expressions.length, (double) found / expressions.length);
+            }
+        }
+        DocumentCtrl.setPrefilter(true);
+        DocumentCtrl.clear();
+    }
+
+    /**
+     * @return n expresiones de tres tipos: conjunciones de dos palabras ({a b}), secuencias de cuatro palabras
+     * seguidas de una frase de un corpus de 100k documentos ("a b c d") y expresiones aleatorias de 8 hojas.
+     */
+    private static String[][] positionalExpressions(int n, long seed) throws DocumentNotFound {
+        Random random = new Random(seed);
+        String[] conjunctions = new String[n];
+        String[] sequences = new String[n];
+        for (int i = 0; i < n; ++i) {
+            conjunctions[i] = "{" + randomWord(random) + " " + randomWord(random) + "}";
+            int d = random.nextInt(100000);
+            String[] words = DocumentCtrl.getDocument("author" + (d % 1000), "title" + d).getSentences().getFirst().split("[ .]+");
+            int start = random.nextInt(words.length - 3);
+            sequences[i] = "\"" + String.join(" ", Arrays.copyOfRange(words, start, start + 4)) + "\"";
+        }
+        return new String[][]{conjunctions, sequences, randomBooleanExpressions(n, 8, seed)};
+    }
+
+    /**
+     * Mide la memoria y el tiempo de construir el índice posicional de las frases de un corpus de 100k documentos, y
+     * el tiempo por búsqueda de searchByBooleanStatement evaluando todos los documentos, los candidatos del índice de
+     * documentos y las frases candidatas del índice posicional.
+     */
+    public static void positional() throws Exception {
+        System.out.println("\n Índice posicional de frases \n -----------------");
+        loadCorpus(100000);
+        long before = usedMemory();
+        long t0 = System.nanoTime();
+        DocumentCtrl.setPositionalIndex(true);
+        long t1 = System.nanoTime();
+        long after = usedMemory();
+        System.out.printf(" construcción: %8.0f ms, %8.0f bytes/doc de heap (%8.0f bytes/doc de arrays del índice)%n",
+                (t1 - t0) / 1e6, (double) (after - before) / 100000, (double) DocumentCtrl.getPositionalIndexBytes() / 100000);
+        DocumentCtrl.setPositionalIndex(false);
+        long corpus = usedMemory();
+        DocumentCtrl.setPositionalIndex(true);
+        System.out.printf(" corpus sin índice posicional: %8.0f bytes/doc%n", (double) corpus / 100000);
+
+        String[] kinds = {"{a b}", "\"a b c d\"", "8 hojas"};
+        String[][] expressions = positionalExpressions(20, 5);
+        for (int k = 0; k < kinds.length; ++k) {
+            for (int mode = 0; mode < 3; ++mode) {
+                DocumentCtrl.setPrefilter(mode > 0);
+                DocumentCtrl.setPositionalIndex(mode == 2);
+                for (String e : expressions[k]) DocumentCtrl.searchByBooleanStatement(e, null);
+
+                long found = 0;
+                long v0 = DocumentCtrl.getVerifiedDocuments();
+                long s0 = System.nanoTime();
+                for (String e : expressions[k]) found += DocumentCtrl.searchByBooleanStatement(e, null).size();
+                long s1 = System.nanoTime();
+                System.out.printf(" %-10s %-11s: %9.3f ms/búsqueda, %7.0f evaluados/búsqueda, %7.0f documentos/búsqueda%n",
+                        kinds[k], mode == 0 ? "todos" : mode == 1 ? "documentos" : "posicional",
+                        (s1 - s0) / 1e6 / expressions[k].length,
+                        (double) (DocumentCtrl.getVerifiedDocuments() - v0) / expressions[k].length,
+                        (double) found / expressions[k].length);
+            }
+        }
+        DocumentCtrl.setPrefilter(true);
+        DocumentCtrl.setPositionalIndex(false);
+        DocumentCtrl.clear();
+    }
+
+    /**
+     * @return Tiempo en nanosegundos de evaluar cada predicado sobre todas las frases, y en found[0] las frases que cumplen.
+     */
+    private static long evalAll(SentencePredicate[] predicates, String[] sentences, long[] found) {
+        long t0 = System.nanoTime();
+        long n = 0;
+        for (SentencePredicate p : predicates) {
+            for (String sentence : sentences) if (p.eval(sentence)) ++n;
+        }
+        found[0] = n;
+        return System.nanoTime() - t0;
+    }
+
+    /**
+     * Compara el tiempo por frase de evaluar expresiones de 2, 8 y 32 hojas con el intérprete (el árbol de la
+     * expresión) y compiladas a bytecode con BoolExprCompiler, sobre las frases de 20k documentos.
+     */
+    public static void compiled() throws Exception {
+        System.out.println("\n Expresiones interpretadas y compiladas \n -----------------");
+        LinkedList<String> all = new LinkedList<>();
+        for (Document d : generateDocuments(20000, 20000)) all.addAll(d.getSentences());
+        String[] sentences = all.toArray(new String[0]);
+
+        for (int leaves : new int[]{2, 8, 32}) {
+            String[] expressions = randomBooleanExpressions(20, leaves, leaves);
+            SentencePredicate[] interpreted = new SentencePredicate[expressions.length];
+            SentencePredicate[] compiled = new SentencePredicate[expressions.length];
+            long c0 = System.nanoTime();
+            for (int i = 0; i < expressions.length; ++i) {
+                BoolExprNode tree = new BoolExprParser(expressions[i]).getTree();
+                interpreted[i] = tree;
+                compiled[i] = BoolExprCompiler.compile(tree);
+            }
+            double compileTime = (System.nanoTime() - c0) / 1e3 / expressions.length;
+
+            long[] found = new long[1];
+            long interpretedFound = 0, compiledFound = 0;
+            long interpretedTime = Long.MAX_VALUE, compiledTime = Long.MAX_VALUE;
+            for (int pass = 0; pass < 5; ++pass) {
+                interpretedTime = Math.min(interpretedTime, evalAll(interpreted, sentences, found));
+                interpretedFound = found[0];
+                compiledTime = Math.min(compiledTime, evalAll(compiled, sentences, found));
+                compiledFound = found[0];
+            }
+            double evaluations = (double) expressions.length * sentences.length;
+            System.out.printf(" %2d hojas: intérprete %6.1f ns/frase, compilada %6.1f ns/frase (%5.2fx), compilación %6.0f us/expresión%s%n",
+                    leaves, interpretedTime / evaluations, compiledTime / evaluations, (double) interpretedTime / compiledTime,
+                    compileTime, interpretedFound == compiledFound ? "" : " RESULTADOS DISTINTOS");
+        }
+    }
+
+    /**
+     * Compara el tiempo por frase de evaluar expresiones de 2, 8, 32 y 128 hojas con el intérprete, compiladas a
+     * bytecode y con el autómata de Aho-Corasick de BoolExprAutomaton (una sola pasada por frase), sobre las frases
+     * de 20k documentos.
+     */
+    public static void automaton() throws Exception {
+        System.out.println("\n Expresiones evaluadas con un autómata \n -----------------");
+        LinkedList<String> all = new LinkedList<>();
+        for (Document d : generateDocuments(20000, 20000)) all.addAll(d.getSentences());
+        String[] sentences = all.toArray(new String[0]);
+
+        for (int leaves : new int[]{2, 8, 32, 128}) {
+            String[] expressions = randomBooleanExpressions(20, leaves, leaves);
+            SentencePredicate[][] predicates = new SentencePredicate[3][expressions.length];
+            long c0 = System.nanoTime();
+            for (int i = 0; i < expressions.length; ++i) {
+                BoolExprNode tree = new BoolExprParser(expressions[i]).getTree();
+                predicates[0][i] = tree;
+                predicates[1][i] = BoolExprCompiler.compile(tree);
+            }
+            long c1 = System.nanoTime();
+            for (int i = 0; i < expressions.length; ++i) predicates[2][i] = BoolExprAutomaton.build((BoolExprNode) predicates[0][i]);
+            double buildTime = (System.nanoTime() - c1) / 1e3 / expressions.length;
+
+            long[] found = new long[1];
+            long[] foundBy = new long[3];
+            long[] time = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+            for (int pass = 0; pass < 5; ++pass) {
+                for (int m = 0; m < 3; ++m) {
+                    time[m] = Math.min(time[m], evalAll(predicates[m], sentences, found));
+                    foundBy[m] = found[0];
+                }
+            }
+            double evaluations = (double) expressions.length * sentences.length;
+            System.out.printf(" %3d hojas: intérprete %7.1f ns/frase, compilada %7.1f ns/frase, autómata %6.1f ns/frase (%5.2fx), construcción %6.0f us/expresión%s%n",
+                    leaves, time[0] / evaluations, time[1] / evaluations, time[2] / evaluations,
+                    (double) Math.min(time[0], time[1]) / time[2], buildTime,
+                    foundBy[0] == foundBy[1] && foundBy[0] == foundBy[2] ? "" : " RESULTADOS DISTINTOS");
+        }
+    }
+
+    /**
+     * Para firmas de 0 (sin firmas), 64, 128, 256 y 512 bits por frase, mide la memoria de las firmas, la tasa de
+     * falsos positivos por palabra (medida y esperada), la fracción de frases que pasan el filtro de expresiones de 2
+     * y 8 hojas y de ellas las que no cumplen la expresión, y el tiempo por búsqueda sin índice de candidatos, sobre
+     * un corpus de 50k documentos.
+     */
+    public static void signatures() throws Exception {
+        System.out.println("\n Firmas de las frases \n -----------------");
+        int bits = Content.getSignatureBits();
+        DocumentCtrl.setPrefilter(false);
+        for (int b : new int[]{0, 64, 128, 256, 512}) {
+            Content.setSignatureBits(b);
+            loadCorpus(50000);
+            Document[] documents = new Document[50000];
+            long sentences = 0, signatureBytes = 0, terms = 0;
+            for (int d = 0; d < documents.length; ++d) {
+                documents[d] = DocumentCtrl.getDocument("author" + (d % 1000), "title" + d);
+                sentences += documents[d].getSentences().size();
+                if (documents[d].getSignatures() != null) signatureBytes += 8L * documents[d].getSignatures().length;
+                for (int[] sentence : documents[d].getSentenceTerms()) terms += Arrays.stream(sentence).distinct().count();
+            }
+            System.out.printf(" %3d bits: %5.1f bytes/frase", b, (double) signatureBytes / sentences);
+
+            if (b > 0) {
+                // Palabras del vocabulario que no están en la frase y pasan su firma
+                Random random = new Random(b);
+                long tests = 0, positives = 0;
+                for (int i = 0; i < 100000; ++i) {
+                    Document d = documents[random.nextInt(documents.length)];
+                    int sentence = random.nextInt(d.getSentences().size());
+                    String word = randomWord(random);
+                    if (Arrays.asList(d.getSentences().get(sentence).toLowerCase().split("[ .]+")).contains(word)) continue;
+                    ++tests;
+                    if (SentenceSignature.mayContain(d.getSignatures(), sentence * d.getSignatureWords(), d.getSignatureWords(), word)) ++positives;
+                }
+                System.out.printf(", falsos positivos por palabra %6.3f%% (esperados %6.3f%%)",
+                        100.0 * positives / tests, 100 * SentenceSignature.falsePositiveRate(b, (int) Math.round((double) terms / sentences)));
+            }
+            System.out.println();
+
+            for (int leaves : new int[]{2, 8}) {
+                String[] expressions = randomBooleanExpressions(20, leaves, leaves);
+                if (b > 0) {
+                    long passed = 0, failed = 0;
+                    for (String e : expressions) {
+                        BoolExprNode tree = new BoolExprParser(e).getTree();
+                        SentenceSignature.Filter filter = SentenceSignature.filter(tree);
+                        for (Document d : documents) {
+                            int from = 0;
+                            for (String sentence : d.getSentences()) {
+                                if (filter == null || filter.mayMatch(d.getSignatures(), from, d.getSignatureWords())) {
+                                    ++passed;
+                                    if (!tree.eval(sentence)) ++failed;
+                                }
+                                from += d.getSignatureWords();
+                            }
+                        }
+                    }
+                    System.out.printf("      %d hojas: pasan el filtro %6.2f%% de las frases, %6.2f%% de ellas no cumplen la expresión",
+                            leaves, 100.0 * passed / sentences / expressions.length, 100.0 * failed / passed);
+                } else {
+                    System.out.printf("      %d hojas", leaves);
+                }
+
+                for (String e : expressions) DocumentCtrl.searchByBooleanStatement(e, null);
+                long found = 0;
+                long t0 = System.nanoTime();
+                for (String e : expressions) found += DocumentCtrl.searchByBooleanStatement(e, null).size();
+                long t1 = System.nanoTime();
+                System.out.printf(", %8.2f ms/búsqueda, %7.0f documentos/búsqueda%n", (t1 - t0) / 1e6 / expressions.length,
+                        (double) found / expressions.length);
+            }
+        }
+        Content.setSignatureBits(bits);
+        DocumentCtrl.setPrefilter(true);
+        DocumentCtrl.clear();
+    }
+
+    /**
+     * Intersección lineal de dos arrays ordenados, como la de SortedIntSets antes de la búsqueda exponencial.
+     */
+    private static int[] legacyIntersect(int[] a, int[] b) {
+        int[] res = new int[Math.min(a.length, b.length)];
+        int n = 0, i = 0, j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) ++i;
+            else if (a[i] > b[j]) ++j;
+            else {
+                res[n++] = a[i];
+                ++i;
+                ++j;
+            }
+        }
+        return Arrays.copyOf(res, n);
+    }
+
+    /**
+     * @return Lista de n ids distintos al azar entre 0 y bound.
+     */
+    private static PostingList randomPostingList(Random random, int n, int bound) {
+        PostingList list = new PostingList();
+        for (int id : random.ints(0, bound).distinct().limit(n).sorted().toArray()) list.add(id);
+        return list;
+    }
+
+    /**
+     * Compara la intersección de listas de postings de 1M de documentos con proporciones de longitudes 1:1, 1:10,
+     * 1:100 y 1:1000, y de tres listas equilibradas: copiando las listas y mezclándolas (la implementación anterior
+     * de los candidatos) y con PostingList.intersect, que empieza por la lista más rara y avanza con saltos
+     * exponenciales en las demás.
+     */
+    public static void intersection() {
+        System.out.println("\n Intersección de listas de postings \n -----------------");
+        Random random = new Random(19);
+        int bound = 4000000;
+        PostingList large = randomPostingList(random, 1000000, bound);
+        for (int ratio : new int[]{1, 10, 100, 1000, -3}) {
+            PostingList[] lists = ratio > 0
+                    ? new PostingList[]{large, randomPostingList(random, 1000000 / ratio, bound)}
+                    : new PostingList[]{large, randomPostingList(random, 1000000, bound), randomPostingList(random, 1000000, bound)};
+            int runs = ratio >= 100 ? 2000 : 50;
+            long legacyTime = Long.MAX_VALUE, time = Long.MAX_VALUE;
+            int legacyFound = 0, found = 0;
+            for (int pass = 0; pass < 5; ++pass) {
+                long t0 = System.nanoTime();
+                for (int r = 0; r < runs; ++r) {
+                    int[] res = lists[0].toArray();
+                    for (int k = 1; k < lists.length; ++k) res = legacyIntersect(res, lists[k].toArray());
+                    legacyFound = res.length;
+                }
+                long t1 = System.nanoTime();
+                for (int r = 0; r < runs; ++r) found = PostingList.intersect(lists).length;
+                long t2 = System.nanoTime();
+                legacyTime = Math.min(legacyTime, t1 - t0);
+                time = Math.min(time, t2 - t1);
+            }
+            System.out.printf(" %-10s: copiar y mezclar %9.1f us, intersect %9.1f us (%7.1fx), %7d documentos%s%n",
+                    ratio > 0 ? "1:" + ratio : "3 x 1M", legacyTime / 1e3 / runs, time / 1e3 / runs, (double) legacyTime / time,
+                    found, found == legacyFound ? "" : " RESULTADOS DISTINTOS");
+        }
+    }
+
+    /**
+     * @return Palabra del vocabulario entre las posiciones from y to, las primeras son las más frecuentes.
+     */
+    private static String wordAt(Random random, int from, int to) {
+        return getVocabulary()[from + random.nextInt(to - from)];
+    }
+
+    /**
+     * Compara los candidatos de las búsquedas booleanas con los ids ordenados de las listas y con bitmaps comprimidos
+     * (AND, OR y ANDNOT de bitmaps, con los NOT acotados por los documentos vivos) sobre un corpus de 100k documentos:
+     * conjunciones, disyunciones y diferencias de palabras frecuentes, negaciones de palabras raras y expresiones
+     * aleatorias de 8 hojas. También compara la memoria de los ids de las listas densas como arrays y como bitmaps.
+     */
+    public static void bitmaps() throws Exception {
+        System.out.println("\n Candidatos con bitmaps comprimidos \n -----------------");
+        loadCorpus(100000);
+        for (int df : new int[]{4096, 20000}) {
+            long[] bytes = DocumentCtrl.getPostingsBytes(df);
+            System.out.printf(" listas con df >= %5d: %9d bytes como arrays, %9d bytes como bitmaps%n", df, bytes[0], bytes[1]);
+        }
+
+        Random random = new Random(20);
+        String[] kinds = {"{f f}", "f | f", "f & !f", "!r", "8 hojas"};
+        String[][] expressions = new String[kinds.length][20];
+        for (int i = 0; i < 20; ++i) {
+            expressions[0][i] = "{" + wordAt(random, 5, 50) + " " + wordAt(random, 5, 50) + "}";
+            expressions[1][i] = wordAt(random, 5, 50) + " | " + wordAt(random, 5, 50);
+            expressions[2][i] = wordAt(random, 5, 50) + " & !" + wordAt(random, 5, 50);
+            expressions[3][i] = "!" + wordAt(random, 200, 2000);
+        }
+        expressions[4] = randomBooleanExpressions(20, 8, 20);
+
+        for (int k = 0; k < kinds.length; ++k) {
+            for (boolean bitmaps : new boolean[]{false, true}) {
+                DocumentCtrl.setBitmapCandidates(bitmaps);
+                for (String e : expressions[k]) DocumentCtrl.searchByBooleanStatement(e, null);
+
+                long found = 0;
+                long v0 = DocumentCtrl.getVerifiedDocuments();
+                long a0 = DocumentCtrl.getAcceptedDocuments();
+                long t0 = System.nanoTime();
+                for (String e : expressions[k]) found += DocumentCtrl.searchByBooleanStatement(e, null).size();
+                long t1 = System.nanoTime();
+                System.out.printf(" %-8s %-9s: %8.2f ms/búsqueda, %7.0f evaluados/búsqueda, %7.0f aceptados/búsqueda, %7.0f documentos/búsqueda%n",
+                        kinds[k], bitmaps ? "bitmaps" : "ids", (t1 - t0) / 1e6 / expressions[k].length,
+                        (double) (DocumentCtrl.getVerifiedDocuments() - v0) / expressions[k].length,
+                        (double) (DocumentCtrl.getAcceptedDocuments() - a0) / expressions[k].length,
+                        (double) found / expressions[k].length);
+            }
+        }
+        DocumentCtrl.setBitmapCandidates(true);
+        DocumentCtrl.clear();
+    }
+
+    /**
+     * Compara contar los resultados con searchByBooleanStatement(...).size() y con countByBooleanStatement, y con
+     * searchByQuery(...) de todos los documentos y countByQuery con varios umbrales, sobre un corpus de 100k documentos:
+     * tiempo y bytes reservados por búsqueda.
+     */
+    public static void count() throws Exception {
+        System.out.println("\n Conteo de resultados \n -----------------");
+        loadCorpus(100000);
+        Random random = new Random(21);
+        String[] kinds = {"f", "{f f}", "!r", "8 hojas"};
+        String[][] expressions = new String[kinds.length][20];
+        for (int i = 0; i < 20; ++i) {
+            expressions[0][i] = wordAt(random, 5, 50);
+            expressions[1][i] = "{" + wordAt(random, 5, 50) + " " + wordAt(random, 5, 50) + "}";
+            expressions[2][i] = "!" + wordAt(random, 200, 2000);
+        }
+        expressions[3] = randomBooleanExpressions(20, 8, 21);
+
+        for (int k = 0; k < kinds.length; ++k) {
+            for (boolean count : new boolean[]{false, true}) {
+                for (String e : expressions[k]) {
+                    if (count) DocumentCtrl.countByBooleanStatement(e, null);
+                    else DocumentCtrl.searchByBooleanStatement(e, null).size();
+                }
+
+                long found = 0;
+                long b0 = allocatedBytes();
+                long t0 = System.nanoTime();
+                for (String e : expressions[k]) {
+                    found += count ? DocumentCtrl.countByBooleanStatement(e, null) : DocumentCtrl.searchByBooleanStatement(e, null).size();
+                }
+                long t1 = System.nanoTime();
+                long b1 = allocatedBytes();
+                System.out.printf(" %-8s %-6s: %8.2f ms/búsqueda, %10.0f bytes/búsqueda, %7.0f documentos/búsqueda%n",
+                        kinds[k], count ? "count" : "search", (t1 - t0) / 1e6 / expressions[k].length,
+                        (double) (b1 - b0) / expressions[k].length, (double) found / expressions[k].length);
+            }
+        }
+
+        String[] queries = new String[20];
+        for (int i = 0; i < queries.length; ++i) {
+            queries[i] = wordAt(random, 5, 100) + " " + wordAt(random, 50, 500) + " " + wordAt(random, 200, 2000);
+        }
+        int n = 100000;
+        for (float threshold : new float[]{0, 0.05f, 0.2f}) {
+            for (boolean count : new boolean[]{false, true}) {
+                if (!count && threshold > 0) continue;
+                for (String q : queries) {
+                    if (count) DocumentCtrl.countByQuery(q, threshold, 1);
+                    else DocumentCtrl.searchByQuery(q, n, 1, null).size();
+                }
+
+                long found = 0;
+                long s0 = DocumentCtrl.getScoredDocuments();
+                long b0 = allocatedBytes();
+                long t0 = System.nanoTime();
+                for (String q : queries) {
+                    found += count ? DocumentCtrl.countByQuery(q, threshold, 1) : DocumentCtrl.searchByQuery(q, n, 1, null).size();
+                }
+                long t1 = System.nanoTime();
+                long b1 = allocatedBytes();
+                System.out.printf(" umbral %.2f %-6s: %8.2f ms/consulta, %10.0f bytes/consulta, %7.0f puntuados/consulta, %7.0f documentos/consulta%n",
+                        threshold, count ? "count" : "search", (t1 - t0) / 1e6 / queries.length, (double) (b1 - b0) / queries.length,
+                        (double) (DocumentCtrl.getScoredDocuments() - s0) / queries.length, (double) found / queries.length);
+            }
+        }
+        DocumentCtrl.clear();
+    }
+
+    /**
+     * Compara las búsquedas booleanas evaluando los operandos en el orden escrito y en el orden del planificador (por
+     * df y coste de las hojas) sobre un corpus de 100k documentos, con expresiones de 3 hojas donde la palabra rara
+     * se escribe al final de los AND o la frecuente al final de los OR. Muestra también el plan de una de ellas.
+     */
+    public static void planner() throws Exception {
+        System.out.println("\n Planificación de expresiones booleanas \n -----------------");
+        loadCorpus(100000);
+        Random random = new Random(22);
+        String[] kinds = {"f & f & r", "r | r | f", "(f | f) & r"};
+        String[][] expressions = new String[kinds.length][20];
+        for (int i = 0; i < 20; ++i) {
+            expressions[0][i] = wordAt(random, 5, 50) + " & " + wordAt(random, 5, 50) + " & " + wordAt(random, 200, 2000);
+            expressions[1][i] = wordAt(random, 200, 2000) + " | " + wordAt(random, 200, 2000) + " | " + wordAt(random, 5, 50);
+            expressions[2][i] = "(" + wordAt(random, 5, 50) + " | " + wordAt(random, 5, 50) + ") & " + wordAt(random, 200, 2000);
+        }
+        System.out.println(" Plan de " + expressions[0][0] + ":");
+        System.out.print(DocumentCtrl.explainBooleanStatement(expressions[0][0]));
+
+        for (int k = 0; k < kinds.length; ++k) {
+            for (boolean planning : new boolean[]{false, true}) {
+                BoolExprParser.setPlanning(planning);
+                for (String e : expressions[k]) DocumentCtrl.searchByBooleanStatement(e, null);
+
+                long found = 0;
+                long t0 = System.nanoTime();
+                for (String e : expressions[k]) found += DocumentCtrl.searchByBooleanStatement(e, null).size();
+                long t1 = System.nanoTime();
+                System.out.printf(" %-12s %-9s: %8.2f ms/búsqueda, %7.0f documentos/búsqueda%n",
+                        kinds[k], planning ? "planeado" : "escrito", (t1 - t0) / 1e6 / expressions[k].length,
+                        (double) found / expressions[k].length);
+            }
+        }
+        BoolExprParser.setPlanning(true);
+        DocumentCtrl.clear();
+    }
+
+    /**
+     * Compara la evaluación por frase de expresiones con subexpresiones repetidas (en otro orden) tal como se escriben
+     * y en forma canónica con las subexpresiones compartidas, interpretadas y compiladas, sobre las frases de 20k
+     * documentos. También cuenta las claves canónicas distintas de expresiones escritas de formas equivalentes.
+     */
+    public static void canonical() throws Exception {
+        System.out.println("\n Forma canónica de las expresiones \n -----------------");
+        LinkedList<String> all = new LinkedList<>();
+        for (Document d : generateDocuments(20000, 20000)) all.addAll(d.getSentences());
+        String[] sentences = all.toArray(new String[0]);
+        boolean planning = BoolExprParser.isPlanning();
+        BoolExprParser.setPlanning(false);
+
+        Random random = new Random(23);
+        String[] expressions = new String[20];
+        for (int i = 0; i < expressions.length; ++i) {
+            String a = wordAt(random, 0, 20), b = wordAt(random, 0, 20), c = wordAt(random, 20, 200);
+            expressions[i] = "((" + a + " | " + b + ") & !" + c + ") | ((" + b + " | " + a + ") & " + wordAt(random, 20, 200)
+                    + ") | (" + wordAt(random, 20, 200) + " & (" + a + " | " + b + ") & " + c + ")";
+        }
+        System.out.println(" Ejemplo: " + expressions[0]);
+        System.out.println(" Clave:   " + new BoolExprParser(expressions[0]).getCanonicalKey());
+
+        SentencePredicate[][] predicates = new SentencePredicate[4][expressions.length];
+        for (int i = 0; i < expressions.length; ++i) {
+            BoolExprParser.setCanonicalization(false);
+            BoolExprNode written = new BoolExprParser(expressions[i]).getTree();
+            BoolExprParser.setCanonicalization(true);
+            BoolExprNode canonical = new BoolExprParser(expressions[i]).getTree();
+            predicates[0][i] = written;
+            predicates[1][i] = canonical;
+            predicates[2][i] = BoolExprCompiler.compile(written);
+            predicates[3][i] = BoolExprCompiler.compile(canonical);
+        }
+        String[] names = {"escrita", "canónica", "escrita compilada", "canónica compilada"};
+        long[] found = new long[1];
+        long[] foundBy = new long[4];
+        long[] time = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+        for (int pass = 0; pass < 5; ++pass) {
+            for (int m = 0; m < 4; ++m) {
+                time[m] = Math.min(time[m], evalAll(predicates[m], sentences, found));
+                foundBy[m] = found[0];
+            }
+        }
+        double evaluations = (double) expressions.length * sentences.length;
+        for (int m = 0; m < 4; ++m) {
+            System.out.printf(" %-19s: %7.1f ns/frase%s%n", names[m], time[m] / evaluations, foundBy[m] == foundBy[0] ? "" : " RESULTADOS DISTINTOS");
+        }
+
+        // Permutaciones de los operandos de una misma expresión
+        HashSet<String> written = new HashSet<>(), keys = new HashSet<>();
+        for (int i = 0; i < 1000; ++i) {
+            String[] words = {"perro", "gato", "casa", "sol"};
+            for (int j = words.length - 1; j > 0; --j) {
+                int k = random.nextInt(j + 1);
+                String w = words[j];
+                words[j] = words[k];
+                words[k] = w;
+            }
+            String e = random.nextBoolean() ? "{" + words[0] + " " + words[1] + "} | (" + words[2] + " & !" + words[3] + ")"
+                    : "(!" + words[3] + " & " + words[2] + ") | (" + words[1] + " & " + words[0] + ")";
+            written.add(e);
+            keys.add(new BoolExprParser(e).getCanonicalKey());
+        }
+        System.out.printf(" %d expresiones escritas distintas, %d claves canónicas%n", written.size(), keys.size());
+        BoolExprParser.setPlanning(planning);
+    }
+
+    /**
+     * Simula peticiones repetidas de muchos usuarios sobre un corpus de 100k documentos: 200 peticiones distintas
+     * (expresiones booleanas, consultas top-10 y búsquedas por similitud de documentos populares) escogidas siguiendo
+     * aproximadamente una distribución de Zipf, con un documento añadido cada 500 peticiones. Compara el tiempo sin cache
+     * y con caches de varios tamaños, y muestra los aciertos, fallos y expulsiones de la cache.
+     */
+    public static void cache() throws Exception {
+        System.out.println("\n Cache de resultados \n -----------------");
+        loadCorpus(100000);
+        Random random = new Random(24);
+        String[] booleans = new String[70], queries = new String[70];
+        for (int i = 0; i < booleans.length; ++i) {
+            booleans[i] = "{" + wordAt(random, 5, 100) + " " + wordAt(random, 50, 500) + "} | (" + wordAt(random, 200, 2000) + " & !" + wordAt(random, 5, 50) + ")";
+            queries[i] = wordAt(random, 5, 100) + " " + wordAt(random, 50, 500) + " " + wordAt(random, 200, 2000);
+        }
+        int requests = 10000, distinct = 200;
+        int[] workload = new int[requests];
+        for (int i = 0; i < requests; ++i) workload[i] = (int) Math.floor(Math.pow(distinct, random.nextDouble())) - 1;
+
+        LinkedList<Document> added = generateDocuments(requests / 500, 24);
+        for (long size : new long[]{0, 1 << 12, 1 << 16}) {
+            DocumentCtrl.setResultCacheSize(size);
+            long h0 = DocumentCtrl.getCacheHits(), m0 = DocumentCtrl.getCacheMisses(), e0 = DocumentCtrl.getCacheEvictions();
+            long found = 0;
+            long t0 = System.nanoTime();
+            for (int i = 0; i < requests; ++i) {
+                if (i > 0 && i % 500 == 0) {
+                    Document d = added.get(i / 500 - 1);
+                    DocumentCtrl.add(d.getAuthor() + "x" + size, d.getTitle(), d.getSentences(), d.getFormat());
+                }
+                int r = workload[i];
+                if (r % 3 == 0) found += DocumentCtrl.searchByBooleanStatement(booleans[r / 3 % booleans.length], null).size();
+                else if (r % 3 == 1) found += DocumentCtrl.searchByQuery(queries[r / 3 % queries.length], 10, 1, null).size();
+                else found += DocumentCtrl.searchBySimilarity("author" + (r % 1000), "title" + r, 10, 1, null).size();
+            }
+            long t1 = System.nanoTime();
+            System.out.printf(" cache %6d: %8.3f ms/petición, %6d aciertos, %5d fallos, %5d expulsiones, %8.1f documentos/petición%n",
+                    size, (t1 - t0) / 1e6 / requests, DocumentCtrl.getCacheHits() - h0, DocumentCtrl.getCacheMisses() - m0,
+                    DocumentCtrl.getCacheEvictions() - e0, (double) found / requests);
+        }
+        DocumentCtrl.setResultCacheSize(0);
+        DocumentCtrl.clear();
+    }
+
+    /**
+     * Genera n alertas de varios tipos: palabras, conjunciones, disyunciones, diferencias, secuencias y alguna negación
+     * sola. Las palabras son de frecuencia media, de cualquier frecuencia (Zipf) y raras, sin las 20 más frecuentes del
+     * vocabulario en las dos primeras, que no interesan como alerta.
+     */
+    private static String[] randomAlerts(int n, long seed) {
+        Random random = new Random(seed);
+        String[] alerts = new String[n];
+        for (int i = 0; i < n; ++i) {
+            String a = wordAt(random, 20, 2000), b = randomWord(random), c = wordAt(random, 20, VOCABULARY);
+            switch (random.nextInt(7)) {
+                case 0: alerts[i] = a; break;
+                case 1: alerts[i] = "{" + a + " " + b + "}"; break;
+                case 2: alerts[i] = a + " | " + b; break;
+                case 3: alerts[i] = a + " & !" + b; break;
+                case 4: alerts[i] = "\"" + a + " " + b + " " + c + "\""; break;
+                case 5: alerts[i] = "(" + a + " | " + b + ") & " + c; break;
+                default: alerts[i] = random.nextInt(10) == 0 ? "!" + a : a + " & " + b + " & " + c;
+            }
+        }
+        return alerts;
+    }
+
+    /**
+     * Mide el coste de comprobar las alertas registradas al añadir documentos, sobre un corpus de 20k documentos, con 0,
+     * 10k y 100k alertas: tiempo por documento añadido, alertas evaluadas por documento (solo las candidatas del índice
+     * de términos de las alertas) y alertas cumplidas por documento. Lo compara con evaluar todas las alertas en cada
+     * documento.
+     */
+    public static void percolator() throws Exception {
+        System.out.println("\n Alertas comprobadas al añadir documentos \n -----------------");
+        loadCorpus(20000);
+        LinkedList<Document> added = generateDocuments(2000, 25);
+        int next = 0;
+        for (int n : new int[]{0, 10000, 100000}) {
+            String[] alerts = randomAlerts(n, n);
+            DocumentCtrl.clearAlerts();
+            long r0 = System.nanoTime();
+            for (String a : alerts) DocumentCtrl.registerAlert(a);
+            long r1 = System.nanoTime();
+
+            long e0 = DocumentCtrl.getEvaluatedAlerts();
+            long matched = 0;
+            long t0 = System.nanoTime();
+            for (int i = 0; i < 500; ++i, ++next) {
+                Document d = added.get(next);
+                DocumentCtrl.add(d.getAuthor() + "n", d.getTitle(), d.getSentences(), d.getFormat());
+                if (i % 100 == 99) matched += DocumentCtrl.pollAlerts().size();
+            }
+            long t1 = System.nanoTime();
+            System.out.printf(" %6d alertas, índice  : %8.3f ms/documento, %8.1f evaluadas/documento, %6.2f cumplidas/documento, registro %6.2f µs/alerta%n",
+                    n, (t1 - t0) / 1e6 / 500, (double) (DocumentCtrl.getEvaluatedAlerts() - e0) / 500, (double) matched / 500,
+                    n == 0 ? 0 : (r1 - r0) / 1e3 / n);
+            if (n == 0) continue;
+
+            //Todas las alertas en cada documento
+            BoolExpressionComp[] comps = new BoolExpressionComp[n];
+            for (int i = 0; i < n; ++i) comps[i] = new BoolExpressionComp(alerts[i]);
+            matched = 0;
+            t0 = System.nanoTime();
+            for (int i = 0; i < 50; ++i) {
+                Document d = added.get(next - 1 - i);
+                for (BoolExpressionComp comp : comps) if (comp.matches(d)) ++matched;
+            }
+            t1 = System.nanoTime();
+            System.out.printf(" %6d alertas, todas   : %8.3f ms/documento, %8d evaluadas/documento, %6.2f cumplidas/documento%n",
+                    n, (t1 - t0) / 1e6 / 50, n, (double) matched / 50);
+        }
+        DocumentCtrl.clearAlerts();
+        DocumentCtrl.clear();
+    }
+
+    /**
+     * Ejecuta la prueba con nombre option.
+     * @return false si la opción no existe.
+     */
+    private static boolean run(String option) throws Exception {
+        switch (option.toLowerCase()) {
+            case "ingest":
+                ingest();
+                return true;
+            case "memory":
+                memory();
+                return true;
+            case "topk":
+                topK();
+                return true;
+            case "query":
+                query();
+                return true;
+            case "prune":
+                pruning();
+                return true;
+            case "recall":
+                recall();
+                return true;
+            case "similitude":
+                similitude();
+                return true;
+            case "allocation":
+                allocation();
+                return true;
+            case "parallel":
+                parallel();
+                return true;
+            case "boolean":
+                booleanSearch();
+                return true;
+            case "compiled":
+                compiled();
+                return true;
+            case "positional":
+                positional();
+                return true;
+            case "automaton":
+                automaton();
+                return true;
+            case "signatures":
+                signatures();
+                return true;
+            case "intersection":
+                intersection();
+                return true;
+            case "bitmaps":
+                bitmaps();
+                return true;
+            case "count":
+                count();
+                return true;
+            case "planner":
+                planner();
+                return true;
+            case "canonical":
+                canonical();
+                return true;
+            case "cache":
+                cache();
+                return true;
+            case "percolator":
+                percolator();
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Método main. Si se pasan argumentos se ejecutan las pruebas indicadas, si no se muestra un menú con las opciones:
+     * -Ingesta en lote
+     * -Memoria por documento
+     * -Selección top-k
+     * -Consulta por similitud
+     * -Poda top-k
+     * -Consulta aproximada
+     * -Comparación con SimilitudeComp
+     * -Memoria reservada por documento
+     * -Búsqueda en paralelo
+     * -Búsqueda por expresión booleana
+     * -Expresiones interpretadas y compiladas
+     * -Índice posicional de frases
+     * -Expresiones evaluadas con un autómata
+     * -Firmas de las frases
+     * -Intersección de listas de postings
+     * -Candidatos con bitmaps comprimidos
+     * -Conteo de resultados
+     * -Planificación de expresiones booleanas
+     * -Forma canónica de las expresiones
+     * -Cache de resultados
+     * -Alertas comprobadas al añadir documentos
+     * -Salir
+     * @param args Nombres de las pruebas a ejecutar.
+     */
+    public static void main(String[] args) throws Exception {
+        //Las pruebas repiten las mismas búsquedas para medirlas, solo la prueba de la cache la usa
+        DocumentCtrl.setResultCacheSize(0);
+        if (args.length > 0) {
+            for (String a : args) {
+                if (!run(a)) System.out.println("No existe esa opción: " + a);
+            }
+            return;
+        }
+
+        Scanner scanner = new Scanner(System.in);
+        String option = "";
+        while (!option.equals("salir")) {
+            System.out.println("\n  Menú Principal Driver Benchmark \n ------------------------------- \n " +
+                    "(i)    Ingesta en lote : 'ingest' \n (ii)   Memoria por documento : 'memory' \n (iii)  Selección top-k : 'topk' \n (iv)   Consulta por similitud : 'query' \n (v)    Poda top-k : 'prune' \n (vi)   Consulta aproximada : 'recall' \n (vii)  Comparación con SimilitudeComp : 'similitude' \n (viii) Memoria reservada por documento : 'allocation' \n (ix)   Búsqueda en paralelo : 'parallel' \n (x)    Búsqueda por expresión booleana : 'boolean' \n (xi)   Expresiones interpretadas y compiladas : 'compiled' \n (xii)  Índice posicional de frases : 'positional' \n (xiii) Expresiones evaluadas con un autómata : 'automaton' \n (xiv)  Firmas de las frases : 'signatures' \n (xv)   Intersección de listas de postings : 'intersection' \n (xvi)  Candidatos con bitmaps comprimidos : 'bitmaps' \n (xvii) Conteo de resultados : 'count' \n (xviii) Planificación de expresiones booleanas : 'planner' \n (xix)  Forma canónica de las expresiones : 'canonical' \n (xx)   Cache de resultados : 'cache' \n (xxi)  Alertas comprobadas al añadir documentos : 'percolator' \n (xxii) Salir : 'salir'");
+            option = scanner.nextLine();
+            if (!option.equals("salir") && !run(option)) System.out.println("No existe esa opción");
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package domain.testing;
+
+import domain.classes.BoolExprAutomaton;
+import domain.classes.BoolExprNode;
+import domain.classes.BoolExprParser;
+import domain.classes.SentencePredicate;
+import domain.exceptions.InvalidExpression;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BoolExprAutomatonTest {
+
+    private static final String[] WORDS = {"perro", "perros", "gato", "ga", "casa", "sol", "mar", "mañana", "c++", "o"};
+
+    private static String randomExpression(Random random, int leaves) {
+        if (leaves == 1) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            switch (random.nextInt(4)) {
+                case 0:
+                    return "!" + word;
+                case 1:
+                    return "\"" + word + " " + WORDS[random.nextInt(WORDS.length)] + "\"";
+                default:
+                    return word.equals("c++") ? "\"c++\"" : word;
+            }
+        }
+        int left = 1 + random.nextInt(leaves - 1);
+        String op = random.nextBoolean() ? " & " : " | ";
+        String e = "(" + randomExpression(random, left) + op + randomExpression(random, leaves - left) + ")";
+        return random.nextInt(4) == 0 ? "!" + e : e;
+    }
+
+    @Test
+    public void sameResultAsTree() throws InvalidExpression {
+        Random random = new Random(7);
+        String[] sentences = new String[100];
+        for (int i = 0; i < sentences.length; ++i) {
+            StringBuilder sentence = new StringBuilder();
+            for (int j = 0; j < 5; ++j) {
+                String word = WORDS[random.nextInt(WORDS.length)];
+                if (random.nextInt(4) == 0) word = word.toUpperCase();
+                sentence.append(word).append(j == 4 ? "." : random.nextInt(5) == 0 ? "" : " ");
+            }
+            sentences[i] = sentence.toString();
+        }
+
+        for (int leaves : new int[]{1, 2, 8, 32, 100}) {
+            for (int e = 0; e < 20; ++e) {
+                BoolExprNode tree = new BoolExprParser(randomExpression(random, leaves)).getTree();
+                SentencePredicate automaton = BoolExprAutomaton.build(tree);
+                assertFalse(automaton instanceof BoolExprNode);
+                for (String sentence : sentences) assertEquals(tree.eval(sentence), automaton.eval(sentence));
+            }
+        }
+    }
+
+    @Test
+    public void overlappingLeaves() throws InvalidExpression {
+        //The leaves get their bits in the order they are written
+        BoolExprNode tree = BoolExprNode.or(BoolExprNode.or(BoolExprNode.and(BoolExprNode.word("he"), BoolExprNode.word("hers")),
+                BoolExprNode.sequence("she")), BoolExprNode.word("ers"));
+        BoolExprAutomaton automaton = (BoolExprAutomaton) BoolExprAutomaton.build(tree);
+        assertEquals(4, automaton.getLeaves());
+        long[] bits = new long[1];
+        automaton.matchLeaves("Ushers", bits);
+        assertEquals(0b0100, bits[0]);
+        assertTrue(automaton.eval("Ushers"));
+        assertTrue(automaton.eval("He has hers."));
+        assertTrue(automaton.eval("ERS"));
+        assertFalse(automaton.eval("hers"));
+    }
+
+    @Test
+    public void boundariesAsRegex() {
+        //A non-spacing mark after a letter is part of the word, and letters outside the BMP are whole code points
+        String[] words = {"cafe", "caf", "e", "x"};
+        String[] sentences = {"Un cafe\u0301 solo", "cafe\u0301", "\u0301cafe", "x\u0301\u0301cafe", "- \u0301cafe",
+                "\uD835\uDC00cafe", "cafe\uD835\uDC00", "\uD83D\uDE00cafe\uD83D\uDE00", "cafe_", "CAFE-x", "e\u0301"};
+        for (String word : words) {
+            BoolExprNode tree = BoolExprNode.word(word);
+            SentencePredicate automaton = BoolExprAutomaton.build(BoolExprNode.or(tree, BoolExprNode.word("zzz")));
+            for (String sentence : sentences) {
+                boolean expected = sentence.toLowerCase().matches(".*?\\b" + word + "\\b.*?");
+                assertEquals(word + " in " + sentence, expected, tree.eval(sentence));
+                assertEquals(word + " in " + sentence, expected, automaton.eval(sentence));
+            }
+        }
+        assertFalse(BoolExprNode.word("cafe").eval("cafe\u0301"));
+        assertTrue(BoolExprNode.word("cafe").eval("\uD83D\uDE00cafe"));
+    }
+
+    @Test
+    public void repeatedLeavesShareBit() throws InvalidExpression {
+        BoolExprAutomaton automaton = (BoolExprAutomaton) BoolExprAutomaton.build(new BoolExprParser("(sol & mar) | (sol & !mar) | \"sol\"").getTree());
+        assertEquals(3, automaton.getLeaves());
+        assertTrue(automaton.eval("Hace sol."));
+        assertFalse(automaton.eval("Hace frío."));
+    }
+
+    @Test
+    public void parserUsesAutomaton() throws InvalidExpression {
+        int leaves = BoolExprParser.getAutomatonLeaves();
+        try {
+            BoolExprParser.setAutomatonLeaves(2);
+            BoolExprParser parser = new BoolExprParser("{mañana perro} | !sol");
+            assertTrue(parser.eval("MAÑANA el perro"));
+            assertFalse(parser.eval("mañanas el perro y el sol"));
+        } finally {
+            BoolExprParser.setAutomatonLeaves(leaves);
+        }
+    }
+
+    @Test
+    public void constantIsInterpreted() throws InvalidExpression {
+        BoolExprNode tree = new BoolExprParser("").getTree();
+        assertSame(tree, BoolExprAutomaton.build(tree));
+    }
+}
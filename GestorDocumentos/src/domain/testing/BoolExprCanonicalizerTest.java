@@ -0,0 +1,102 @@
+package domain.testing;
+
+import domain.classes.BoolExprCanonicalizer;
+import domain.classes.BoolExprCompiler;
+import domain.classes.BoolExprNode;
+import domain.classes.BoolExprParser;
+import domain.classes.SentencePredicate;
+import domain.exceptions.InvalidExpression;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BoolExprCanonicalizerTest {
+
+    private static final String[] WORDS = {"perro", "gato", "casa", "sol", "mar"};
+
+    private static String key(String expression) throws InvalidExpression {
+        return new BoolExprParser(expression).getCanonicalKey();
+    }
+
+    private static String randomExpression(Random random, int leaves) {
+        if (leaves == 1) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            return random.nextInt(4) == 0 ? "!" + word : word;
+        }
+        int left = 1 + random.nextInt(leaves - 1);
+        String op = random.nextBoolean() ? " & " : " | ";
+        String e = "(" + randomExpression(random, left) + op + randomExpression(random, leaves - left) + ")";
+        return random.nextInt(4) == 0 ? "!" + e : e;
+    }
+
+    @Test
+    public void equivalentExpressionsHaveTheSameKey() throws InvalidExpression {
+        String[] equivalent = {"a & b", "b & a", "{a b}", "(a & (b & a))", "b & a & b", "!(!(a & b))", "{b a} & a"};
+        for (String e : equivalent) assertEquals(e, "(a & b)", key(e));
+
+        assertEquals("(!c | \"el sol\" | (a & b))", key("!c | {b a} | \"el sol\" | (a & b)"));
+        assertNotEquals(key("a & b"), key("a | b"));
+        assertNotEquals(key("a & !b"), key("!a & b"));
+        assertEquals("TRUE", key(""));
+    }
+
+    @Test
+    public void keyCanBeParsedAgain() throws InvalidExpression {
+        Random random = new Random(17);
+        for (int e = 0; e < 100; ++e) {
+            String key = key(randomExpression(random, 1 + random.nextInt(10)));
+            assertEquals(key, key(key));
+        }
+        String key = key("\"a (b) & c\" | x");
+        assertEquals(key, key(key));
+    }
+
+    @Test
+    public void repeatedSubtreesAreShared() throws InvalidExpression {
+        BoolExprParser parser = new BoolExprParser("((perro | gato) & casa) | (sol & (gato | perro))");
+        //The OR is shown under both ANDs, its leaves are not shared because they only have one parent
+        String explain = parser.explain();
+        assertEquals(explain, 2, explain.split(" shared").length - 1);
+        assertTrue(parser.eval("El gato y el sol."));
+        assertFalse(parser.eval("El gato y el mar."));
+
+        BoolExprNode tree = BoolExprNode.and(BoolExprNode.word("sol"), BoolExprNode.word("mar"));
+        assertSame(tree, BoolExprCanonicalizer.share(tree));
+    }
+
+    @Test
+    public void sameResultAsWritten() throws InvalidExpression {
+        Random random = new Random(19);
+        String[] sentences = new String[60];
+        for (int i = 0; i < sentences.length; ++i) {
+            StringBuilder sentence = new StringBuilder();
+            for (int j = 0; j < 3; ++j) sentence.append(WORDS[random.nextInt(WORDS.length)]).append(j == 2 ? "." : " ");
+            sentences[i] = sentence.toString();
+        }
+
+        boolean canonicalization = BoolExprParser.isCanonicalization();
+        try {
+            for (int e = 0; e < 200; ++e) {
+                String expression = randomExpression(random, 1 + random.nextInt(12));
+                BoolExprParser.setCanonicalization(false);
+                BoolExprNode written = new BoolExprParser(expression).getTree();
+                BoolExprParser.setCanonicalization(true);
+                BoolExprNode canonical = new BoolExprParser(expression).getTree();
+                SentencePredicate compiled = BoolExprCompiler.compile(canonical);
+                for (String sentence : sentences) {
+                    assertEquals(expression, written.eval(sentence), canonical.eval(sentence));
+                    assertEquals(expression, written.eval(sentence), compiled.eval(sentence));
+                }
+                assertEquals(expression, BoolExprCanonicalizer.key(written), BoolExprCanonicalizer.key(canonical));
+            }
+        } finally {
+            BoolExprParser.setCanonicalization(canonicalization);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package domain.testing;
+
+import domain.classes.BoolExprCompiler;
+import domain.classes.BoolExprNode;
+import domain.classes.BoolExprParser;
+import domain.classes.SentencePredicate;
+import domain.exceptions.InvalidExpression;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BoolExprCompilerTest {
+
+    private static final String[] WORDS = {"perro", "gato", "casa", "sol", "mar"};
+
+    private static String randomExpression(Random random, int leaves) {
+        if (leaves == 1) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            switch (random.nextInt(4)) {
+                case 0:
+                    return "!" + word;
+                case 1:
+                    return "\"" + word + " " + WORDS[random.nextInt(WORDS.length)] + "\"";
+                default:
+                    return word;
+            }
+        }
+        int left = 1 + random.nextInt(leaves - 1);
+        String op = random.nextBoolean() ? " & " : " | ";
+        String e = "(" + randomExpression(random, left) + op + randomExpression(random, leaves - left) + ")";
+        return random.nextInt(4) == 0 ? "!" + e : e;
+    }
+
+    @Test
+    public void sameResultAsInterpreter() throws InvalidExpression {
+        Random random = new Random(3);
+        String[] sentences = new String[50];
+        for (int i = 0; i < sentences.length; ++i) {
+            StringBuilder sentence = new StringBuilder();
+            for (int j = 0; j < 4; ++j) sentence.append(WORDS[random.nextInt(WORDS.length)]).append(j == 3 ? "." : " ");
+            sentences[i] = sentence.toString();
+        }
+
+        for (int leaves : new int[]{1, 2, 8, 32}) {
+            for (int e = 0; e < 20; ++e) {
+                BoolExprNode tree = new BoolExprParser(randomExpression(random, leaves)).getTree();
+                SentencePredicate compiled = BoolExprCompiler.compile(tree);
+                assertFalse(compiled instanceof BoolExprNode);
+                for (String sentence : sentences) assertEquals(tree.eval(sentence), compiled.eval(sentence));
+            }
+        }
+    }
+
+    @Test
+    public void constantIsInterpreted() throws InvalidExpression {
+        BoolExprNode tree = new BoolExprParser("").getTree();
+        assertSame(tree, BoolExprCompiler.compileOrInterpret(tree));
+    }
+
+    @Test
+    public void compiledAfterThreshold() throws InvalidExpression {
+        int threshold = BoolExprParser.getCompileThreshold();
+        try {
+            BoolExprParser.setCompileThreshold(3);
+            BoolExprParser parser = new BoolExprParser("{perro gato} | !sol");
+            for (int i = 0; i < 10; ++i) {
+                assertTrue(parser.eval("el perro y el gato"));
+                assertFalse(parser.eval("el perro y el sol"));
+            }
+        } finally {
+            BoolExprParser.setCompileThreshold(threshold);
+        }
+    }
+
+    @Test
+    public void compiledClassIsShared() throws InvalidExpression {
+        int threshold = BoolExprParser.getCompileThreshold();
+        try {
+            BoolExprParser.setCompileThreshold(4);
+            for (int i = 0; i < 2; ++i) {
+                BoolExprParser parser = new BoolExprParser("luna | (estrella & !nube)");
+                assertFalse(parser.isCompiled());
+                assertTrue(parser.eval("la luna"));
+                assertTrue(parser.eval("una estrella"));
+            }
+            BoolExprParser parser = new BoolExprParser("(!nube & estrella) | luna");
+            assertTrue(parser.isCompiled());
+            assertTrue(parser.eval("una estrella"));
+            assertFalse(parser.eval("una estrella y una nube"));
+        } finally {
+            BoolExprParser.setCompileThreshold(threshold);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package domain.testing;
 
+import domain.classes.BoolExprParser;
 import domain.classes.BoolExprParserForTesting;
 import domain.classes.BoolExprTokenizer;
 import domain.exceptions.InvalidExpression;
@@ -11,6 +12,8 @@ import org.mockito.Mockito;
 import java.util.ArrayList;
 import java.util.Arrays;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 
@@ -269,4 +272,45 @@ public class BoolExprParserTest {
             found = parser.eval(sentences.get(i));
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void compiledMatchesRegex() throws InvalidExpression {
+        String[] sentences = {
+                "Hola, TIO! como estas?",
+                "holatio como_estas",
+                "El niño comió pan y vino.",
+                "pan_y vino",
+                "",
+                "tio"
+        };
+        String[] words = {"hola", "tio", "como", "como_estas", "niño", "pan", "vino", "y", "estas"};
+
+        // Words are matched as the old regular expression .*?\bword\b.*? on the lowercase sentence
+        for (String word : words) {
+            BoolExprParser parser = new BoolExprParser(word);
+            for (String sentence : sentences) {
+                boolean expected = sentence.toLowerCase().matches(".*?\\b" + word + "\\b.*?");
+                assertEquals(word + " in " + sentence, expected, parser.eval(sentence));
+            }
+        }
+
+        // Sequences are contained ignoring case, and special characters of regular expressions are literal
+        assertTrue(new BoolExprParser("\"tio! como\"").eval("Hola, TIO! como estas?"));
+        assertFalse(new BoolExprParser("\"tio como\"").eval("Hola, TIO! como estas?"));
+        assertTrue(new BoolExprParser("\"c++\" | java").eval("programo en C++"));
+        assertTrue(new BoolExprParser("a.b").eval("ver a.b"));
+        assertFalse(new BoolExprParser("a.b").eval("ver axb"));
+
+        BoolExprParser parser = new BoolExprParser("{pan vino} & !(agua | \"y v\")");
+        assertFalse(parser.eval("pan y vino"));
+        assertTrue(parser.eval("pan, vino"));
+        assertFalse(parser.eval("pan"));
+
+        assertTrue(new BoolExprParser("").eval("cualquier frase"));
+    }
+
+    @Test (expected = InvalidExpression.class)
+    public void missingOperand() throws InvalidExpression {
+        new BoolExprParser("hola &");
+    }
+}
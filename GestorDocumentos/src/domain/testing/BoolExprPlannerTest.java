@@ -0,0 +1,130 @@
+package domain.testing;
+
+import domain.classes.BoolExprNode;
+import domain.classes.BoolExprParser;
+import domain.classes.BoolExprPlanner;
+import domain.classes.SelectivitySource;
+import domain.exceptions.InvalidExpression;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BoolExprPlannerTest {
+
+    private static final String[] WORDS = {"comun", "frecuente", "raro", "rarisimo", "medio", "el"};
+
+    private static final SelectivitySource SOURCE = term -> {
+        HashMap<String, Double> df = new HashMap<>();
+        df.put("comun", 0.9);
+        df.put("frecuente", 0.6);
+        df.put("medio", 0.3);
+        df.put("raro", 0.01);
+        df.put("rarisimo", 0.0001);
+        return df.getOrDefault(term, -1.0);
+    };
+
+    /**
+     * @return Leaves of explain in the order they are evaluated.
+     */
+    private static String order(String explain) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : explain.split("\n")) {
+            String node = line.trim();
+            if (node.startsWith("WRD ") || node.startsWith("STR ")) sb.append(node, 0, node.indexOf("  p=")).append(';');
+        }
+        return sb.toString();
+    }
+
+    private static String plan(String expression) throws InvalidExpression {
+        return BoolExprPlanner.explain(BoolExprPlanner.plan(new BoolExprParser(expression).getTree(), SOURCE), SOURCE);
+    }
+
+    @Test
+    public void selectiveFirstInAnd() throws InvalidExpression {
+        assertEquals("WRD rarisimo;WRD raro;WRD medio;WRD comun;", order(plan("comun & medio & raro & rarisimo")));
+        assertEquals("WRD raro;WRD comun;", order(plan("{comun raro}")));
+    }
+
+    @Test
+    public void likelyFirstInOr() throws InvalidExpression {
+        assertEquals("WRD comun;WRD medio;WRD raro;", order(plan("raro | medio | comun")));
+        //A NOT of a rare word is almost always TRUE
+        assertEquals("NOT", plan("comun | !raro").split("\n")[1].trim().split(" ")[0]);
+    }
+
+    @Test
+    public void sequencesCostMore() throws InvalidExpression {
+        //Unknown words have the same probability, the cheaper leaf goes first
+        assertEquals("WRD xyz;STR \"abc\";", order(plan("\"abc\" & xyz")));
+        //Only the words of a sequence between other characters are known, raro here
+        assertEquals("STR \"el raro y\";WRD comun;", order(plan("comun & \"el raro y\"")));
+    }
+
+    @Test
+    public void nestedChains() throws InvalidExpression {
+        //The OR (p = 0.72) stops the AND more often than comun (p = 0.9)
+        assertEquals("WRD raro;WRD frecuente;WRD medio;WRD comun;", order(plan("(medio | frecuente) & (comun & raro)")));
+        String explain = plan("(medio | frecuente) & (comun & raro)");
+        assertTrue(explain, explain.startsWith("AND  p="));
+    }
+
+    @Test
+    public void orderIsKeptWhenEqual() throws InvalidExpression {
+        BoolExprNode tree = BoolExprNode.and(BoolExprNode.word("raro"), BoolExprNode.word("rarisimo"));
+        BoolExprNode planned = BoolExprPlanner.plan(tree, null);
+        assertSame(tree, planned);
+        assertEquals("WRD raro;WRD rarisimo;", order(BoolExprPlanner.explain(planned, null)));
+
+        //A parsed expression is canonical, its ties are in the order of their keys whatever the written order
+        assertEquals("WRD rarisimo;WRD raro;", order(BoolExprPlanner.explain(new BoolExprParser("raro & rarisimo").getTree(), null)));
+        assertEquals("WRD rarisimo;WRD raro;", order(BoolExprPlanner.explain(new BoolExprParser("rarisimo & raro").getTree(), null)));
+    }
+
+    @Test
+    public void sameResultAsWritten() throws InvalidExpression {
+        Random random = new Random(3);
+        String[] sentences = new String[50];
+        for (int i = 0; i < sentences.length; ++i) {
+            StringBuilder sentence = new StringBuilder();
+            for (int j = 0; j < 4; ++j) sentence.append(WORDS[random.nextInt(WORDS.length)]).append(j == 3 ? "." : " ");
+            sentences[i] = sentence.toString();
+        }
+
+        for (int e = 0; e < 200; ++e) {
+            StringBuilder expression = new StringBuilder();
+            int leaves = 1 + random.nextInt(6);
+            for (int l = 0; l < leaves; ++l) {
+                if (l > 0) expression.append(random.nextBoolean() ? " & " : " | ");
+                if (random.nextInt(4) == 0) expression.append('!');
+                expression.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            BoolExprNode tree = new BoolExprParser(expression.toString()).getTree();
+            BoolExprNode planned = BoolExprPlanner.plan(tree, SOURCE);
+            for (String sentence : sentences) assertEquals(expression.toString(), tree.eval(sentence), planned.eval(sentence));
+        }
+    }
+
+    @Test
+    public void parserPlans() throws InvalidExpression {
+        SelectivitySource source = BoolExprParser.getSelectivitySource();
+        boolean planning = BoolExprParser.isPlanning();
+        try {
+            BoolExprParser.setSelectivitySource(SOURCE);
+            BoolExprParser.setPlanning(true);
+            BoolExprParser parser = new BoolExprParser("comun & rarisimo");
+            assertEquals("WRD rarisimo;WRD comun;", order(parser.explain()));
+            assertTrue(parser.eval("Un comun y rarisimo."));
+
+            BoolExprParser.setPlanning(false);
+            assertEquals("WRD comun;WRD rarisimo;", order(new BoolExprParser("comun & rarisimo").explain()));
+        } finally {
+            BoolExprParser.setSelectivitySource(source);
+            BoolExprParser.setPlanning(planning);
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package domain.testing;
 
 import domain.classes.Content;
+import domain.classes.TermDictionary;
 import domain.exceptions.InvalidWordFormat;
+import domain.utils.SparseVector;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -30,6 +32,7 @@ public class ContentTest {
         sentences.add("Hace calor hoy hola.");
 
         content = new Content(sentences);
+        content.intern();
     }
 
     @Test
@@ -90,6 +93,83 @@ public class ContentTest {
         content.getTf("hola juan");
     }
 
+    @Test
+    public void getTermIdsTest()
+    {
+        int[] ids = content.getTermIds();
+
+        assertEquals(9, ids.length);
+        for(int i = 1; i < ids.length; i++)
+            assertTrue(ids[i - 1] < ids[i]);
+        assertTrue(Arrays.binarySearch(ids, TermDictionary.lookup("calor")) >= 0);
+    }
+
+    @Test
+    public void getSubtermIdsTest()
+    {
+        LinkedList<String> l = new LinkedList<>();
+        l.add("hola-mundo perro! hola");
+        Content c = new Content(l);
+        c.intern();
+
+        //The terms of the similarity keep the punctuation inside the words, the boolean searches find their parts
+        int[] ids = c.getTermIds();
+        assertEquals(3, ids.length);
+        assertTrue(Arrays.binarySearch(ids, TermDictionary.lookup("hola-mundo")) >= 0);
+        assertTrue(Arrays.binarySearch(ids, TermDictionary.lookup("perro!")) >= 0);
+        int[] subIds = c.getSubtermIds();
+        assertEquals(2, subIds.length);
+        assertTrue(Arrays.binarySearch(subIds, TermDictionary.lookup("mundo")) >= 0);
+        assertTrue(Arrays.binarySearch(subIds, TermDictionary.lookup("perro")) >= 0);
+        assertArrayEquals(new String[]{"hola", "mundo", "perro", "hola"}, Content.splitWords("hola-mundo perro! hola").toArray());
+    }
+
+    @Test
+    public void internTest()
+    {
+        LinkedList<String> l = new LinkedList<>();
+        l.add("palabranueva otranueva-partenueva");
+        int size = TermDictionary.size();
+        Content c = new Content(l);
+
+        //The words are only added to the TermDictionary when the content is indexed
+        assertEquals(size, TermDictionary.size());
+        assertEquals(0, c.getTermIds().length);
+        assertEquals(2, c.getWords().length);
+        c.intern();
+        assertEquals(size + 4, TermDictionary.size());
+        assertArrayEquals(new int[]{TermDictionary.lookup("palabranueva"), TermDictionary.lookup("otranueva-partenueva")}, c.getTermIds());
+        assertArrayEquals(new String[]{"palabranueva", "otranueva-partenueva"}, c.getWords());
+        assertArrayEquals(new int[]{TermDictionary.lookup("otranueva"), TermDictionary.lookup("partenueva")}, c.getSubtermIds());
+    }
+
+    @Test
+    public void getVectorTest()
+    {
+        LinkedList<String> l = new LinkedList<>();
+        l.add("perro gato gato");
+        Content c = new Content(l);
+        c.intern();
+        c.updateWeight("perro", 1);
+        c.updateWeight("gato", 1);
+
+        //The vector is divided by the norm of the weights
+        SparseVector v = c.getVector(2);
+        float gato = 1 + (float)log10(2);
+        float norm = (float)sqrt(1 + gato * gato);
+        assertEquals(1, v.getNorm(), 0.000001);
+        assertArrayEquals(c.getTermIds(), new int[]{v.getId(0), v.getId(1)});
+        assertEquals(1 / norm, v.getWeight(Arrays.binarySearch(c.getTermIds(), TermDictionary.lookup("perro"))), 0.000001);
+        assertSame(v, c.getVector(2));
+
+        //It is computed again when the idfs change
+        c.updateWeight("perro", 0);
+        v = c.getVector(2);
+        assertEquals(0, v.getWeight(Arrays.binarySearch(c.getTermIds(), TermDictionary.lookup("perro"))), 0);
+        assertEquals(1, v.getWeight(Arrays.binarySearch(c.getTermIds(), TermDictionary.lookup("gato"))), 0.000001);
+        assertEquals(1, v.dot(v), 0.000001);
+    }
+
     @Test
     public void getWordsTest()
     {
@@ -2,12 +2,14 @@ package domain.testing;
 import domain.controllers.*;
 import domain.classes.*;
 import domain.exceptions.DocumentNotFound;
+import domain.exceptions.InvalidDocumentFormat;
 import domain.exceptions.InvalidExpression;
 import domain.exceptions.InvalidWeightType;
 import domain.exceptions.InvalidWordFormat;
 
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.Random;
 import java.util.Set;
 
 public class DocumentCtrlForTesting extends DocumentCtrl
@@ -19,7 +21,7 @@ public class DocumentCtrlForTesting extends DocumentCtrl
 
     public static boolean documentContainsWord(String word, Document doc)
     {
-        return words.get(word).contains(doc);
+        return getPostings(word).contains(getId(doc.getAuthor(), doc.getTitle()));
     }
 
     public static boolean existsDocInHashMap(Document doc)
@@ -34,9 +36,13 @@ public class DocumentCtrlForTesting extends DocumentCtrl
 
     public static int getDf(String word)
     {
-        if(words.containsKey(word))
-            return words.get(word).size();
-        return 0;
+        return DocumentCtrl.getDf(word);
+    }
+
+    //#ids in use, including the ones of removed documents
+    public static int getIdCount()
+    {
+        return docsById.size();
     }
 
     public static LinkedList<Document> searchBySimilarity(String author, String title, domain.classes.Comparator<Document> comp, int weightType) throws InvalidWordFormat, DocumentNotFound, InvalidWeightType, InvalidExpression {
@@ -58,11 +64,7 @@ public class DocumentCtrlForTesting extends DocumentCtrl
         for(String w : queryWords)
         {
             //Idf of the word
-            int df = 0;
-            if(words.containsKey(w))
-                df = words.get(w).size();
-
-            float idf = calculateIdf(df);
+            float idf = calculateIdf(DocumentCtrl.getDf(w));
 
             queryContent.updateWeight(w, idf);
 
@@ -73,24 +75,20 @@ public class DocumentCtrlForTesting extends DocumentCtrl
         }
 
         //iterate and compare through all documents
-        for(HashMap<String, Document> h : documents.values())
+        for(Document doc : docsById)
         {
-            for(Document doc : h.values())
-            {
+            if(doc != null)
                 comp.compare(doc);
-            }
         }
 
         return comp.getList();
     }
 
     public static LinkedList<Document> searchByBooleanStatement(Comparator<Document> comp) throws InvalidWordFormat, InvalidExpression {
-        for(HashMap<String, Document> h : documents.values())
+        for(Document doc : docsById)
         {
-            for(Document doc : h.values())
-            {
+            if(doc != null)
                 comp.compare(doc);
-            }
         }
 
         return comp.getList();
@@ -110,11 +108,49 @@ public class DocumentCtrlForTesting extends DocumentCtrl
         return comp.getList();
     }
 
+    public static void setMinShardSize(int size)
+    {
+        minShardSize = size;
+    }
+
+    //Replaces the documents by nDocs random documents, Titulo0 to Titulo(nDocs-1) of Autor (or of Autor0 to
+    // Autor(nAuthors-1) when there are more authors), with 1 to maxSentences sentences of nWords words of vocabulary
+    public static void addRandomCorpus(String[] vocabulary, int nDocs, int nAuthors, int maxSentences, int nWords, long seed) throws InvalidDocumentFormat
+    {
+        clear();
+        Random random = new Random(seed);
+        for(int i = 0; i < nDocs; i++)
+        {
+            LinkedList<String> l = new LinkedList<>();
+            for(int s = 0; s < 1 + i % maxSentences; s++)
+            {
+                StringBuilder sentence = new StringBuilder();
+                for(int j = 0; j < nWords; j++)
+                    sentence.append(vocabulary[random.nextInt(vocabulary.length)]).append(j == nWords - 1 ? ". " : " ");
+                l.add(sentence.toString());
+            }
+            DocumentCtrl.add(nAuthors == 1 ? "Autor" : "Autor" + i % nAuthors, "Titulo" + i, l, "txt");
+        }
+    }
+
+    //For the tests that compare the same searches with different options, so that their results do not come from the
+    // cache. reset() enables it again
+    public static void disableResultCache()
+    {
+        setResultCacheSize(0);
+    }
+
     public static void reset()
     {
-        nDocs = 0;
-        documents = new HashMap<>();
-        words = new HashMap<>();
+        clear();
+        minShardSize = 4096;
+        setPool(null);
+        setPruning(true);
+        setPrefilter(true);
+        setBitmapCandidates(true);
+        setPositionalIndex(false);
+        setResultCacheSize(DEFAULT_RESULT_CACHE_SIZE);
+        clearAlerts();
     }
 
 
@@ -3,15 +3,19 @@ package domain.testing;
 import domain.classes.Comparator;
 import domain.classes.Content;
 import domain.classes.Document;
+import domain.classes.TermDictionary;
 import domain.controllers.DocumentCtrl;
 import domain.exceptions.*;
+import domain.utils.Pair;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -22,6 +26,19 @@ public class DocumentCtrlTest {
     Document doc1, doc2;
     domain.classes.Comparator<Document> documentComparator;
 
+    //Words of the random corpora of the searches by query
+    private static final String[] WORDS = {"perro", "gato", "casa", "arbol", "mesa", "silla", "libro", "coche", "playa", "sol", "luna", "rio"};
+    //Words of the random corpora of the searches by boolean statement, some of them with accents and separators
+    private static final String[] TOKENS = {"alpha", "beta", "gamma", "delta", "Niño", "de", "c++", "hola-mundo", "x_y", "fin!", "zeta"};
+    //Statements whose results must not depend on how the search is done
+    private static final String[] STATEMENTS = {"", "alpha", "!alpha", "!(!alpha)", "{alpha beta}", "!{alpha beta}",
+            "{alpha beta} & !gamma", "alpha & !beta", "!(alpha | beta)", "alpha | (beta & delta)", "!alpha | gamma",
+            "!(!alpha & !beta) & delta", "!(alpha & !alpha)", "de & gamma", "!de", "de | !zeta", "(de | zeta) & !gamma",
+            "omega", "!omega", "!omega & !alpha", "nino", "niño | c", "c++", "hola", "mundo & x_y", "hola-mundo & fin",
+            "fin", "\"a beta\"", "\"ha be\"", "\"eta\"", "\"lpha beta de\"", "\"beta gamma\"", "\"alpha beta gamma\"",
+            "\"x_y fin!\"", "\"o-mundo c\" & alpha", "(alpha | !beta) & (gamma | \"elta \")",
+            "\"alpha beta\" | !\"gamma delta\""};
+
     private static Document createDocumentMock(String author, String title, LinkedList<String> sentences, String format) {
         Document doc = Mockito.mock(Document.class);
 
@@ -61,18 +78,28 @@ public class DocumentCtrlTest {
         }).when(doc).setFormat(Mockito.anyString());
     }
 
+    //The index reads the words of a document by their ids
+    private static void setWords(Document doc, String... words) {
+        int[] ids = new int[words.length];
+        for (int i = 0; i < words.length; ++i) ids[i] = TermDictionary.getId(words[i]);
+        Arrays.sort(ids);
+        when(doc.getWords()).thenReturn(words);
+        when(doc.getTermIds()).thenReturn(ids);
+        when(doc.getSubtermIds()).thenReturn(new int[0]);
+    }
+
     @Before
     public void init() {
         LinkedList<String> l1 = new LinkedList<>();
         l1.add("Me llamo Juan");
         doc1 = createDocumentMock("Juan", "Hola", l1, "txt");
-        when(doc1.getWords()).thenReturn(new String[]{"me", "llamo", "juan"});
+        setWords(doc1, "me", "llamo", "juan");
 
         LinkedList<String> l2 = new LinkedList<>();
         l2.add("Hola yo me llamo Pedro, me gusta prop");
         l2.add("Hace mucho calor.");
         doc2 = createDocumentMock("Pedro", "Hola", l2, "txt");
-        when(doc2.getWords()).thenReturn(new String[]{"hola", "yo", "me", "llamo", "pedro", "gusta", "prop", "hace", "mucho", "calor"});
+        setWords(doc2, "hola", "yo", "me", "llamo", "pedro", "gusta", "prop", "hace", "mucho", "calor");
 
         DocumentCtrlForTesting.add(doc1);
         DocumentCtrlForTesting.add(doc2);
@@ -93,7 +120,7 @@ public class DocumentCtrlTest {
 
         when(doc.getAuthor()).thenReturn("Arnau");
         when(doc.getTitle()).thenReturn("Hello");
-        when(doc.getWords()).thenReturn(new String[]{"hola", "que", "tal", "estas", "yo", "bien", "gracias"});
+        setWords(doc, "hola", "que", "tal", "estas", "yo", "bien", "gracias");
 
         boolean added = DocumentCtrlForTesting.add(doc);
 
@@ -123,6 +150,21 @@ public class DocumentCtrlTest {
         assertEquals(5, DocumentCtrlForTesting.getNDocs());
     }
 
+    @Test
+    public void addAllTest() {
+        Document doc = createDocumentMock("Arnau", "Hello", new LinkedList<>(), "txt");
+        setWords(doc, "hola", "gracias");
+
+        //doc1 already exists and doc appears twice in the batch
+        LinkedList<Boolean> added = DocumentCtrl.addAll(Arrays.asList(doc, doc1, doc));
+
+        assertEquals(Arrays.asList(true, false, false), added);
+        assertEquals(3, DocumentCtrlForTesting.getNDocs());
+        assertTrue(DocumentCtrlForTesting.existsDocInHashMap(doc));
+        assertEquals(1, DocumentCtrlForTesting.getDf("gracias"));
+        assertEquals(1, DocumentCtrlForTesting.getDf("juan"));
+    }
+
     @Test
     public void removeTest1() throws DocumentNotFound
     {
@@ -215,6 +257,54 @@ public class DocumentCtrlTest {
         assertEquals(0, DocumentCtrlForTesting.getDf("Juan"));
     }
 
+    @Test
+    public void changeContentKeepsIdTest() throws InvalidDocumentFormat, DocumentNotFound, InvalidWordFormat, InvalidExpression
+    {
+        DocumentCtrlForTesting.addRandomCorpus(TOKENS, 20, 1, 2, 4, 29);
+        DocumentCtrlForTesting.disableResultCache();
+        DocumentCtrl.setPositionalIndex(true);
+
+        //Editing a document again and again does not use new ids
+        for(int i = 0; i < 100; i++)
+        {
+            LinkedList<String> l = new LinkedList<>();
+            l.add(TOKENS[i % TOKENS.length] + " alpha beta.");
+            DocumentCtrl.changeContent("Autor", "Titulo" + (i % 3), l);
+        }
+        assertEquals(20, DocumentCtrlForTesting.getIdCount());
+        assertEquals(20, DocumentCtrlForTesting.getNDocs());
+
+        //The edited documents keep their place in the results
+        LinkedList<Document> found = DocumentCtrl.searchByBooleanStatement("{alpha beta}", null);
+        assertEquals(DocumentCtrl.getDocument("Autor", "Titulo0"), found.get(0));
+        assertEquals(DocumentCtrl.getDocument("Autor", "Titulo1"), found.get(1));
+        assertPrefilterKeepsResults();
+    }
+
+    @Test
+    public void compactTest() throws InvalidDocumentFormat, DocumentNotFound, InvalidWordFormat, InvalidExpression, InvalidWeightType
+    {
+        DocumentCtrlForTesting.addRandomCorpus(TOKENS, 3000, 1, 2, 4, 31);
+        DocumentCtrlForTesting.disableResultCache();
+        DocumentCtrl.setPositionalIndex(true);
+        LinkedList<Document> before = DocumentCtrl.searchByBooleanStatement("alpha & !gamma", null);
+
+        //Once there are more removed ids than documents, the ids are renumbered in the same order
+        for(int i = 0; i < 3000; i += 3)
+        {
+            DocumentCtrl.remove("Autor", "Titulo" + i);
+            DocumentCtrl.remove("Autor", "Titulo" + (i + 1));
+        }
+        assertEquals(1000, DocumentCtrlForTesting.getNDocs());
+        assertTrue(DocumentCtrlForTesting.getIdCount() < 3000);
+
+        //The results keep the order of the documents that are left
+        before.removeIf(doc -> Integer.parseInt(doc.getTitle().substring("Titulo".length())) % 3 != 2);
+        assertEquals(before, DocumentCtrl.searchByBooleanStatement("alpha & !gamma", null));
+        assertPrefilterKeepsResults();
+        assertEquals(5, DocumentCtrl.searchBySimilarity("Autor", "Titulo2", 5, 1).size());
+    }
+
     @Test (expected = DocumentNotFound.class)
     public void changeContentTest2() throws InvalidDocumentFormat, DocumentNotFound
     {
@@ -282,7 +372,7 @@ public class DocumentCtrlTest {
 
         //Now with more than one document to compare
         Document doc = createDocumentMock("Arnau", "Prueba", new LinkedList<>(), "xml");
-        when(doc.getWords()).thenReturn(new String[]{});
+        setWords(doc);
         DocumentCtrlForTesting.add(doc);
 
         System.out.println("\n Added document {Arnau, Prueba}\n");
@@ -433,7 +523,7 @@ public class DocumentCtrlTest {
         assertTrue(DocumentCtrl.getTitlesByAuthor("Pedro").contains("Hola"));
 
         Document doc = createDocumentMock("Pedro", "Prueba", new LinkedList<>(), "prop");
-        when(doc.getWords()).thenReturn(new String[]{});
+        setWords(doc);
         DocumentCtrlForTesting.add(doc);
 
         assertEquals(3, DocumentCtrl.getTitlesByAuthor("Pedro").size());
@@ -460,6 +550,514 @@ public class DocumentCtrlTest {
         assertEquals(doc1, DocumentCtrl.getDocument("Juan", "Hola"));
     }
 
+    @Test
+    public void lazyWeightsTest() throws InvalidDocumentFormat, InvalidWordFormat, DocumentNotFound
+    {
+        double tolerance = 0.0000001;
+
+        LinkedList<String> l = new LinkedList<>();
+        l.add("Me gusta el calor");
+        DocumentCtrl.add("Arnau", "Calor", l, "txt");
+
+        //calor appears in 2 of the 3 documents
+        Document doc = DocumentCtrl.getDocument("Arnau", "Calor");
+        assertEquals(0.5f * (float)Math.log10(3f/2f), doc.getWeight1("calor"), tolerance);
+        assertEquals((float)Math.log10(3f/2f), doc.getWeight2("calor"), tolerance);
+
+        //The weights change with the corpus without reweighting the document
+        DocumentCtrl.remove("Pedro", "Hola");
+        assertEquals(0.5f * (float)Math.log10(2f), doc.getWeight1("calor"), tolerance);
+        assertEquals((float)Math.log10(2f), doc.getWeight2("gusta"), tolerance);
+        assertEquals(0f, doc.getWeight1("frio"), tolerance);
+    }
+
+    @Test
+    public void searchByQueryRankingTest() throws InvalidDocumentFormat, InvalidWordFormat, InvalidWeightType, InvalidExpression, DocumentNotFound
+    {
+        LinkedList<String> l1 = new LinkedList<>();
+        l1.add("El perro come pienso");
+        DocumentCtrl.add("Ana", "Perro", l1, "txt");
+
+        LinkedList<String> l2 = new LinkedList<>();
+        l2.add("El gato come pescado y el perro duerme");
+        DocumentCtrl.add("Ana", "Gato", l2, "txt");
+
+        LinkedList<String> l3 = new LinkedList<>();
+        l3.add("La casa es grande");
+        DocumentCtrl.add("Ana", "Casa", l3, "txt");
+
+        //Only the documents that share a word with the query are returned, the most similar first
+        LinkedList<Document> res = DocumentCtrl.searchByQuery("perro pienso", 10, 2);
+        assertEquals(2, res.size());
+        assertEquals(DocumentCtrl.getDocument("Ana", "Perro"), res.get(0));
+        assertEquals(DocumentCtrl.getDocument("Ana", "Gato"), res.get(1));
+
+        assertEquals(1, DocumentCtrl.searchByQuery("perro pienso", 1, 1).size());
+
+        //Removed documents are not returned
+        DocumentCtrl.remove("Ana", "Perro");
+        res = DocumentCtrl.searchByQuery("perro pienso", 10, 1);
+        assertEquals(1, res.size());
+        assertEquals(DocumentCtrl.getDocument("Ana", "Gato"), res.get(0));
+    }
+
+    @Test
+    public void pruningTest() throws InvalidDocumentFormat, InvalidWordFormat, InvalidWeightType, InvalidExpression, DocumentNotFound
+    {
+        DocumentCtrlForTesting.addRandomCorpus(WORDS, 60, 1, 1, 8, 3);
+        DocumentCtrlForTesting.disableResultCache();
+
+        //Skipping the documents that cannot enter the result does not change it
+        for(int k : new int[]{1, 5, 100})
+        {
+            for(int weightType = 1; weightType <= 2; weightType++)
+            {
+                DocumentCtrl.setPruning(true);
+                LinkedList<Document> pruned = DocumentCtrl.searchByQuery("perro sol libro", k, weightType);
+                LinkedList<Document> similar = DocumentCtrl.searchBySimilarity("Autor", "Titulo7", k, weightType);
+                DocumentCtrl.setPruning(false);
+                assertEquals(DocumentCtrl.searchByQuery("perro sol libro", k, weightType), pruned);
+                assertEquals(DocumentCtrl.searchBySimilarity("Autor", "Titulo7", k, weightType), similar);
+                assertFalse(similar.contains(DocumentCtrl.getDocument("Autor", "Titulo7")));
+            }
+        }
+    }
+
+    @Test
+    public void searchBySimilarityZeroTest() throws InvalidDocumentFormat, InvalidWordFormat, InvalidWeightType, InvalidExpression, DocumentNotFound
+    {
+        DocumentCtrl.clear();
+        String[] texts = {"perro gato", "mesa silla", "perro casa", "libro coche", "sol luna"};
+        for(int i = 0; i < texts.length; i++)
+        {
+            LinkedList<String> l = new LinkedList<>();
+            l.add(texts[i]);
+            DocumentCtrl.add("Autor", "Titulo" + i, l, "txt");
+        }
+        DocumentCtrl.remove("Autor", "Titulo3");
+
+        //The documents with similarity 0 complete the k documents in the order they were added, min(k, N-1) documents
+        for(int weightType = 1; weightType <= 2; weightType++)
+        {
+            for(boolean pruning : new boolean[]{true, false})
+            {
+                DocumentCtrl.setPruning(pruning);
+                LinkedList<Document> similar = DocumentCtrl.searchBySimilarity("Autor", "Titulo0", 10, weightType);
+                assertEquals(3, similar.size());
+                assertEquals(DocumentCtrl.getDocument("Autor", "Titulo2"), similar.get(0));
+                assertEquals(DocumentCtrl.getDocument("Autor", "Titulo1"), similar.get(1));
+                assertEquals(DocumentCtrl.getDocument("Autor", "Titulo4"), similar.get(2));
+                assertEquals(similar.subList(0, 2), DocumentCtrl.searchBySimilarity("Autor", "Titulo0", 2, weightType));
+            }
+        }
+    }
+
+    @Test
+    public void parallelTest() throws InvalidDocumentFormat, InvalidWordFormat, InvalidWeightType, InvalidExpression, DocumentNotFound
+    {
+        DocumentCtrlForTesting.addRandomCorpus(WORDS, 100, 1, 1, 5, 7);
+        DocumentCtrlForTesting.disableResultCache();
+
+        //Shards of 8 documents scored in 4 threads give the same result as the sequential search, with and without pruning
+        DocumentCtrlForTesting.setMinShardSize(8);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try
+        {
+            for(boolean pruning : new boolean[]{true, false})
+            {
+                DocumentCtrl.setPruning(pruning);
+                for(int k : new int[]{1, 10, 200})
+                {
+                    assertEquals(DocumentCtrl.searchByQuery("perro sol", k, 2), DocumentCtrl.searchByQuery("perro sol", k, 2, pool));
+                    assertEquals(DocumentCtrl.searchBySimilarity("Autor", "Titulo3", k, 1),
+                            DocumentCtrl.searchBySimilarity("Autor", "Titulo3", k, 1, pool));
+                }
+            }
+
+            //The global pool is used by default
+            DocumentCtrl.setPool(pool);
+            assertEquals(DocumentCtrl.searchByQuery("gato", 10, 1, null), DocumentCtrl.searchByQuery("gato", 10, 1));
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void parallelCollectTest() throws InvalidDocumentFormat, InvalidWordFormat, InvalidExpression
+    {
+        DocumentCtrlForTesting.addRandomCorpus(TOKENS, 100, 30, 3, 4, 11);
+        DocumentCtrlForTesting.disableResultCache();
+
+        //Parts of 8 documents evaluated in 4 threads give the same documents in the same order as the sequential search
+        DocumentCtrlForTesting.setMinShardSize(8);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try
+        {
+            for(String statement : STATEMENTS)
+            {
+                LinkedList<Document> sequential = DocumentCtrl.searchByBooleanStatement(statement, null);
+                assertEquals(statement, sequential, DocumentCtrl.searchByBooleanStatement(statement, pool));
+            }
+
+            DocumentCtrl.setPool(pool);
+            LinkedList<String> authors = DocumentCtrl.searchByAuthorPrefix("autor1");
+            DocumentCtrl.setPool(null);
+            assertEquals(DocumentCtrl.searchByAuthorPrefix("autor1"), authors);
+            assertEquals(11, authors.size());
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    //The candidates of the prefilter never lose a document
+    private static void assertPrefilterKeepsResults() throws InvalidWordFormat, InvalidExpression
+    {
+        for(String statement : STATEMENTS)
+        {
+            DocumentCtrl.setPrefilter(false);
+            LinkedList<Document> all = DocumentCtrl.searchByBooleanStatement(statement, null);
+            DocumentCtrl.setPrefilter(true);
+            assertEquals(statement, all, DocumentCtrl.searchByBooleanStatement(statement, null));
+        }
+    }
+
+    @Test
+    public void prefilterTest() throws InvalidDocumentFormat, InvalidWordFormat, InvalidExpression, DocumentNotFound
+    {
+        DocumentCtrlForTesting.addRandomCorpus(TOKENS, 200, 1, 2, 4, 13);
+        DocumentCtrlForTesting.disableResultCache();
+
+        //Only the documents with alpha and beta are evaluated
+        int withBoth = 0;
+        for(int i = 0; i < 200; i++)
+        {
+            String text = String.join(" ", DocumentCtrl.getDocument("Autor", "Titulo" + i).getSentences());
+            if(new HashSet<>(Arrays.asList(text.split("[ .]+"))).containsAll(Arrays.asList("alpha", "beta")))
+                withBoth++;
+        }
+        long verified = DocumentCtrl.getVerifiedDocuments();
+        LinkedList<Document> found = DocumentCtrl.searchByBooleanStatement("{alpha beta} & !gamma", null);
+        assertEquals(withBoth, DocumentCtrl.getVerifiedDocuments() - verified);
+        assertTrue(found.size() > 0 && found.size() < withBoth);
+
+        assertPrefilterKeepsResults();
+    }
+
+    @Test
+    public void positionalIndexTest() throws InvalidDocumentFormat, InvalidWordFormat, InvalidExpression, DocumentNotFound
+    {
+        DocumentCtrlForTesting.addRandomCorpus(TOKENS, 200, 1, 3, 4, 17);
+        DocumentCtrlForTesting.disableResultCache();
+        DocumentCtrl.setPositionalIndex(true);
+        //The index is kept up to date
+        DocumentCtrl.remove("Autor", "Titulo0");
+        LinkedList<String> l = new LinkedList<>();
+        l.add("alpha beta gamma. ");
+        DocumentCtrl.changeContent("Autor", "Titulo1", l);
+
+        assertPrefilterKeepsResults();
+
+        //Only the documents with the three words in the same sentence are evaluated
+        long verified = DocumentCtrl.getVerifiedDocuments();
+        LinkedList<Document> found = DocumentCtrl.searchByBooleanStatement("{alpha beta gamma}", null);
+        assertEquals(found.size(), DocumentCtrl.getVerifiedDocuments() - verified);
+        assertTrue(found.contains(DocumentCtrl.getDocument("Autor", "Titulo1")));
+    }
+
+    @Test
+    public void bitmapCandidatesTest() throws InvalidDocumentFormat, InvalidWordFormat, InvalidExpression, DocumentNotFound
+    {
+        DocumentCtrlForTesting.addRandomCorpus(TOKENS, 300, 1, 3, 3, 23);
+        DocumentCtrlForTesting.disableResultCache();
+        DocumentCtrl.add("Autor", "Vacio", new LinkedList<>(), "txt");
+        DocumentCtrl.remove("Autor", "Titulo0");
+
+        for(String statement : STATEMENTS)
+        {
+            DocumentCtrl.setPrefilter(false);
+            LinkedList<Document> all = DocumentCtrl.searchByBooleanStatement(statement, null);
+            DocumentCtrl.setPrefilter(true);
+            DocumentCtrl.setBitmapCandidates(false);
+            assertEquals(statement, all, DocumentCtrl.searchByBooleanStatement(statement, null));
+            DocumentCtrl.setBitmapCandidates(true);
+            assertEquals(statement, all, DocumentCtrl.searchByBooleanStatement(statement, null));
+        }
+
+        //The documents without omega comply with !omega without being evaluated, and the empty one does not
+        long verified = DocumentCtrl.getVerifiedDocuments();
+        long accepted = DocumentCtrl.getAcceptedDocuments();
+        assertEquals(299, DocumentCtrl.searchByBooleanStatement("!omega", null).size());
+        assertEquals(0, DocumentCtrl.getVerifiedDocuments() - verified);
+        assertEquals(299, DocumentCtrl.getAcceptedDocuments() - accepted);
+    }
+
+    @Test
+    public void countByBooleanStatementTest() throws InvalidDocumentFormat, InvalidWordFormat, InvalidExpression, DocumentNotFound
+    {
+        DocumentCtrlForTesting.addRandomCorpus(TOKENS, 200, 1, 3, 3, 29);
+        DocumentCtrl.add("Autor", "Vacio", new LinkedList<>(), "txt");
+        DocumentCtrl.remove("Autor", "Titulo7");
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try
+        {
+            for(String statement : STATEMENTS)
+            {
+                int expected = DocumentCtrl.searchByBooleanStatement(statement, null).size();
+                assertEquals(statement, expected, DocumentCtrl.countByBooleanStatement(statement, null));
+                assertEquals(statement, expected, DocumentCtrl.countByBooleanStatement(statement, pool));
+                DocumentCtrl.setBitmapCandidates(false);
+                assertEquals(statement, expected, DocumentCtrl.countByBooleanStatement(statement, null));
+                DocumentCtrl.setPrefilter(false);
+                assertEquals(statement, expected, DocumentCtrl.countByBooleanStatement(statement, pool));
+                DocumentCtrl.setPrefilter(true);
+                DocumentCtrl.setBitmapCandidates(true);
+                DocumentCtrl.setPositionalIndex(true);
+                assertEquals(statement, expected, DocumentCtrl.countByBooleanStatement(statement, null));
+                DocumentCtrl.setPositionalIndex(false);
+            }
+
+            //The documents without omega are counted without evaluating them
+            long verified = DocumentCtrl.getVerifiedDocuments();
+            assertEquals(199, DocumentCtrl.countByBooleanStatement("!omega", null));
+            assertEquals(0, DocumentCtrl.getVerifiedDocuments() - verified);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void resultCacheTest() throws InvalidDocumentFormat, InvalidWordFormat, InvalidWeightType, InvalidExpression, DocumentNotFound
+    {
+        DocumentCtrl.clear();
+        for(int i = 0; i < 20; i++)
+        {
+            LinkedList<String> l = new LinkedList<>();
+            l.add((i % 2 == 0 ? "perro gato " : "gato casa ") + (i % 3 == 0 ? "sol." : "mar."));
+            DocumentCtrl.add("Autor", "Titulo" + i, l, "txt");
+        }
+
+        DocumentCtrl.setResultCacheSize(1000);
+        LinkedList<Document> first = DocumentCtrl.searchByBooleanStatement("perro & sol", null);
+        long hits = DocumentCtrl.getCacheHits(), misses = DocumentCtrl.getCacheMisses();
+        //Equivalent statements are the same request
+        assertEquals(first, DocumentCtrl.searchByBooleanStatement("{sol perro}", null));
+        assertEquals(hits + 1, DocumentCtrl.getCacheHits());
+        assertEquals(misses, DocumentCtrl.getCacheMisses());
+        //The result is a copy, changing it does not change the cached one
+        first.clear();
+        assertEquals(4, DocumentCtrl.searchByBooleanStatement("perro & sol", null).size());
+
+        LinkedList<Document> query = DocumentCtrl.searchByQuery("gato casa", 5, 1, null);
+        assertEquals(query, DocumentCtrl.searchByQuery("casa  gato", 5, 1, null));
+        assertNotEquals(query, DocumentCtrl.searchByQuery("gato casa", 3, 1, null));
+        LinkedList<Document> similar = DocumentCtrl.searchBySimilarity("Autor", "Titulo0", 4, 2, null);
+        assertEquals(similar, DocumentCtrl.searchBySimilarity("Autor", "Titulo0", 4, 2, null));
+        assertEquals(hits + 4, DocumentCtrl.getCacheHits());
+
+        //Any change of the index makes the cached results expire
+        long generation = DocumentCtrl.getIndexGeneration();
+        LinkedList<String> l = new LinkedList<>();
+        l.add("perro sol.");
+        DocumentCtrl.add("Autor", "Nuevo", l, "txt");
+        assertNotEquals(generation, DocumentCtrl.getIndexGeneration());
+        misses = DocumentCtrl.getCacheMisses();
+        assertEquals(5, DocumentCtrl.searchByBooleanStatement("perro & sol", null).size());
+        assertEquals(misses + 1, DocumentCtrl.getCacheMisses());
+
+        DocumentCtrl.changeTitle("Autor", "Nuevo", "Otro");
+        assertEquals("Otro", DocumentCtrl.searchByBooleanStatement("perro & sol", null).getLast().getTitle());
+        DocumentCtrl.changeContent("Autor", "Otro", new LinkedList<>(Arrays.asList("casa.")));
+        assertEquals(4, DocumentCtrl.searchByBooleanStatement("perro & sol", null).size());
+        DocumentCtrl.remove("Autor", "Titulo0");
+        assertEquals(3, DocumentCtrl.searchByBooleanStatement("perro & sol", null).size());
+        assertEquals(misses + 4, DocumentCtrl.getCacheMisses());
+
+        //The least recently used results are evicted when they do not fit
+        DocumentCtrl.setResultCacheSize(8);
+        DocumentCtrl.searchByBooleanStatement("perro & sol", null);
+        long evictions = DocumentCtrl.getCacheEvictions();
+        assertEquals(6, DocumentCtrl.searchByBooleanStatement("sol", null).size());
+        assertTrue(DocumentCtrl.getCacheEvictions() > evictions);
+        hits = DocumentCtrl.getCacheHits();
+        DocumentCtrl.searchByBooleanStatement("perro & sol", null);
+        assertEquals(hits, DocumentCtrl.getCacheHits());
+    }
+
+    @Test
+    public void alertsTest() throws InvalidDocumentFormat, InvalidExpression, DocumentNotFound
+    {
+        DocumentCtrl.clear();
+        int perro = DocumentCtrl.registerAlert("perro & !gato");
+        int sol = DocumentCtrl.registerAlert("{sol mar}");
+        assertEquals("{sol mar}", DocumentCtrl.getAlert(sol));
+
+        DocumentCtrl.add("Autor", "Uno", new LinkedList<>(Arrays.asList("El perro.", "El gato.")), "txt");
+        DocumentCtrl.add("Autor", "Dos", new LinkedList<>(Arrays.asList("El sol y el mar.")), "txt");
+        DocumentCtrl.add("Autor", "Tres", new LinkedList<>(Arrays.asList("Un perro al sol.")), "txt");
+        LinkedList<Pair<Integer, Document>> alerts = DocumentCtrl.pollAlerts();
+        assertEquals(3, alerts.size());
+        assertEquals(perro, (int) alerts.get(0).getFirst());
+        assertEquals("Uno", alerts.get(0).getSecond().getTitle());
+        assertEquals(sol, (int) alerts.get(1).getFirst());
+        assertEquals(perro, (int) alerts.get(2).getFirst());
+        assertEquals("Tres", alerts.get(2).getSecond().getTitle());
+        assertTrue(DocumentCtrl.pollAlerts().isEmpty());
+
+        //Changing the content checks the alerts again
+        DocumentCtrl.changeContent("Autor", "Tres", new LinkedList<>(Arrays.asList("Un gato al sol.", "En el mar.")));
+        assertTrue(DocumentCtrl.pollAlerts().isEmpty());
+        DocumentCtrl.changeContent("Autor", "Tres", new LinkedList<>(Arrays.asList("El mar bajo el sol.")));
+        alerts = DocumentCtrl.pollAlerts();
+        assertEquals(1, alerts.size());
+        assertEquals(sol, (int) alerts.getFirst().getFirst());
+        assertArrayEquals(new int[]{sol}, DocumentCtrl.getMatchingAlerts("Autor", "Tres"));
+
+        assertTrue(DocumentCtrl.unregisterAlert(sol));
+        DocumentCtrl.add("Autor", "Cuatro", new LinkedList<>(Arrays.asList("El sol y el mar.")), "txt");
+        assertTrue(DocumentCtrl.pollAlerts().isEmpty());
+
+        //The alerts of a removed document are not pending anymore
+        DocumentCtrl.add("Autor", "Cinco", new LinkedList<>(Arrays.asList("Un perro.")), "txt");
+        DocumentCtrl.add("Autor", "Seis", new LinkedList<>(Arrays.asList("Otro perro.")), "txt");
+        DocumentCtrl.remove("Autor", "Cinco");
+        alerts = DocumentCtrl.pollAlerts();
+        assertEquals(1, alerts.size());
+        assertEquals("Seis", alerts.getFirst().getSecond().getTitle());
+        assertEquals(0, DocumentCtrl.getDroppedAlerts());
+    }
+
+    @Test
+    public void removedAlertsTest() throws InvalidDocumentFormat, InvalidExpression, DocumentNotFound
+    {
+        DocumentCtrl.clear();
+        int perro = DocumentCtrl.registerAlert("perro");
+        for(int i = 1; i <= 5; i++)
+            DocumentCtrl.add("Autor", "Titulo" + i, new LinkedList<>(Arrays.asList("Un perro.")), "txt");
+        DocumentCtrl.remove("Autor", "Titulo1");
+        DocumentCtrl.remove("Autor", "Titulo3");
+        //The old content of a document does not keep its alerts, the new one does
+        DocumentCtrl.changeContent("Autor", "Titulo4", new LinkedList<>(Arrays.asList("Otro perro.")));
+        DocumentCtrl.changeContent("Autor", "Titulo5", new LinkedList<>(Arrays.asList("Un gato.")));
+        //A document added again after being removed keeps only its new alerts
+        DocumentCtrl.add("Autor", "Titulo1", new LinkedList<>(Arrays.asList("El perro.")), "txt");
+
+        LinkedList<Pair<Integer, Document>> alerts = DocumentCtrl.pollAlerts();
+        assertEquals(3, alerts.size());
+        assertEquals("Titulo2", alerts.get(0).getSecond().getTitle());
+        assertEquals("Titulo4", alerts.get(1).getSecond().getTitle());
+        assertEquals("Titulo1", alerts.get(2).getSecond().getTitle());
+        for(Pair<Integer, Document> alert : alerts)
+            assertEquals(perro, (int) alert.getFirst());
+        assertEquals(0, DocumentCtrl.getDroppedAlerts());
+
+        //Removals after the poll do not affect the new alerts
+        DocumentCtrl.remove("Autor", "Titulo2");
+        DocumentCtrl.add("Autor", "Titulo6", new LinkedList<>(Arrays.asList("Un perro.")), "txt");
+        DocumentCtrl.remove("Autor", "Titulo4");
+        alerts = DocumentCtrl.pollAlerts();
+        assertEquals(1, alerts.size());
+        assertEquals("Titulo6", alerts.getFirst().getSecond().getTitle());
+        assertTrue(DocumentCtrl.pollAlerts().isEmpty());
+    }
+
+    @Test
+    public void countByQueryTest() throws InvalidDocumentFormat, InvalidWordFormat, InvalidWeightType, InvalidExpression, DocumentNotFound
+    {
+        DocumentCtrlForTesting.addRandomCorpus(WORDS, 300, 1, 1, 5, 31);
+        DocumentCtrl.remove("Autor", "Titulo3");
+
+        String[] queries = {"perro", "perro gato", "luna rio sol", "casa perro rio libro", "nada", "rio rio luna"};
+        for(String query : queries)
+        {
+            for(int weightType = 1; weightType <= 2; weightType++)
+            {
+                int positive = DocumentCtrl.searchByQuery(query, 1000, weightType, null).size();
+                assertEquals(query, positive, DocumentCtrl.countByQuery(query, 0, weightType));
+                int previous = positive;
+                for(float threshold = 0.05f; threshold < 1; threshold += 0.05f)
+                {
+                    DocumentCtrl.setPruning(false);
+                    int expected = DocumentCtrl.countByQuery(query, threshold, weightType);
+                    DocumentCtrl.setPruning(true);
+                    assertEquals(query + " " + threshold, expected, DocumentCtrl.countByQuery(query, threshold, weightType));
+                    assertTrue(expected <= previous);
+                    previous = expected;
+                }
+                assertEquals(0, DocumentCtrl.countByQuery(query, 1.5f, weightType));
+            }
+        }
+    }
+
+    @Test
+    public void onlyIndexedWordsAreInternedTest() throws InvalidDocumentFormat, InvalidWordFormat, InvalidWeightType, InvalidExpression
+    {
+        DocumentCtrl.clear();
+        assertEquals(0, TermDictionary.size());
+        Document uno = new Document("Autor", "Uno", new LinkedList<>(Arrays.asList("El perro y el gato.")), "txt");
+        Document repetido = new Document("Autor", "Uno", new LinkedList<>(Arrays.asList("Xqzwyv.")), "txt");
+        assertEquals(0, TermDictionary.size());
+
+        //The document that is not added does not add its words
+        assertEquals(Arrays.asList(true, false), DocumentCtrl.addAll(Arrays.asList(uno, repetido)));
+        assertEquals(2, TermDictionary.size());
+        assertEquals(-1, TermDictionary.lookup("xqzwyv"));
+
+        //Clearing the corpus clears the dictionary, and a document added again gets the new ids
+        DocumentCtrl.clear();
+        assertEquals(0, TermDictionary.size());
+        DocumentCtrl.addAll(Arrays.asList(uno, new Document("Autor", "Dos", new LinkedList<>(Arrays.asList("La casa.")), "txt")));
+        assertEquals(3, TermDictionary.size());
+        assertEquals(uno, DocumentCtrl.searchByQuery("gato", 5, 1, null).getFirst());
+    }
+
+    @Test
+    public void queryWordsAreNotInternedTest() throws InvalidDocumentFormat, InvalidWordFormat, InvalidWeightType, InvalidExpression
+    {
+        DocumentCtrl.clear();
+        DocumentCtrl.add("Autor", "Uno", new LinkedList<>(Arrays.asList("El perro y el gato.")), "txt");
+        DocumentCtrl.add("Autor", "Dos", new LinkedList<>(Arrays.asList("La casa.")), "txt");
+
+        int size = TermDictionary.size();
+        LinkedList<Document> res = DocumentCtrl.searchByQuery("perro xqzwyv", 5, 1, null);
+        assertEquals(1, res.size());
+        assertEquals("Uno", res.getFirst().getTitle());
+        assertEquals(0, DocumentCtrl.countByQuery("xqzwyvb", 0, 2));
+        assertEquals(size, TermDictionary.size());
+        assertEquals(-1, TermDictionary.lookup("xqzwyv"));
+
+        try
+        {
+            DocumentCtrl.searchByQuery("perro x1", 5, 1, null);
+            fail();
+        }
+        catch(InvalidWordFormat e)
+        {
+            assertEquals(size, TermDictionary.size());
+        }
+    }
+
+    @Test
+    public void approximateQueryTest() throws InvalidDocumentFormat, InvalidWordFormat, InvalidWeightType, InvalidExpression
+    {
+        DocumentCtrlForTesting.addRandomCorpus(WORDS, 200, 1, 1, 6, 5);
+
+        //Without budget the same documents are found
+        LinkedList<Document> exact = DocumentCtrl.searchByQuery("perro sol", 300, 2);
+        LinkedList<Document> approximate = DocumentCtrl.searchByQuery("perro sol", 300, 2, 0, 0);
+        assertEquals(new HashSet<>(exact), new HashSet<>(approximate));
+
+        //The most similar document is in the first segment of the list of the word with the greatest contribution
+        assertEquals(1, DocumentCtrl.searchByQuery("perro sol", 10, 1, 1, 0).size());
+        assertTrue(DocumentCtrl.searchByQuery("perro", 10, 2).contains(DocumentCtrl.searchByQuery("perro", 1, 2, 64, 0).getFirst()));
+        assertEquals(10, DocumentCtrl.searchByQuery("perro sol", 10, 2, 64, 0).size());
+    }
     private static Comparator<String> createStringComparatorMock() throws InvalidWordFormat, InvalidExpression {
         Comparator<String> comp = Mockito.mock(Comparator.class);
         doAnswer(i -> {
@@ -0,0 +1,126 @@
+package domain.testing;
+
+import domain.classes.BoolExpressionComp;
+import domain.classes.Document;
+import domain.classes.Percolator;
+import domain.classes.TermDictionary;
+import domain.exceptions.InvalidDocumentFormat;
+import domain.exceptions.InvalidExpression;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PercolatorTest {
+
+    private static final String[] WORDS = {"perro", "gato", "casa", "sol", "mar", "luna", "rio", "arbol"};
+
+    //The index interns the words of a document before percolating it
+    private static Document document(String... sentences) throws InvalidDocumentFormat {
+        Document doc = new Document("Autor", "Titulo", new LinkedList<>(Arrays.asList(sentences)), "txt");
+        doc.intern();
+        return doc;
+    }
+
+    private static String randomExpression(Random random, int leaves) {
+        if (leaves == 1) {
+            int kind = random.nextInt(6);
+            String word = WORDS[random.nextInt(WORDS.length)];
+            if (kind == 0) return "!" + word;
+            if (kind == 1) return "\"el " + word + " y\"";
+            if (kind == 2) return "{" + word + " " + WORDS[random.nextInt(WORDS.length)] + "}";
+            return word;
+        }
+        int left = 1 + random.nextInt(leaves - 1);
+        String op = random.nextBoolean() ? " & " : " | ";
+        return "(" + randomExpression(random, left) + op + randomExpression(random, leaves - left) + ")";
+    }
+
+    @Test
+    public void onlyCandidatesAreEvaluated() throws InvalidExpression, InvalidDocumentFormat {
+        Percolator percolator = new Percolator(null);
+        int perro = percolator.register("perro & gato");
+        int casa = percolator.register("{casa sol}");
+        int notMar = percolator.register("!mar");
+        percolator.register("\"el rio y\"");
+        assertEquals(4, percolator.size());
+
+        assertArrayEquals(new int[]{perro, notMar}, percolator.percolate(document("El perro y el gato.")));
+        //The NOT is always a candidate, the expressions of the words of the document are the only other ones
+        assertEquals(2, percolator.getEvaluated());
+        assertArrayEquals(new int[0], percolator.percolate(document("El mar.")));
+        assertArrayEquals(new int[]{casa}, percolator.percolate(document("La casa al sol y el mar.")));
+    }
+
+    @Test
+    public void termsWithoutDocumentsAreNotInterned() throws InvalidExpression, InvalidDocumentFormat {
+        Percolator percolator = new Percolator(null);
+        int size = TermDictionary.size();
+        int id = percolator.register("percolatorunseen & !mar");
+        assertEquals(size, TermDictionary.size());
+        assertEquals(-1, TermDictionary.lookup("percolatorunseen"));
+
+        //The term is found once a document with it is interned, and again after the dictionary is cleared
+        assertArrayEquals(new int[]{id}, percolator.percolate(document("Percolatorunseen y gato.")));
+        TermDictionary.clear();
+        assertArrayEquals(new int[0], percolator.percolate(document("El gato.")));
+        assertArrayEquals(new int[]{id}, percolator.percolate(document("Percolatorunseen.")));
+        assertTrue(percolator.unregister(id));
+        assertArrayEquals(new int[0], percolator.percolate(document("Percolatorunseen.")));
+    }
+
+    @Test
+    public void equivalentExpressionsAreEvaluatedOnce() throws InvalidExpression, InvalidDocumentFormat {
+        Percolator percolator = new Percolator(null);
+        int a = percolator.register("perro & gato");
+        int b = percolator.register("{gato perro}");
+        assertArrayEquals(new int[]{a, b}, percolator.percolate(document("Perro y gato.")));
+        assertEquals(1, percolator.getEvaluated());
+
+        assertTrue(percolator.unregister(a));
+        assertFalse(percolator.unregister(a));
+        assertNull(percolator.getStatement(a));
+        assertArrayEquals(new int[]{b}, percolator.percolate(document("Perro y gato.")));
+        assertTrue(percolator.unregister(b));
+        assertEquals(0, percolator.size());
+        assertArrayEquals(new int[0], percolator.percolate(document("Perro y gato.")));
+
+        assertEquals(2, percolator.register("perro"));
+        percolator.clear();
+        assertEquals(0, percolator.size());
+        assertArrayEquals(new int[0], percolator.percolate(document("Perro.")));
+    }
+
+    @Test
+    public void sameResultAsEveryExpression() throws InvalidExpression, InvalidDocumentFormat {
+        Random random = new Random(25);
+        Percolator percolator = new Percolator(term -> term.equals("perro") || term.equals("gato") ? 0.9 : 0.1);
+        ArrayList<BoolExpressionComp> comps = new ArrayList<>();
+        for (int e = 0; e < 300; ++e) {
+            String expression = randomExpression(random, 1 + random.nextInt(5));
+            assertEquals(e, percolator.register(expression));
+            comps.add(new BoolExpressionComp(expression));
+        }
+
+        for (int d = 0; d < 100; ++d) {
+            String[] sentences = new String[1 + random.nextInt(3)];
+            for (int s = 0; s < sentences.length; ++s) {
+                StringBuilder sentence = new StringBuilder("el");
+                for (int j = 0; j < 3; ++j) sentence.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+                sentences[s] = sentence.append(" y.").toString();
+            }
+            Document doc = document(sentences);
+            ArrayList<Integer> expected = new ArrayList<>();
+            for (int e = 0; e < comps.size(); ++e) {
+                if (comps.get(e).matches(doc)) expected.add(e);
+            }
+            int[] found = percolator.percolate(doc);
+            assertEquals(Arrays.toString(sentences), expected.toString(), Arrays.toString(found));
+        }
+        assertTrue(percolator.getEvaluated() < 100L * comps.size());
+    }
+}
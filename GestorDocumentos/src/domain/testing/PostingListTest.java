@@ -0,0 +1,130 @@
+package domain.testing;
+
+import domain.classes.PostingList;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PostingListTest {
+
+    private PostingList list;
+
+    @Before
+    public void init()
+    {
+        list = new PostingList();
+        for(int i = 0; i < 10; i++)
+            list.add(i * 2);
+    }
+
+    @Test
+    public void addTest()
+    {
+        assertEquals(10, list.size());
+        assertTrue(list.contains(0));
+        assertTrue(list.contains(18));
+        assertFalse(list.contains(3));
+
+        //Ids that are not greater than the last one are inserted in order
+        list.add(3);
+        list.add(-1);
+        assertEquals(12, list.size());
+        assertArrayEquals(new int[]{-1, 0, 2, 3, 4, 6, 8, 10, 12, 14, 16, 18}, list.toArray());
+    }
+
+    @Test
+    public void removeTest()
+    {
+        assertTrue(list.remove(4));
+        assertFalse(list.remove(4));
+        assertFalse(list.remove(5));
+        assertFalse(list.contains(4));
+        assertEquals(9, list.size());
+
+        //A removed id can be added again
+        list.add(4);
+        assertTrue(list.contains(4));
+        assertEquals(10, list.size());
+
+        //Most of the ids removed: the list is compacted
+        for(int i = 0; i < 8; i++)
+            assertTrue(list.remove(i * 2));
+        assertEquals(2, list.size());
+        assertArrayEquals(new int[]{16, 18}, list.toArray());
+
+        list.remove(16);
+        list.remove(18);
+        assertTrue(list.isEmpty());
+    }
+
+    @Test
+    public void tombstonesTest()
+    {
+        list.remove(2);
+        list.remove(6);
+
+        //Adding after the removed ids keeps them removed, also when the array grows
+        for(int i = 10; i < 40; i++)
+            list.add(i * 2);
+        assertEquals(38, list.size());
+        assertFalse(list.contains(2));
+        assertFalse(list.contains(6));
+        assertTrue(list.contains(78));
+
+        //Inserting in the middle
+        list.add(7);
+        assertTrue(list.contains(7));
+        assertFalse(list.contains(6));
+        assertEquals(39, list.size());
+        assertEquals(39, list.toArray().length);
+    }
+
+    @Test
+    public void advanceTest()
+    {
+        assertEquals(0, list.advance(0, 0));
+        assertEquals(3, list.advance(0, 5));
+        assertEquals(3, list.advance(3, 6));
+        assertEquals(10, list.advance(0, 19));
+
+        //Removed ids are skipped
+        list.remove(6);
+        assertEquals(4, list.advance(0, 5));
+        assertEquals(4, list.advance(3, 0));
+    }
+
+    @Test
+    public void maxImpactTest()
+    {
+        assertTrue(Float.isNaN(list.getMaxImpact(1, 0)));
+        list.setMaxImpacts(0.5f, 2f, 3);
+        assertEquals(0.5f, list.getMaxImpact(1, 3), 0);
+        assertEquals(2f, list.getMaxImpact(2, 3), 0);
+        assertTrue(Float.isNaN(list.getMaxImpact(1, 4)));
+    }
+
+    @Test
+    public void intersectTest()
+    {
+        //list has the even numbers up to 18, some removed
+        list.remove(6);
+        list.remove(12);
+        PostingList multiples3 = new PostingList();
+        PostingList all = new PostingList();
+        for(int i = 0; i < 1000; i++)
+        {
+            if(i % 3 == 0)
+                multiples3.add(i);
+            all.add(i);
+        }
+        all.remove(18);
+
+        assertArrayEquals(new int[]{0, 18}, PostingList.intersect(new PostingList[]{multiples3, list}));
+        assertArrayEquals(new int[]{0}, PostingList.intersect(new PostingList[]{all, multiples3, list}));
+        assertArrayEquals(new int[0], PostingList.intersect(new PostingList[]{list, new PostingList()}));
+        assertArrayEquals(list.toArray(), PostingList.intersect(new PostingList[]{list}));
+        //The lists are not compacted
+        assertEquals(1000, all.rawSize());
+    }
+}
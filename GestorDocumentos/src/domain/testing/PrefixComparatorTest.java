@@ -5,7 +5,10 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -79,4 +82,23 @@ public class PrefixComparatorTest {
         assertFalse(prefixes.get(9).compare(authors.get(4)));
 
     }
-}
\ No newline at end of file
+
+    /**
+     * El Test comprueba que acumular los autores en dos partes y combinarlas da la misma lista, en el mismo orden, que acumularlos en una.
+     */
+    @Test
+    public void combine(){
+        PrefixComparator comp = new PrefixComparator("g");
+
+        LinkedList<String> all = comp.supplier();
+        for (int i = 0; i < authors.size(); ++i) comp.accumulate(all, i, authors.get(i));
+
+        LinkedList<String> left = comp.supplier();
+        LinkedList<String> right = comp.supplier();
+        for (int i = 0; i < 2; ++i) comp.accumulate(left, i, authors.get(i));
+        for (int i = 2; i < authors.size(); ++i) comp.accumulate(right, i, authors.get(i));
+
+        assertEquals(Arrays.asList("GerAlexManolo ", "Gerardo"), comp.finish(all));
+        assertEquals(comp.finish(all), comp.finish(comp.combine(left, right)));
+    }
+}
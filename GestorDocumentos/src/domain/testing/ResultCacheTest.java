@@ -0,0 +1,58 @@
+package domain.testing;
+
+import domain.utils.ResultCache;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Classe utilitzada per a testejar la cache de resultats domain/utils/ResultCache.
+ */
+public class ResultCacheTest {
+
+    /**
+     * Un resultat només es retorna en la generació en què s'ha guardat.
+     */
+    @Test
+    public void TestGeneration() {
+        ResultCache<String> cache = new ResultCache<>(10);
+        cache.put("a", 1, "A", 1);
+        assertEquals("A", cache.get("a", 1));
+        assertNull(cache.get("b", 1));
+        assertNull(cache.get("a", 2));
+        //El resultat caducat s'ha esborrat
+        assertNull(cache.get("a", 1));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(0, cache.getEvictions());
+    }
+
+    /**
+     * S'expulsen els resultats menys usats recentment fins que el pes total cap a la capacitat.
+     */
+    @Test
+    public void TestLRU() {
+        ResultCache<String> cache = new ResultCache<>(10);
+        cache.put("a", 0, "A", 4);
+        cache.put("b", 0, "B", 4);
+        assertEquals("A", cache.get("a", 0));
+        cache.put("c", 0, "C", 4);
+        assertNull(cache.get("b", 0));
+        assertEquals("A", cache.get("a", 0));
+        assertEquals("C", cache.get("c", 0));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(8, cache.getWeight());
+
+        //Un resultat més pesat que la capacitat no es guarda
+        cache.put("d", 0, "D", 11);
+        assertNull(cache.get("d", 0));
+        assertEquals(2, cache.size());
+
+        cache.setCapacity(0);
+        assertEquals(0, cache.size());
+        assertEquals(3, cache.getEvictions());
+        cache.put("a", 0, "A", 1);
+        assertNull(cache.get("a", 0));
+    }
+}
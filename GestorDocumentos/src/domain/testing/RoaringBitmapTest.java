@@ -0,0 +1,87 @@
+package domain.testing;
+
+import domain.utils.RoaringBitmap;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Classe utilitzada per a testejar els conjunts comprimits de domain/utils/RoaringBitmap.
+ */
+public class RoaringBitmapTest {
+
+    /**
+     * Conjunt amb un bloc dispers (array), un de dens (mapa de bits) i un d'enters consecutius (intervals).
+     */
+    private static TreeSet<Integer> randomSet(Random random) {
+        TreeSet<Integer> set = new TreeSet<>();
+        for (int i = 0; i < 1000; ++i) set.add(random.nextInt(1 << 16));
+        for (int i = 0; i < 30000; ++i) set.add((1 << 16) + random.nextInt(1 << 16));
+        int start = (2 << 16) + random.nextInt(1000);
+        for (int i = 0; i < 20000 + random.nextInt(1000); ++i) set.add(start + i);
+        for (int i = 0; i < 50; ++i) set.add((5 << 16) + random.nextInt(1 << 16));
+        return set;
+    }
+
+    private static int[] toArray(TreeSet<Integer> set) {
+        return set.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * La intersecció, la unió i la diferència donen el mateix que amb conjunts sense comprimir.
+     */
+    @Test
+    public void TestOperations() {
+        Random random = new Random(3);
+        for (int t = 0; t < 5; ++t) {
+            TreeSet<Integer> a = randomSet(random), b = randomSet(random);
+            RoaringBitmap ra = RoaringBitmap.of(toArray(a)), rb = RoaringBitmap.of(toArray(b));
+            if (t % 2 == 1) {
+                ra = ra.runOptimize();
+                rb = rb.runOptimize();
+            }
+            assertArrayEquals(toArray(a), ra.toArray());
+            assertEquals(a.size(), ra.cardinality());
+
+            TreeSet<Integer> and = new TreeSet<>(a);
+            and.retainAll(b);
+            TreeSet<Integer> or = new TreeSet<>(a);
+            or.addAll(b);
+            TreeSet<Integer> andNot = new TreeSet<>(a);
+            andNot.removeAll(b);
+            assertArrayEquals(toArray(and), ra.and(rb).toArray());
+            assertArrayEquals(toArray(or), ra.or(rb).toArray());
+            assertArrayEquals(toArray(andNot), ra.andNot(rb).toArray());
+            assertArrayEquals(toArray(andNot), ra.andNot(rb).runOptimize().toArray());
+        }
+    }
+
+    /**
+     * Els intervals ocupen menys que els arrays i els mapes de bits quan els enters són consecutius.
+     */
+    @Test
+    public void TestRuns() {
+        RoaringBitmap range = RoaringBitmap.range(10, 200000);
+        assertEquals(199990, range.cardinality());
+        assertTrue(range.contains(10));
+        assertTrue(range.contains(131072));
+        assertFalse(range.contains(9));
+        assertFalse(range.contains(200000));
+        assertTrue(range.getSizeInBytes() < 100);
+
+        int[] values = new int[100000];
+        for (int i = 0; i < values.length; ++i) values[i] = i;
+        RoaringBitmap bitmap = RoaringBitmap.of(values);
+        RoaringBitmap runs = bitmap.runOptimize();
+        assertTrue(runs.getSizeInBytes() < bitmap.getSizeInBytes());
+        assertArrayEquals(values, runs.toArray());
+        assertEquals(0, range.andNot(RoaringBitmap.range(0, 300000)).cardinality());
+        assertArrayEquals(new int[]{10, 11}, RoaringBitmap.range(0, 12).and(range).toArray());
+    }
+}
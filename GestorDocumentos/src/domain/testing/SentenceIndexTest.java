@@ -0,0 +1,59 @@
+package domain.testing;
+
+import domain.classes.SentenceIndex;
+import domain.classes.TermDictionary;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SentenceIndexTest {
+
+    private SentenceIndex index;
+    private int alpha, beta, gamma;
+
+    @Before
+    public void init()
+    {
+        alpha = TermDictionary.getId("alpha");
+        beta = TermDictionary.getId("beta");
+        gamma = TermDictionary.getId("gamma");
+
+        index = new SentenceIndex();
+        //Document 0: "alpha beta gamma" and "beta de alpha", the stop word "de" is -1
+        index.add(0, new int[][]{{alpha, beta, gamma}, {beta, -1, alpha}});
+        //Document 2: "gamma" and "alpha gamma beta"
+        index.add(2, new int[][]{{gamma}, {alpha, gamma, beta}});
+    }
+
+    @Test
+    public void candidatesTest()
+    {
+        //Sentences with the words at the given distances
+        assertArrayEquals(new int[]{0, 1, 3}, index.getCandidates(new String[]{"alpha"}, new int[]{0}));
+        assertArrayEquals(new int[]{0}, index.getCandidates(new String[]{"alpha", "beta"}, new int[]{0, 1}));
+        assertArrayEquals(new int[]{1}, index.getCandidates(new String[]{"beta", "alpha"}, new int[]{0, 2}));
+        assertArrayEquals(new int[]{3}, index.getCandidates(new String[]{"alpha", "beta"}, new int[]{0, 2}));
+
+        //Stop words are not indexed, words that are not in the corpus are in no sentence
+        assertNull(index.getCandidates(new String[]{"de"}, new int[]{0}));
+        assertArrayEquals(new int[]{1}, index.getCandidates(new String[]{"beta", "de", "alpha"}, new int[]{0, 1, 2}));
+        assertArrayEquals(new int[0], index.getCandidates(new String[]{"palabrainexistente"}, new int[]{0}));
+
+        assertEquals(2, index.getDoc(3));
+        assertEquals(1, index.getPosition(3));
+    }
+
+    @Test
+    public void removeTest()
+    {
+        index.remove(0, new int[][]{{alpha, beta, gamma}, {beta, -1, alpha}});
+        assertArrayEquals(new int[]{3}, index.getCandidates(new String[]{"alpha"}, new int[]{0}));
+
+        //Ids of the sentences are not reused
+        index.add(3, new int[][]{{alpha}});
+        assertArrayEquals(new int[]{3, 4}, index.getCandidates(new String[]{"alpha"}, new int[]{0}));
+        assertEquals(3, index.getDoc(4));
+        assertEquals(0, index.getPosition(4));
+    }
+}
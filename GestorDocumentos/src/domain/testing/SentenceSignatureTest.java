@@ -0,0 +1,85 @@
+package domain.testing;
+
+import domain.classes.BoolExprParser;
+import domain.classes.BoolExpressionComp;
+import domain.classes.Content;
+import domain.classes.Document;
+import domain.classes.SentenceSignature;
+import domain.exceptions.InvalidDocumentFormat;
+import domain.exceptions.InvalidExpression;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SentenceSignatureTest {
+
+    private static final String[] WORDS = {"perro", "gato", "casa", "Árbol", "sol", "mar", "el", "de", "niño", "x_1"};
+
+    @Test
+    public void signatureBits() {
+        int bits = Content.getSignatureBits();
+        try {
+            Content.setSignatureBits(100);
+            assertEquals(128, Content.getSignatureBits());
+            Content.setSignatureBits(1);
+            assertEquals(64, Content.getSignatureBits());
+            Content c = new Content(new LinkedList<>(Arrays.asList("Hola mundo.", "Adiós.")));
+            assertEquals(1, c.getSignatureWords());
+            assertEquals(2, c.getSignatures().length);
+            assertTrue(SentenceSignature.mayContain(c.getSignatures(), 0, 1, "mundo"));
+            assertTrue(SentenceSignature.mayContain(c.getSignatures(), 1, 1, "adios"));
+
+            Content.setSignatureBits(0);
+            assertNull(new Content(new LinkedList<>(Arrays.asList("Hola mundo."))).getSignatures());
+        } finally {
+            Content.setSignatureBits(bits);
+        }
+    }
+
+    @Test
+    public void noFalseNegatives() throws InvalidExpression {
+        long[] signatures = new long[4];
+        for (int i = 0; i < 200; ++i) SentenceSignature.add(signatures, 0, 4, "w" + i);
+        for (int i = 0; i < 200; ++i) assertTrue(SentenceSignature.mayContain(signatures, 0, 4, "w" + i));
+        assertTrue(SentenceSignature.falsePositiveRate(64, 10) < SentenceSignature.falsePositiveRate(64, 20));
+
+        assertNull(SentenceSignature.filter(new BoolExprParser("!perro | gato").getTree()));
+        assertNull(SentenceSignature.filter(new BoolExprParser("\"rro\"").getTree()));
+    }
+
+    @Test
+    public void sameResultWithSignatures() throws InvalidExpression, InvalidDocumentFormat {
+        Random random = new Random(11);
+        Document[] documents = new Document[50];
+        for (int d = 0; d < documents.length; ++d) {
+            LinkedList<String> sentences = new LinkedList<>();
+            for (int s = 0; s < 4; ++s) {
+                StringBuilder sentence = new StringBuilder();
+                for (int w = 0; w < 3; ++w) sentence.append(WORDS[random.nextInt(WORDS.length)]).append(w == 2 ? "." : " ");
+                sentences.add(sentence.toString());
+            }
+            documents[d] = new Document("autor", "titulo" + d, sentences, "txt");
+        }
+
+        String[] expressions = {"perro", "{gato casa}", "\"el arbol\"", "(sol | mar) & !niño", "\"de perro\" | x_1", "árbol & !{el de}"};
+        for (String e : expressions) {
+            BoolExpressionComp comp = new BoolExpressionComp(e);
+            boolean[] expected = new boolean[documents.length];
+            BoolExpressionComp.setUseSignatures(false);
+            for (int d = 0; d < documents.length; ++d) expected[d] = comp.matches(documents[d], new int[]{0, 1, 2, 3});
+            BoolExpressionComp.setUseSignatures(true);
+            for (int d = 0; d < documents.length; ++d) {
+                assertEquals(e, expected[d], comp.matches(documents[d], new int[]{0, 1, 2, 3}));
+                assertEquals(e, expected[d], comp.compare(documents[d]));
+            }
+        }
+        assertFalse(new BoolExpressionComp("perro & ballena").compare(documents[0]));
+    }
+}
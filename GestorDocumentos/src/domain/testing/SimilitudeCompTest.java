@@ -2,7 +2,9 @@ package domain.testing;
 
 import domain.classes.Document;
 import domain.classes.SimilitudeComp;
+import domain.classes.TermDictionary;
 import domain.exceptions.InvalidWordFormat;
+import domain.utils.SparseVector;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.mockito.Mock;
@@ -10,6 +12,8 @@ import org.mockito.Mockito;
 
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.when;
@@ -56,6 +60,28 @@ public class SimilitudeCompTest {
      */
     private static LinkedList<Document> testDocs;
 
+    /**
+     * Vector normalitzat amb els pesos donats, com el que precalcula el document.
+     */
+    private static SparseVector unitVector(String[] words, Float[] weights, Float n) {
+        TreeMap<Integer, Float> sorted = new TreeMap<>();
+        float norm = 0;
+        for (int i = 0; i < words.length; ++i) {
+            sorted.put(TermDictionary.getId(words[i]), weights[i] / n);
+            norm += (weights[i] / n) * (weights[i] / n);
+        }
+        norm = (float) Math.sqrt(norm);
+
+        int[] ids = new int[sorted.size()];
+        float[] values = new float[sorted.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Float> e : sorted.entrySet()) {
+            ids[i] = e.getKey();
+            values[i++] = norm == 0 ? 0 : e.getValue() / norm;
+        }
+        return new SparseVector(ids, values);
+    }
+
     /**
      * Mètode executat abans de tots els tests per a inicialitzar les estructures de dades necesaries.
      * Donem també valors de retorn a les diferents casuístiques amb les quals es trobaran els Mocks.
@@ -78,6 +104,8 @@ public class SimilitudeCompTest {
             when(dRef.getWeight1(cRef[i])).thenReturn(tfRef[i]/dRefN);
             when(dRef.getWeight2(cRef[i])).thenReturn(tfRef[i]);
         }
+        when(dRef.getVector(1)).thenReturn(unitVector(cRef, tfRef, dRefN));
+        when(dRef.getVector(2)).thenReturn(unitVector(cRef, tfRef, 1f));
         when(dRef.getTitle()).thenReturn("Documento de referencia.");
 
         // Docmuento 100% similar (cosSim = 1f)
@@ -89,6 +117,8 @@ public class SimilitudeCompTest {
             when(d0.getWeight1(c1[i])).thenReturn(tf1[i]/d1N);
             when(d0.getWeight2(c1[i])).thenReturn(tf1[i]);
         }
+        when(d0.getVector(1)).thenReturn(unitVector(c1, tf1, d1N));
+        when(d0.getVector(2)).thenReturn(unitVector(c1, tf1, 1f));
         when(d0.getTitle()).thenReturn("Documento 1.");
 
         //Documento muy similar
@@ -100,6 +130,8 @@ public class SimilitudeCompTest {
             when(d1.getWeight1(c2[i])).thenReturn(tf2[i]/d2N);
             when(d1.getWeight2(c2[i])).thenReturn(tf2[i]);
         }
+        when(d1.getVector(1)).thenReturn(unitVector(c2, tf2, d2N));
+        when(d1.getVector(2)).thenReturn(unitVector(c2, tf2, 1f));
         when(d1.getTitle()).thenReturn("Documento 2.");
 
         //Documento poco similar
@@ -111,6 +143,8 @@ public class SimilitudeCompTest {
             when(d2.getWeight1(c3[i])).thenReturn(tf3[i]/d3N);
             when(d2.getWeight2(c3[i])).thenReturn(tf3[i]);
         }
+        when(d2.getVector(1)).thenReturn(unitVector(c3, tf3, d3N));
+        when(d2.getVector(2)).thenReturn(unitVector(c3, tf3, 1f));
         when(d2.getTitle()).thenReturn("Documento 3.");
 
         //Documento sin similitud alguna (cosSim = 0f)
@@ -122,6 +156,8 @@ public class SimilitudeCompTest {
             when(d3.getWeight1(c4[i])).thenReturn(tf4[i]/d4N);
             when(d3.getWeight1(c4[i])).thenReturn(tf4[i]);
         }
+        when(d3.getVector(1)).thenReturn(unitVector(c4, tf4, d4N));
+        when(d3.getVector(2)).thenReturn(unitVector(c4, tf4, 1f));
         when(d3.getTitle()).thenReturn("Documento 4.");
 
         testDocs = new LinkedList<>();
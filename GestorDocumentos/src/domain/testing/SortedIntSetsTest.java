@@ -0,0 +1,54 @@
+package domain.testing;
+
+import domain.utils.SortedIntSets;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Classe utilitzada per a testejar les operacions de conjunts de domain/utils/SortedIntSets.
+ */
+public class SortedIntSetsTest {
+
+    /**
+     * La intersecció i la unió mantenen els enters ordenats i sense repeticions.
+     */
+    @Test
+    public void TestIntersectUnion() {
+        int[] a = {1, 3, 5, 7, 9};
+        int[] b = {2, 3, 4, 9, 10};
+
+        assertArrayEquals(new int[]{3, 9}, SortedIntSets.intersect(a, b));
+        assertArrayEquals(new int[]{1, 2, 3, 4, 5, 7, 9, 10}, SortedIntSets.union(a, b));
+        assertArrayEquals(new int[0], SortedIntSets.intersect(a, new int[0]));
+        assertArrayEquals(a, SortedIntSets.union(new int[0], a));
+    }
+
+    /**
+     * La intersecció amb cerca exponencial dóna el mateix que la intersecció lineal.
+     */
+    @Test
+    public void TestGallopIntersect() {
+        Random random = new Random(5);
+        for (int ratio : new int[]{1, 20, 1000}) {
+            int[] small = randomSet(random, 50, 100000);
+            int[] large = randomSet(random, 50 * ratio, 100000);
+            TreeSet<Integer> expected = new TreeSet<>();
+            for (int x : small) if (Arrays.binarySearch(large, x) >= 0) expected.add(x);
+            int[] res = expected.stream().mapToInt(Integer::intValue).toArray();
+            assertArrayEquals(res, SortedIntSets.intersect(small, large));
+            assertArrayEquals(res, SortedIntSets.intersect(large, small));
+        }
+        assertEquals(3, SortedIntSets.gallop(new int[]{1, 3, 5, 7, 9}, 1, 6));
+        assertEquals(5, SortedIntSets.gallop(new int[]{1, 3, 5, 7, 9}, 0, 10));
+    }
+
+    private static int[] randomSet(Random random, int n, int bound) {
+        return random.ints(n, 0, bound).distinct().sorted().toArray();
+    }
+}
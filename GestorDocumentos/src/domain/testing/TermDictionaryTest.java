@@ -0,0 +1,32 @@
+package domain.testing;
+
+import domain.classes.TermDictionary;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TermDictionaryTest {
+
+    @Test
+    public void getIdTest()
+    {
+        int size = TermDictionary.size();
+        int id = TermDictionary.getId("diccionariotest");
+
+        assertEquals(size + 1, TermDictionary.size());
+        assertEquals(id, TermDictionary.getId("diccionariotest"));
+        assertEquals(id, TermDictionary.lookup("diccionariotest"));
+        assertEquals("diccionariotest", TermDictionary.getTerm(id));
+        assertEquals(size + 1, TermDictionary.size());
+
+        assertNotEquals(id, TermDictionary.getId("diccionariotest2"));
+    }
+
+    @Test
+    public void lookupTest()
+    {
+        int size = TermDictionary.size();
+        assertEquals(-1, TermDictionary.lookup("noexisteendiccionario"));
+        assertEquals(size, TermDictionary.size());
+    }
+}
@@ -0,0 +1,70 @@
+package domain.testing;
+
+import domain.utils.TopKHeap;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Classe utilitzada per a testejar el heap acotat domain/utils/TopKHeap.
+ */
+public class TopKHeapTest {
+
+    /**
+     * Només es conserven els k elements amb més puntuació, ordenats de més a menys.
+     */
+    @Test
+    public void TestTopK() {
+        TopKHeap<String> heap = new TopKHeap<>(3);
+        float[] scores = {0.1f, 0.9f, 0.5f, 0.7f, 0.2f, 0.8f};
+        for (int i = 0; i < scores.length; ++i) heap.offer(i, scores[i], "d" + i);
+
+        assertEquals(3, heap.size());
+        assertTrue(heap.isFull());
+        assertEquals(0.7f, heap.threshold(), 0f);
+        assertEquals(Arrays.asList("d1", "d5", "d3"), heap.getSortedItems());
+        assertArrayEquals(new int[]{1, 5, 3}, heap.getSortedIds());
+        assertFalse(heap.accepts(9, 0.6f));
+        assertTrue(heap.accepts(9, 0.75f));
+    }
+
+    /**
+     * Amb la mateixa puntuació va primer l'id més petit, independentment de l'ordre d'arribada.
+     */
+    @Test
+    public void TestEmpats() {
+        TopKHeap<String> heap = new TopKHeap<>(2);
+        heap.offer(5, 1f, "d5");
+        heap.offer(3, 1f, "d3");
+        heap.offer(4, 1f, "d4");
+        heap.offer(1, 0f, "d1");
+
+        assertEquals(Arrays.asList("d3", "d4"), heap.getSortedItems());
+    }
+
+    /**
+     * La k més gran que el nombre d'elements, k = 0 i la fusió de dos heaps.
+     */
+    @Test
+    public void TestMidesIFusio() {
+        TopKHeap<String> a = new TopKHeap<>(100);
+        a.offer(0, 0.5f, "d0");
+        a.offer(1, Float.NaN, "d1");
+        assertEquals(Arrays.asList("d0", "d1"), a.getSortedItems());
+        assertEquals(Float.NEGATIVE_INFINITY, a.threshold(), 0f);
+
+        TopKHeap<String> none = new TopKHeap<>(0);
+        assertFalse(none.offer(0, 1f, "d0"));
+        assertEquals(0, none.getSortedItems().size());
+
+        TopKHeap<String> b = new TopKHeap<>(2);
+        b.offer(2, 0.7f, "d2");
+        b.offer(3, 0.1f, "d3");
+        TopKHeap<String> c = new TopKHeap<>(2);
+        c.offer(4, 0.9f, "d4");
+        b.addAll(c);
+        assertEquals(Arrays.asList("d4", "d2"), b.getSortedItems());
+    }
+}
@@ -0,0 +1,144 @@
+package domain.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache LRU acotada de resultats de cerques, indexats per la petició normalitzada.
+ * Cada resultat es guarda amb la generació de l'índex en què s'ha calculat i només es retorna mentre la generació no
+ * canvia: quan l'índex canvia, els resultats caduquen sense haver de recórrer la cache, i s'esborren quan es consulten
+ * o quan els expulsa l'LRU.
+ * La mida està acotada pel pes total dels resultats (per exemple, el nombre de documents de les llistes), no pel nombre
+ * d'entrades, així uns quants resultats molt grans no poden ocupar tota la memòria.
+ * Totes les operacions estan sincronitzades, es pot consultar des de diversos fils a la vegada.
+ * @param <V> Tipus dels resultats. No es copien, no s'han de modificar un cop guardats.
+ */
+public class ResultCache<V> {
+    private static final class Entry<V> {
+        final long generation;
+        final V value;
+        final int weight;
+
+        Entry(long generation, V value, int weight) {
+            this.generation = generation;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    //Ordenat per accés, el primer és el menys usat recentment
+    private final LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long capacity;
+    private long weight;
+    private long hits, misses, evictions;
+
+    /**
+     * @param capacity Pes total màxim dels resultats guardats, 0 per no guardar-ne cap.
+     */
+    public ResultCache(long capacity) {
+        this.capacity = Math.max(capacity, 0);
+    }
+
+    /**
+     * @param key Petició normalitzada.
+     * @param generation Generació actual de l'índex.
+     * @return El resultat de key calculat en la generació generation, o null si no hi és. Un resultat d'una altra
+     * generació s'esborra i compta com una fallada.
+     */
+    public synchronized V get(String key, long generation) {
+        if (capacity == 0) return null;
+        Entry<V> entry = entries.get(key);
+        if (entry != null && entry.generation == generation) {
+            ++hits;
+            return entry.value;
+        }
+        if (entry != null) {
+            entries.remove(key);
+            weight -= entry.weight;
+        }
+        ++misses;
+        return null;
+    }
+
+    /**
+     * Guarda el resultat de key i expulsa els resultats menys usats recentment fins que el pes total no supera la
+     * capacitat. Un resultat més pesat que la capacitat no es guarda.
+     * @param key Petició normalitzada.
+     * @param generation Generació de l'índex en què s'ha calculat value.
+     * @param value Resultat de key.
+     * @param weight Pes de value, >= 1.
+     */
+    public synchronized void put(String key, long generation, V value, int weight) {
+        weight = Math.max(weight, 1);
+        if (weight > capacity) return;
+        Entry<V> old = entries.put(key, new Entry<>(generation, value, weight));
+        if (old != null) this.weight -= old.weight;
+        this.weight += weight;
+        evict();
+    }
+
+    /**
+     * Canvia la capacitat, expulsant els resultats que no hi caben. Amb capacitat 0 la cache queda buida i desactivada.
+     */
+    public synchronized void setCapacity(long capacity) {
+        this.capacity = Math.max(capacity, 0);
+        evict();
+    }
+
+    public synchronized long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Esborra tots els resultats, sense comptar-los com a expulsions. Els comptadors es conserven.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * @return Nombre de resultats guardats, inclosos els que ja han caducat però encara no s'han esborrat.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return Pes total dels resultats guardats.
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return Nombre de consultes que han trobat el resultat.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return Nombre de consultes que no l'han trobat, perquè no hi era o perquè era d'una altra generació.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return Nombre de resultats expulsats per fer lloc a d'altres.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Entry<V>>> it = entries.entrySet().iterator();
+        while (weight > capacity && it.hasNext()) {
+            weight -= it.next().getValue().weight;
+            it.remove();
+            ++evictions;
+        }
+    }
+}
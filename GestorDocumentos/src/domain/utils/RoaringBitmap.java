@@ -0,0 +1,513 @@
+package domain.utils;
+
+import java.util.Arrays;
+
+/**
+ * Conjunt immutable d'enters no negatius comprimit a l'estil de Roaring. Els enters es reparteixen en blocs de 2^16
+ * segons els 16 bits alts, i cada bloc es guarda en el contenidor que ocupa menys: un array ordenat dels 16 bits baixos
+ * (fins a 4096 enters), un mapa de 2^16 bits, o una llista d'intervals (runs) si els enters són consecutius.
+ * La intersecció, la unió i la diferència treballen bloc a bloc sobre els contenidors sense descomprimir els arrays.
+ * Com que és immutable, els contenidors es poden compartir entre conjunts i fer servir des de diversos fils.
+ */
+public final class RoaringBitmap {
+
+    /**
+     * Màxim d'enters d'un contenidor d'array, a partir d'aquí el mapa de bits (8 KB) ocupa menys.
+     */
+    static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1024;
+
+    public static final RoaringBitmap EMPTY = new RoaringBitmap(new char[0], new Container[0], 0);
+
+    private final char[] keys;
+    private final Container[] containers;
+    private final int size;
+
+    private RoaringBitmap(char[] keys, Container[] containers, int size) {
+        this.keys = keys;
+        this.containers = containers;
+        this.size = size;
+    }
+
+    /**
+     * @param values: enters no negatius ordenats de menor a major i sense repeticions.
+     * @return El conjunt dels enters de values.
+     */
+    public static RoaringBitmap of(int[] values) {
+        return of(values, values.length);
+    }
+
+    /**
+     * @return El conjunt dels n primers enters de values, ordenats i sense repeticions.
+     */
+    public static RoaringBitmap of(int[] values, int n) {
+        char[] keys = new char[8];
+        Container[] containers = new Container[8];
+        int size = 0;
+        int i = 0;
+        while (i < n) {
+            int high = values[i] >>> 16;
+            int j = i;
+            while (j < n && values[j] >>> 16 == high) ++j;
+
+            Container c;
+            if (j - i > ARRAY_MAX) {
+                long[] words = new long[WORDS];
+                for (int k = i; k < j; ++k) words[(values[k] & 0xFFFF) >>> 6] |= 1L << values[k];
+                c = new BitmapContainer(words, j - i);
+            } else {
+                char[] low = new char[j - i];
+                for (int k = i; k < j; ++k) low[k - i] = (char) values[k];
+                c = new ArrayContainer(low, low.length);
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                containers = Arrays.copyOf(containers, size * 2);
+            }
+            keys[size] = (char) high;
+            containers[size++] = c;
+            i = j;
+        }
+        return new RoaringBitmap(keys, containers, size);
+    }
+
+    /**
+     * @return El conjunt dels enters de from (inclòs) a to (exclòs), en contenidors d'intervals.
+     */
+    public static RoaringBitmap range(int from, int to) {
+        if (from >= to) return EMPTY;
+        int first = from >>> 16, last = (to - 1) >>> 16;
+        char[] keys = new char[last - first + 1];
+        Container[] containers = new Container[keys.length];
+        for (int h = first; h <= last; ++h) {
+            int lo = h == first ? from & 0xFFFF : 0;
+            int hi = h == last ? (to - 1) & 0xFFFF : 0xFFFF;
+            keys[h - first] = (char) h;
+            containers[h - first] = new RunContainer(new char[]{(char) lo, (char) (hi - lo)}, 1);
+        }
+        return new RoaringBitmap(keys, containers, keys.length);
+    }
+
+    /**
+     * @return Conjunt amb els mateixos enters on cada contenidor s'ha canviat per una llista d'intervals si ocupa menys.
+     */
+    public RoaringBitmap runOptimize() {
+        Container[] res = new Container[size];
+        for (int i = 0; i < size; ++i) res[i] = containers[i].runOptimize();
+        return new RoaringBitmap(Arrays.copyOf(keys, size), res, size);
+    }
+
+    /**
+     * @return Nombre d'enters del conjunt.
+     */
+    public int cardinality() {
+        int n = 0;
+        for (int i = 0; i < size; ++i) n += containers[i].cardinality();
+        return n;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int x) {
+        int i = findKey((char) (x >>> 16));
+        return i >= 0 && containers[i].contains((char) x);
+    }
+
+    private int findKey(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    /**
+     * @return Els enters del conjunt, ordenats.
+     */
+    public int[] toArray() {
+        int[] res = new int[cardinality()];
+        int n = 0;
+        for (int i = 0; i < size; ++i) n = containers[i].toArray(keys[i] << 16, res, n);
+        return res;
+    }
+
+    /**
+     * @return Bytes aproximats que ocupen els contenidors.
+     */
+    public long getSizeInBytes() {
+        long bytes = 16 + 6L * size;
+        for (int i = 0; i < size; ++i) bytes += containers[i].sizeInBytes();
+        return bytes;
+    }
+
+    /**
+     * @return Els enters que són a aquest conjunt i a other.
+     */
+    public RoaringBitmap and(RoaringBitmap other) {
+        char[] k = new char[Math.min(size, other.size)];
+        Container[] c = new Container[k.length];
+        int n = 0, i = 0, j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) ++i;
+            else if (keys[i] > other.keys[j]) ++j;
+            else {
+                Container r = containers[i].and(other.containers[j]);
+                if (r != null) {
+                    k[n] = keys[i];
+                    c[n++] = r;
+                }
+                ++i;
+                ++j;
+            }
+        }
+        return new RoaringBitmap(k, c, n);
+    }
+
+    /**
+     * @return Els enters que són a aquest conjunt o a other.
+     */
+    public RoaringBitmap or(RoaringBitmap other) {
+        char[] k = new char[size + other.size];
+        Container[] c = new Container[k.length];
+        int n = 0, i = 0, j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                k[n] = keys[i];
+                c[n++] = containers[i++];
+            } else if (i == size || keys[i] > other.keys[j]) {
+                k[n] = other.keys[j];
+                c[n++] = other.containers[j++];
+            } else {
+                k[n] = keys[i];
+                c[n++] = containers[i++].or(other.containers[j++]);
+            }
+        }
+        return new RoaringBitmap(k, c, n);
+    }
+
+    /**
+     * @return Els enters que són a aquest conjunt i no són a other.
+     */
+    public RoaringBitmap andNot(RoaringBitmap other) {
+        char[] k = new char[size];
+        Container[] c = new Container[size];
+        int n = 0, j = 0;
+        for (int i = 0; i < size; ++i) {
+            while (j < other.size && other.keys[j] < keys[i]) ++j;
+            Container r = j < other.size && other.keys[j] == keys[i] ? containers[i].andNot(other.containers[j]) : containers[i];
+            if (r != null) {
+                k[n] = keys[i];
+                c[n++] = r;
+            }
+        }
+        return new RoaringBitmap(k, c, n);
+    }
+
+    /**
+     * @return Contenidor amb els bits de words, o null si no n'hi ha cap.
+     */
+    private static Container fromWords(long[] words) {
+        int card = 0;
+        for (long w : words) card += Long.bitCount(w);
+        if (card == 0) return null;
+        if (card > ARRAY_MAX) return new BitmapContainer(words, card);
+
+        char[] values = new char[card];
+        int n = 0;
+        for (int i = 0; i < WORDS; ++i) {
+            long w = words[i];
+            while (w != 0) {
+                values[n++] = (char) ((i << 6) + Long.numberOfTrailingZeros(w));
+                w &= w - 1;
+            }
+        }
+        return new ArrayContainer(values, card);
+    }
+
+    /**
+     * Bloc de 2^16 enters, dels quals es guarden els 16 bits baixos. Els contenidors són immutables.
+     */
+    private abstract static class Container {
+        abstract int cardinality();
+
+        abstract boolean contains(char x);
+
+        /**
+         * Escriu a out a partir de pos els enters del contenidor sumant-los high.
+         * @return La posició següent a l'últim enter escrit.
+         */
+        abstract int toArray(int high, int[] out, int pos);
+
+        abstract int sizeInBytes();
+
+        /**
+         * @return Mapa de bits del contenidor, nou o compartit: no es pot modificar.
+         */
+        abstract long[] words();
+
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) return other.and(this);
+            if (isFull()) return other;
+            if (other.isFull()) return this;
+            long[] a = words(), b = other.words();
+            long[] r = new long[WORDS];
+            for (int i = 0; i < WORDS; ++i) r[i] = a[i] & b[i];
+            return fromWords(r);
+        }
+
+        Container or(Container other) {
+            if (isFull()) return this;
+            if (other.isFull()) return other;
+            long[] r = words().clone();
+            if (other instanceof ArrayContainer) {
+                ArrayContainer a = (ArrayContainer) other;
+                for (int i = 0; i < a.n; ++i) r[a.values[i] >>> 6] |= 1L << a.values[i];
+            } else {
+                long[] b = other.words();
+                for (int i = 0; i < WORDS; ++i) r[i] |= b[i];
+            }
+            return fromWords(r);
+        }
+
+        Container andNot(Container other) {
+            if (other.isFull()) return null;
+            long[] r = words().clone();
+            if (other instanceof ArrayContainer) {
+                ArrayContainer a = (ArrayContainer) other;
+                for (int i = 0; i < a.n; ++i) r[a.values[i] >>> 6] &= ~(1L << a.values[i]);
+            } else {
+                long[] b = other.words();
+                for (int i = 0; i < WORDS; ++i) r[i] &= ~b[i];
+            }
+            return fromWords(r);
+        }
+
+        boolean isFull() {
+            return cardinality() == 1 << 16;
+        }
+
+        /**
+         * @return Aquest contenidor, o una llista d'intervals amb els mateixos enters si ocupa menys.
+         */
+        Container runOptimize() {
+            char[] runs = new char[8];
+            int nRuns = 0;
+            int[] values = new int[cardinality()];
+            int n = toArray(0, values, 0);
+            int i = 0;
+            while (i < n) {
+                int j = i;
+                while (j + 1 < n && values[j + 1] == values[j] + 1) ++j;
+                if (2 * nRuns + 2 > runs.length) runs = Arrays.copyOf(runs, runs.length * 2);
+                runs[2 * nRuns] = (char) values[i];
+                runs[2 * nRuns + 1] = (char) (j - i);
+                ++nRuns;
+                i = j + 1;
+            }
+            if (4 * nRuns >= sizeInBytes()) return this;
+            return new RunContainer(Arrays.copyOf(runs, 2 * nRuns), nRuns);
+        }
+    }
+
+    private static final class ArrayContainer extends Container {
+        final char[] values;
+        final int n;
+
+        ArrayContainer(char[] values, int n) {
+            this.values = values;
+            this.n = n;
+        }
+
+        @Override
+        int cardinality() {
+            return n;
+        }
+
+        @Override
+        boolean contains(char x) {
+            return Arrays.binarySearch(values, 0, n, x) >= 0;
+        }
+
+        @Override
+        int toArray(int high, int[] out, int pos) {
+            for (int i = 0; i < n; ++i) out[pos++] = high | values[i];
+            return pos;
+        }
+
+        @Override
+        int sizeInBytes() {
+            return 2 * n;
+        }
+
+        @Override
+        long[] words() {
+            long[] words = new long[WORDS];
+            for (int i = 0; i < n; ++i) words[values[i] >>> 6] |= 1L << values[i];
+            return words;
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] r = new char[n];
+            int m = 0;
+            if (other instanceof ArrayContainer) {
+                ArrayContainer o = (ArrayContainer) other;
+                int i = 0, j = 0;
+                while (i < n && j < o.n) {
+                    char x = values[i], y = o.values[j];
+                    r[m] = x;
+                    m += x == y ? 1 : 0;
+                    i += x <= y ? 1 : 0;
+                    j += y <= x ? 1 : 0;
+                }
+            } else {
+                for (int i = 0; i < n; ++i) {
+                    if (other.contains(values[i])) r[m++] = values[i];
+                }
+            }
+            return m == 0 ? null : new ArrayContainer(r, m);
+        }
+
+        @Override
+        Container or(Container other) {
+            if (!(other instanceof ArrayContainer)) return other.or(this);
+            ArrayContainer o = (ArrayContainer) other;
+            if (n + o.n > ARRAY_MAX) return super.or(other);
+            char[] r = new char[n + o.n];
+            int m = 0, i = 0, j = 0;
+            while (i < n && j < o.n) {
+                char x = values[i], y = o.values[j];
+                r[m++] = x <= y ? x : y;
+                i += x <= y ? 1 : 0;
+                j += y <= x ? 1 : 0;
+            }
+            while (i < n) r[m++] = values[i++];
+            while (j < o.n) r[m++] = o.values[j++];
+            return new ArrayContainer(r, m);
+        }
+
+        @Override
+        Container andNot(Container other) {
+            char[] r = new char[n];
+            int m = 0;
+            for (int i = 0; i < n; ++i) {
+                if (!other.contains(values[i])) r[m++] = values[i];
+            }
+            return m == 0 ? null : new ArrayContainer(r, m);
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        final long[] bits;
+        final int card;
+
+        BitmapContainer(long[] bits, int card) {
+            this.bits = bits;
+            this.card = card;
+        }
+
+        @Override
+        int cardinality() {
+            return card;
+        }
+
+        @Override
+        boolean contains(char x) {
+            return (bits[x >>> 6] & (1L << x)) != 0;
+        }
+
+        @Override
+        int toArray(int high, int[] out, int pos) {
+            for (int i = 0; i < WORDS; ++i) {
+                long w = bits[i];
+                while (w != 0) {
+                    out[pos++] = high | (i << 6) + Long.numberOfTrailingZeros(w);
+                    w &= w - 1;
+                }
+            }
+            return pos;
+        }
+
+        @Override
+        int sizeInBytes() {
+            return 8 * WORDS;
+        }
+
+        @Override
+        long[] words() {
+            return bits;
+        }
+    }
+
+    /**
+     * Intervals d'enters consecutius: runs[2i] és el primer enter de l'interval i, i runs[2i + 1] la seva longitud - 1.
+     */
+    private static final class RunContainer extends Container {
+        final char[] runs;
+        final int nRuns;
+
+        RunContainer(char[] runs, int nRuns) {
+            this.runs = runs;
+            this.nRuns = nRuns;
+        }
+
+        @Override
+        int cardinality() {
+            int n = 0;
+            for (int i = 0; i < nRuns; ++i) n += runs[2 * i + 1] + 1;
+            return n;
+        }
+
+        @Override
+        boolean contains(char x) {
+            int lo = 0, hi = nRuns - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (runs[2 * mid] > x) hi = mid - 1;
+                else if (runs[2 * mid] + runs[2 * mid + 1] < x) lo = mid + 1;
+                else return true;
+            }
+            return false;
+        }
+
+        @Override
+        int toArray(int high, int[] out, int pos) {
+            for (int i = 0; i < nRuns; ++i) {
+                int start = runs[2 * i];
+                for (int x = start; x <= start + runs[2 * i + 1]; ++x) out[pos++] = high | x;
+            }
+            return pos;
+        }
+
+        @Override
+        int sizeInBytes() {
+            return 4 * nRuns;
+        }
+
+        @Override
+        long[] words() {
+            long[] words = new long[WORDS];
+            for (int i = 0; i < nRuns; ++i) {
+                int start = runs[2 * i], end = start + runs[2 * i + 1];
+                for (int x = start; x <= end; ) {
+                    if ((x & 63) == 0 && x + 63 <= end) {
+                        words[x >>> 6] = -1L;
+                        x += 64;
+                    } else {
+                        words[x >>> 6] |= 1L << x;
+                        ++x;
+                    }
+                }
+            }
+            return words;
+        }
+
+        @Override
+        boolean isFull() {
+            return nRuns == 1 && runs[0] == 0 && runs[1] == 0xFFFF;
+        }
+
+        @Override
+        Container runOptimize() {
+            return this;
+        }
+    }
+}
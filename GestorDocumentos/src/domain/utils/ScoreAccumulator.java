@@ -0,0 +1,74 @@
+package domain.utils;
+
+import java.util.Arrays;
+
+/**
+ * Acumuladors de puntuació indexats per id de document per a avaluar consultes terme a terme.
+ * Només es recorden els ids que s'han tocat, així reiniciar-lo costa el nombre de documents puntuats i no la mida del corpus.
+ */
+public class ScoreAccumulator {
+    private float[] scores;
+    private boolean[] isTouched;
+    private int[] touched;
+    private int nTouched;
+
+    public ScoreAccumulator() {
+        scores = new float[16];
+        isTouched = new boolean[16];
+        touched = new int[16];
+        nTouched = 0;
+    }
+
+    /**
+     * Assegura que hi caben els ids de 0 a n-1 i oblida les puntuacions anteriors. Si n és molt més petit que la
+     * capacitat (el corpus s'ha compactat), els vectors s'encongeixen.
+     * @param n Nombre d'ids possibles.
+     */
+    public void reset(int n) {
+        for (int i = 0; i < nTouched; ++i) {
+            scores[touched[i]] = 0;
+            isTouched[touched[i]] = false;
+        }
+        nTouched = 0;
+
+        if (scores.length < n || scores.length > 4 * Math.max(n, 16)) {
+            int capacity = scores.length < n ? Math.max(n, 2 * scores.length) : n;
+            scores = new float[capacity];
+            isTouched = new boolean[capacity];
+        }
+    }
+
+    /**
+     * Suma value a la puntuació del document id.
+     */
+    public void add(int id, float value) {
+        if (!isTouched[id]) {
+            isTouched[id] = true;
+            if (nTouched == touched.length) touched = Arrays.copyOf(touched, 2 * nTouched);
+            touched[nTouched++] = id;
+        }
+        scores[id] += value;
+    }
+
+    /**
+     * @return Nombre de documents amb puntuació.
+     */
+    public int size() {
+        return nTouched;
+    }
+
+    /**
+     * @param i Posició entre 0 i size()-1, en l'ordre en què s'han tocat els documents.
+     * @return Id del document i-èssim amb puntuació.
+     */
+    public int getId(int i) {
+        return touched[i];
+    }
+
+    /**
+     * @return Puntuació acumulada del document id.
+     */
+    public float getScore(int id) {
+        return scores[id];
+    }
+}
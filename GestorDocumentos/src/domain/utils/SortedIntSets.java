@@ -0,0 +1,89 @@
+package domain.utils;
+
+import java.util.Arrays;
+
+/**
+ * Operacions de conjunts sobre arrays d'enters ordenats de menor a major i sense repeticions.
+ */
+public class SortedIntSets {
+
+    /**
+     * Si un array és molt més llarg que l'altre, els enters del curt es busquen al llarg amb cerca exponencial.
+     */
+    private static final int GALLOP_RATIO = 16;
+
+    /**
+     * @return Els enters que són a a i a b, ordenats.
+     */
+    public static int[] intersect(int[] a, int[] b) {
+        if (a.length > b.length) {
+            int[] t = a;
+            a = b;
+            b = t;
+        }
+        if ((long) a.length * GALLOP_RATIO < b.length) return gallopIntersect(a, b);
+
+        // Sense salts segons la comparació, que és impredictible: es fan servir moviments condicionals
+        int[] res = new int[a.length];
+        int n = 0, i = 0, j = 0;
+        while (i < a.length && j < b.length) {
+            int x = a[i], y = b[j];
+            res[n] = x;
+            n += x == y ? 1 : 0;
+            i += x <= y ? 1 : 0;
+            j += y <= x ? 1 : 0;
+        }
+        return Arrays.copyOf(res, n);
+    }
+
+    /**
+     * Intersecció recorrent el curt i saltant al llarg: cada enter es busca a partir de la posició de l'anterior
+     * amb salts de mida 1, 2, 4, ... i una cerca binària a l'últim salt. El cost és O(|a| log(|b|/|a|)).
+     * @return Els enters que són a a i a b, ordenats.
+     */
+    private static int[] gallopIntersect(int[] a, int[] b) {
+        int[] res = new int[a.length];
+        int n = 0, j = 0;
+        for (int x : a) {
+            j = gallop(b, j, x);
+            if (j == b.length) break;
+            if (b[j] == x) res[n++] = x;
+        }
+        return n == res.length ? res : Arrays.copyOf(res, n);
+    }
+
+    /**
+     * @return La primera posició de a a partir de from amb un enter &gt;= key, a.length si no n'hi ha cap.
+     */
+    public static int gallop(int[] a, int from, int key) {
+        if (from >= a.length || a[from] >= key) return from;
+        int lo = from, step = 1;
+        int hi = from + 1;
+        while (hi < a.length && a[hi] < key) {
+            lo = hi;
+            step <<= 1;
+            hi = from + step;
+        }
+        int pos = Arrays.binarySearch(a, lo + 1, Math.min(hi + 1, a.length), key);
+        return pos < 0 ? -pos - 1 : pos;
+    }
+
+    /**
+     * @return Els enters que són a a o a b, ordenats.
+     */
+    public static int[] union(int[] a, int[] b) {
+        int[] res = new int[a.length + b.length];
+        int n = 0, i = 0, j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) res[n++] = a[i++];
+            else if (a[i] > b[j]) res[n++] = b[j++];
+            else {
+                res[n++] = a[i++];
+                ++j;
+            }
+        }
+        while (i < a.length) res[n++] = a[i++];
+        while (j < b.length) res[n++] = b[j++];
+        return n == res.length ? res : Arrays.copyOf(res, n);
+    }
+}
@@ -0,0 +1,54 @@
+package domain.utils;
+
+/**
+ * Vector dispers de pesos: ids de paraula ordenats de menor a major i el pes de cada paraula, amb la seva norma euclidiana.
+ */
+public class SparseVector {
+    private final int[] ids;
+    private final float[] weights;
+    private final float norm;
+
+    /**
+     * @param ids Ids de les paraules, ordenats de menor a major. No es copien.
+     * @param weights Pes de cada paraula. No es copien.
+     */
+    public SparseVector(int[] ids, float[] weights) {
+        this.ids = ids;
+        this.weights = weights;
+        float n = 0;
+        for (float w : weights) n += w * w;
+        this.norm = (float) Math.sqrt(n);
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public int getId(int i) {
+        return ids[i];
+    }
+
+    public float getWeight(int i) {
+        return weights[i];
+    }
+
+    public float getNorm() {
+        return norm;
+    }
+
+    /**
+     * Producte escalar amb un altre vector, recorrent els dos vectors a la vegada (merge-join).
+     */
+    public float dot(SparseVector other) {
+        int[] otherIds = other.ids;
+        float[] otherWeights = other.weights;
+        float res = 0;
+        int i = 0, j = 0;
+        while (i < ids.length && j < otherIds.length) {
+            if (ids[i] < otherIds[j]) ++i;
+            else if (ids[i] > otherIds[j]) ++j;
+            else res += weights[i++] * otherWeights[j++];
+        }
+        return res;
+    }
+}
@@ -0,0 +1,181 @@
+package domain.utils;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/**
+ * Min-heap acotat que conserva els k elements amb més puntuació d'entre tots els que se li ofereixen.
+ * Cada element té un id enter que desempata: amb la mateixa puntuació, l'id més petit va primer.
+ * Les puntuacions i els ids es guarden en arrays primitius, oferir un element no fa cap reserva de memòria.
+ * @param <T> Tipus de l'objecte associat a cada element (pot ser null si només interessen els ids).
+ */
+public class TopKHeap<T> {
+    private final int k;
+    private float[] scores;
+    private int[] ids;
+    private Object[] items;
+    private int size;
+
+    /**
+     * @param k Nombre màxim d'elements a conservar.
+     */
+    public TopKHeap(int k) {
+        this.k = Math.max(k, 0);
+        //Els arrays creixen fins a k, així una k molt gran no reserva memòria que no es farà servir
+        int capacity = Math.min(this.k, 16);
+        scores = new float[capacity];
+        ids = new int[capacity];
+        items = new Object[capacity];
+        size = 0;
+    }
+
+    /**
+     * @return true si l'element (scoreA, idA) va darrere de (scoreB, idB) en el resultat.
+     */
+    private static boolean isWorse(float scoreA, int idA, float scoreB, int idB) {
+        return scoreA < scoreB || (scoreA == scoreB && idA > idB);
+    }
+
+    private boolean isWorse(int a, int b) {
+        return isWorse(scores[a], ids[a], scores[b], ids[b]);
+    }
+
+    private void swap(int a, int b) {
+        float s = scores[a]; scores[a] = scores[b]; scores[b] = s;
+        int i = ids[a]; ids[a] = ids[b]; ids[b] = i;
+        Object o = items[a]; items[a] = items[b]; items[b] = o;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!isWorse(i, parent)) return;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int worst = i;
+            int l = 2 * i + 1, r = l + 1;
+            if (l < size && isWorse(l, worst)) worst = l;
+            if (r < size && isWorse(r, worst)) worst = r;
+            if (worst == i) return;
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    /**
+     * Ofereix un element al heap.
+     * @param id Identificador de l'element, desempata entre puntuacions iguals.
+     * @param score Puntuació de l'element. NaN es considera la pitjor puntuació possible.
+     * @param item Objecte associat a l'element.
+     * @return true si l'element ha entrat al heap.
+     */
+    public boolean offer(int id, float score, T item) {
+        if (Float.isNaN(score)) score = Float.NEGATIVE_INFINITY;
+
+        if (size < k) {
+            if (size == scores.length) {
+                int capacity = (int) Math.min((long) k, 2L * size);
+                scores = Arrays.copyOf(scores, capacity);
+                ids = Arrays.copyOf(ids, capacity);
+                items = Arrays.copyOf(items, capacity);
+            }
+            scores[size] = score;
+            ids[size] = id;
+            items[size] = item;
+            siftUp(size++);
+            return true;
+        }
+
+        if (k == 0 || !isWorse(scores[0], ids[0], score, id)) return false;
+
+        scores[0] = score;
+        ids[0] = id;
+        items[0] = item;
+        siftDown(0);
+        return true;
+    }
+
+    /**
+     * @return true si l'element (score, id) entraria al heap.
+     */
+    public boolean accepts(int id, float score) {
+        return size < k || (k > 0 && isWorse(scores[0], ids[0], score, id));
+    }
+
+    /**
+     * @return Puntuació mínima per a entrar al heap: la del pitjor element si el heap és ple, -infinit altrament.
+     */
+    public float threshold() {
+        if (size < k) return Float.NEGATIVE_INFINITY;
+        if (k == 0) return Float.POSITIVE_INFINITY;
+        return scores[0];
+    }
+
+    public boolean isFull() {
+        return size == k;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * Afegeix al heap tots els elements d'un altre heap.
+     * @param other Heap a fusionar. No es modifica.
+     */
+    @SuppressWarnings("unchecked")
+    public void addAll(TopKHeap<T> other) {
+        for (int i = 0; i < other.size; ++i) offer(other.ids[i], other.scores[i], (T) other.items[i]);
+    }
+
+    /**
+     * @return Les posicions dels elements ordenades de millor a pitjor.
+     */
+    private int[] sortedPositions() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; ++i) order[i] = i;
+        Arrays.sort(order, (a, b) -> isWorse(a, b) ? 1 : (isWorse(b, a) ? -1 : 0));
+        int[] res = new int[size];
+        for (int i = 0; i < size; ++i) res[i] = order[i];
+        return res;
+    }
+
+    /**
+     * @return Els objectes associats als elements, de més a menys puntuació.
+     */
+    @SuppressWarnings("unchecked")
+    public LinkedList<T> getSortedItems() {
+        LinkedList<T> res = new LinkedList<>();
+        for (int p : sortedPositions()) res.add((T) items[p]);
+        return res;
+    }
+
+    /**
+     * @return Els ids dels elements, de més a menys puntuació.
+     */
+    public int[] getSortedIds() {
+        int[] positions = sortedPositions();
+        int[] res = new int[size];
+        for (int i = 0; i < size; ++i) res[i] = ids[positions[i]];
+        return res;
+    }
+
+    /**
+     * @return Les puntuacions dels elements, de més a menys puntuació.
+     */
+    public float[] getSortedScores() {
+        int[] positions = sortedPositions();
+        float[] res = new float[size];
+        for (int i = 0; i < size; ++i) res[i] = scores[positions[i]];
+        return res;
+    }
+}